@@ -194,6 +194,47 @@ public class AutomatonCoverage {
         }
     }
 
+    /**
+     * Character trie of subjects, so that subjects with a common prefix share the nodes of that prefix
+     */
+    private static final class SubjectTrie {
+        private final Map<Character, SubjectTrie> children = new HashMap<>();
+        /// indices of the subjects that end at this node
+        private final List<Integer> subjectsEndingHere = new ArrayList<>();
+
+        static SubjectTrie of(List<String> subjects) {
+            SubjectTrie root = new SubjectTrie();
+            for (int idx = 0; idx < subjects.size(); idx++) {
+                SubjectTrie node = root;
+                for (char ch : subjects.get(idx).toCharArray()) {
+                    node = node.children.computeIfAbsent(ch, key -> new SubjectTrie());
+                }
+                node.subjectsEndingHere.add(idx);
+            }
+            return root;
+        }
+    }
+
+    /**
+     * Where the full and partial match walks are after reading the prefix of a trie node. The full match walk stops at
+     * the first failure, which is marked by a full match state of {@link #FAILURE_STATE_ID}
+     */
+    private static final class TrieWalkFrame {
+        private final SubjectTrie node;
+        private final int fullMatchState;
+        private final Edge fullMatchPreviousEdge;
+        private final int partialMatchState;
+        private final Edge partialMatchPreviousEdge;
+
+        TrieWalkFrame(SubjectTrie node, int fullMatchState, Edge fullMatchPreviousEdge, int partialMatchState, Edge partialMatchPreviousEdge) {
+            this.node = node;
+            this.fullMatchState = fullMatchState;
+            this.fullMatchPreviousEdge = fullMatchPreviousEdge;
+            this.partialMatchState = partialMatchState;
+            this.partialMatchPreviousEdge = partialMatchPreviousEdge;
+        }
+    }
+
     private static double edgeCoverageAmount(Edge edge, Set<Character> coveredChars) {
         // edges to error states always get complete covered. We are less interested in how covered these are
         // than if they are covered at all
@@ -232,6 +273,90 @@ public class AutomatonCoverage {
         partialMatchVisitationInfo.foldIn(evaluateString(subject, false));
     }
 
+    /**
+     * Evaluate many subjects in one traversal. The subjects are put in a character trie, and the automaton is walked in
+     * lockstep with a depth first walk of the trie, so a prefix that several subjects share is only walked once. The
+     * visitation info afterwards is the same as after calling {@link #evaluate(String)} on each subject.
+     * @param subjects The subjects to evaluate
+     * @return for each subject, true if the automaton accepts the whole subject
+     */
+    public boolean[] evaluateAll(List<String> subjects) {
+        boolean[] accepted = new boolean[subjects.size()];
+        if (subjects.isEmpty()) {
+            return accepted;
+        }
+
+        int initialState = transitionTable.getInitialState();
+        fullMatchVisitationInfo.addVisitedNode(initialState);
+        partialMatchVisitationInfo.addVisitedNode(initialState);
+
+        // walk iteratively, since subjects can be longer than the stack is deep
+        Deque<TrieWalkFrame> stack = new ArrayDeque<>();
+        stack.push(new TrieWalkFrame(SubjectTrie.of(subjects), initialState, null, initialState, null));
+        while (!stack.isEmpty()) {
+            TrieWalkFrame frame = stack.pop();
+            for (int idx : frame.node.subjectsEndingHere) {
+                accepted[idx] = frame.fullMatchState != FAILURE_STATE_ID && transitionTable.isAccept(frame.fullMatchState);
+            }
+
+            for (Map.Entry<Character, SubjectTrie> child : frame.node.children.entrySet()) {
+                char transitionCharacter = child.getKey();
+                SubjectTrie childNode = child.getValue();
+
+                int fullMatchState = FAILURE_STATE_ID;
+                Edge fullMatchEdge = null;
+                if (frame.fullMatchState != FAILURE_STATE_ID) {
+                    fullMatchEdge = walkEdge(fullMatchVisitationInfo, frame.fullMatchState, frame.fullMatchPreviousEdge, transitionCharacter);
+                    if (fullMatchEdge.rightStateId != FAILURE_STATE_ID) {
+                        fullMatchState = fullMatchEdge.rightStateId;
+                    } else if (!childNode.children.isEmpty()) {
+                        // some subject has input left after failing, so it covers the failure self loop
+                        Edge failSelfLoop = Edge.failEdge(FAILURE_STATE_ID);
+                        fullMatchVisitationInfo.addVisitedEdge(failSelfLoop, transitionCharacter);
+                        fullMatchVisitationInfo.addVisitedEdgePair(new EdgePair(fullMatchEdge, failSelfLoop));
+                    }
+                }
+
+                Edge partialMatchEdge = walkEdge(partialMatchVisitationInfo, frame.partialMatchState, frame.partialMatchPreviousEdge, transitionCharacter);
+                int partialMatchState = partialMatchEdge.rightStateId;
+                if (partialMatchState == FAILURE_STATE_ID) {
+                    // restart the automaton
+                    partialMatchState = initialState;
+                    partialMatchEdge = null;
+                }
+
+                stack.push(new TrieWalkFrame(childNode, fullMatchState, fullMatchEdge, partialMatchState, partialMatchEdge));
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Take one step from a state and record what it visits, like a single step of {@link #evaluateString}
+     * @param previousEdge the edge that led to the state, or null
+     * @return the edge that was taken, which leads to {@link #FAILURE_STATE_ID} if there was no transition
+     */
+    private Edge walkEdge(VisitationInfo visitationInfo, int stateCursor, Edge previousEdge, char transitionCharacter) {
+        OptionalInt nextStateOpt = this.transitionTable.step(stateCursor, transitionCharacter);
+        Edge takenEdge;
+        if (nextStateOpt.isEmpty()) {
+            visitationInfo.addVisitedNode(FAILURE_STATE_ID);
+            takenEdge = Edge.failEdge(stateCursor);
+        } else {
+            int nextState = nextStateOpt.getAsInt();
+            Transition joiningTransition = findTransitionForState(stateCursor, nextState, transitionCharacter).orElseThrow();
+            visitationInfo.addVisitedNode(nextState);
+            takenEdge = new Edge(stateCursor, nextState, joiningTransition);
+        }
+
+        visitationInfo.addVisitedEdge(takenEdge, transitionCharacter);
+        if (previousEdge != null) {
+            visitationInfo.addVisitedEdgePair(new EdgePair(previousEdge, takenEdge));
+        }
+        return takenEdge;
+    }
+
     public VisitationInfoSummary getFullMatchVisitationInfoSummary() {
         return summarizeVisitationInfo(getFullMatchVisitationInfo());
     }
@@ -0,0 +1,182 @@
+package dk.brics.automaton;
+
+import java.util.*;
+
+/**
+ * Runs a batch of deterministic automata over a string in a single pass. The automata are combined into a product
+ * automaton, and each product state is tagged with the set of automata that accept in it. One run then tells which
+ * automata of the batch accept the string.
+ * <p>
+ * Product states are built lazily the first time a run reaches them, so only the part of the product that is actually
+ * visited gets constructed. Automata that reject a prefix drop out of the product state, so states stay small once
+ * most of the batch has rejected. Building more states than the budget throws a {@link DfaBudgetExceededException}, and
+ * the batch can then be split and tried again. Product states that were already built stay valid.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TaggedRunAutomaton {
+
+    /// state that every automaton has rejected
+    public static final int DEAD_STATE = -1;
+
+    /**
+     * Identity of a product state: the live automata and the state each of them is in
+     */
+    private static final class ComponentKey {
+        private final long[] components;
+        private final int hash;
+
+        ComponentKey(long[] components) {
+            this.components = components;
+            this.hash = Arrays.hashCode(components);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ComponentKey && Arrays.equals(components, ((ComponentKey) o).components);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final RunAutomaton[] automata;
+    private final long stateBudget;
+
+    /// live components of each product state, packed as automaton index << 32 | state of that automaton
+    private final List<long[]> components;
+    /// automata that accept in each product state
+    private final List<BitSet> tags;
+    private final Map<ComponentKey, Integer> stateIds;
+    /// transitions that have been built so far, keyed by product state << 16 | char
+    private final Map<Long, Integer> transitions;
+    private final int initial;
+
+    /**
+     * @param automata the automata to run together. Tags are positions in this list
+     * @param stateBudget the most product states to build
+     */
+    public TaggedRunAutomaton(List<RunAutomaton> automata, long stateBudget) {
+        this.automata = automata.toArray(new RunAutomaton[0]);
+        this.stateBudget = stateBudget;
+        this.components = new ArrayList<>();
+        this.tags = new ArrayList<>();
+        this.stateIds = new HashMap<>();
+        this.transitions = new HashMap<>();
+
+        long[] initialComponents = new long[this.automata.length];
+        for (int i = 0; i < this.automata.length; i++) {
+            initialComponents[i] = pack(i, this.automata[i].getInitialState());
+        }
+        this.initial = stateFor(initialComponents);
+    }
+
+    /**
+     * Run a string through every automaton of the batch
+     * @param s the string to run
+     * @return positions of the automata that accept the whole string. The caller owns the returned set
+     * @throws DfaBudgetExceededException if the run needs more product states than the budget allows
+     */
+    public BitSet run(CharSequence s) {
+        int state = initial;
+        for (int i = 0; i < s.length() && state != DEAD_STATE; i++) {
+            state = step(state, s.charAt(i));
+        }
+        return state == DEAD_STATE ? new BitSet() : (BitSet) tags.get(state).clone();
+    }
+
+    /**
+     * @return the product state reached by reading c in the given state, or {@link #DEAD_STATE}
+     * @throws DfaBudgetExceededException if a new product state is needed but the budget is used up
+     */
+    public int step(int state, char c) {
+        long key = ((long) state << 16) | c;
+        Integer next = transitions.get(key);
+        if (next == null) {
+            next = stateFor(advance(components.get(state), c));
+            transitions.put(key, next);
+        }
+        return next;
+    }
+
+    public int getInitialState() {
+        return initial;
+    }
+
+    /**
+     * @return the automata that accept in the given product state. Must not be modified
+     */
+    public BitSet getTags(int state) {
+        return tags.get(state);
+    }
+
+    /**
+     * @return number of automata in the batch
+     */
+    public int getAutomatonCount() {
+        return automata.length;
+    }
+
+    /**
+     * @return number of product states built so far
+     */
+    public int getSize() {
+        return components.size();
+    }
+
+    private long[] advance(long[] current, char c) {
+        long[] next = new long[current.length];
+        int size = 0;
+        for (long component : current) {
+            int automaton = automatonOf(component);
+            int dest = automata[automaton].step(stateOf(component), c);
+            if (dest != -1) {
+                next[size++] = pack(automaton, dest);
+            }
+        }
+        return size == next.length ? next : Arrays.copyOf(next, size);
+    }
+
+    private int stateFor(long[] live) {
+        if (live.length == 0) {
+            return DEAD_STATE;
+        }
+
+        ComponentKey key = new ComponentKey(live);
+        Integer id = stateIds.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        if (components.size() >= stateBudget) {
+            throw new DfaBudgetExceededException(stateBudget);
+        }
+
+        BitSet tag = new BitSet(automata.length);
+        for (long component : live) {
+            if (automata[automatonOf(component)].isAccept(stateOf(component))) {
+                tag.set(automatonOf(component));
+            }
+        }
+
+        id = components.size();
+        components.add(live);
+        tags.add(tag);
+        stateIds.put(key, id);
+        return id;
+    }
+
+    private static long pack(int automaton, int state) {
+        return ((long) automaton << 32) | state;
+    }
+
+    private static int automatonOf(long component) {
+        return (int) (component >>> 32);
+    }
+
+    private static int stateOf(long component) {
+        return (int) component;
+    }
+}
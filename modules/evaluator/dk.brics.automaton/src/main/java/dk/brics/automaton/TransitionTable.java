@@ -42,6 +42,8 @@ public class TransitionTable {
     public TransitionTable(Automaton auto) {
 
         auto.determinize();
+        // the table is keyed on state numbers, which are stale after cloning or expanding a singleton
+        Automaton.setStateNumbers(auto.getStates());
 
         // Initialize table
         this.table = new HashMap<>();
@@ -186,6 +188,10 @@ public class TransitionTable {
         return initialState;
     }
 
+    public boolean isAccept(int state) {
+        return acceptStates.contains(state);
+    }
+
     public String toDot() {
 
         Function<Character, String> printableCharacter = (ch) -> {
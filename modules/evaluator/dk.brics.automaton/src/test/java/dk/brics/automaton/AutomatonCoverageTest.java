@@ -3,6 +3,7 @@ package dk.brics.automaton;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -426,6 +427,41 @@ class AutomatonCoverageTest {
         );
     }
 
+    @Test
+    void evaluateAll_sameVisitationInfoAsEvaluatingEachSubject() {
+        List<String> subjects = List.of("", "ab", "abc", "abx", "abcabc", "xab", "ab", "zzzz", "a1b2");
+        for (String pattern : List.of("(ab)+c?", "[a-c]*x", "a.*b", "x|ab(c|x)", "[^a]+")) {
+            Automaton auto = prepareRegex(pattern);
+            // both coverages share a table, so that their states are numbered the same
+            TransitionTable table = new TransitionTable(auto);
+
+            AutomatonCoverage oneByOne = new AutomatonCoverage(auto, table);
+            subjects.forEach(oneByOne::evaluate);
+
+            AutomatonCoverage trieWalk = new AutomatonCoverage(auto, table);
+            trieWalk.evaluateAll(subjects);
+
+            assertThat(trieWalk.getFullMatchVisitationInfo()).as(pattern).isEqualTo(oneByOne.getFullMatchVisitationInfo());
+            assertThat(trieWalk.getPartialMatchVisitationInfo()).as(pattern).isEqualTo(oneByOne.getPartialMatchVisitationInfo());
+        }
+    }
+
+    @Test
+    void evaluateAll_reportsFullMatchAcceptance() {
+        AutomatonCoverage coverage = new AutomatonCoverage(prepareRegex("(ab)+c?"));
+
+        boolean[] accepted = coverage.evaluateAll(List.of("", "ab", "abc", "abx", "abcabc", "xab", "ab", "zzzz", "a1b2"));
+
+        assertThat(accepted).containsExactly(false, true, true, false, false, false, true, false, false);
+    }
+
+    @Test
+    void evaluateAll_singletonAutomaton() {
+        AutomatonCoverage coverage = new AutomatonCoverage(Automaton.makeString("b"));
+
+        assertThat(coverage.evaluateAll(List.of("", "b", "bb"))).containsExactly(false, true, false);
+    }
+
     private static Automaton prepareRegex(String pattern) {
         RegExp regex = new RegExp(pattern, RegExp.NONE);
         Automaton auto = regex.toAutomaton();
@@ -15,4 +15,25 @@ public class TransitionTableTest {
         assertThat(table.states()).hasSameSizeAs(auto.getStates());
         assertThat(table.countTotalTransitions()).isEqualTo(auto.getNumberOfTransitions());
     }
+
+    @Test
+    void clonedAutomaton_keepsStatesApart() {
+        Automaton auto = new RegExp("a(b|c)d").toAutomaton(true);
+        // the clone's states are new, and all start out with the same number
+        Automaton clone = auto.clone();
+        TransitionTable table = new TransitionTable(clone);
+
+        assertThat(table.states()).hasSameSizeAs(clone.getStates());
+        assertThat(table.countTotalTransitions()).isEqualTo(clone.getNumberOfTransitions());
+    }
+
+    @Test
+    void singletonAutomaton_keepsStatesApart() {
+        // expanding a singleton numbers its first two states the same
+        Automaton auto = Automaton.makeString("abc");
+        TransitionTable table = new TransitionTable(auto);
+
+        assertThat(table.states()).hasSize(4);
+        assertThat(table.countTotalTransitions()).isEqualTo(3);
+    }
 }
@@ -22,6 +22,9 @@ public class EvaluationMain {
         UpdateDistancesArgs updateDistancesArgs = new UpdateDistancesArgs();
         InternetRegexesArgs internetRegexesArgs = new InternetRegexesArgs();
         ManualQueryArgs manualQueryArgs = new ManualQueryArgs();
+        MergeResultsArgs mergeResultsArgs = new MergeResultsArgs();
+        CoordinateArgs coordinateArgs = new CoordinateArgs();
+        WorkArgs workArgs = new WorkArgs();
         JCommander jc = JCommander.newBuilder()
                 .addObject(rootArgs)
                 .addCommand("pull-test-suites", pullTestSuiteArgs)
@@ -29,6 +32,9 @@ public class EvaluationMain {
                 .addCommand("update-distances", updateDistancesArgs)
                 .addCommand("internet-evaluation", internetRegexesArgs)
                 .addCommand("manual-query", manualQueryArgs)
+                .addCommand("merge-results", mergeResultsArgs)
+                .addCommand("coordinate", coordinateArgs)
+                .addCommand("work", workArgs)
                 .build();
 
         jc.parse(args);
@@ -66,6 +72,21 @@ public class EvaluationMain {
                 manualQueryCommand.call();
                 break;
 
+            case "merge-results":
+                MergeResultsCommand mergeResultsCommand = new MergeResultsCommand(rootArgs, mergeResultsArgs, dbConfig);
+                mergeResultsCommand.call();
+                break;
+
+            case "coordinate":
+                CoordinateCommand coordinateCommand = new CoordinateCommand(rootArgs, coordinateArgs, dbConfig);
+                coordinateCommand.call();
+                break;
+
+            case "work":
+                WorkCommand workCommand = new WorkCommand(rootArgs, workArgs);
+                workCommand.call();
+                break;
+
             default:
                 throw new RuntimeException(String.format("Command %s is not supported", jc.getParsedCommand()));
         }
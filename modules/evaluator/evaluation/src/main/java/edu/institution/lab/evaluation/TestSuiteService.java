@@ -4,6 +4,9 @@ import dk.brics.automaton.*;
 import edu.institution.lab.evaluation.db.RawTestSuiteCollector;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
 import edu.institution.lab.evaluation.model.*;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 import edu.institution.lab.evaluation.util.CoverageUtils;
 import org.slf4j.Logger;
@@ -22,9 +25,19 @@ public final class TestSuiteService {
     private static final Logger logger = LoggerFactory.getLogger(TestSuiteService.class);
 
     private final RegexDatabaseClient databaseClient;
+    /// used when computing match statuses for test suite strings
+    private final InlineMatchPolicy inlineMatchPolicy;
+    /// limits the threaded matches that compute match statuses. May be null
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
 
     public TestSuiteService(RegexDatabaseClient databaseClient) {
+        this(databaseClient, null);
+    }
+
+    public TestSuiteService(RegexDatabaseClient databaseClient, AdaptiveTimeoutPolicy timeoutPolicy) {
         this.databaseClient = databaseClient;
+        this.inlineMatchPolicy = new InlineMatchPolicy();
+        this.timeoutPolicy = timeoutPolicy;
     }
 
     /**
@@ -43,8 +56,11 @@ public final class TestSuiteService {
     }
 
     public Stream<RegexTestSuite> createRegexTestSuitesFromRaw(int maxStringLength, TestSuiteStatistics stats, ExecutorService safeMatchContext) throws SQLException {
+        MatchContext matchContext = MatchContext.of(safeMatchContext)
+                .withInlineMatchPolicy(inlineMatchPolicy)
+                .withTimeoutPolicy(timeoutPolicy);
         return loadRawRegexTestSuites(maxStringLength).stream()
-                .flatMap(rawSet -> expandTestSuite(rawSet, stats, safeMatchContext).stream());
+                .flatMap(rawSet -> expandTestSuite(rawSet, stats, matchContext).stream());
     }
 
     public void updateTestSuiteCoverages() throws SQLException {
@@ -61,9 +77,9 @@ public final class TestSuiteService {
 
             // evaluate coverage
             AutomatonCoverage coverage = coverageOpt.get();
-            regexTestSuite.strings().stream()
+            coverage.evaluateAll(regexTestSuite.strings().stream()
                     .map(RegexTestSuiteString::subject)
-                    .forEach(coverage::evaluate);
+                    .toList());
 
             updatedCoverages.put(regexTestSuite.id(), coverage);
         }
@@ -106,7 +122,7 @@ public final class TestSuiteService {
         return allRegexStringSets;
     }
 
-    private Optional<RegexTestSuite> expandTestSuite(RegexStringSet stringSet, TestSuiteStatistics nullableStatistics, ExecutorService safeMatchContext) {
+    private Optional<RegexTestSuite> expandTestSuite(RegexStringSet stringSet, TestSuiteStatistics nullableStatistics, MatchContext matchContext) {
         Optional<TestSuiteStatistics> statistics = Optional.ofNullable(nullableStatistics);
         AutomatonCoverage coverage;
         Pattern pattern;
@@ -130,10 +146,13 @@ public final class TestSuiteService {
             return Optional.empty();
         }
 
+        coverage.evaluateAll(stringSet.strings().stream()
+                .map(RegexTestSuiteString::subject)
+                .toList());
+
         Set<RegexTestSuiteString> strings = new HashSet<>();
         for (RegexTestSuiteString example : stringSet.strings()) {
-            coverage.evaluate(example.subject());
-            SafeMatcher matcher = new SafeMatcher(pattern, safeMatchContext);
+            SafeMatcher matcher = new SafeMatcher(pattern, matchContext);
             Optional<MatchStatus> status = MatchStatus.compute(matcher, example.subject());
             if (status.isEmpty()) {
                 // if we got empty, then the pattern timed out while evaluating this string. We should drop the string,
@@ -0,0 +1,61 @@
+package edu.institution.lab.evaluation.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import edu.institution.lab.evaluation.distributed.LeaseBook;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Objects;
+
+@Parameters(commandDescription = "Evaluate with worker processes: hand out work to workers that connect, and save their results")
+public class CoordinateArgs {
+    @Parameter(description = "Path to SQLite database containing test suites and static extraction results", required = true)
+    private String databasePath;
+
+    @Parameter(names = {"--bind-address"}, description = "address to wait for workers on. Defaults to the loopback address, so workers on other machines need an address they can reach, on a trusted network")
+    private String bindAddress;
+
+    @Parameter(names = {"-p", "--port"}, description = "port to wait for workers on")
+    private Integer port;
+
+    @Parameter(names = {"--lease-cost"}, description = "how much work to hand out at once, in candidate characters: each candidate costs the total length of the test suite's strings")
+    private Long leaseCost;
+
+    @Parameter(names = {"--lease-timeout-minutes"}, description = "how long a worker may take for a lease before its lease is given to another worker")
+    private Integer leaseTimeoutMinutes;
+
+    @Parameter(names = {"--lease-attempts"}, description = "how many workers a lease may be handed to before losing it fails the run")
+    private Integer leaseAttempts;
+
+    @Parameter(names = {"--resume"}, description = "resume an interrupted run, skipping work that it already saved")
+    private Boolean resume;
+
+    public String getDatabasePath() {
+        return databasePath;
+    }
+
+    public String getBindAddress() {
+        return Objects.requireNonNullElse(bindAddress, InetAddress.getLoopbackAddress().getHostAddress());
+    }
+
+    public int getPort() {
+        return Objects.requireNonNullElse(port, WorkArgs.DEFAULT_PORT);
+    }
+
+    public long getLeaseCost() {
+        return Objects.requireNonNullElse(leaseCost, 2_000_000L);
+    }
+
+    public Duration getLeaseTimeout() {
+        return Duration.ofMinutes(Objects.requireNonNullElse(leaseTimeoutMinutes, 30));
+    }
+
+    public int getLeaseAttempts() {
+        return Objects.requireNonNullElse(leaseAttempts, LeaseBook.DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public boolean isResume() {
+        return Objects.requireNonNullElse(resume, false);
+    }
+}
@@ -2,6 +2,8 @@ package edu.institution.lab.evaluation.args;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import edu.institution.lab.evaluation.evaluation.EvaluationStrategy;
+import edu.institution.lab.evaluation.shard.Shard;
 
 import java.util.Objects;
 
@@ -13,6 +15,18 @@ public class EvaluateArgs {
     @Parameter(names = {"-u", "--updates-only"}, description = "only compute relative updates of existing test suite results")
     private Boolean coveragesOnly;
 
+    @Parameter(names = {"--strategy"}, description = "how to split up evaluation work: TEST_SUITE_MAJOR (the default), CANDIDATE_MAJOR or COST_SCHEDULED")
+    private EvaluationStrategy strategy;
+
+    @Parameter(names = {"--screen-size"}, description = "screen all candidates with this many of the most discriminative strings before running whole test suites. 0 disables the screen")
+    private Integer screenSize;
+
+    @Parameter(names = {"--resume"}, description = "resume an interrupted run, skipping work that it already saved")
+    private Boolean resume;
+
+    @Parameter(names = {"--shard"}, description = "only process one slice of the projects, given as index/count, e.g. 0/4. Merge the shards' databases with merge-results", converter = ShardConverter.class)
+    private Shard shard;
+
     public String getDatabasePath() {
         return databasePath;
     }
@@ -20,4 +34,20 @@ public class EvaluateArgs {
     public boolean isCoveragesOnly() {
         return Objects.requireNonNullElse(coveragesOnly, false);
     }
+
+    public EvaluationStrategy getStrategy() {
+        return Objects.requireNonNullElse(strategy, EvaluationStrategy.TEST_SUITE_MAJOR);
+    }
+
+    public int getScreenSize() {
+        return Objects.requireNonNullElse(screenSize, 0);
+    }
+
+    public boolean isResume() {
+        return Objects.requireNonNullElse(resume, false);
+    }
+
+    public Shard getShard() {
+        return Objects.requireNonNullElse(shard, Shard.ALL);
+    }
 }
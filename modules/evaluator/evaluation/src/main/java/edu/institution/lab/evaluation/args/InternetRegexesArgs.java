@@ -3,6 +3,7 @@ package edu.institution.lab.evaluation.args;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import edu.institution.lab.evaluation.shard.Shard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +25,12 @@ public class InternetRegexesArgs {
     @Parameter(names = {"-d", "--internet-db"}, description = "SQLite database containing internet regexes", required = true)
     private String internetDb;
 
+    @Parameter(names = {"--resume"}, description = "resume an interrupted run, skipping work that it already saved")
+    private Boolean resume;
+
+    @Parameter(names = {"--shard"}, description = "only process one slice of the test suites, given as index/count, e.g. 0/4. Merge the shards' databases with merge-results", converter = ShardConverter.class)
+    private Shard shard;
+
     /**
      * Assess if the user is trying to load posts from an NDJson file and save them to a SQLite file.
      * @return True if doing the thing
@@ -71,4 +78,12 @@ public class InternetRegexesArgs {
     public boolean isUpdatesOnly() {
         return Objects.requireNonNullElse(updateOnly, false);
     }
+
+    public boolean isResume() {
+        return Objects.requireNonNullElse(resume, false);
+    }
+
+    public Shard getShard() {
+        return Objects.requireNonNullElse(shard, Shard.ALL);
+    }
 }
@@ -0,0 +1,34 @@
+package edu.institution.lab.evaluation.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+
+import java.util.List;
+import java.util.Objects;
+
+@Parameters(commandDescription = "Merge the results of sharded runs into a single database")
+public class MergeResultsArgs {
+
+    @Parameter(description = "Database to merge into, followed by the shard databases to merge", required = true)
+    private List<String> databasePaths;
+
+    @Parameter(names = {"-i", "--internet"}, description = "merge internet regex results from internet regex databases instead of test suite results")
+    private Boolean internet;
+
+    public String getDatabasePath() {
+        return databasePaths.get(0);
+    }
+
+    public List<String> getShardDatabasePaths() {
+        if (databasePaths.size() < 2) {
+            throw new ParameterException("at least one shard database must be provided to merge");
+        }
+
+        return databasePaths.subList(1, databasePaths.size());
+    }
+
+    public boolean isInternet() {
+        return Objects.requireNonNullElse(internet, false);
+    }
+}
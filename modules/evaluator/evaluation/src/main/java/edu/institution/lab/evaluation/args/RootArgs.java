@@ -2,8 +2,12 @@ package edu.institution.lab.evaluation.args;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import edu.institution.lab.evaluation.evaluation.EvaluationOptions;
+import edu.institution.lab.evaluation.evaluation.ExecutionModel;
+import edu.institution.lab.evaluation.safematch.TimeoutMode;
 import org.sqlite.SQLiteConfig;
 
+import java.time.Duration;
 import java.util.Optional;
 
 public class RootArgs {
@@ -19,6 +23,18 @@ public class RootArgs {
     @Parameter(names = "--temp-files-memory", description = "If set, store temporary files in memory, not on disk")
     private Boolean tempStoreMemory;
 
+    @Parameter(names = "--execution-model", description = "how evaluation jobs wait on safe matches: SEPARATE_POOLS (the default) or MANAGED_BLOCKING (waiting jobs release their pool thread)")
+    private ExecutionModel executionModel;
+
+    @Parameter(names = "--match-timeouts", description = "how threaded matches are limited: SHADOW (fixed timeouts, adaptive limits only measured), ADAPTIVE or FIXED")
+    private TimeoutMode timeoutMode;
+
+    @Parameter(names = "--suite-budget-minutes", description = "how long a test suite may take: candidates that are left when it runs out stay undetermined. Unbounded if not given or 0. A budget makes verdicts depend on wall-clock time and machine load")
+    private Integer suiteBudgetMinutes;
+
+    @Parameter(names = "--candidate-budget-seconds", description = "how long a single candidate may take on a test suite before it is left undetermined. Unbounded if not given or 0. A budget makes verdicts depend on wall-clock time and machine load")
+    private Integer candidateBudgetSeconds;
+
     public boolean getHelp() {
         if (help == null) {
             return false;
@@ -40,4 +56,49 @@ public class RootArgs {
 
         return tempStoreMemory ? SQLiteConfig.TempStore.MEMORY : SQLiteConfig.TempStore.FILE;
     }
+
+    public ExecutionModel getExecutionModel() {
+        if (executionModel == null) {
+            return ExecutionModel.SEPARATE_POOLS;
+        }
+
+        return executionModel;
+    }
+
+    public TimeoutMode getTimeoutMode() {
+        if (timeoutMode == null) {
+            return TimeoutMode.SHADOW;
+        }
+
+        return timeoutMode;
+    }
+
+    /**
+     * @return how long a test suite may take, or null if that is unbounded
+     */
+    public Duration getSuiteBudget() {
+        if (suiteBudgetMinutes == null || suiteBudgetMinutes == 0) {
+            return null;
+        }
+
+        return Duration.ofMinutes(suiteBudgetMinutes);
+    }
+
+    /**
+     * @return how long a single candidate may take on a test suite, or null if that is unbounded
+     */
+    public Duration getCandidateBudget() {
+        if (candidateBudgetSeconds == null || candidateBudgetSeconds == 0) {
+            return null;
+        }
+
+        return Duration.ofSeconds(candidateBudgetSeconds);
+    }
+
+    /**
+     * @return the execution model, timeout mode and budgets of the services that evaluate candidates
+     */
+    public EvaluationOptions getEvaluationOptions() {
+        return new EvaluationOptions(getExecutionModel(), getTimeoutMode(), getSuiteBudget(), getCandidateBudget());
+    }
 }
@@ -0,0 +1,19 @@
+package edu.institution.lab.evaluation.args;
+
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+import edu.institution.lab.evaluation.shard.Shard;
+
+/**
+ * Parses {@code --shard index/count} options
+ */
+public class ShardConverter implements IStringConverter<Shard> {
+    @Override
+    public Shard convert(String value) {
+        try {
+            return Shard.parse(value);
+        } catch (IllegalArgumentException exe) {
+            throw new ParameterException(exe.getMessage());
+        }
+    }
+}
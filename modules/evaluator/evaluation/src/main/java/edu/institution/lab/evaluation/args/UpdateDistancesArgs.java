@@ -21,6 +21,9 @@ public class UpdateDistancesArgs {
     @Parameter(names = {"-s", "--skip-semantic-distances"}, description = "skip computing AST distances")
     private Boolean skipSemanticDistances;
 
+    @Parameter(names = {"--resume"}, description = "resume an interrupted run, skipping work that it already saved")
+    private Boolean resume;
+
     @Parameter(description = "Path to SQLite database containing test suites and static extraction results", required = true)
     private String databasePath;
 
@@ -51,4 +54,8 @@ public class UpdateDistancesArgs {
     public boolean computeSemanticDistances() {
         return !Objects.requireNonNullElse(skipSemanticDistances, false);
     }
+
+    public boolean isResume() {
+        return Objects.requireNonNullElse(resume, false);
+    }
 }
@@ -0,0 +1,48 @@
+package edu.institution.lab.evaluation.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import java.time.Duration;
+import java.util.Objects;
+
+@Parameters(commandDescription = "Evaluate work handed out by a coordinator until it runs out")
+public class WorkArgs {
+
+    public static final int DEFAULT_PORT = 7077;
+
+    @Parameter(names = {"--host"}, description = "host that the coordinator runs on")
+    private String host;
+
+    @Parameter(names = {"-p", "--port"}, description = "port that the coordinator listens on")
+    private Integer port;
+
+    @Parameter(names = {"--slots"}, description = "how many leases to evaluate at once. Defaults to the number of processors")
+    private Integer slots;
+
+    @Parameter(names = {"--screen-size"}, description = "screen all candidates with this many of the most discriminative strings before running whole test suites. 0 disables the screen")
+    private Integer screenSize;
+
+    @Parameter(names = {"--connect-timeout-seconds"}, description = "how long to keep trying to reach the coordinator")
+    private Integer connectTimeoutSeconds;
+
+    public String getHost() {
+        return Objects.requireNonNullElse(host, "localhost");
+    }
+
+    public int getPort() {
+        return Objects.requireNonNullElse(port, DEFAULT_PORT);
+    }
+
+    public int getSlots() {
+        return Objects.requireNonNullElse(slots, Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getScreenSize() {
+        return Objects.requireNonNullElse(screenSize, 0);
+    }
+
+    public Duration getConnectTimeout() {
+        return Duration.ofSeconds(Objects.requireNonNullElse(connectTimeoutSeconds, 60));
+    }
+}
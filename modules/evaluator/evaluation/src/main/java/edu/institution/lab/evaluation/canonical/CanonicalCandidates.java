@@ -0,0 +1,104 @@
+package edu.institution.lab.evaluation.canonical;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+
+import java.util.*;
+
+/**
+ * Candidates grouped by the canonical form of their pattern. Only one representative of each group needs to be
+ * evaluated, since every member matches exactly the same strings. The representative's solutions are then copied to the
+ * other members with {@link #fanOut(Map)}.
+ */
+public final class CanonicalCandidates {
+
+    private final List<CompiledRegexEntity> representatives;
+    /// every member of each group, including the representative, keyed by representative id
+    private final Map<Long, List<CompiledRegexEntity>> members;
+    private final int candidateCount;
+
+    private CanonicalCandidates(List<CompiledRegexEntity> representatives, Map<Long, List<CompiledRegexEntity>> members, int candidateCount) {
+        this.representatives = representatives;
+        this.members = members;
+        this.candidateCount = candidateCount;
+    }
+
+    /**
+     * Group candidates by canonical pattern. The shortest pattern of each group is its representative, since it is
+     * usually the cheapest to match
+     * @param candidates The candidates to group. Ids must be distinct
+     * @return the grouped candidates
+     */
+    public static CanonicalCandidates group(List<CompiledRegexEntity> candidates) {
+        Map<String, List<CompiledRegexEntity>> groups = new LinkedHashMap<>();
+        for (CompiledRegexEntity candidate : candidates) {
+            String canonical = PatternCanonicalizer.canonicalize(candidate.regexPattern().pattern());
+            groups.computeIfAbsent(canonical, key -> new ArrayList<>()).add(candidate);
+        }
+
+        List<CompiledRegexEntity> representatives = new ArrayList<>(groups.size());
+        Map<Long, List<CompiledRegexEntity>> members = new HashMap<>();
+        for (List<CompiledRegexEntity> group : groups.values()) {
+            CompiledRegexEntity representative = group.stream()
+                    .min(Comparator.comparingInt(candidate -> candidate.regexPattern().pattern().length()))
+                    .orElseThrow();
+            representatives.add(representative);
+            members.put(representative.id(), group);
+        }
+
+        return new CanonicalCandidates(List.copyOf(representatives), members, candidates.size());
+    }
+
+    /**
+     * @return one candidate per canonical pattern, in the order the patterns first appeared
+     */
+    public List<CompiledRegexEntity> getRepresentatives() {
+        return representatives;
+    }
+
+    /**
+     * @param representative One of the {@link #getRepresentatives()}
+     * @return every candidate in the representative's group, including the representative
+     */
+    public List<CompiledRegexEntity> getMembers(CompiledRegexEntity representative) {
+        return members.getOrDefault(representative.id(), List.of(representative));
+    }
+
+    /**
+     * @return the number of candidates before grouping
+     */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Copy each representative's solutions to the other members of its group
+     * @param testSuiteSolutions solutions of the representatives, keyed by test suite id
+     * @return solutions of every candidate, keyed by test suite id
+     */
+    public Map<Long, Set<RegexTestSuiteSolution>> fanOut(Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions) {
+        Map<Long, Set<RegexTestSuiteSolution>> fannedOut = new HashMap<>();
+        testSuiteSolutions.forEach((testSuiteId, solutions) -> {
+            Set<RegexTestSuiteSolution> memberSolutions = new HashSet<>();
+            for (RegexTestSuiteSolution solution : solutions) {
+                List<CompiledRegexEntity> group = members.get(solution.regexId());
+                if (group == null) {
+                    memberSolutions.add(solution);
+                    continue;
+                }
+                for (CompiledRegexEntity member : group) {
+                    memberSolutions.add(new RegexTestSuiteSolution(member.id(),
+                            member.projectId(),
+                            solution.fullMatch(),
+                            solution.partialMatch(),
+                            solution.astDistance(),
+                            solution.fullAutoDistance(),
+                            solution.partialAutoDistance()
+                    ));
+                }
+            }
+            fannedOut.put(testSuiteId, memberSolutions);
+        });
+        return fannedOut;
+    }
+}
@@ -0,0 +1,246 @@
+package edu.institution.lab.evaluation.canonical;
+
+import edu.institution.lab.evaluation.dfa.JavaRegexParser;
+import edu.institution.lab.evaluation.dfa.RegexNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites patterns into a canonical form, so that patterns that only differ in spelling can be recognized as the same
+ * pattern. Equal canonical forms match the same spans of every string, because only rewrites that preserve
+ * {@link java.util.regex.Matcher#find()} and {@link java.util.regex.Matcher#matches()} are applied:
+ * <ul>
+ *     <li>groups are removed where they do not change precedence</li>
+ *     <li>character classes are written as sorted ranges, or as a shorthand such as {@code \d} if one fits exactly</li>
+ *     <li>repeated alternatives are removed, since a later copy is only tried after the earlier one failed</li>
+ *     <li>adjacent alternatives of single characters are merged into one character class</li>
+ *     <li>quantifiers are written in their shortest form, and {@code {1}} is removed</li>
+ * </ul>
+ * Alternatives are never reordered, because java tries them in order.
+ */
+public final class PatternCanonicalizer {
+
+    private static final int CHAR_COUNT = Character.MAX_VALUE + 1;
+
+    private static final BitSet DIGIT = shorthandChars("\\d");
+    private static final BitSet WORD = shorthandChars("\\w");
+    private static final BitSet SPACE = shorthandChars("\\s");
+    private static final BitSet DOT = shorthandChars(".");
+
+    private PatternCanonicalizer() {
+    }
+
+    /**
+     * @param pattern A java regex pattern that is known to compile
+     * @return The canonical form of the pattern, or the pattern itself if it uses constructs the canonicalizer does not
+     * understand
+     */
+    public static String canonicalize(String pattern) {
+        return JavaRegexParser.tryParseExact(pattern)
+                .map(PatternCanonicalizer::normalize)
+                .map(PatternCanonicalizer::print)
+                .orElse(pattern);
+    }
+
+    private static RegexNode normalize(RegexNode node) {
+        if (node instanceof RegexNode.Concat concat) {
+            List<RegexNode> items = new ArrayList<>();
+            for (RegexNode item : concat.items()) {
+                RegexNode normalized = normalize(item);
+                if (normalized instanceof RegexNode.Concat inner) {
+                    items.addAll(inner.items());
+                } else {
+                    items.add(normalized);
+                }
+            }
+            return items.size() == 1 ? items.get(0) : new RegexNode.Concat(items);
+        } else if (node instanceof RegexNode.Alternation alternation) {
+            return normalizeAlternation(alternation);
+        } else if (node instanceof RegexNode.Repeat repeat) {
+            RegexNode child = normalize(repeat.child());
+            boolean fixed = repeat.min() == repeat.max();
+            if (fixed && repeat.min() == 1 && repeat.kind() != RegexNode.Repeat.Kind.POSSESSIVE) {
+                return child;
+            }
+            // a fixed count has only one way to match, so laziness does not matter
+            RegexNode.Repeat.Kind kind = fixed && repeat.kind() == RegexNode.Repeat.Kind.LAZY
+                    ? RegexNode.Repeat.Kind.GREEDY
+                    : repeat.kind();
+            return new RegexNode.Repeat(child, repeat.min(), repeat.max(), kind);
+        }
+
+        return node;
+    }
+
+    private static RegexNode normalizeAlternation(RegexNode.Alternation alternation) {
+        Set<RegexNode> alternatives = new LinkedHashSet<>();
+        for (RegexNode alternative : alternation.alternatives()) {
+            RegexNode normalized = normalize(alternative);
+            if (normalized instanceof RegexNode.Alternation inner) {
+                alternatives.addAll(inner.alternatives());
+            } else {
+                alternatives.add(normalized);
+            }
+        }
+
+        // adjacent alternatives that each match one character match the same as their union
+        List<RegexNode> merged = new ArrayList<>();
+        for (RegexNode alternative : alternatives) {
+            int last = merged.size() - 1;
+            if (alternative instanceof RegexNode.CharClass charClass && last >= 0 && merged.get(last) instanceof RegexNode.CharClass previous) {
+                BitSet union = (BitSet) previous.chars().clone();
+                union.or(charClass.chars());
+                merged.set(last, new RegexNode.CharClass(union, previous.supplementary() || charClass.supplementary()));
+            } else {
+                merged.add(alternative);
+            }
+        }
+
+        if (merged.size() == 1) {
+            return merged.get(0);
+        }
+        // merging can make alternatives equal again
+        Set<RegexNode> distinct = new LinkedHashSet<>(merged);
+        return distinct.size() == 1 ? merged.get(0) : new RegexNode.Alternation(List.copyOf(distinct));
+    }
+
+    private static String print(RegexNode node) {
+        StringBuilder builder = new StringBuilder();
+        print(node, builder);
+        return builder.toString();
+    }
+
+    private static void print(RegexNode node, StringBuilder builder) {
+        if (node instanceof RegexNode.CharClass charClass) {
+            printCharClass(charClass, builder);
+        } else if (node instanceof RegexNode.Anchor anchor) {
+            builder.append(anchor.token());
+        } else if (node instanceof RegexNode.Concat concat) {
+            for (RegexNode item : concat.items()) {
+                printGroupedIf(item instanceof RegexNode.Alternation, item, builder);
+            }
+        } else if (node instanceof RegexNode.Alternation alternation) {
+            for (int i = 0; i < alternation.alternatives().size(); i++) {
+                if (i > 0) {
+                    builder.append('|');
+                }
+                print(alternation.alternatives().get(i), builder);
+            }
+        } else if (node instanceof RegexNode.Repeat repeat) {
+            printGroupedIf(!(repeat.child() instanceof RegexNode.CharClass), repeat.child(), builder);
+            printQuantifier(repeat, builder);
+        } else {
+            throw new IllegalArgumentException("unknown node type " + node.getClass().getSimpleName());
+        }
+    }
+
+    private static void printGroupedIf(boolean grouped, RegexNode node, StringBuilder builder) {
+        if (grouped) {
+            builder.append("(?:");
+            print(node, builder);
+            builder.append(')');
+        } else {
+            print(node, builder);
+        }
+    }
+
+    private static void printQuantifier(RegexNode.Repeat repeat, StringBuilder builder) {
+        if (repeat.min() == 0 && repeat.isUnbounded()) {
+            builder.append('*');
+        } else if (repeat.min() == 1 && repeat.isUnbounded()) {
+            builder.append('+');
+        } else if (repeat.min() == 0 && repeat.max() == 1) {
+            builder.append('?');
+        } else if (repeat.min() == repeat.max()) {
+            builder.append('{').append(repeat.min()).append('}');
+        } else {
+            builder.append('{').append(repeat.min()).append(',');
+            if (!repeat.isUnbounded()) {
+                builder.append(repeat.max());
+            }
+            builder.append('}');
+        }
+
+        switch (repeat.kind()) {
+            case LAZY -> builder.append('?');
+            case POSSESSIVE -> builder.append('+');
+            case GREEDY -> {
+            }
+        }
+    }
+
+    private static void printCharClass(RegexNode.CharClass charClass, StringBuilder builder) {
+        BitSet chars = charClass.chars();
+        if (charClass.supplementary()) {
+            BitSet excluded = (BitSet) chars.clone();
+            excluded.flip(0, CHAR_COUNT);
+            if (chars.equals(DOT)) {
+                builder.append('.');
+            } else if (excluded.equals(DIGIT)) {
+                builder.append("\\D");
+            } else if (excluded.equals(WORD)) {
+                builder.append("\\W");
+            } else if (excluded.equals(SPACE)) {
+                builder.append("\\S");
+            } else if (excluded.isEmpty()) {
+                builder.append("[\\s\\S]");
+            } else {
+                builder.append("[^");
+                printRanges(excluded, builder);
+                builder.append(']');
+            }
+        } else if (chars.isEmpty()) {
+            builder.append("[^\\s\\S]");
+        } else if (charClass.isSingleChar()) {
+            printChar(charClass.singleChar(), "\\^$.|?*+()[]{}", builder);
+        } else if (chars.equals(DIGIT)) {
+            builder.append("\\d");
+        } else if (chars.equals(WORD)) {
+            builder.append("\\w");
+        } else if (chars.equals(SPACE)) {
+            builder.append("\\s");
+        } else {
+            builder.append('[');
+            printRanges(chars, builder);
+            builder.append(']');
+        }
+    }
+
+    private static void printRanges(BitSet chars, StringBuilder builder) {
+        int low = chars.nextSetBit(0);
+        while (low >= 0) {
+            int high = chars.nextClearBit(low) - 1;
+            printChar((char) low, "\\^[]-&", builder);
+            if (high > low + 1) {
+                builder.append('-');
+            }
+            if (high > low) {
+                printChar((char) high, "\\^[]-&", builder);
+            }
+            low = chars.nextSetBit(high + 1);
+        }
+    }
+
+    /**
+     * Print a char so that it is read back as a literal
+     * @param special chars that need a backslash in this context
+     */
+    private static void printChar(char c, String special, StringBuilder builder) {
+        if (c < ' ' || c > '~') {
+            builder.append("\\x{").append(Integer.toHexString(c).toUpperCase()).append('}');
+        } else if (special.indexOf(c) != -1) {
+            builder.append('\\').append(c);
+        } else {
+            builder.append(c);
+        }
+    }
+
+    private static BitSet shorthandChars(String shorthand) {
+        RegexNode node = JavaRegexParser.tryParseExact(shorthand).orElseThrow();
+        return ((RegexNode.CharClass) node).chars();
+    }
+}
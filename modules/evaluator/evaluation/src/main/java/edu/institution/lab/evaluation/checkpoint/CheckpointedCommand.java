@@ -0,0 +1,35 @@
+package edu.institution.lab.evaluation.checkpoint;
+
+import java.util.Set;
+
+/**
+ * Commands that record their progress, so that an interrupted run can be resumed
+ */
+public enum CheckpointedCommand {
+    /**
+     * Evaluating candidates against test suites. Recreates the test suite results from scratch unless resumed
+     */
+    EVALUATE,
+    /**
+     * Computing relative coverages of test suite results
+     */
+    RELATIVE_COVERAGE,
+    /**
+     * Computing distances between test suite results and their truth regex
+     */
+    UPDATE_DISTANCES,
+    /**
+     * Evaluating internet regexes against test suites
+     */
+    INTERNET_EVALUATE;
+
+    /**
+     * @return commands whose progress refers to results that a fresh run of this command throws away
+     */
+    public Set<CheckpointedCommand> invalidates() {
+        return switch (this) {
+            case EVALUATE -> Set.of(RELATIVE_COVERAGE, UPDATE_DISTANCES);
+            case RELATIVE_COVERAGE, UPDATE_DISTANCES, INTERNET_EVALUATE -> Set.of();
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package edu.institution.lab.evaluation.checkpoint;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The progress of a single run of a command. Units of work are marked completed in the same transaction that saves
+ * their results, so a unit that is completed according to the database never has to be redone. A resumed run starts
+ * from the units that earlier runs completed. This class is thread safe.
+ */
+public final class RunCheckpoint {
+
+    private final CheckpointedCommand command;
+    private final String runId;
+    private final Set<WorkUnit> completedUnits;
+    /// number of units that were completed before this run started
+    private final int resumedUnitCount;
+
+    /**
+     * @param command The command that is running
+     * @param completedUnits Units completed by earlier runs. Empty for a fresh run
+     */
+    public RunCheckpoint(CheckpointedCommand command, Collection<WorkUnit> completedUnits) {
+        this.command = command;
+        this.runId = UUID.randomUUID().toString();
+        this.completedUnits = ConcurrentHashMap.newKeySet();
+        this.completedUnits.addAll(completedUnits);
+        this.resumedUnitCount = this.completedUnits.size();
+    }
+
+    /**
+     * @return a checkpoint that only lives in memory, for runs that are not recorded
+     */
+    public static RunCheckpoint untracked(CheckpointedCommand command) {
+        return new RunCheckpoint(command, Set.of());
+    }
+
+    public boolean isCompleted(WorkUnit unit) {
+        return completedUnits.contains(unit);
+    }
+
+    /**
+     * Mark units completed. Should only be called once their results and progress are committed
+     */
+    public void markCompleted(Collection<WorkUnit> units) {
+        completedUnits.addAll(units);
+    }
+
+    public CheckpointedCommand getCommand() {
+        return command;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * @return how many units earlier runs completed
+     */
+    public int getResumedUnitCount() {
+        return resumedUnitCount;
+    }
+}
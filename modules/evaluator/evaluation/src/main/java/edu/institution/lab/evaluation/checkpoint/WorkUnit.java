@@ -0,0 +1,19 @@
+package edu.institution.lab.evaluation.checkpoint;
+
+/**
+ * A unit of work whose completion is recorded. A unit either covers a whole project or a single test suite.
+ * @param projectId The project of the unit, or {@link #NONE}
+ * @param testSuiteId The test suite of the unit, or {@link #NONE} if the unit covers the whole project
+ */
+public record WorkUnit(long projectId, long testSuiteId) {
+
+    public static final long NONE = -1;
+
+    public static WorkUnit project(long projectId) {
+        return new WorkUnit(projectId, NONE);
+    }
+
+    public static WorkUnit testSuite(long projectId, long testSuiteId) {
+        return new WorkUnit(projectId, testSuiteId);
+    }
+}
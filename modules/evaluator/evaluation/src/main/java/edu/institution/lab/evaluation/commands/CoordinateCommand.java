@@ -0,0 +1,55 @@
+package edu.institution.lab.evaluation.commands;
+
+import edu.institution.lab.evaluation.args.CoordinateArgs;
+import edu.institution.lab.evaluation.args.RootArgs;
+import edu.institution.lab.evaluation.db.RegexDatabaseClient;
+import edu.institution.lab.evaluation.distributed.DistributedEvaluationService;
+import edu.institution.lab.evaluation.evaluation.EvaluationService;
+import edu.institution.lab.evaluation.evaluation.EvaluationStrategy;
+import edu.institution.lab.evaluation.shard.Shard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+/**
+ * The coordinate command does the work of `evaluate`, except that candidates are evaluated by `work` processes. The
+ * coordinator owns the database, and workers can be started and stopped on any machine that can reach it while it
+ * runs. Relative coverages are computed locally once all results are in.
+ */
+public class CoordinateCommand extends AbstractCommand<CoordinateArgs, Void> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoordinateCommand.class);
+    private final SQLiteConfig sqliteConfig;
+
+    public CoordinateCommand(RootArgs rootArgs, CoordinateArgs args, SQLiteConfig sqliteConfig) {
+        super(rootArgs, args);
+        this.sqliteConfig = sqliteConfig;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        String dbPath = String.format("jdbc:sqlite:%s", args.getDatabasePath());
+        logger.info("connecting to database at {}", dbPath);
+        Connection connection = DriverManager.getConnection(dbPath, this.sqliteConfig.toProperties());
+        RegexDatabaseClient regexDatabaseClient = new RegexDatabaseClient(connection);
+        logger.info("Successfully connected to database");
+
+        regexDatabaseClient.initDatabase(rootArgs.getExtensionPath());
+
+        logger.info("Starting to coordinate evaluation of test suites...");
+        DistributedEvaluationService distributedService = new DistributedEvaluationService(regexDatabaseClient);
+        distributedService.coordinate(args.getBindAddress(), args.getPort(), args.getLeaseCost(), args.getLeaseAttempts(), args.getLeaseTimeout(), args.isResume());
+
+        logger.info("Starting to evaluate relative coverages");
+        new EvaluationService(regexDatabaseClient, EvaluationStrategy.TEST_SUITE_MAJOR, 0, Shard.ALL, rootArgs.getEvaluationOptions()).updateRelativeCoverages(args.isResume());
+
+        regexDatabaseClient.close();
+
+        logger.info("Successfully evaluated test suites");
+
+        return null;
+    }
+}
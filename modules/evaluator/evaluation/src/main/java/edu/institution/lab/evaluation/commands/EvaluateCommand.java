@@ -39,15 +39,18 @@ public class EvaluateCommand extends AbstractCommand<EvaluateArgs, Void> {
         logger.info("Successfully connected to database");
 
         regexDatabaseClient.initDatabase(rootArgs.getExtensionPath());
-        EvaluationService service = new EvaluationService(regexDatabaseClient);
+        if (!args.getShard().isAll()) {
+            logger.info("Evaluating shard {} of the projects", args.getShard());
+        }
+        EvaluationService service = new EvaluationService(regexDatabaseClient, args.getStrategy(), args.getScreenSize(), args.getShard(), rootArgs.getEvaluationOptions());
 
         if (!args.isCoveragesOnly()) {
             logger.info("Starting to evaluate test suites...");
-            service.evaluateAndSaveTestSuites();
+            service.evaluateAndSaveTestSuites(args.isResume());
         }
 
         logger.info("Starting to evaluate relative coverages");
-        service.updateRelativeCoverages();
+        service.updateRelativeCoverages(args.isResume());
 
         regexDatabaseClient.close();
 
@@ -39,7 +39,7 @@ public class InternetRegexesCommand extends AbstractCommand<InternetRegexesArgs,
         RegexDatabaseClient internetRegexDatabaseClient = new RegexDatabaseClient(internetConnection);
         logger.info("Successfully connected to regex database");
 
-        InternetEvaluationService internetEvaluationService = new InternetEvaluationService(internetRegexDatabaseClient, regexDatabaseClient);
+        InternetEvaluationService internetEvaluationService = new InternetEvaluationService(internetRegexDatabaseClient, regexDatabaseClient, args.getShard(), rootArgs.getExecutionModel());
         if (args.isLoadPostsFromFileAndSaveToDb()) {
             logger.info("Starting to load and save StackOverflow post regexes");
             File outputFile = new File(args.getStackOverflowPostsFilePath());
@@ -50,7 +50,7 @@ public class InternetRegexesCommand extends AbstractCommand<InternetRegexesArgs,
         // if not just updates, then do everything
         if (!args.isUpdatesOnly()) {
             logger.info("Starting to pull internet regex test suite results...");
-            internetEvaluationService.evaluateInternetRegexes();
+            internetEvaluationService.evaluateInternetRegexes(args.isResume());
         }
 
         logger.info("updating internet regex coverage...");
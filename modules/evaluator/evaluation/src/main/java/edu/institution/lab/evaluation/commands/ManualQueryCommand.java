@@ -9,9 +9,13 @@ import edu.institution.lab.evaluation.args.ManualQueryArgs;
 import edu.institution.lab.evaluation.args.RootArgs;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
 import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
 import edu.institution.lab.evaluation.model.ManualTestSuite;
 import edu.institution.lab.evaluation.model.ManualTestSuiteResult;
 import edu.institution.lab.evaluation.model.TestString;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 import edu.institution.lab.evaluation.util.CoverageUtils;
 import org.slf4j.Logger;
@@ -71,10 +75,13 @@ public class ManualQueryCommand extends AbstractCommand<ManualQueryArgs, Void> {
     private static final Logger logger = LoggerFactory.getLogger(LoggerFactory.class);
 
     private final SQLiteConfig sqliteConfig;
+    /// shared by every query, so patterns that were slow for one query get tighter limits in the next. May be null
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
 
     public ManualQueryCommand(RootArgs rootArgs, ManualQueryArgs args, SQLiteConfig config) {
         super(rootArgs, args);
         this.sqliteConfig = config;
+        this.timeoutPolicy = AdaptiveTimeoutPolicy.forMode(rootArgs.getTimeoutMode());
     }
 
     @Override
@@ -162,6 +169,9 @@ public class ManualQueryCommand extends AbstractCommand<ManualQueryArgs, Void> {
         }
 
         logger.info("Finished processing all NDJSON rows. Results written to {}", outputFile.getPath());
+        if (timeoutPolicy != null) {
+            logger.info("{}", timeoutPolicy);
+        }
         return null;
     }
 
@@ -174,11 +184,21 @@ public class ManualQueryCommand extends AbstractCommand<ManualQueryArgs, Void> {
 
         ExecutorService safeExecutionContext = Executors.newWorkStealingPool();
         SafeMatcher.MatchMode matchMode = args.getFullMatch() ? SafeMatcher.MatchMode.FULL : SafeMatcher.MatchMode.PARTIAL;
+        // a quarantined candidate only reports timeouts, so it never satisfies the query
+        regexDatabaseClient.setupPatternQuarantineTable();
+        regexDatabaseClient.setupPatternCostTable();
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(regexDatabaseClient.loadPatternCosts());
+        PatternCircuitBreaker circuitBreaker = new PatternCircuitBreaker(ledger);
+        circuitBreaker.quarantineAll(regexDatabaseClient.loadQuarantinedPatterns());
+        MatchContext matchContext = MatchContext.of(safeExecutionContext)
+                .withCircuitBreaker(circuitBreaker)
+                .withTimeoutPolicy(timeoutPolicy);
 
         List<ManualTestSuiteResult> candidates = regexDatabaseClient.loadCandidateRegexes(-1)
-                .flatMap(row -> CompiledRegexEntity.tryCompile(row).stream())
+                .flatMap(row -> CompiledRegexEntity.tryCompile(row, ledger).stream())
                 .filter(compiledRegexEntity -> {
-                    SafeMatcher matcher = new SafeMatcher(compiledRegexEntity.regexPattern(), safeExecutionContext);
+                    SafeMatcher matcher = new SafeMatcher(compiledRegexEntity.regexPattern(), matchContext);
                     for (String positive : positiveStrings) {
                         SafeMatcher.MatchResult result = matcher.match(positive, matchMode, Duration.ofSeconds(30));
                         if (!result.matches()) {
@@ -204,8 +224,8 @@ public class ManualQueryCommand extends AbstractCommand<ManualQueryArgs, Void> {
 
                     // compute coverage
                     AutomatonCoverage coverage = coverageOpt.get();
-                    positiveStrings.forEach(coverage::evaluate);
-                    negativeStrings.forEach(coverage::evaluate);
+                    coverage.evaluateAll(positiveStrings);
+                    coverage.evaluateAll(negativeStrings);
 
                     return Stream.of(new ManualTestSuiteResult(compiledRegexEntity.id(), compiledRegexEntity.projectId(), compiledRegexEntity.regexPattern().pattern(), coverage.getFullMatchVisitationInfoSummary()));
                 })
@@ -213,6 +233,8 @@ public class ManualQueryCommand extends AbstractCommand<ManualQueryArgs, Void> {
                 .toList();
 
         safeExecutionContext.shutdownNow();
+        regexDatabaseClient.insertManyQuarantinedPatterns(circuitBreaker.drainNewlyQuarantined());
+        regexDatabaseClient.insertManyPatternCosts(ledger.drainChanged());
 
         return candidates;
     }
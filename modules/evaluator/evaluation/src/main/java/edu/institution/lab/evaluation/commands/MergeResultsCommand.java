@@ -0,0 +1,50 @@
+package edu.institution.lab.evaluation.commands;
+
+import edu.institution.lab.evaluation.args.MergeResultsArgs;
+import edu.institution.lab.evaluation.args.RootArgs;
+import edu.institution.lab.evaluation.db.RegexDatabaseClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+/**
+ * Merges the databases written by sharded runs of `evaluate` or `internet-evaluation` into a single database. Each
+ * shard runs on its own copy of the database, so only the results, and the progress that goes with them, are merged.
+ * Merging the same shard twice is harmless.
+ */
+public class MergeResultsCommand extends AbstractCommand<MergeResultsArgs, Void> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MergeResultsCommand.class);
+    private final SQLiteConfig sqliteConfig;
+
+    public MergeResultsCommand(RootArgs rootArgs, MergeResultsArgs args, SQLiteConfig sqliteConfig) {
+        super(rootArgs, args);
+        this.sqliteConfig = sqliteConfig;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        String dbPath = String.format("jdbc:sqlite:%s", args.getDatabasePath());
+        logger.info("connecting to database at {}", dbPath);
+        Connection connection = DriverManager.getConnection(dbPath, this.sqliteConfig.toProperties());
+        RegexDatabaseClient regexDatabaseClient = new RegexDatabaseClient(connection);
+        logger.info("Successfully connected to database");
+
+        long totalMerged = 0;
+        for (String shardDatabasePath : args.getShardDatabasePaths()) {
+            logger.info("merging shard database {}", shardDatabasePath);
+            totalMerged += args.isInternet()
+                    ? regexDatabaseClient.mergeShardInternetResults(shardDatabasePath)
+                    : regexDatabaseClient.mergeShardTestSuiteResults(shardDatabasePath);
+        }
+
+        regexDatabaseClient.close();
+
+        logger.info("Merged {} results from {} shards", totalMerged, args.getShardDatabasePaths().size());
+
+        return null;
+    }
+}
@@ -8,6 +8,7 @@ import edu.institution.lab.evaluation.args.RootArgs;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
 import edu.institution.lab.evaluation.evaluation.AutoCloseableExecutorService;
 import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,8 @@ public class PullTestSuitesCommand extends AbstractCommand<PullTestSuiteArgs, Vo
         // String extensionPath = "/home/anonymous/backup/research/extractor/target/debug/libsqlite_regex_extensions.so";
         regexDatabaseClient.initDatabase(rootArgs.getExtensionPath());
         logger.info("Starting to load test suites...");
-        TestSuiteService testSuiteService = new TestSuiteService(regexDatabaseClient);
+        AdaptiveTimeoutPolicy timeoutPolicy = AdaptiveTimeoutPolicy.forMode(rootArgs.getTimeoutMode());
+        TestSuiteService testSuiteService = new TestSuiteService(regexDatabaseClient, timeoutPolicy);
 
         if (args.getUpdateCoverages()) {
             logger.info("just updating coverages");
@@ -88,6 +90,9 @@ public class PullTestSuitesCommand extends AbstractCommand<PullTestSuiteArgs, Vo
         }
 
         logger.info("Test suite stats: {}", testSuiteStatistics);
+        if (timeoutPolicy != null) {
+            logger.info("{}", timeoutPolicy);
+        }
 
         regexDatabaseClient.close();
         logger.info("Done!");
@@ -57,10 +57,10 @@ public class UpdateDistancesCommand extends AbstractCommand<UpdateDistancesArgs,
         RegexDatabaseClient regexDatabaseClient = new RegexDatabaseClient(connection);
         logger.info("Successfully connected to database");
 
-        UpdateDistancesService updateDistancesService = new UpdateDistancesService(regexDatabaseClient, createRegexChecker(args), createRegexRelativeChecker(args));
+        UpdateDistancesService updateDistancesService = new UpdateDistancesService(regexDatabaseClient, createRegexChecker(args), createRegexRelativeChecker(args), rootArgs.getEvaluationOptions());
 
         logger.info("beginning to update distances...");
-        updateDistancesService.computeAndInsertDistanceUpdateRecordsV3(args.computeAstDistances(), args.computeSemanticDistances());
+        updateDistancesService.computeAndInsertDistanceUpdateRecordsV3(args.computeAstDistances(), args.computeSemanticDistances(), args.isResume());
         logger.info("finished to update distances");
 
         return null;
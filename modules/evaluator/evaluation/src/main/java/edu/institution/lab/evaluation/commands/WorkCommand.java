@@ -0,0 +1,29 @@
+package edu.institution.lab.evaluation.commands;
+
+import edu.institution.lab.evaluation.args.RootArgs;
+import edu.institution.lab.evaluation.args.WorkArgs;
+import edu.institution.lab.evaluation.distributed.EvaluationWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The work command evaluates leases for a running `coordinate` command. It needs no database. Start as many workers
+ * as you like, on one machine or several; each exits once the coordinator runs out of work.
+ */
+public class WorkCommand extends AbstractCommand<WorkArgs, Void> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkCommand.class);
+
+    public WorkCommand(RootArgs rootArgs, WorkArgs args) {
+        super(rootArgs, args);
+    }
+
+    @Override
+    public Void call() throws Exception {
+        logger.info("connecting to coordinator at {}:{} with {} slots", args.getHost(), args.getPort(), args.getSlots());
+        EvaluationWorker worker = new EvaluationWorker(args.getHost(), args.getPort(), args.getSlots(), args.getScreenSize(), args.getConnectTimeout(), rootArgs.getEvaluationOptions());
+        worker.run();
+
+        return null;
+    }
+}
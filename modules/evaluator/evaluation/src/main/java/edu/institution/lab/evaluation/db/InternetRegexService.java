@@ -1,5 +1,8 @@
 package edu.institution.lab.evaluation.db;
 
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
 import edu.institution.lab.evaluation.internet.StackOverflowRegexPost;
 import edu.institution.lab.evaluation.model.CandidateRegex;
 import edu.institution.lab.evaluation.model.RawTestSuiteInternetRegexResultRow;
@@ -18,6 +21,8 @@ public interface InternetRegexService {
     void insertManyStackOverflowRegexes(Collection<StackOverflowRegexPost> stackOverflowRegexPosts) throws SQLException;
     Stream<CandidateRegex> loadInternetCandidates() throws SQLException;
     void insertManyInternetTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> solutions) throws SQLException;
+    void insertManyInternetTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> solutions, RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException;
+    RunCheckpoint startRun(CheckpointedCommand command, boolean resume) throws SQLException;
     Stream<RawTestSuiteInternetRegexResultRow> loadTestSuiteInternetResults(long testSuiteId) throws SQLException;
     void updateManyInternetTestSuiteResults(Collection<RelativeCoverageUpdate> updates) throws SQLException;
 }
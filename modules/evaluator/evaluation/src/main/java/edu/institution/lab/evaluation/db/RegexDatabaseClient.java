@@ -1,6 +1,9 @@
 package edu.institution.lab.evaluation.db;
 
 import dk.brics.automaton.AutomatonCoverage;
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
 import edu.institution.lab.evaluation.internet.StackOverflowRegexPost;
 import edu.institution.lab.evaluation.model.*;
 import edu.institution.lab.evaluation.util.IndeterminateBoolean;
@@ -98,9 +101,58 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
     }
 
     public void setupResultsTable() throws SQLException {
+        setupResultsTable(false);
+    }
+
+    /**
+     * Sets up the test suite results table
+     * @param keepExisting If true, results of an earlier run are kept so that the run can be resumed. Otherwise, the
+     *                     table is recreated from scratch
+     */
+    public void setupResultsTable(boolean keepExisting) throws SQLException {
+        if (!keepExisting) {
+            executeNamedQuery("drop_test_suite_result_table.sql");
+        }
         executedBatchNamedQuery("create_test_suite_result_table.sql");
     }
 
+    public void setupRunProgressTable() throws SQLException {
+        executedBatchNamedQuery("create_run_progress_table.sql");
+    }
+
+    /**
+     * Starts a checkpointed run of a command.
+     * @param command The command that is starting
+     * @param resume If true, units that earlier runs completed are loaded so they can be skipped. Otherwise, the
+     *               progress of the command, and of every command whose results it invalidates, is cleared
+     * @return The checkpoint to record the run's progress in
+     */
+    @Override
+    public RunCheckpoint startRun(CheckpointedCommand command, boolean resume) throws SQLException {
+        setupRunProgressTable();
+        if (!resume) {
+            clearRunProgress(command);
+            for (CheckpointedCommand invalidated : command.invalidates()) {
+                clearRunProgress(invalidated);
+            }
+            return new RunCheckpoint(command, List.of());
+        }
+
+        String queryText = loadNamedQuery("load_run_progress.sql").orElseThrow();
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        stmt.setString(1, command.name());
+        List<WorkUnit> completedUnits;
+        try (Stream<RunProgressRow> rows = streamQuery(stmt, RunProgressRow.class)) {
+            completedUnits = rows
+                    .map(row -> new WorkUnit(row.projectId(), row.testSuiteId()))
+                    .toList();
+        }
+
+        RunCheckpoint checkpoint = new RunCheckpoint(command, completedUnits);
+        logger.info("Resuming {} with {} completed units", command, checkpoint.getResumedUnitCount());
+        return checkpoint;
+    }
+
     public void addDistanceColumnsToResults() throws SQLException {
         executedBatchNamedQuery("alter_results_similarity_columns.sql");
     }
@@ -136,6 +188,15 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
     }
 
     public void updateManyRelativeCoverages(Collection<RelativeCoverageUpdate> updates) throws SQLException {
+        updateManyRelativeCoverages(updates, null, List.of());
+    }
+
+    /**
+     * Saves the results and marks the completed units in the same transaction
+     * @param checkpoint The run to record progress in, or null if progress is not recorded
+     * @param completedUnits The units whose results are all contained in this save
+     */
+    public void updateManyRelativeCoverages(Collection<RelativeCoverageUpdate> updates, RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException {
         String queryText = loadNamedQuery("update_test_suite_relative_coverage.sql").orElseThrow();
         PreparedStatement stmt = connection.prepareStatement(queryText);
         boolean oldAutoCommitStatus = connection.getAutoCommit();
@@ -154,8 +215,12 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
             stmt.execute();
         }
 
+        insertRunProgress(checkpoint, completedUnits);
         connection.commit();
         connection.setAutoCommit(oldAutoCommitStatus);
+        if (checkpoint != null) {
+            checkpoint.markCompleted(completedUnits);
+        }
         stmt.close();
     }
 
@@ -165,6 +230,15 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
     }
 
     public void updateManyTestSuiteResultsDistances(Collection<DistanceUpdateRecord> distanceUpdateRecords) throws SQLException {
+        updateManyTestSuiteResultsDistances(distanceUpdateRecords, null, List.of());
+    }
+
+    /**
+     * Saves the results and marks the completed units in the same transaction
+     * @param checkpoint The run to record progress in, or null if progress is not recorded
+     * @param completedUnits The units whose results are all contained in this save
+     */
+    public void updateManyTestSuiteResultsDistances(Collection<DistanceUpdateRecord> distanceUpdateRecords, RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException {
         String queryText = loadNamedQuery("update_result_distances.sql").orElseThrow();
         boolean oldAutoCommitStatus = connection.getAutoCommit();
         connection.setAutoCommit(false);
@@ -178,13 +252,26 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
             stmt.execute();
         }
 
+        insertRunProgress(checkpoint, completedUnits);
         connection.commit();
         connection.setAutoCommit(oldAutoCommitStatus);
+        if (checkpoint != null) {
+            checkpoint.markCompleted(completedUnits);
+        }
 
         stmt.close();
     }
 
     public void insertManyTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> testSuitesAndResults) throws SQLException {
+        insertManyTestSuiteResults(testSuitesAndResults, null, List.of());
+    }
+
+    /**
+     * Saves the results and marks the completed units in the same transaction
+     * @param checkpoint The run to record progress in, or null if progress is not recorded
+     * @param completedUnits The units whose results are all contained in this save
+     */
+    public void insertManyTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> testSuitesAndResults, RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException {
         String queryText = loadNamedQuery("insert_test_suite_result.sql").orElseThrow();
         boolean oldAutoCommitStatus = connection.getAutoCommit();
         connection.setAutoCommit(false);
@@ -204,8 +291,12 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
                 stmt.execute();
             }
         }
+        insertRunProgress(checkpoint, completedUnits);
         connection.commit();
         connection.setAutoCommit(oldAutoCommitStatus);
+        if (checkpoint != null) {
+            checkpoint.markCompleted(completedUnits);
+        }
 
         stmt.close();
     }
@@ -222,6 +313,114 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
         return streamQuery(stmt, CandidateRegex.class);
     }
 
+    public void setupLanguageClassTable() throws SQLException {
+        executedBatchNamedQuery("create_language_class_table.sql");
+    }
+
+    /**
+     * @return the language hash of every pattern that has been classified in an earlier run, keyed by pattern
+     */
+    public Map<String, String> loadLanguageClasses() throws SQLException {
+        String queryText = loadNamedQuery("load_language_classes.sql").orElseThrow();
+        try (Stream<LanguageClassRow> rows = streamQuery(queryText, LanguageClassRow.class)) {
+            return rows.collect(Collectors.toMap(LanguageClassRow::pattern, LanguageClassRow::languageHash));
+        }
+    }
+
+    public void insertManyLanguageClasses(Map<String, String> languageHashes) throws SQLException {
+        String queryText = loadNamedQuery("insert_language_class.sql").orElseThrow();
+        boolean oldAutoCommitStatus = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        for (Map.Entry<String, String> entry : languageHashes.entrySet()) {
+            stmt.setString(1, entry.getKey());
+            stmt.setString(2, entry.getValue());
+
+            stmt.execute();
+        }
+        connection.commit();
+        connection.setAutoCommit(oldAutoCommitStatus);
+
+        stmt.close();
+    }
+
+    public void setupPatternQuarantineTable() throws SQLException {
+        executedBatchNamedQuery("create_pattern_quarantine_table.sql");
+    }
+
+    /**
+     * @return every pattern that an earlier run quarantined
+     */
+    public Set<String> loadQuarantinedPatterns() throws SQLException {
+        String queryText = loadNamedQuery("load_pattern_quarantine.sql").orElseThrow();
+        try (Stream<QuarantinedPatternRow> rows = streamQuery(queryText, QuarantinedPatternRow.class)) {
+            return rows.map(QuarantinedPatternRow::pattern).collect(Collectors.toSet());
+        }
+    }
+
+    public void insertManyQuarantinedPatterns(Collection<QuarantinedPatternRow> quarantinedPatterns) throws SQLException {
+        String queryText = loadNamedQuery("insert_pattern_quarantine.sql").orElseThrow();
+        boolean oldAutoCommitStatus = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        for (QuarantinedPatternRow row : quarantinedPatterns) {
+            stmt.setString(1, row.pattern());
+            stmt.setLong(2, row.timeouts());
+            stmt.setLong(3, row.timeSpentMs());
+
+            stmt.execute();
+        }
+        connection.commit();
+        connection.setAutoCommit(oldAutoCommitStatus);
+
+        stmt.close();
+    }
+
+    public void setupPatternCostTable() throws SQLException {
+        executedBatchNamedQuery("create_pattern_cost_table.sql");
+    }
+
+    /**
+     * @return what every pattern cost over the earlier runs on this database
+     */
+    public List<PatternCostRow> loadPatternCosts() throws SQLException {
+        String queryText = loadNamedQuery("load_pattern_cost.sql").orElseThrow();
+        try (Stream<PatternCostRow> rows = streamQuery(queryText, PatternCostRow.class)) {
+            return rows.toList();
+        }
+    }
+
+    /**
+     * Save pattern costs, replacing the saved costs of the same patterns. Rows are expected to hold totals that
+     * include the costs that were loaded
+     */
+    public void insertManyPatternCosts(Collection<PatternCostRow> patternCosts) throws SQLException {
+        String queryText = loadNamedQuery("insert_pattern_cost.sql").orElseThrow();
+        boolean oldAutoCommitStatus = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        for (PatternCostRow row : patternCosts) {
+            stmt.setString(1, row.pattern());
+            stmt.setLong(2, row.regexCompileUs());
+            stmt.setLong(3, row.automatonCompileMs());
+            stmt.setLong(4, row.automatonStates());
+            stmt.setLong(5, row.automatonFailures());
+            stmt.setLong(6, row.dfaBudgetHits());
+            stmt.setLong(7, row.matches());
+            stmt.setLong(8, row.matchTimeMs());
+            stmt.setLong(9, row.matchP50Us());
+            stmt.setLong(10, row.matchP99Us());
+            stmt.setLong(11, row.timeouts());
+            stmt.setLong(12, row.stackOverflows());
+
+            stmt.execute();
+        }
+        connection.commit();
+        connection.setAutoCommit(oldAutoCommitStatus);
+
+        stmt.close();
+    }
+
     @Override
     public void setupInternetRegexDatabase() throws SQLException {
         executedBatchNamedQuery("create_internet_tables.sql");
@@ -257,6 +456,11 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
 
     @Override
     public void insertManyInternetTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> solutions) throws SQLException {
+        insertManyInternetTestSuiteResults(solutions, null, List.of());
+    }
+
+    @Override
+    public void insertManyInternetTestSuiteResults(Map<Long, Set<RegexTestSuiteSolution>> solutions, RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException {
         String queryText = loadNamedQuery("insert_internet_regex_solution.sql").orElseThrow();
         boolean oldAutoCommitStatus = connection.getAutoCommit();
         connection.setAutoCommit(false);
@@ -271,8 +475,12 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
                 stmt.execute();
             }
         }
+        insertRunProgress(checkpoint, completedUnits);
         connection.commit();
         connection.setAutoCommit(oldAutoCommitStatus);
+        if (checkpoint != null) {
+            checkpoint.markCompleted(completedUnits);
+        }
 
         stmt.close();
     }
@@ -307,11 +515,114 @@ public final class RegexDatabaseClient implements AutoCloseable, InternetRegexSe
         stmt.close();
     }
 
+    /**
+     * Merge the test suite results of a shard database into this database. Results that are already present, e.g.
+     * because the shard was merged before, are skipped. Progress, language classes, quarantined patterns and pattern
+     * costs are merged along with them, so a later run on this database can resume from the merged work.
+     * @param shardDatabasePath Path to the shard's database
+     * @return The number of results that were merged
+     */
+    public long mergeShardTestSuiteResults(String shardDatabasePath) throws SQLException {
+        setupResultsTable(true);
+        setupRunProgressTable();
+        setupLanguageClassTable();
+        setupPatternQuarantineTable();
+        setupPatternCostTable();
+        return mergeShard(shardDatabasePath, "count_shard_test_suite_results.sql",
+                List.of("merge_shard_test_suite_results.sql", "merge_shard_run_progress.sql", "merge_shard_language_classes.sql",
+                        "merge_shard_pattern_quarantine.sql", "merge_shard_pattern_cost.sql"));
+    }
+
+    /**
+     * Merge the internet regex results of a shard database into this database, skipping results that are already
+     * present
+     * @param shardDatabasePath Path to the shard's internet regex database
+     * @return The number of results that were merged
+     */
+    public long mergeShardInternetResults(String shardDatabasePath) throws SQLException {
+        setupInternetRegexDatabase();
+        setupRunProgressTable();
+        return mergeShard(shardDatabasePath, "count_shard_internet_results.sql",
+                List.of("merge_shard_internet_results.sql", "merge_shard_run_progress.sql"));
+    }
+
     @Override
     public void close() throws Exception {
         connection.close();
     }
 
+    /**
+     * Attach a shard database and copy its rows with set-based inserts, all in one transaction
+     * @param shardDatabasePath Path to the shard's database
+     * @param countQuery Named query that counts the shard's results
+     * @param mergeQueries Named queries that copy rows from the shard. The first one copies the results
+     * @return The number of results that were merged
+     * @throws SQLException If there's a SQL issue
+     */
+    private long mergeShard(String shardDatabasePath, String countQuery, List<String> mergeQueries) throws SQLException {
+        // databases cannot be attached within a transaction
+        String attachText = loadNamedQuery("attach_shard_database.sql").orElseThrow();
+        PreparedStatement attachStmt = connection.prepareStatement(attachText);
+        attachStmt.setString(1, shardDatabasePath);
+        attachStmt.execute();
+        attachStmt.close();
+
+        try {
+            long shardResults;
+            try (Stream<RowCount> rows = streamQuery(loadNamedQuery(countQuery).orElseThrow(), RowCount.class)) {
+                shardResults = rows.findFirst().map(RowCount::count).orElse(0L);
+            }
+
+            boolean oldAutoCommitStatus = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            Statement stmt = connection.createStatement();
+            long mergedResults = stmt.executeUpdate(loadNamedQuery(mergeQueries.get(0)).orElseThrow());
+            for (String mergeQuery : mergeQueries.subList(1, mergeQueries.size())) {
+                stmt.executeUpdate(loadNamedQuery(mergeQuery).orElseThrow());
+            }
+            connection.commit();
+            connection.setAutoCommit(oldAutoCommitStatus);
+            stmt.close();
+
+            logger.info("Merged {}/{} results from {}, skipped {} duplicates", mergedResults, shardResults, shardDatabasePath, shardResults - mergedResults);
+            return mergedResults;
+        } finally {
+            executeNamedQuery("detach_shard_database.sql");
+        }
+    }
+
+    private void clearRunProgress(CheckpointedCommand command) throws SQLException {
+        String queryText = loadNamedQuery("clear_run_progress.sql").orElseThrow();
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        stmt.setString(1, command.name());
+        stmt.execute();
+        stmt.close();
+    }
+
+    /**
+     * Records completed units of a run. Must be called within the transaction that saves the units' results
+     * @param checkpoint The run, or null if progress is not recorded
+     * @param completedUnits The completed units
+     * @throws SQLException If there's a SQL issue
+     */
+    private void insertRunProgress(RunCheckpoint checkpoint, Collection<WorkUnit> completedUnits) throws SQLException {
+        if (checkpoint == null || completedUnits.isEmpty()) {
+            return;
+        }
+
+        String queryText = loadNamedQuery("insert_run_progress.sql").orElseThrow();
+        PreparedStatement stmt = connection.prepareStatement(queryText);
+        for (WorkUnit unit : completedUnits) {
+            stmt.setString(1, checkpoint.getCommand().name());
+            stmt.setLong(2, unit.projectId());
+            stmt.setLong(3, unit.testSuiteId());
+            stmt.setString(4, checkpoint.getRunId());
+
+            stmt.execute();
+        }
+        stmt.close();
+    }
+
     /**
      * Executes query text and streams the rows.
      * @param queryText The query text to execute
@@ -0,0 +1,87 @@
+package edu.institution.lab.evaluation.dfa;
+
+import dk.brics.automaton.DfaBudgetExceededException;
+import dk.brics.automaton.RunAutomaton;
+import dk.brics.automaton.TaggedRunAutomaton;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Full-matches strings against many DFA matchers at once. The matchers are run together through a
+ * {@link TaggedRunAutomaton}, so each string is read once per batch instead of once per matcher. A batch whose product
+ * automaton grows past the state budget is split in half and each half is tried again.
+ */
+public final class DfaBatchMatcher {
+
+    /// how many matchers to run together at most
+    public static final int DEFAULT_BATCH_SIZE = 512;
+    /// how many product states a single batch may build
+    public static final long DEFAULT_STATE_BUDGET = 50_000;
+
+    private final List<DfaMatcher> matchers;
+    private final int batchSize;
+    private final long stateBudget;
+
+    public DfaBatchMatcher(List<DfaMatcher> matchers) {
+        this(matchers, DEFAULT_BATCH_SIZE, DEFAULT_STATE_BUDGET);
+    }
+
+    public DfaBatchMatcher(List<DfaMatcher> matchers, int batchSize, long stateBudget) {
+        this.matchers = List.copyOf(matchers);
+        this.batchSize = batchSize;
+        this.stateBudget = stateBudget;
+    }
+
+    /**
+     * Full-match every subject against every matcher
+     * @param subjects The strings to match. Each should satisfy {@link DfaMatcher#canEvaluate(CharSequence)}
+     * @return for each subject, the positions of the matchers that fully match it
+     */
+    public List<BitSet> matchAll(List<String> subjects) {
+        List<BitSet> accepted = new ArrayList<>(subjects.size());
+        for (int i = 0; i < subjects.size(); i++) {
+            accepted.add(new BitSet(matchers.size()));
+        }
+
+        for (int from = 0; from < matchers.size(); from += batchSize) {
+            matchRange(subjects, from, Math.min(from + batchSize, matchers.size()), accepted);
+        }
+        return accepted;
+    }
+
+    private void matchRange(List<String> subjects, int from, int to, List<BitSet> accepted) {
+        if (to - from == 1) {
+            // a product of one automaton is the automaton itself, so run it directly
+            DfaMatcher matcher = matchers.get(from);
+            for (int i = 0; i < subjects.size(); i++) {
+                if (matcher.matches(subjects.get(i))) {
+                    accepted.get(i).set(from);
+                }
+            }
+            return;
+        }
+
+        List<RunAutomaton> automata = matchers.subList(from, to).stream().map(DfaMatcher::getRunAutomaton).toList();
+        TaggedRunAutomaton product = new TaggedRunAutomaton(automata, stateBudget);
+        List<BitSet> batchAccepted = new ArrayList<>(subjects.size());
+        try {
+            for (String subject : subjects) {
+                batchAccepted.add(product.run(subject));
+            }
+        } catch (DfaBudgetExceededException exe) {
+            int middle = (from + to) >>> 1;
+            matchRange(subjects, from, middle, accepted);
+            matchRange(subjects, middle, to, accepted);
+            return;
+        }
+
+        for (int i = 0; i < subjects.size(); i++) {
+            BitSet batch = batchAccepted.get(i);
+            for (int position = batch.nextSetBit(0); position >= 0; position = batch.nextSetBit(position + 1)) {
+                accepted.get(i).set(from + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.institution.lab.evaluation.dfa;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.DfaBudgetExceededException;
+import dk.brics.automaton.RunAutomaton;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
+
+import java.util.Optional;
+
+/**
+ * Full-matches strings against a java regex using a deterministic automaton instead of a backtracking matcher. Matching
+ * takes time linear in the length of the string, so it can safely run on the calling thread without a timeout.
+ * <br>
+ * A DFA matcher only exists for patterns that {@link JavaRegexParser} can parse. Its results agree with
+ * {@link java.util.regex.Matcher#matches()} for every string that {@link #canEvaluate(CharSequence)} accepts.
+ */
+public final class DfaMatcher {
+
+    private final RunAutomaton runAutomaton;
+    private final LanguageInvariants invariants;
+    private final String languageHash;
+
+    private DfaMatcher(RunAutomaton runAutomaton, LanguageInvariants invariants, String languageHash) {
+        this.runAutomaton = runAutomaton;
+        this.invariants = invariants;
+        this.languageHash = languageHash;
+    }
+
+    /**
+     * Try to build a DFA matcher for a pattern
+     * @param pattern A java regex that is known to compile
+     * @return A matcher, or empty if the pattern is not supported or its DFA is too large
+     */
+    public static Optional<DfaMatcher> tryCreate(String pattern) {
+        return tryCreate(pattern, null);
+    }
+
+    /**
+     * Try to build a DFA matcher for a pattern, and record what building its automaton cost
+     * @param pattern A java regex that is known to compile
+     * @param ledger Where the cost is recorded, or null
+     * @return A matcher, or empty if the pattern is not supported or its DFA is too large
+     */
+    public static Optional<DfaMatcher> tryCreate(String pattern, PatternCostLedger ledger) {
+        return JavaRegexParser.tryParse(pattern)
+                .flatMap(node -> tryCreate(pattern, node, ledger));
+    }
+
+    private static Optional<DfaMatcher> tryCreate(String pattern, RegexNode node, PatternCostLedger ledger) {
+        try {
+            long startNanos = System.nanoTime();
+            Automaton automaton = RegexAutomata.toAutomaton(node);
+            if (ledger != null) {
+                ledger.recordAutomaton(pattern, System.nanoTime() - startNanos, automaton.getNumberOfStates());
+            }
+            // don't tableize: a class map takes 256KB per automaton, and we keep one for every candidate
+            return Optional.of(new DfaMatcher(new RunAutomaton(automaton, false), LanguageInvariants.of(automaton), LanguageHash.of(automaton)));
+        } catch (DfaBudgetExceededException exe) {
+            if (ledger != null) {
+                ledger.recordDfaBudgetHit(pattern);
+            }
+            return Optional.empty();
+        } catch (StackOverflowError err) {
+            if (ledger != null) {
+                ledger.recordStackOverflow(pattern);
+                ledger.recordAutomatonFailure(pattern);
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Check if a string can be evaluated with a DFA matcher. Java regexes match by code point, so strings that contain
+     * surrogate characters must go through the regular matcher instead.
+     * @param subject The string to check
+     * @return True if {@link #matches(CharSequence)} is exact for this string
+     */
+    public static boolean canEvaluate(CharSequence subject) {
+        for (int i = 0; i < subject.length(); i++) {
+            if (Character.isSurrogate(subject.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determine if the pattern fully matches a string
+     * @param subject The string to match. Should satisfy {@link #canEvaluate(CharSequence)}
+     * @return True if the whole string is matched
+     */
+    public boolean matches(CharSequence subject) {
+        int state = runAutomaton.getInitialState();
+        for (int i = 0; i < subject.length(); i++) {
+            state = runAutomaton.step(state, subject.charAt(i));
+            if (state == -1) {
+                return false;
+            }
+        }
+        return runAutomaton.isAccept(state);
+    }
+
+    /**
+     * @return cheap invariants of the pattern's language, for screening strings before matching them
+     */
+    public LanguageInvariants getInvariants() {
+        return invariants;
+    }
+
+    /**
+     * @return the canonical hash of the pattern's language. Matchers with equal hashes accept the same strings
+     */
+    public String getLanguageHash() {
+        return languageHash;
+    }
+
+    RunAutomaton getRunAutomaton() {
+        return runAutomaton;
+    }
+
+    /**
+     * @return number of states in the underlying automaton
+     */
+    public int getStateCount() {
+        return runAutomaton.getSize();
+    }
+}
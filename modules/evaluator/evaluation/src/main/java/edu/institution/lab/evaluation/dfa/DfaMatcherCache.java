@@ -0,0 +1,101 @@
+package edu.institution.lab.evaluation.dfa;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps DFA matchers for patterns so that each pattern is only classified and compiled once per run. Patterns that are
+ * not eligible for a DFA are remembered too. Matchers are also kept by language hash, so that a pattern whose language
+ * is already known can share the matcher of an equivalent pattern without building its own. With a
+ * {@link PatternCostLedger}, the cost of each build is recorded, and patterns whose builds only ever failed are not tried
+ * again. This class is thread safe.
+ */
+public class DfaMatcherCache {
+
+    private final Map<String, Optional<DfaMatcher>> matchers;
+    private final Map<String, DfaMatcher> languageMatchers;
+    /// where the cost of each build is recorded, or null
+    private final PatternCostLedger ledger;
+
+    public DfaMatcherCache() {
+        this(null);
+    }
+
+    public DfaMatcherCache(PatternCostLedger ledger) {
+        this.matchers = new ConcurrentHashMap<>();
+        this.languageMatchers = new ConcurrentHashMap<>();
+        this.ledger = ledger;
+    }
+
+    /**
+     * Get the DFA matcher for a pattern, building it if this pattern hasn't been seen before
+     * @param pattern The pattern to get a matcher for
+     * @return The matcher, or empty if the pattern is not eligible
+     */
+    public Optional<DfaMatcher> getOrCreate(String pattern) {
+        Optional<DfaMatcher> matcher = matchers.computeIfAbsent(pattern, this::tryCreate);
+        matcher.ifPresent(created -> languageMatchers.putIfAbsent(created.getLanguageHash(), created));
+        return matcher;
+    }
+
+    private Optional<DfaMatcher> tryCreate(String pattern) {
+        if (ledger != null && ledger.isAutomatonHopeless(pattern)) {
+            return Optional.empty();
+        }
+        return DfaMatcher.tryCreate(pattern, ledger);
+    }
+
+    /**
+     * Attach a DFA matcher to an entity if it is eligible for one
+     * @param entity The compiled entity
+     * @return The entity with a DFA matcher if possible, otherwise the entity unchanged
+     */
+    public CompiledRegexEntity attach(CompiledRegexEntity entity) {
+        return getOrCreate(entity.regexPattern().pattern())
+                .map(entity::withDfaMatcher)
+                .orElse(entity);
+    }
+
+    /**
+     * Attach a DFA matcher to an entity whose language hash may be known from an earlier run. If a matcher for that
+     * language already exists, it is shared instead of building a new one
+     * @param entity The compiled entity
+     * @param knownLanguageHash The language hash recorded for the entity's pattern, or null if there is none
+     * @return The entity with a DFA matcher if possible, otherwise the entity unchanged
+     */
+    public CompiledRegexEntity attach(CompiledRegexEntity entity, String knownLanguageHash) {
+        if (knownLanguageHash != null) {
+            DfaMatcher shared = languageMatchers.get(knownLanguageHash);
+            if (shared != null) {
+                matchers.putIfAbsent(entity.regexPattern().pattern(), Optional.of(shared));
+                return entity.withDfaMatcher(shared);
+            }
+        }
+        return attach(entity);
+    }
+
+    /**
+     * @return how many patterns have been classified
+     */
+    public int size() {
+        return matchers.size();
+    }
+
+    /**
+     * @return how many of the classified patterns have a DFA matcher
+     */
+    public long eligibleCount() {
+        return matchers.values().stream().filter(Optional::isPresent).count();
+    }
+
+    /**
+     * @return how many distinct languages the eligible patterns describe
+     */
+    public int languageCount() {
+        return languageMatchers.size();
+    }
+}
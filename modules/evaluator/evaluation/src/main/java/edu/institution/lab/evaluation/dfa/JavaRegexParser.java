@@ -0,0 +1,478 @@
+package edu.institution.lab.evaluation.dfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Parses the regular subset of {@link java.util.regex.Pattern} syntax into a {@link RegexNode}. The parser is
+ * deliberately conservative: anything that could make the language of the tree differ from the strings that
+ * {@link java.util.regex.Matcher#matches()} accepts is rejected. That includes backreferences, lookaround, possessive
+ * quantifiers, inline flags, word boundaries, unicode properties, and anchors anywhere other than the very start or end
+ * of a top-level alternative.
+ * <br>
+ * Character classes are defined over UTF-16 chars, so the trees are only exact for strings without surrogate
+ * characters. Patterns that contain surrogates are rejected.
+ * <br>
+ * {@link #tryParseExact(String)} parses the same subset, but keeps everything that decides where
+ * {@link java.util.regex.Matcher#find()} finds a match. Anchors and word boundaries are kept as
+ * {@link RegexNode.Anchor}s, possessive quantifiers are supported, and character classes record whether they match
+ * supplementary code points. Two patterns with equal exact trees match the same spans of any string.
+ */
+public final class JavaRegexParser {
+
+    /// largest repetition bound we are willing to expand into an automaton
+    static final int MAX_REPETITION = 1000;
+
+    private static final int CHAR_COUNT = Character.MAX_VALUE + 1;
+
+    /// java's line terminators, which '.' does not match
+    private static final String LINE_TERMINATORS = "\n\r\u0085\u2028\u2029";
+
+    /**
+     * Try to parse a pattern
+     * @param pattern A java regex pattern that is known to compile
+     * @return The syntax tree, or empty if the pattern uses unsupported constructs
+     */
+    public static Optional<RegexNode> tryParse(String pattern) {
+        try {
+            return Optional.of(new JavaRegexParser(pattern).parse());
+        } catch (UnsupportedRegexException | StackOverflowError exe) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Try to parse a pattern without dropping anything that affects where it matches
+     * @param pattern A java regex pattern that is known to compile
+     * @return The exact syntax tree, or empty if the pattern uses unsupported constructs
+     */
+    public static Optional<RegexNode> tryParseExact(String pattern) {
+        try {
+            return Optional.of(new JavaRegexParser(pattern, true).parse());
+        } catch (UnsupportedRegexException | StackOverflowError exe) {
+            return Optional.empty();
+        }
+    }
+
+    private final String pattern;
+    /// keep anchors and quantifier kinds instead of only describing the language
+    private final boolean exact;
+    private int pos;
+
+    private JavaRegexParser(String pattern) {
+        this(pattern, false);
+    }
+
+    private JavaRegexParser(String pattern, boolean exact) {
+        this.pattern = pattern;
+        this.exact = exact;
+        this.pos = 0;
+    }
+
+    private RegexNode parse() {
+        RegexNode node = parseAlternation(true);
+        if (more()) {
+            throw new UnsupportedRegexException(String.format("unexpected '%c' at position %d", peek(), pos));
+        }
+        return node;
+    }
+
+    private RegexNode parseAlternation(boolean topLevel) {
+        List<RegexNode> alternatives = new ArrayList<>();
+        alternatives.add(parseSequence(topLevel));
+        while (match('|')) {
+            alternatives.add(parseSequence(topLevel));
+        }
+
+        return alternatives.size() == 1 ? alternatives.get(0) : new RegexNode.Alternation(alternatives);
+    }
+
+    /**
+     * Parse a sequence of quantified atoms. For full matches, anchors at the start or end of a top-level alternative
+     * never constrain anything, so they are dropped there.
+     */
+    private RegexNode parseSequence(boolean topLevel) {
+        List<RegexNode> items = new ArrayList<>();
+        if (topLevel && !exact && (match('^') || matchSequence("\\A"))) {
+            // leading anchor has no effect
+        }
+
+        while (more() && !peekIs('|') && !peekIs(')')) {
+            if (topLevel && !exact && (match('$') || matchSequence("\\z") || matchSequence("\\Z"))) {
+                if (more() && !peekIs('|')) {
+                    throw new UnsupportedRegexException("end anchor is not at the end of the pattern");
+                }
+                break;
+            }
+
+            RegexNode atom = parseAtom();
+            items.add(atom instanceof RegexNode.Anchor ? atom : parseQuantifier(atom));
+        }
+
+        return items.size() == 1 ? items.get(0) : new RegexNode.Concat(items);
+    }
+
+    private RegexNode parseAtom() {
+        char c = next();
+        switch (c) {
+            case '(' -> {
+                if (match('?')) {
+                    if (match(':')) {
+                        // non-capturing group
+                    } else if (peekIs('<') && pos + 1 < pattern.length() && Character.isLetter(pattern.charAt(pos + 1))) {
+                        // named capturing group
+                        while (more() && !peekIs('>')) {
+                            next();
+                        }
+                        expect('>');
+                    } else {
+                        throw new UnsupportedRegexException("unsupported group construct");
+                    }
+                }
+                RegexNode inner = parseAlternation(false);
+                expect(')');
+                return inner;
+            }
+            case '[' -> {
+                return parseCharClass();
+            }
+            case '.' -> {
+                BitSet dot = new BitSet(CHAR_COUNT);
+                dot.set(0, CHAR_COUNT);
+                for (char terminator : LINE_TERMINATORS.toCharArray()) {
+                    dot.clear(terminator);
+                }
+                return new RegexNode.CharClass(dot, true);
+            }
+            case '\\' -> {
+                if (match('Q')) {
+                    return parseQuotation();
+                }
+                if (exact && more() && "bBAzZG".indexOf(peek()) != -1) {
+                    return new RegexNode.Anchor("\\" + next());
+                }
+                return parseEscape();
+            }
+            case '^', '$' -> {
+                if (exact) {
+                    return new RegexNode.Anchor(String.valueOf(c));
+                }
+                throw new UnsupportedRegexException(String.format("unsupported '%c' at position %d", c, pos - 1));
+            }
+            case '*', '+', '?', '{' -> throw new UnsupportedRegexException(String.format("unsupported '%c' at position %d", c, pos - 1));
+            default -> {
+                return new RegexNode.CharClass(singleChar(c));
+            }
+        }
+    }
+
+    private RegexNode parseQuantifier(RegexNode atom) {
+        int min;
+        int max;
+        if (match('*')) {
+            min = 0;
+            max = RegexNode.Repeat.UNBOUNDED;
+        } else if (match('+')) {
+            min = 1;
+            max = RegexNode.Repeat.UNBOUNDED;
+        } else if (match('?')) {
+            min = 0;
+            max = 1;
+        } else if (match('{')) {
+            min = parseInt();
+            if (match(',')) {
+                max = peekIs('}') ? RegexNode.Repeat.UNBOUNDED : parseInt();
+            } else {
+                max = min;
+            }
+            expect('}');
+            if (Math.max(min, max) > MAX_REPETITION || (max != RegexNode.Repeat.UNBOUNDED && max < min)) {
+                throw new UnsupportedRegexException("repetition bound is too large");
+            }
+        } else {
+            return atom;
+        }
+
+        // lazy quantifiers accept the same strings, possessive quantifiers do not
+        RegexNode.Repeat.Kind kind = RegexNode.Repeat.Kind.GREEDY;
+        if (match('?')) {
+            kind = RegexNode.Repeat.Kind.LAZY;
+        } else if (exact && match('+')) {
+            kind = RegexNode.Repeat.Kind.POSSESSIVE;
+        } else if (peekIs('+')) {
+            throw new UnsupportedRegexException("possessive quantifiers are not supported");
+        }
+        if (more() && "*+?{".indexOf(peek()) != -1) {
+            throw new UnsupportedRegexException("stacked quantifiers are not supported");
+        }
+
+        return new RegexNode.Repeat(atom, min, max, kind);
+    }
+
+    private RegexNode parseQuotation() {
+        List<RegexNode> chars = new ArrayList<>();
+        while (more() && !matchSequence("\\E")) {
+            chars.add(new RegexNode.CharClass(singleChar(next())));
+        }
+
+        // java applies a quantifier after a quotation to its last character only
+        if (chars.size() != 1 && more() && "*+?{".indexOf(peek()) != -1) {
+            throw new UnsupportedRegexException("quantified quotations are not supported");
+        }
+        return chars.size() == 1 ? chars.get(0) : new RegexNode.Concat(chars);
+    }
+
+    private RegexNode.CharClass parseCharClass() {
+        boolean negate = match('^');
+        BitSet chars = new BitSet();
+        boolean supplementary = false;
+        boolean first = true;
+        while (true) {
+            if (!more()) {
+                throw new UnsupportedRegexException("unterminated character class");
+            }
+
+            char c = peek();
+            if (c == ']') {
+                if (first) {
+                    throw new UnsupportedRegexException("']' at the start of a character class is not supported");
+                }
+                next();
+                break;
+            }
+            if (c == '[' || (c == '&' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) == '&')) {
+                throw new UnsupportedRegexException("nested character classes are not supported");
+            }
+            first = false;
+
+            RegexNode.CharClass item = parseCharClassItem();
+            if (!item.isSingleChar() || !peekIs('-') || pos + 1 >= pattern.length() || pattern.charAt(pos + 1) == ']') {
+                if (peekIs('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    throw new UnsupportedRegexException("unsupported range in character class");
+                }
+                chars.or(item.chars());
+                supplementary |= item.supplementary();
+                continue;
+            }
+
+            // a range
+            next();
+            if (peekIs('[')) {
+                throw new UnsupportedRegexException("nested character classes are not supported");
+            }
+            RegexNode.CharClass end = parseCharClassItem();
+            if (!end.isSingleChar() || end.singleChar() < item.singleChar()) {
+                throw new UnsupportedRegexException("invalid range in character class");
+            }
+            chars.set(item.singleChar(), end.singleChar() + 1);
+            if (peekIs('-') && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                throw new UnsupportedRegexException("unsupported range in character class");
+            }
+        }
+
+        if (negate) {
+            chars.flip(0, CHAR_COUNT);
+        }
+        return new RegexNode.CharClass(chars, supplementary != negate);
+    }
+
+    private RegexNode.CharClass parseCharClassItem() {
+        char c = next();
+        if (c == '\\') {
+            return parseEscape();
+        }
+        return new RegexNode.CharClass(singleChar(c));
+    }
+
+    /**
+     * Parse an escape sequence, after the backslash. Negated shorthands also match every supplementary code point
+     */
+    private RegexNode.CharClass parseEscape() {
+        char c = next();
+        switch (c) {
+            case 'd', 'D' -> {
+                return shorthand(Character.isUpperCase(c), range('0', '9'));
+            }
+            case 'w', 'W' -> {
+                BitSet word = range('a', 'z');
+                word.or(range('A', 'Z'));
+                word.or(range('0', '9'));
+                word.set('_');
+                return shorthand(Character.isUpperCase(c), word);
+            }
+            case 's', 'S' -> {
+                return shorthand(Character.isUpperCase(c), chars(" \t\n\u000B\f\r"));
+            }
+            case 'h', 'H' -> {
+                BitSet horizontal = chars(" \t\u00A0\u1680\u180E\u202F\u205F\u3000");
+                horizontal.or(range('\u2000', '\u200A'));
+                return shorthand(Character.isUpperCase(c), horizontal);
+            }
+            case 'v', 'V' -> {
+                return shorthand(Character.isUpperCase(c), chars("\n\u000B\f\r\u0085\u2028\u2029"));
+            }
+            case 't' -> {
+                return new RegexNode.CharClass(singleChar('\t'));
+            }
+            case 'n' -> {
+                return new RegexNode.CharClass(singleChar('\n'));
+            }
+            case 'r' -> {
+                return new RegexNode.CharClass(singleChar('\r'));
+            }
+            case 'f' -> {
+                return new RegexNode.CharClass(singleChar('\f'));
+            }
+            case 'a' -> {
+                return new RegexNode.CharClass(singleChar('\u0007'));
+            }
+            case 'e' -> {
+                return new RegexNode.CharClass(singleChar('\u001B'));
+            }
+            case '0' -> {
+                int value = 0;
+                int digits = 0;
+                while (digits < 3 && peekIs('0', '7') && value * 8 + (peek() - '0') <= 0377) {
+                    value = value * 8 + (next() - '0');
+                    digits++;
+                }
+                if (digits == 0) {
+                    throw new UnsupportedRegexException("invalid octal escape");
+                }
+                return new RegexNode.CharClass(singleChar((char) value));
+            }
+            case 'x' -> {
+                int value;
+                if (match('{')) {
+                    int start = pos;
+                    while (more() && !peekIs('}')) {
+                        next();
+                    }
+                    value = parseHex(pattern.substring(start, pos));
+                    expect('}');
+                } else {
+                    value = parseHex(nextChars(2));
+                }
+                if (value > Character.MAX_VALUE) {
+                    throw new UnsupportedRegexException("supplementary characters are not supported");
+                }
+                return new RegexNode.CharClass(singleChar((char) value));
+            }
+            case 'u' -> {
+                return new RegexNode.CharClass(singleChar((char) parseHex(nextChars(4))));
+            }
+            default -> {
+                if (Character.isLetterOrDigit(c)) {
+                    throw new UnsupportedRegexException(String.format("unsupported escape \\%c", c));
+                }
+                return new RegexNode.CharClass(singleChar(c));
+            }
+        }
+    }
+
+    private int parseInt() {
+        int start = pos;
+        while (peekIs('0', '9')) {
+            next();
+        }
+        if (start == pos || pos - start > 6) {
+            throw new UnsupportedRegexException("invalid repetition bound");
+        }
+        return Integer.parseInt(pattern.substring(start, pos));
+    }
+
+    private static int parseHex(String digits) {
+        if (digits.isEmpty() || digits.length() > 6) {
+            throw new UnsupportedRegexException("invalid hex escape");
+        }
+        try {
+            return Integer.parseInt(digits, 16);
+        } catch (NumberFormatException exe) {
+            throw new UnsupportedRegexException("invalid hex escape");
+        }
+    }
+
+    private static BitSet singleChar(char c) {
+        if (Character.isSurrogate(c)) {
+            throw new UnsupportedRegexException("surrogate characters are not supported");
+        }
+        BitSet set = new BitSet();
+        set.set(c);
+        return set;
+    }
+
+    private static BitSet range(char low, char high) {
+        BitSet set = new BitSet();
+        set.set(low, high + 1);
+        return set;
+    }
+
+    private static BitSet chars(String chars) {
+        BitSet set = new BitSet();
+        chars.chars().forEach(set::set);
+        return set;
+    }
+
+    private static RegexNode.CharClass shorthand(boolean negate, BitSet set) {
+        if (negate) {
+            set.flip(0, CHAR_COUNT);
+        }
+        return new RegexNode.CharClass(set, negate);
+    }
+
+    private boolean more() {
+        return pos < pattern.length();
+    }
+
+    private char peek() {
+        return pattern.charAt(pos);
+    }
+
+    private boolean peekIs(char c) {
+        return more() && peek() == c;
+    }
+
+    private boolean peekIs(char low, char high) {
+        return more() && peek() >= low && peek() <= high;
+    }
+
+    private char next() {
+        if (!more()) {
+            throw new UnsupportedRegexException("unexpected end of pattern");
+        }
+        return pattern.charAt(pos++);
+    }
+
+    private String nextChars(int count) {
+        if (pos + count > pattern.length()) {
+            throw new UnsupportedRegexException("unexpected end of pattern");
+        }
+        String chars = pattern.substring(pos, pos + count);
+        pos += count;
+        return chars;
+    }
+
+    private boolean match(char c) {
+        if (peekIs(c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean matchSequence(String sequence) {
+        if (pattern.startsWith(sequence, pos)) {
+            pos += sequence.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!match(c)) {
+            throw new UnsupportedRegexException(String.format("expected '%c' at position %d", c, pos));
+        }
+    }
+}
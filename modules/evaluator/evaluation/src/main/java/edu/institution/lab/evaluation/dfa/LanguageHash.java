@@ -0,0 +1,85 @@
+package edu.institution.lab.evaluation.dfa;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.State;
+import dk.brics.automaton.Transition;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Canonical hash of the language of an automaton. Minimal DFAs of the same language are identical up to the naming of
+ * their states, so states are numbered in breadth-first order from the initial state, following transitions in order of
+ * their ranges. The hash covers the accept flag and the transition ranges of every numbered state. Two patterns with the
+ * same hash full-match the same strings.
+ */
+public final class LanguageHash {
+
+    private LanguageHash() {
+    }
+
+    /**
+     * @param automaton A minimal, deterministic automaton. It is not modified
+     * @return A hex encoded hash of the automaton's language
+     */
+    public static String of(Automaton automaton) {
+        Automaton expanded = automaton.clone();
+        expanded.expandSingleton();
+        Set<State> liveStates = expanded.getLiveStates();
+
+        StringBuilder encoding = new StringBuilder();
+        if (liveStates.contains(expanded.getInitialState())) {
+            Map<State, Integer> numbers = new HashMap<>();
+            Deque<State> queue = new ArrayDeque<>();
+            numbers.put(expanded.getInitialState(), 0);
+            queue.add(expanded.getInitialState());
+            while (!queue.isEmpty()) {
+                State state = queue.poll();
+                encoding.append(state.isAccept() ? 'A' : 'N');
+                for (Transition transition : liveTransitions(state, liveStates)) {
+                    State dest = transition.getDest();
+                    if (!numbers.containsKey(dest)) {
+                        numbers.put(dest, numbers.size());
+                        queue.add(dest);
+                    }
+                    encoding.append((int) transition.getMin()).append('-').append((int) transition.getMax())
+                            .append('>').append(numbers.get(dest)).append(',');
+                }
+                encoding.append(';');
+            }
+        }
+
+        return sha256(encoding.toString());
+    }
+
+    /**
+     * Transitions to live states in order of their ranges, with adjacent ranges to the same state merged
+     */
+    private static List<Transition> liveTransitions(State state, Set<State> liveStates) {
+        List<Transition> merged = new ArrayList<>();
+        for (Transition transition : state.getSortedTransitions(false)) {
+            if (!liveStates.contains(transition.getDest())) {
+                continue;
+            }
+
+            int last = merged.size() - 1;
+            if (last >= 0 && merged.get(last).getDest() == transition.getDest() && merged.get(last).getMax() + 1 == transition.getMin()) {
+                merged.set(last, new Transition(merged.get(last).getMin(), transition.getMax(), transition.getDest()));
+            } else {
+                merged.add(transition);
+            }
+        }
+        return merged;
+    }
+
+    private static String sha256(String encoding) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(encoding.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException exe) {
+            throw new IllegalStateException("SHA-256 is not available", exe);
+        }
+    }
+}
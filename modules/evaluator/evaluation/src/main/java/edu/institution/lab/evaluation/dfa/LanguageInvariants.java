@@ -0,0 +1,252 @@
+package edu.institution.lab.evaluation.dfa;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.DfaBudgetExceededException;
+import dk.brics.automaton.SpecialOperations;
+import dk.brics.automaton.State;
+import dk.brics.automaton.Transition;
+
+import java.util.*;
+
+/**
+ * Cheap facts about the language of an automaton that every accepted string satisfies: its length bounds, the chars it
+ * can contain, and a fixed prefix and suffix. Checking a string against the invariants takes time linear in the string,
+ * and lets the evaluator rule out candidates before running any matcher.
+ * <br>
+ * Like {@link DfaMatcher}, the invariants describe strings of chars, so they say nothing about strings that contain
+ * surrogates.
+ */
+public final class LanguageInvariants {
+
+    public static final int UNBOUNDED = -1;
+
+    private final int minLength;
+    private final int maxLength;
+    /// sorted, disjoint and non-adjacent inclusive ranges: [low0, high0, low1, high1, ...]
+    private final char[] alphabet;
+    private final String prefix;
+    private final String suffix;
+    /// true if the language is every string over the alphabet
+    private final boolean universal;
+
+    private LanguageInvariants(int minLength, int maxLength, char[] alphabet, String prefix, String suffix, boolean universal) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.alphabet = alphabet;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.universal = universal;
+    }
+
+    /**
+     * Derive the invariants of a language
+     * @param automaton A minimal, deterministic automaton. It is not modified
+     * @return the invariants
+     */
+    public static LanguageInvariants of(Automaton automaton) {
+        Automaton expanded = automaton.clone();
+        expanded.expandSingleton();
+        Set<State> liveStates = expanded.getLiveStates();
+        State initial = expanded.getInitialState();
+        if (!liveStates.contains(initial)) {
+            // empty language. Nothing can be accepted, so every string fails the length bounds
+            return new LanguageInvariants(1, 0, new char[0], "", "", false);
+        }
+
+        boolean universal = initial.isAccept() && liveStates.size() == 1;
+        return new LanguageInvariants(
+                minLength(initial, liveStates),
+                SpecialOperations.isFinite(expanded) ? maxLength(initial, liveStates, new HashMap<>()) : UNBOUNDED,
+                alphabet(liveStates),
+                SpecialOperations.getCommonPrefix(expanded),
+                commonSuffix(expanded),
+                universal
+        );
+    }
+
+    public int getMinLength() {
+        return minLength;
+    }
+
+    /**
+     * @return the longest accepted string, or {@link #UNBOUNDED}
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public boolean isUniversal() {
+        return universal;
+    }
+
+    /**
+     * Check if the language could contain the given string. False is definite; true only means the invariants do not
+     * rule the string out.
+     */
+    public boolean mayAccept(CharSequence subject) {
+        if (!DfaMatcher.canEvaluate(subject)) {
+            return true;
+        }
+
+        int length = subject.length();
+        if (length < minLength || (maxLength != UNBOUNDED && length > maxLength)) {
+            return false;
+        }
+
+        if (!startsWith(subject, prefix) || !endsWith(subject, suffix)) {
+            return false;
+        }
+
+        return inAlphabet(subject);
+    }
+
+    /**
+     * Check if the language definitely contains the given string. False only means the invariants cannot tell.
+     */
+    public boolean mustAccept(CharSequence subject) {
+        return universal && DfaMatcher.canEvaluate(subject) && inAlphabet(subject);
+    }
+
+    private boolean inAlphabet(CharSequence subject) {
+        for (int i = 0; i < subject.length(); i++) {
+            if (!inAlphabet(subject.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean inAlphabet(char c) {
+        // find the last range that starts at or before c
+        int low = 0;
+        int high = alphabet.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (alphabet[2 * mid] <= c) {
+                if (c <= alphabet[2 * mid + 1]) {
+                    return true;
+                }
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(CharSequence subject, String prefix) {
+        if (subject.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (subject.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean endsWith(CharSequence subject, String suffix) {
+        int offset = subject.length() - suffix.length();
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (subject.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int minLength(State initial, Set<State> liveStates) {
+        Map<State, Integer> distances = new HashMap<>();
+        Deque<State> queue = new ArrayDeque<>();
+        distances.put(initial, 0);
+        queue.add(initial);
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            int distance = distances.get(state);
+            if (state.isAccept()) {
+                return distance;
+            }
+            for (Transition transition : state.getTransitions()) {
+                State next = transition.getDest();
+                if (liveStates.contains(next) && distances.putIfAbsent(next, distance + 1) == null) {
+                    queue.add(next);
+                }
+            }
+        }
+        throw new IllegalStateException("live initial state cannot reach an accept state");
+    }
+
+    /**
+     * Longest path to an accept state. The live part of the automaton must be acyclic.
+     */
+    private static int maxLength(State state, Set<State> liveStates, Map<State, Integer> memo) {
+        Integer known = memo.get(state);
+        if (known != null) {
+            return known;
+        }
+
+        int longest = state.isAccept() ? 0 : -1;
+        for (Transition transition : state.getTransitions()) {
+            State next = transition.getDest();
+            if (liveStates.contains(next)) {
+                int rest = maxLength(next, liveStates, memo);
+                if (rest >= 0) {
+                    longest = Math.max(longest, rest + 1);
+                }
+            }
+        }
+        memo.put(state, longest);
+        return longest;
+    }
+
+    private static char[] alphabet(Set<State> liveStates) {
+        List<Transition> transitions = new ArrayList<>();
+        for (State state : liveStates) {
+            for (Transition transition : state.getTransitions()) {
+                if (liveStates.contains(transition.getDest())) {
+                    transitions.add(transition);
+                }
+            }
+        }
+        transitions.sort(Comparator.comparingInt(Transition::getMin));
+
+        char[] ranges = new char[transitions.size() * 2];
+        int size = 0;
+        for (Transition transition : transitions) {
+            if (size > 0 && transition.getMin() <= ranges[size - 1] + 1) {
+                ranges[size - 1] = (char) Math.max(ranges[size - 1], transition.getMax());
+            } else {
+                ranges[size++] = transition.getMin();
+                ranges[size++] = transition.getMax();
+            }
+        }
+        return Arrays.copyOf(ranges, size);
+    }
+
+    /**
+     * The common prefix of the reversed language, reversed back. Reversing requires determinizing again, so the suffix
+     * is dropped when that takes too many states.
+     */
+    private static String commonSuffix(Automaton expanded) {
+        Automaton reversed = expanded.clone();
+        SpecialOperations.reverse(reversed);
+        try {
+            reversed.minimize();
+        } catch (DfaBudgetExceededException exe) {
+            return "";
+        }
+        return new StringBuilder(SpecialOperations.getCommonPrefix(reversed)).reverse().toString();
+    }
+}
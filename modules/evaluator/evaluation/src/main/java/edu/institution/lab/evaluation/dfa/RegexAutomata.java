@@ -0,0 +1,69 @@
+package edu.institution.lab.evaluation.dfa;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.BasicOperations;
+import dk.brics.automaton.DfaBudgetExceededException;
+import dk.brics.automaton.State;
+import dk.brics.automaton.Transition;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Builds brics automata out of {@link RegexNode} trees.
+ */
+public final class RegexAutomata {
+
+    private RegexAutomata() {
+    }
+
+    /**
+     * Build a minimal, deterministic automaton that accepts exactly the language of the given tree
+     * @param node The tree
+     * @return minimal automaton
+     * @throws DfaBudgetExceededException if determinizing the automaton takes too many states
+     */
+    public static Automaton toAutomaton(RegexNode node) throws DfaBudgetExceededException {
+        Automaton automaton = build(node);
+        automaton.minimize();
+        return automaton;
+    }
+
+    private static Automaton build(RegexNode node) {
+        if (node instanceof RegexNode.CharClass charClass) {
+            return charClassAutomaton(charClass.chars());
+        } else if (node instanceof RegexNode.Concat concat) {
+            List<Automaton> items = concat.items().stream().map(RegexAutomata::build).toList();
+            return BasicOperations.concatenate(items);
+        } else if (node instanceof RegexNode.Alternation alternation) {
+            List<Automaton> alternatives = alternation.alternatives().stream().map(RegexAutomata::build).toList();
+            return BasicOperations.union(alternatives);
+        } else if (node instanceof RegexNode.Repeat repeat) {
+            Automaton child = build(repeat.child());
+            if (repeat.isUnbounded()) {
+                return BasicOperations.repeat(child, repeat.min());
+            }
+            return BasicOperations.repeat(child, repeat.min(), repeat.max());
+        }
+
+        throw new IllegalArgumentException("unknown node type " + node.getClass().getSimpleName());
+    }
+
+    private static Automaton charClassAutomaton(BitSet chars) {
+        State initial = new State();
+        State accept = new State();
+        accept.setAccept(true);
+
+        int low = chars.nextSetBit(0);
+        while (low >= 0) {
+            int high = chars.nextClearBit(low) - 1;
+            initial.addTransition(new Transition((char) low, (char) high, accept));
+            low = chars.nextSetBit(high + 1);
+        }
+
+        Automaton automaton = new Automaton();
+        automaton.setInitialState(initial);
+        automaton.setDeterministic(true);
+        return automaton;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.institution.lab.evaluation.dfa;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Syntax tree for the regular subset of java regexes. Groups are flattened away because capturing does not affect
+ * which strings are matched.
+ * <br>
+ * Trees from {@link JavaRegexParser#tryParse(String)} only describe a language, so every such tree can be turned into
+ * an automaton. Trees from {@link JavaRegexParser#tryParseExact(String)} also keep what decides where a match is found:
+ * anchors, quantifier kinds, and whether character classes match supplementary code points.
+ */
+public sealed interface RegexNode {
+
+    /**
+     * Matches a single character out of a set
+     * @param chars the accepted characters in the basic multilingual plane
+     * @param supplementary true if every supplementary code point is accepted as well, as in negated classes
+     */
+    record CharClass(BitSet chars, boolean supplementary) implements RegexNode {
+        public CharClass(BitSet chars) {
+            this(chars, false);
+        }
+
+        public boolean isSingleChar() {
+            return !supplementary && chars.cardinality() == 1;
+        }
+
+        public char singleChar() {
+            return (char) chars.nextSetBit(0);
+        }
+    }
+
+    /**
+     * Matches each item in sequence. An empty concatenation matches the empty string
+     * @param items sequence of sub-expressions
+     */
+    record Concat(List<RegexNode> items) implements RegexNode {
+    }
+
+    /**
+     * Matches any of the alternatives
+     * @param alternatives possible sub-expressions
+     */
+    record Alternation(List<RegexNode> alternatives) implements RegexNode {
+    }
+
+    /**
+     * Matches a sub-expression repeated between min and max times
+     * @param child the repeated sub-expression
+     * @param min minimum number of repetitions
+     * @param max maximum number of repetitions, or {@link #UNBOUNDED}
+     * @param kind how repetitions are chosen. Does not affect the language
+     */
+    record Repeat(RegexNode child, int min, int max, Kind kind) implements RegexNode {
+        public static final int UNBOUNDED = -1;
+
+        public enum Kind {
+            GREEDY,
+            LAZY,
+            POSSESSIVE,
+        }
+
+        public Repeat(RegexNode child, int min, int max) {
+            this(child, min, max, Kind.GREEDY);
+        }
+
+        public boolean isUnbounded() {
+            return max == UNBOUNDED;
+        }
+    }
+
+    /**
+     * A zero-width assertion, such as a line anchor or word boundary. Only present in exact trees
+     * @param token the assertion as written in a java regex, e.g. "^" or "\\b"
+     */
+    record Anchor(String token) implements RegexNode {
+    }
+}
@@ -0,0 +1,10 @@
+package edu.institution.lab.evaluation.dfa;
+
+/**
+ * Thrown while parsing when a pattern uses a construct that cannot be represented by {@link RegexNode}.
+ */
+class UnsupportedRegexException extends RuntimeException {
+    public UnsupportedRegexException(String message) {
+        super(message, null, false, false);
+    }
+}
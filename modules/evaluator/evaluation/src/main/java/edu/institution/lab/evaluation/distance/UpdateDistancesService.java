@@ -3,10 +3,21 @@ package edu.institution.lab.evaluation.distance;
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.GenerateStrings;
 import edu.institution.lab.evaluation.TestSuiteService;
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
 import edu.institution.lab.evaluation.distance.ast.Tree;
 import edu.institution.lab.evaluation.evaluation.AutoCloseableExecutorService;
+import edu.institution.lab.evaluation.evaluation.EvaluationBudget;
+import edu.institution.lab.evaluation.evaluation.EvaluationOptions;
+import edu.institution.lab.evaluation.evaluation.ExecutionContexts;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
 import edu.institution.lab.evaluation.model.*;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 import edu.institution.lab.evaluation.util.CancellableTask;
 import edu.institution.lab.evaluation.util.CoverageUtils;
@@ -15,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -36,17 +48,19 @@ public class UpdateDistancesService {
      * @param candidateRow The candidate row
      * @param truthTree The AST of the truth regex
      * @param truthLanguageApprox The language approximation of the truth (for semantic distance)
-     * @param safeMatchContext Safe match context
+     * @param matchContext Safe match context, and how semantic distance matches are run, quarantined and limited
+     * @param budget Bounds how long the semantic distances of a test suite, and of each of its candidates, may take
      */
     private record DistanceCalculatorTask(RawTestSuiteResultRow candidateRow,
                                           Tree truthTree,
                                           LanguageApproximation truthLanguageApprox,
-                                          ExecutorService safeMatchContext) implements Callable<Optional<DistanceUpdateRecord>> {
+                                          MatchContext matchContext,
+                                          EvaluationBudget budget) implements Callable<Optional<DistanceUpdateRecord>> {
 
         @Override
         public Optional<DistanceUpdateRecord> call() throws Exception {
             // first, build out the stuff we need for the candidate
-            Optional<Tree> candidateTree = buildTree(candidateRow().candidateRegex(), safeMatchContext);
+            Optional<Tree> candidateTree = buildTree(candidateRow().candidateRegex(), matchContext.executor());
 
             // compile the regex
             Pattern candidatePattern = null;
@@ -66,8 +80,17 @@ public class UpdateDistancesService {
 
             // compute the semantic distance
             double semanticDistance = Double.NaN;
+            long testSuiteId = candidateRow().testSuiteId();
             if (truthLanguageApprox != null && candidatePattern != null) {
-                semanticDistance = truthLanguageApprox.eSimilarity(candidatePattern, SafeMatcher.MatchMode.FULL, safeMatchContext());
+                if (budget() != null && budget().isSuiteExhausted(testSuiteId)) {
+                    budget().recordSkipped(testSuiteId);
+                } else {
+                    Instant deadline = budget() != null ? budget().candidateDeadline(testSuiteId) : null;
+                    semanticDistance = truthLanguageApprox.eSimilarity(candidatePattern, SafeMatcher.MatchMode.FULL, matchContext(), deadline);
+                    if (Double.isNaN(semanticDistance) && deadline != null && !Instant.now().isBefore(deadline)) {
+                        budget().recordCutShort(testSuiteId);
+                    }
+                }
             }
 
             // only report a value if we actually have something to update
@@ -88,13 +111,21 @@ public class UpdateDistancesService {
     /// have two difference caches because the truth regex cache can be much smaller because we should process left whole
     /// chunk of the truth regex at the same time
     private final GenerateStrings.GenerateStringsConfiguration generateStringsConfiguration;
+    /// how jobs and safe matches are mapped onto threads, how threaded matches are limited, and how long the semantic
+    /// distances of a test suite and of a single candidate may take
+    private final EvaluationOptions options;
 
     public UpdateDistancesService(RegexDatabaseClient regexDatabaseClient, Predicate<String> regexValidityChecker, BiPredicate<String, String> relativeRegexValidityChecker) {
+        this(regexDatabaseClient, regexValidityChecker, relativeRegexValidityChecker, EvaluationOptions.DEFAULT);
+    }
+
+    public UpdateDistancesService(RegexDatabaseClient regexDatabaseClient, Predicate<String> regexValidityChecker, BiPredicate<String, String> relativeRegexValidityChecker, EvaluationOptions options) {
         this.databaseClient = regexDatabaseClient;
         this.testSuiteService = new TestSuiteService(regexDatabaseClient);
         this.regexValidityChecker = regexValidityChecker;
         this.relativeRegexValidityChecker = relativeRegexValidityChecker;
         this.generateStringsConfiguration = new GenerateStrings.GenerateStringsConfiguration(true, 3, 5);
+        this.options = options;
     }
 
     public void computeAndInsertDistanceUpdateRecordsV3() throws SQLException {
@@ -102,18 +133,43 @@ public class UpdateDistancesService {
     }
 
     public void computeAndInsertDistanceUpdateRecordsV3(boolean computeAstDistance, boolean computeSemanticDistance) throws SQLException {
+        computeAndInsertDistanceUpdateRecordsV3(computeAstDistance, computeSemanticDistance, false);
+    }
 
-        List<RegexTestSuite> regexTestSuites = testSuiteService.loadRegexTestSuites().toList();
-
-        Collection<DistanceUpdateRecord> updateRecords = new ArrayList<>();
-        try (AutoCloseableExecutorService jobExecutor = new AutoCloseableExecutorService(Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors()));
-             AutoCloseableExecutorService safeExecutionContext = new AutoCloseableExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))) {
+    /**
+     * Compute distances between each test suite's truth regex and its candidates. The distances of each test suite are
+     * saved along with a record that the test suite is complete, so an interrupted run can be resumed.
+     * @param resume If true, skip the test suites that an earlier run completed
+     */
+    public void computeAndInsertDistanceUpdateRecordsV3(boolean computeAstDistance, boolean computeSemanticDistance, boolean resume) throws SQLException {
 
-            CompletionService<Optional<DistanceUpdateRecord>> completionService = new ExecutorCompletionService<>(jobExecutor);
+        List<RegexTestSuite> regexTestSuites = testSuiteService.loadRegexTestSuites().toList();
+        RunCheckpoint checkpoint = databaseClient.startRun(CheckpointedCommand.UPDATE_DISTANCES, resume);
+
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(options.executionModel())) {
+
+            AutoCloseableExecutorService safeExecutionContext = executionContexts.getSafeExecutionContext();
+            CompletionService<Optional<DistanceUpdateRecord>> completionService = new ExecutorCompletionService<>(executionContexts.getJobExecutor());
+            // candidates that kept timing out, in this run or an earlier evaluate or update, get no semantic distance
+            databaseClient.setupPatternQuarantineTable();
+            databaseClient.setupPatternCostTable();
+            PatternCostLedger ledger = new PatternCostLedger();
+            ledger.loadAll(databaseClient.loadPatternCosts());
+            PatternCircuitBreaker circuitBreaker = new PatternCircuitBreaker(ledger);
+            circuitBreaker.quarantineAll(databaseClient.loadQuarantinedPatterns());
+            AdaptiveTimeoutPolicy timeoutPolicy = options.newTimeoutPolicy();
+            MatchContext matchContext = new MatchContext(safeExecutionContext, new InlineMatchPolicy(), null, circuitBreaker, timeoutPolicy);
+            EvaluationBudget budget = options.newBudget();
 
             int collectedTestSuites = 0;
             for (RegexTestSuite testSuite : regexTestSuites) {
 
+                WorkUnit unit = WorkUnit.testSuite(testSuite.projectId(), testSuite.id());
+                if (checkpoint.isCompleted(unit)) {
+                    logger.info("skipping updating distances for test suite {}/{}: completed by an earlier run", ++collectedTestSuites, regexTestSuites.size());
+                    continue;
+                }
+
                 logger.info("starting to process test suite {}", testSuite.id());
 
                 // if truth regex is invalid, keep moving
@@ -171,25 +227,37 @@ public class UpdateDistancesService {
                 databaseClient.loadRawTestSuiteResults(testSuite.id())
                         // make sure that candidates pass checks
                         .filter(row -> regexValidityChecker.test(row.candidateRegex()) && relativeRegexValidityChecker.test(row.truthRegex(), row.candidateRegex()))
-                        .map(row -> new DistanceCalculatorTask(row, nullableTruthTree, finalTruthLanguageApprox, safeExecutionContext))
+                        .map(row -> new DistanceCalculatorTask(row, nullableTruthTree, finalTruthLanguageApprox, matchContext, budget))
                         .peek(_row -> submittedJobs.incrementAndGet())
                         .forEach(completionService::submit);
 
+                Collection<DistanceUpdateRecord> updateRecords = new ArrayList<>();
                 for (long i = submittedJobs.get(); i > 0; i--) {
                     Future<Optional<DistanceUpdateRecord>> future = completionService.take();
                     Optional<DistanceUpdateRecord> result = future.get();
                     result.ifPresent(updateRecords::add);
                 }
 
+                // save each test suite as it completes, so an interruption only loses the current one
+                databaseClient.updateManyTestSuiteResultsDistances(updateRecords, checkpoint, List.of(unit));
+                databaseClient.insertManyQuarantinedPatterns(circuitBreaker.drainNewlyQuarantined());
+                databaseClient.insertManyPatternCosts(ledger.drainChanged());
+
                 logger.info("finished updating distances for test suite {}/{}", ++collectedTestSuites, regexTestSuites.size());
             }
+
+            logger.info("{} patterns are quarantined after timing out", circuitBreaker.getQuarantinedCount());
+            if (timeoutPolicy != null) {
+                logger.info("{}", timeoutPolicy);
+            }
+            if (budget != null) {
+                logger.info("{}", budget);
+            }
+            logger.info("{}", ledger);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
 
-        // save everything
-        logger.info("Updating distances in database");
-        databaseClient.updateManyTestSuiteResultsDistances(updateRecords);
         logger.info("Successfully updated all distances");
     }
 
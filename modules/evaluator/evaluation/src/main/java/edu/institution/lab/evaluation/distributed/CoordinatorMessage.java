@@ -0,0 +1,10 @@
+package edu.institution.lab.evaluation.distributed;
+
+/**
+ * What a coordinator sends to a worker: either the next lease, or no lease once all work is done
+ * @param lease The lease to evaluate, or null if the worker should disconnect
+ */
+public record CoordinatorMessage(WorkLease lease) {
+
+    public static final CoordinatorMessage NO_MORE_WORK = new CoordinatorMessage(null);
+}
@@ -0,0 +1,109 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.TestSuiteService;
+import edu.institution.lab.evaluation.canonical.CanonicalCandidates;
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
+import edu.institution.lab.evaluation.db.RegexDatabaseClient;
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.model.CandidateRegex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs an evaluation whose work is done by worker processes. The coordinator owns the database: it loads each
+ * project's candidates, hands them out as leases, and saves each project once all of its leases are complete. Results
+ * are saved exactly like a local evaluation saves them, so a distributed run can be resumed by either.
+ */
+public class DistributedEvaluationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedEvaluationService.class);
+
+    private final RegexDatabaseClient databaseClient;
+    private final TestSuiteService testSuiteService;
+    /// loading projects and saving results happen on different threads, but share the database connection
+    private final Object databaseLock = new Object();
+
+    public DistributedEvaluationService(RegexDatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        this.testSuiteService = new TestSuiteService(databaseClient);
+    }
+
+    /**
+     * Coordinate workers until every test suite has been evaluated and saved
+     * @param bindAddress The address to wait for workers on
+     * @param port The port to wait for workers on
+     * @param targetLeaseCost How much work to put into each lease, see {@link LeaseBook#estimateCost(RegexTestSuite)}
+     * @param leaseAttempts How many workers a lease may be handed to before losing it fails the run
+     * @param leaseTimeout How long a worker may take for a lease before it is considered lost
+     * @param resume If true, keep the results of an earlier run and skip the projects it completed
+     */
+    public void coordinate(String bindAddress, int port, long targetLeaseCost, int leaseAttempts, Duration leaseTimeout, boolean resume) throws SQLException, IOException, InterruptedException, ExecutionException {
+        databaseClient.setupResultsTable(resume);
+        RunCheckpoint checkpoint = databaseClient.startRun(CheckpointedCommand.EVALUATE, resume);
+
+        Map<Long, List<RegexTestSuite>> projectTestSuites = testSuiteService.loadRegexTestSuites()
+                .collect(Collectors.groupingBy(RegexTestSuite::projectId));
+        projectTestSuites.keySet().removeIf(projectId -> checkpoint.isCompleted(WorkUnit.project(projectId)));
+        logger.info("Distributing {} projects", projectTestSuites.size());
+
+        // projects are only ever pulled by one thread at a time
+        Iterator<Map.Entry<Long, List<RegexTestSuite>>> remainingProjects = projectTestSuites.entrySet().iterator();
+        // how to fan each in-progress project's representative solutions out to all of its candidates
+        Map<Long, CanonicalCandidates> projectCandidates = new ConcurrentHashMap<>();
+
+        LeaseSource source = () -> {
+            if (!remainingProjects.hasNext()) {
+                return Optional.empty();
+            }
+
+            Map.Entry<Long, List<RegexTestSuite>> project = remainingProjects.next();
+            long projectId = project.getKey();
+            List<CandidateRegex> candidateRegexes;
+            synchronized (databaseLock) {
+                candidateRegexes = databaseClient.loadCandidateRegexes(projectId).toList();
+            }
+
+            // only send each canonical pattern once
+            CanonicalCandidates canonicalCandidates = CanonicalCandidates.group(candidateRegexes.stream()
+                    .flatMap(candidate -> CompiledRegexEntity.tryCompile(candidate).stream())
+                    .toList());
+            projectCandidates.put(projectId, canonicalCandidates);
+            Map<Long, CandidateRegex> candidatesById = candidateRegexes.stream()
+                    .collect(Collectors.toMap(CandidateRegex::id, Function.identity(), (first, second) -> first));
+            List<CandidateRegex> representatives = canonicalCandidates.getRepresentatives().stream()
+                    .map(representative -> candidatesById.get(representative.id()))
+                    .toList();
+
+            return Optional.of(new ProjectWork(projectId, project.getValue(), representatives));
+        };
+
+        ProjectResultSink sink = (projectId, testSuiteSolutions) -> {
+            Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = projectCandidates.remove(projectId).fanOut(testSuiteSolutions);
+            synchronized (databaseLock) {
+                databaseClient.insertManyTestSuiteResults(collectedTestSuites, checkpoint, List.of(WorkUnit.project(projectId)));
+            }
+            logger.info("Saved {} test suites of project {}", collectedTestSuites.size(), projectId);
+        };
+
+        try (EvaluationCoordinator coordinator = new EvaluationCoordinator(new LeaseBook(source, sink, targetLeaseCost, leaseAttempts), InetAddress.getByName(bindAddress), port, leaseTimeout)) {
+            coordinator.start();
+            coordinator.awaitCompletion();
+        }
+
+        logger.info("Finished distributed evaluation");
+    }
+}
@@ -0,0 +1,134 @@
+package edu.institution.lab.evaluation.distributed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hands the leases of a {@link LeaseBook} to workers that connect over TCP. Each connection is one worker slot, which
+ * is given one lease at a time. If a connection breaks, or a worker takes longer than the lease timeout to answer, its
+ * lease is released to the other workers, so a worker process can die at any time without losing work. A lease that
+ * keeps losing its workers fails the run instead of being handed out forever, see {@link LeaseBook}.
+ */
+public final class EvaluationCoordinator implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EvaluationCoordinator.class);
+
+    private final LeaseBook leaseBook;
+    private final Duration leaseTimeout;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+
+    /**
+     * Listen for workers on the loopback interface only
+     * @param leaseBook The leases to hand out
+     * @param port The port to listen on, or 0 for any free port
+     * @param leaseTimeout How long a worker may take to complete a lease before it is considered lost
+     */
+    public EvaluationCoordinator(LeaseBook leaseBook, int port, Duration leaseTimeout) throws IOException {
+        this(leaseBook, InetAddress.getLoopbackAddress(), port, leaseTimeout);
+    }
+
+    /**
+     * @param leaseBook The leases to hand out
+     * @param bindAddress The address to listen on. Workers on other machines can only connect if this is not a loopback
+     *                    address, and the protocol is not authenticated, so only expose it to trusted networks
+     * @param port The port to listen on, or 0 for any free port
+     * @param leaseTimeout How long a worker may take to complete a lease before it is considered lost
+     */
+    public EvaluationCoordinator(LeaseBook leaseBook, InetAddress bindAddress, int port, Duration leaseTimeout) throws IOException {
+        this.leaseBook = leaseBook;
+        this.leaseTimeout = leaseTimeout;
+        this.serverSocket = new ServerSocket(port, 0, bindAddress);
+        this.connections = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @return The port that workers should connect to
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Start accepting workers in the background
+     */
+    public void start() {
+        connections.submit(this::acceptWorkers);
+        logger.info("Waiting for workers on {}", serverSocket.getLocalSocketAddress());
+    }
+
+    /**
+     * Wait until every lease is complete and every project is saved
+     * @throws ExecutionException If the run failed
+     */
+    public void awaitCompletion() throws InterruptedException, ExecutionException {
+        leaseBook.awaitFinished();
+        logger.info("All leases complete, {} leases were reassigned after losing a worker", leaseBook.getReleasedLeaseCount());
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void acceptWorkers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.submit(() -> serveWorker(socket));
+            } catch (SocketException closed) {
+                // the coordinator is shutting down
+                return;
+            } catch (IOException exe) {
+                logger.warn("failed to accept worker", exe);
+            }
+        }
+    }
+
+    private void serveWorker(Socket socket) {
+        String worker = socket.getRemoteSocketAddress().toString();
+        logger.info("Worker {} connected", worker);
+        WorkLease lease = null;
+        int completedLeases = 0;
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, leaseTimeout.toMillis()));
+
+            while ((lease = leaseBook.acquire()) != null) {
+                WorkProtocol.send(writer, new CoordinatorMessage(lease));
+                WorkResult result = WorkProtocol.receive(reader, WorkResult.class);
+                if (result.leaseId() != lease.leaseId()) {
+                    throw new IOException(String.format("expected result for lease %d, but got %d", lease.leaseId(), result.leaseId()));
+                }
+                leaseBook.complete(lease.leaseId(), result.solutions());
+                lease = null;
+                completedLeases++;
+            }
+
+            WorkProtocol.send(writer, CoordinatorMessage.NO_MORE_WORK);
+            logger.info("Worker {} finished after {} leases", worker, completedLeases);
+        } catch (IOException exe) {
+            logger.warn("Lost worker {} after {} leases: {}", worker, completedLeases, exe.toString());
+        } catch (InterruptedException exe) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (lease != null) {
+                logger.info("Reassigning lease {} of test suite {}", lease.leaseId(), lease.testSuiteId());
+                leaseBook.release(lease.leaseId());
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.dfa.DfaMatcherCache;
+import edu.institution.lab.evaluation.evaluation.AutoCloseableExecutorService;
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.evaluation.EvaluationBudget;
+import edu.institution.lab.evaluation.evaluation.EvaluationOptions;
+import edu.institution.lab.evaluation.evaluation.ExecutionContexts;
+import edu.institution.lab.evaluation.evaluation.TestSuiteEvaluator;
+import edu.institution.lab.evaluation.index.RequiredTrigramCache;
+import edu.institution.lab.evaluation.index.TrigramIndex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.MatchMemo;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates leases from an {@link EvaluationCoordinator}. A worker opens one connection per slot, and each slot
+ * evaluates its lease with a {@link TestSuiteEvaluator} on the job executor, just like a local evaluation does with a
+ * whole test suite. Caches are shared by the slots, because leases of the same project carry the same candidates.
+ */
+public final class EvaluationWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(EvaluationWorker.class);
+
+    /// how long to wait between attempts to reach a coordinator that isn't listening yet
+    private static final Duration CONNECT_RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    private final String host;
+    private final int port;
+    private final int slots;
+    /// number of discriminative strings to screen candidates with, or 0 for no screen
+    private final int screenSize;
+    /// how long to keep trying to reach the coordinator
+    private final Duration connectTimeout;
+    /// how jobs and safe matches are mapped onto threads, how threaded matches are limited, and the budgets of a run
+    private final EvaluationOptions options;
+
+    public EvaluationWorker(String host, int port, int slots, int screenSize, Duration connectTimeout) {
+        this(host, port, slots, screenSize, connectTimeout, EvaluationOptions.DEFAULT);
+    }
+
+    public EvaluationWorker(String host, int port, int slots, int screenSize, Duration connectTimeout, EvaluationOptions options) {
+        this.host = host;
+        this.port = port;
+        this.slots = slots;
+        this.screenSize = screenSize;
+        this.connectTimeout = connectTimeout;
+        this.options = options;
+    }
+
+    /**
+     * Evaluate leases until the coordinator runs out of work
+     * @return how many leases this worker completed
+     */
+    public int run() throws InterruptedException, ExecutionException {
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(options.executionModel());
+             AutoCloseableExecutorService slotExecutor = new AutoCloseableExecutorService(Executors.newFixedThreadPool(slots))) {
+
+            DfaMatcherCache dfaMatcherCache = new DfaMatcherCache();
+            RequiredTrigramCache requiredTrigramCache = new RequiredTrigramCache();
+            AdaptiveTimeoutPolicy timeoutPolicy = options.newTimeoutPolicy();
+            // workers have no database, so quarantines only last for this worker's leases
+            MatchContext matchContext = new MatchContext(executionContexts.getSafeExecutionContext(), new InlineMatchPolicy(), new MatchMemo(), new PatternCircuitBreaker(), timeoutPolicy);
+            // a test suite split over several leases of this worker shares one budget
+            EvaluationBudget budget = options.newBudget();
+
+            List<Future<Integer>> slotFutures = new ArrayList<>();
+            for (int slot = 0; slot < slots; slot++) {
+                slotFutures.add(slotExecutor.submit(() -> serveSlot(executionContexts, matchContext, dfaMatcherCache, requiredTrigramCache, budget)));
+            }
+
+            int completedLeases = 0;
+            for (Future<Integer> slotFuture : slotFutures) {
+                completedLeases += slotFuture.get();
+            }
+
+            logger.info("Worker completed {} leases", completedLeases);
+            if (timeoutPolicy != null) {
+                logger.info("{}", timeoutPolicy);
+            }
+            if (budget != null) {
+                logger.info("{}", budget);
+            }
+            return completedLeases;
+        }
+    }
+
+    /**
+     * Evaluate leases over one connection until the coordinator runs out of work. If the connection breaks, the
+     * coordinator hands the slot's lease to another worker, so the slot just connects again and carries on, without
+     * disturbing the other slots.
+     * @return how many leases this slot completed
+     */
+    private int serveSlot(ExecutionContexts executionContexts,
+                          MatchContext matchContext,
+                          DfaMatcherCache dfaMatcherCache,
+                          RequiredTrigramCache requiredTrigramCache,
+                          EvaluationBudget budget) throws Exception {
+        int completedLeases = 0;
+        while (true) {
+            // a coordinator that can't be reached again within the connect timeout is gone, which ends the worker
+            Socket socket = connect();
+            try (socket;
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+                for (CoordinatorMessage message = WorkProtocol.receive(reader, CoordinatorMessage.class);
+                     message.lease() != null;
+                     message = WorkProtocol.receive(reader, CoordinatorMessage.class)) {
+                    WorkLease lease = message.lease();
+                    logger.debug("evaluating lease {}: {} candidates against test suite {}", lease.leaseId(), lease.candidates().size(), lease.testSuiteId());
+
+                    List<CompiledRegexEntity> candidates = lease.candidates().stream()
+                            .flatMap(candidate -> CompiledRegexEntity.tryCompile(candidate).stream())
+                            .map(dfaMatcherCache::attach)
+                            .toList();
+                    TrigramIndex candidateIndex = TrigramIndex.build(candidates, requiredTrigramCache::get);
+                    RegexTestSuite testSuite = lease.toTestSuite();
+                    // the slot thread only talks to the coordinator, the evaluation itself runs on the job executor
+                    Set<RegexTestSuiteSolution> solutions = executionContexts.getJobExecutor()
+                            .submit(new TestSuiteEvaluator(matchContext, testSuite, candidateIndex, 1.00, screenSize, budget))
+                            .get()
+                            .getOrDefault(testSuite.id(), Set.of());
+
+                    WorkProtocol.send(writer, new WorkResult(lease.leaseId(), List.copyOf(solutions)));
+                    completedLeases++;
+                }
+
+                return completedLeases;
+            } catch (IOException exe) {
+                logger.warn("Slot lost its connection to the coordinator after {} leases, reconnecting: {}", completedLeases, exe.toString());
+            }
+        }
+    }
+
+    private Socket connect() throws IOException, InterruptedException {
+        Instant giveUp = Instant.now().plus(connectTimeout);
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException exe) {
+                if (Instant.now().isAfter(giveUp)) {
+                    throw exe;
+                }
+                Thread.sleep(CONNECT_RETRY_INTERVAL.toMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.evaluation.CostModel;
+import edu.institution.lab.evaluation.model.CandidateRegex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps track of the leases of a coordinator run. Projects are pulled from a {@link LeaseSource} as workers run out of
+ * leases, and cut into leases of roughly equal cost, so a project with a few huge test suites is spread over many
+ * workers instead of holding one up. A lease is outstanding from when a worker acquires it until the worker completes
+ * it. If the worker is lost, the lease is released and handed to the next worker that asks, unless the lease has lost
+ * too many workers already, in which case it is likely what kills them and the run fails. Once every lease of a project
+ * is complete, the project's results are passed to a {@link ProjectResultSink}. This class is thread safe.
+ */
+public final class LeaseBook {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseBook.class);
+
+    /// how many workers may be handed a lease before the run fails, unless specified otherwise
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Progress of a test suite whose leases are not all complete yet
+     */
+    private static final class SuiteProgress {
+        private final long projectId;
+        private int remainingLeases;
+        private final Set<RegexTestSuiteSolution> solutions = new HashSet<>();
+
+        private SuiteProgress(long projectId, int remainingLeases) {
+            this.projectId = projectId;
+            this.remainingLeases = remainingLeases;
+        }
+    }
+
+    /**
+     * Progress of a project that has not been saved yet
+     */
+    private static final class ProjectProgress {
+        private int remainingSuites;
+        private final Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions = new HashMap<>();
+
+        private ProjectProgress(int remainingSuites) {
+            this.remainingSuites = remainingSuites;
+        }
+    }
+
+    private final LeaseSource source;
+    private final ProjectResultSink sink;
+    /// leases are cut so their estimated cost is about this much, unless a single candidate costs more
+    private final long targetLeaseCost;
+    /// how many workers may be handed a lease, after which losing it fails the run
+    private final int maxAttempts;
+
+    private final Deque<WorkLease> pending = new ArrayDeque<>();
+    private final Map<Long, WorkLease> outstanding = new HashMap<>();
+    /// how many workers lost each lease that was released but not completed yet
+    private final Map<Long, Integer> lostAttempts = new HashMap<>();
+    private final Map<Long, SuiteProgress> suites = new HashMap<>();
+    /// projects that have been pulled from the source, but not saved yet
+    private final Map<Long, ProjectProgress> projects = new HashMap<>();
+    private long nextLeaseId;
+    /// true while some thread is pulling the next project from the source
+    private boolean preparing;
+    private boolean sourceExhausted;
+    private Exception failure;
+    private long releasedLeases;
+
+    public LeaseBook(LeaseSource source, ProjectResultSink sink, long targetLeaseCost) {
+        this(source, sink, targetLeaseCost, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @param maxAttempts How many workers may be handed a lease. If the last of them is lost too, the run fails
+     */
+    public LeaseBook(LeaseSource source, ProjectResultSink sink, long targetLeaseCost, int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("a lease needs at least one attempt");
+        }
+        this.source = source;
+        this.sink = sink;
+        this.targetLeaseCost = targetLeaseCost;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Estimate how expensive it is to evaluate a single candidate against a test suite, see
+     * {@link CostModel#baseCost(RegexTestSuite)}
+     */
+    public static long estimateCost(RegexTestSuite testSuite) {
+        return CostModel.baseCost(testSuite);
+    }
+
+    /**
+     * Acquire the next lease to evaluate, blocking until one is available. If no lease is pending, the calling thread
+     * pulls the next project from the source.
+     * @return The lease, or null once all work is done or the run failed
+     */
+    public WorkLease acquire() throws InterruptedException {
+        while (true) {
+            synchronized (this) {
+                while (true) {
+                    if (failure != null) {
+                        return null;
+                    }
+                    if (!pending.isEmpty()) {
+                        WorkLease lease = pending.poll();
+                        outstanding.put(lease.leaseId(), lease);
+                        return lease;
+                    }
+                    if (!sourceExhausted && !preparing) {
+                        preparing = true;
+                        break;
+                    }
+                    if (isFinished()) {
+                        return null;
+                    }
+                    wait();
+                }
+            }
+
+            prepareNextProject();
+        }
+    }
+
+    /**
+     * Complete a lease with the solutions that its worker found. Saves the lease's project if this was its last lease.
+     * Leases that are not outstanding, e.g. because they were already completed, are ignored.
+     */
+    public void complete(long leaseId, Collection<RegexTestSuiteSolution> solutions) {
+        long completedProject = -1;
+        Map<Long, Set<RegexTestSuiteSolution>> completedSolutions = null;
+        synchronized (this) {
+            WorkLease lease = outstanding.remove(leaseId);
+            if (lease == null) {
+                logger.warn("ignoring result for lease {}, which is not outstanding", leaseId);
+                return;
+            }
+            lostAttempts.remove(leaseId);
+
+            SuiteProgress suite = suites.get(lease.testSuiteId());
+            suite.solutions.addAll(solutions);
+            if (--suite.remainingLeases == 0) {
+                suites.remove(lease.testSuiteId());
+                ProjectProgress project = projects.get(suite.projectId);
+                project.testSuiteSolutions.put(lease.testSuiteId(), suite.solutions);
+                if (--project.remainingSuites == 0) {
+                    completedProject = suite.projectId;
+                    completedSolutions = project.testSuiteSolutions;
+                }
+            }
+            notifyAll();
+        }
+
+        if (completedSolutions != null) {
+            save(completedProject, completedSolutions);
+        }
+    }
+
+    /**
+     * Release an outstanding lease whose worker was lost, so another worker can take it over. If the lease already lost
+     * as many workers as it may be handed to, the run fails instead.
+     */
+    public void release(long leaseId) {
+        synchronized (this) {
+            WorkLease lease = outstanding.remove(leaseId);
+            if (lease == null) {
+                return;
+            }
+
+            int attempts = lostAttempts.merge(leaseId, 1, Integer::sum);
+            if (attempts >= maxAttempts) {
+                fail(new IllegalStateException(String.format("lease %d of test suite %d lost %d workers, giving up on it",
+                        leaseId, lease.testSuiteId(), attempts)));
+                return;
+            }
+            // the lease is the oldest pending work, so hand it out first
+            pending.addFirst(lease);
+            releasedLeases++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop handing out leases because the run cannot finish
+     */
+    public synchronized void fail(Exception cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Wait until every project has been saved
+     * @throws ExecutionException If the run failed
+     */
+    public synchronized void awaitFinished() throws InterruptedException, ExecutionException {
+        while (failure == null && !isFinished()) {
+            wait();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * @return how many leases were handed to another worker after losing their first one
+     */
+    public synchronized long getReleasedLeaseCount() {
+        return releasedLeases;
+    }
+
+    private boolean isFinished() {
+        return sourceExhausted && !preparing && pending.isEmpty() && outstanding.isEmpty() && projects.isEmpty();
+    }
+
+    private void prepareNextProject() {
+        Optional<ProjectWork> next;
+        try {
+            next = source.nextProject();
+        } catch (Exception exe) {
+            synchronized (this) {
+                preparing = false;
+            }
+            fail(exe);
+            return;
+        }
+
+        Map<Long, Set<RegexTestSuiteSolution>> emptyProjectSolutions = null;
+        synchronized (this) {
+            preparing = false;
+            if (next.isEmpty()) {
+                sourceExhausted = true;
+            } else if (addProject(next.get())) {
+                emptyProjectSolutions = projects.get(next.get().projectId()).testSuiteSolutions;
+            }
+            notifyAll();
+        }
+
+        // a project without leases is complete as soon as it is added
+        if (emptyProjectSolutions != null) {
+            save(next.get().projectId(), emptyProjectSolutions);
+        }
+    }
+
+    /**
+     * Cut a project into leases and queue them
+     * @return true if the project has no leases at all
+     */
+    private boolean addProject(ProjectWork work) {
+        List<CandidateRegex> candidates = work.candidates();
+        int leaseCount = 0;
+        int remainingSuites = 0;
+        for (RegexTestSuite testSuite : work.testSuites()) {
+            long candidateCost = Math.max(1, estimateCost(testSuite));
+            int chunkSize = (int) Math.max(1, Math.min(candidates.size(), targetLeaseCost / candidateCost));
+            int suiteLeases = 0;
+            for (int start = 0; start < candidates.size(); start += chunkSize) {
+                List<CandidateRegex> chunk = List.copyOf(candidates.subList(start, Math.min(candidates.size(), start + chunkSize)));
+                pending.add(new WorkLease(nextLeaseId++, work.projectId(), testSuite.id(), testSuite.regexId(), testSuite.pattern(),
+                        List.copyOf(testSuite.strings()), chunk, candidateCost * chunk.size()));
+                suiteLeases++;
+            }
+
+            if (suiteLeases > 0) {
+                suites.put(testSuite.id(), new SuiteProgress(work.projectId(), suiteLeases));
+                remainingSuites++;
+                leaseCount += suiteLeases;
+            }
+        }
+
+        ProjectProgress project = new ProjectProgress(remainingSuites);
+        // test suites without leases are solved by no candidate
+        for (RegexTestSuite testSuite : work.testSuites()) {
+            if (!suites.containsKey(testSuite.id())) {
+                project.testSuiteSolutions.put(testSuite.id(), new HashSet<>());
+            }
+        }
+        // the project stays registered until it is saved, so the run doesn't finish before that
+        projects.put(work.projectId(), project);
+        logger.info("Cut project {} into {} leases over {} test suites", work.projectId(), leaseCount, work.testSuites().size());
+        return remainingSuites == 0;
+    }
+
+    private void save(long projectId, Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions) {
+        // projects can be saved by several threads at once, it's up to the sink to serialize them if it has to
+        try {
+            sink.save(projectId, testSuiteSolutions);
+        } catch (Exception exe) {
+            fail(exe);
+            return;
+        }
+
+        synchronized (this) {
+            projects.remove(projectId);
+            notifyAll();
+        }
+    }
+}
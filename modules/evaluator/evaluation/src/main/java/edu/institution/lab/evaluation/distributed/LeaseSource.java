@@ -0,0 +1,14 @@
+package edu.institution.lab.evaluation.distributed;
+
+import java.util.Optional;
+
+/**
+ * Supplies a coordinator with work one project at a time, so only projects that are in progress are in memory
+ */
+@FunctionalInterface
+public interface LeaseSource {
+    /**
+     * @return The work of the next project, or empty once there are no projects left
+     */
+    Optional<ProjectWork> nextProject() throws Exception;
+}
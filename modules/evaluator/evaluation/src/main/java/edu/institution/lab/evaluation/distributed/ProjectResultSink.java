@@ -0,0 +1,18 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Receives the results of a project once every lease of the project is complete
+ */
+@FunctionalInterface
+public interface ProjectResultSink {
+    /**
+     * @param projectId The completed project
+     * @param testSuiteSolutions Solutions of each test suite of the project
+     */
+    void save(long projectId, Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions) throws Exception;
+}
@@ -0,0 +1,15 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.model.CandidateRegex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+
+import java.util.List;
+
+/**
+ * All the work of a project, before it is cut into leases
+ * @param projectId The project
+ * @param testSuites The test suites of the project
+ * @param candidates The candidates to evaluate against every test suite
+ */
+public record ProjectWork(long projectId, List<RegexTestSuite> testSuites, List<CandidateRegex> candidates) {
+}
@@ -0,0 +1,38 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.model.CandidateRegex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A unit of distributed work: evaluate one chunk of a project's candidates against one test suite. A lease carries
+ * everything a worker needs, so workers never touch the database.
+ * @param leaseId Unique id of this lease within a coordinator run
+ * @param projectId The project of the test suite and candidates
+ * @param testSuiteId The test suite to evaluate
+ * @param truthRegexId The regex the test suite was built from
+ * @param truthPattern The pattern of the truth regex
+ * @param strings The strings of the test suite
+ * @param candidates The chunk of candidates to evaluate
+ * @param cost Estimated cost of the lease, see {@link LeaseBook#estimateCost(RegexTestSuite)}
+ */
+public record WorkLease(
+        long leaseId,
+        long projectId,
+        long testSuiteId,
+        long truthRegexId,
+        String truthPattern,
+        List<RegexTestSuiteString> strings,
+        List<CandidateRegex> candidates,
+        long cost
+) {
+    /**
+     * Rebuild the test suite on the worker. Coverages are not sent, because evaluation doesn't need them
+     */
+    public RegexTestSuite toTestSuite() {
+        return new RegexTestSuite(testSuiteId, projectId, truthRegexId, truthPattern, new LinkedHashSet<>(strings), null, null);
+    }
+}
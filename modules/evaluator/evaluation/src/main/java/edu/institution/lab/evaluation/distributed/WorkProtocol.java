@@ -0,0 +1,41 @@
+package edu.institution.lab.evaluation.distributed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The wire format between coordinator and workers: one JSON message per line. The coordinator sends a
+ * {@link CoordinatorMessage}, the worker answers with a {@link WorkResult}, and so on until the coordinator runs out
+ * of work.
+ */
+final class WorkProtocol {
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private WorkProtocol() {
+    }
+
+    static void send(Writer writer, Object message) throws IOException {
+        writer.write(mapper.writeValueAsString(message));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * @throws EOFException If the other side closed the connection
+     */
+    static <T> T receive(BufferedReader reader, Class<T> messageType) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new EOFException("connection closed");
+        }
+
+        return mapper.readValue(line, messageType);
+    }
+}
@@ -0,0 +1,13 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+
+import java.util.List;
+
+/**
+ * What a worker sends back after finishing a lease
+ * @param leaseId The lease that was evaluated
+ * @param solutions Every candidate of the lease that solves its test suite
+ */
+public record WorkResult(long leaseId, List<RegexTestSuiteSolution> solutions) {
+}
@@ -0,0 +1,53 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.SafeMatcher;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Evaluates a single candidate against every test suite of a project. This inverts the loop of
+ * {@link TestSuiteEvaluator}: the candidate gets one {@link SafeMatcher} for the whole project, so its inline matcher is
+ * created once and reset for every string of every test suite instead of being rebuilt for each test suite.
+ */
+public class CandidateEvaluator implements Callable<Map<Long, Set<RegexTestSuiteSolution>>> {
+
+    /// shared by the whole run
+    private final MatchContext matchContext;
+
+    /**
+     * Evaluators for each test suite in the project. They must all share the same candidate list
+     */
+    private final List<TestSuiteEvaluator> testSuiteEvaluators;
+
+    /**
+     * The candidate to evaluate, and its position in the evaluators' candidate list
+     */
+    private final CompiledRegexEntity candidate;
+    private final int position;
+
+    public CandidateEvaluator(List<TestSuiteEvaluator> testSuiteEvaluators, CompiledRegexEntity candidate, int position, MatchContext matchContext) {
+        this.matchContext = matchContext;
+        this.testSuiteEvaluators = testSuiteEvaluators;
+        this.candidate = candidate;
+        this.position = position;
+    }
+
+    /**
+     * @return solutions by test suite id. Only test suites that the candidate is a solution for are included
+     */
+    @Override
+    public Map<Long, Set<RegexTestSuiteSolution>> call() throws Exception {
+        SafeMatcher safeMatcher = new SafeMatcher(candidate.regexPattern(), matchContext);
+
+        Map<Long, Set<RegexTestSuiteSolution>> solutions = new HashMap<>();
+        for (TestSuiteEvaluator testSuiteEvaluator : testSuiteEvaluators) {
+            testSuiteEvaluator.evaluateCandidate(position, safeMatcher)
+                    .ifPresent(solution -> solutions.put(testSuiteEvaluator.getTestSuite().id(), Set.of(solution)));
+        }
+
+        return solutions;
+    }
+}
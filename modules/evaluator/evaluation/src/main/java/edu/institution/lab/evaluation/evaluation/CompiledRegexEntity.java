@@ -1,5 +1,7 @@
 package edu.institution.lab.evaluation.evaluation;
 
+import edu.institution.lab.evaluation.dfa.DfaMatcher;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
 import edu.institution.lab.evaluation.model.CandidateRegex;
 
 import java.util.Optional;
@@ -12,24 +14,52 @@ import java.util.regex.PatternSyntaxException;
  * @param id The regex's unique id
  * @param projectId The project that originated this regex
  * @param regexPattern The compiled regex.
+ * @param dfaMatcher A DFA for full matching this regex, or null if the regex is not eligible for one
  */
 public record CompiledRegexEntity(
         long id,
         long projectId,
-        Pattern regexPattern
+        Pattern regexPattern,
+        DfaMatcher dfaMatcher
 ) {
 
+    public CompiledRegexEntity(long id, long projectId, Pattern regexPattern) {
+        this(id, projectId, regexPattern, null);
+    }
+
     /**
      * Try to compile a regex entity into a regex. Return empty optional if regex cannot be compiled
      * @param regex candidate regex to try to compile
      * @return Filled optional if valid, or empty if there is a syntax error
      */
     public static Optional<CompiledRegexEntity> tryCompile(CandidateRegex regex) {
+        return tryCompile(regex, null);
+    }
+
+    /**
+     * Try to compile a regex entity into a regex, and record how long compiling took
+     * @param regex candidate regex to try to compile
+     * @param ledger Where the compile time is recorded, or null
+     * @return Filled optional if valid, or empty if there is a syntax error
+     */
+    public static Optional<CompiledRegexEntity> tryCompile(CandidateRegex regex, PatternCostLedger ledger) {
         try {
+            long startNanos = System.nanoTime();
             Pattern regexEntityPattern = Pattern.compile(regex.pattern());
+            if (ledger != null) {
+                ledger.recordRegexCompile(regex.pattern(), System.nanoTime() - startNanos);
+            }
             return Optional.of(new CompiledRegexEntity(regex.id(), regex.projectId(), regexEntityPattern));
         } catch (PatternSyntaxException | StackOverflowError exe) {
             return Optional.empty();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param dfaMatcher DFA matcher for this entity's pattern
+     * @return a copy of this entity with the given DFA matcher
+     */
+    public CompiledRegexEntity withDfaMatcher(DfaMatcher dfaMatcher) {
+        return new CompiledRegexEntity(id, projectId, regexPattern, dfaMatcher);
+    }
+}
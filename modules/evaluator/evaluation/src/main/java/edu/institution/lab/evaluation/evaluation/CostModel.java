@@ -0,0 +1,112 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates how long it takes to evaluate a chunk of candidates against a test suite. The base cost of a candidate is
+ * the total length of the test suite's strings, plus one per string for the per-match overhead. Each pattern also has
+ * a factor that is learned from how long earlier units containing it took compared to their base cost, so patterns
+ * that backtrack a lot are scheduled as the expensive work they are. Patterns recur between test suites and projects,
+ * so the history carries over. With a {@link PatternCostLedger}, patterns that have not been seen in this run yet start
+ * out with the factor that their match latencies in earlier runs give them. Estimates are only ever compared to each
+ * other, so they have no unit. This class is thread safe.
+ */
+public final class CostModel {
+
+    /// how much a single observation moves a pattern's factor
+    private static final double HISTORY_WEIGHT = 0.25;
+    /// how much a single observation moves the average time per unit of base cost
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    private final Map<String, Double> patternFactors = new ConcurrentHashMap<>();
+    /// average nanoseconds per unit of base cost, or NaN before the first observation
+    private volatile double averageNanosPerCost = Double.NaN;
+    /// costs of earlier runs, or null
+    private final PatternCostLedger ledger;
+
+    public CostModel() {
+        this(null);
+    }
+
+    public CostModel(PatternCostLedger ledger) {
+        this.ledger = ledger;
+    }
+
+    /**
+     * @return The cost of evaluating a single average candidate against a test suite
+     */
+    public static long baseCost(RegexTestSuite testSuite) {
+        long cost = 0;
+        for (RegexTestSuiteString string : testSuite.strings()) {
+            cost += string.subject().length() + 1;
+        }
+        return cost;
+    }
+
+    /**
+     * @return How much more expensive than average the pattern has been so far, or its factor from earlier runs if it
+     * hasn't been seen
+     */
+    public double patternFactor(String pattern) {
+        Double factor = patternFactors.get(pattern);
+        if (factor != null) {
+            return factor;
+        }
+        return ledger == null ? 1.0 : ledger.costFactor(pattern);
+    }
+
+    /**
+     * @return The estimated cost of evaluating the candidates against the test suite
+     */
+    public double estimate(RegexTestSuite testSuite, List<CompiledRegexEntity> candidates) {
+        double factors = 0;
+        for (CompiledRegexEntity candidate : candidates) {
+            factors += patternFactor(candidate.regexPattern().pattern());
+        }
+        return baseCost(testSuite) * factors;
+    }
+
+    /**
+     * Learn from how long a unit took. The unit's time is spread evenly over its candidates, so patterns that are
+     * often evaluated together converge to the cost of their chunk.
+     * @param baseCost The base cost of the unit's test suite
+     * @param candidates The candidates of the unit
+     * @param elapsedNanos How long the unit took
+     */
+    public void record(long baseCost, List<CompiledRegexEntity> candidates, long elapsedNanos) {
+        if (candidates.isEmpty() || baseCost == 0) {
+            return;
+        }
+
+        double nanosPerCost = (double) elapsedNanos / ((double) baseCost * candidates.size());
+        double average;
+        synchronized (this) {
+            average = Double.isNaN(averageNanosPerCost)
+                    ? nanosPerCost
+                    : (1 - AVERAGE_WEIGHT) * averageNanosPerCost + AVERAGE_WEIGHT * nanosPerCost;
+            averageNanosPerCost = average;
+        }
+
+        if (average <= 0) {
+            return;
+        }
+
+        double observedFactor = nanosPerCost / average;
+        for (CompiledRegexEntity candidate : candidates) {
+            String pattern = candidate.regexPattern().pattern();
+            patternFactors.compute(pattern, (ignored, previous) -> {
+                if (previous == null && ledger == null) {
+                    return observedFactor;
+                }
+                double prior = previous == null ? ledger.costFactor(pattern) : previous;
+                return (1 - HISTORY_WEIGHT) * prior + HISTORY_WEIGHT * observedFactor;
+            });
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Schedules evaluation work across project boundaries. Every test suite of a project is cut into units of one chunk of
+ * candidates each, and units of all open projects wait in a single queue, ordered by their estimated cost. The
+ * costliest unit is always submitted first, so long units start early and short ones fill the gaps at the end,
+ * instead of all cores waiting on the last test suite of a project before the next project starts. A project is
+ * completed as soon as its last unit is, regardless of the other open projects.
+ * <br>
+ * This class is not thread safe: it is driven by a single thread, while the units run on the job executor.
+ */
+public final class CostScheduler {
+
+    /**
+     * The solutions of a project whose units are all complete
+     * @param projectId The project
+     * @param testSuiteSolutions Solutions of each test suite of the project
+     */
+    public record CompletedProject(long projectId, Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions) {}
+
+    /**
+     * A chunk of candidates to evaluate against a test suite
+     */
+    private record ScheduledUnit(OpenProject project, RegexTestSuite testSuite, List<CompiledRegexEntity> candidates, long baseCost, double estimatedCost) {}
+
+    /**
+     * A finished unit, with how long it took
+     */
+    private record FinishedUnit(ScheduledUnit unit, Set<RegexTestSuiteSolution> solutions, long elapsedNanos) {}
+
+    /**
+     * A project that has units left
+     */
+    private static final class OpenProject {
+        private final long projectId;
+        private final Map<Long, Set<RegexTestSuiteSolution>> testSuiteSolutions = new HashMap<>();
+        private int remainingUnits;
+
+        private OpenProject(long projectId) {
+            this.projectId = projectId;
+        }
+    }
+
+    private final CompletionService<FinishedUnit> completionService;
+    /// how many units may be submitted to the executor at once. The rest wait in the queue so they can be reordered
+    private final int maxRunningUnits;
+    /// units are cut so their base cost is about this much, unless a single candidate costs more
+    private final long targetUnitCost;
+    private final CostModel costModel;
+    /// turns a unit into the job that evaluates it
+    private final BiFunction<RegexTestSuite, List<CompiledRegexEntity>, Callable<Map<Long, Set<RegexTestSuiteSolution>>>> unitEvaluator;
+
+    private final PriorityQueue<ScheduledUnit> queuedUnits = new PriorityQueue<>(Comparator.comparingDouble(ScheduledUnit::estimatedCost).reversed());
+    private final List<CompletedProject> completedProjects = new ArrayList<>();
+    private int openProjects;
+    private int runningUnits;
+
+    /**
+     * @param jobExecutor Executor to run units on
+     * @param maxRunningUnits How many units may be submitted at once
+     * @param targetUnitCost About how much base cost to put in each unit, see {@link CostModel#baseCost(RegexTestSuite)}
+     * @param costModel Estimates the cost of units, and learns from the units that finish
+     * @param unitEvaluator Creates the job that evaluates a chunk of candidates against a test suite
+     */
+    public CostScheduler(ExecutorService jobExecutor,
+                         int maxRunningUnits,
+                         long targetUnitCost,
+                         CostModel costModel,
+                         BiFunction<RegexTestSuite, List<CompiledRegexEntity>, Callable<Map<Long, Set<RegexTestSuiteSolution>>>> unitEvaluator) {
+        this.completionService = new ExecutorCompletionService<>(jobExecutor);
+        this.maxRunningUnits = maxRunningUnits;
+        this.targetUnitCost = targetUnitCost;
+        this.costModel = costModel;
+        this.unitEvaluator = unitEvaluator;
+    }
+
+    /**
+     * Cut a project into units and queue them
+     * @param projectId The project
+     * @param testSuites The test suites of the project
+     * @param candidates The candidates to evaluate against every test suite
+     */
+    public void addProject(long projectId, List<RegexTestSuite> testSuites, List<CompiledRegexEntity> candidates) {
+        OpenProject project = new OpenProject(projectId);
+        for (RegexTestSuite testSuite : testSuites) {
+            // every test suite gets a result, even if no candidate solves it
+            project.testSuiteSolutions.put(testSuite.id(), new HashSet<>());
+
+            long baseCost = CostModel.baseCost(testSuite);
+            int chunkSize = (int) Math.max(1, Math.min(candidates.size(), targetUnitCost / Math.max(1, baseCost)));
+            for (int start = 0; start < candidates.size(); start += chunkSize) {
+                List<CompiledRegexEntity> chunk = candidates.subList(start, Math.min(candidates.size(), start + chunkSize));
+                queuedUnits.add(new ScheduledUnit(project, testSuite, chunk, baseCost, costModel.estimate(testSuite, chunk)));
+                project.remainingUnits++;
+            }
+        }
+
+        if (project.remainingUnits == 0) {
+            completedProjects.add(new CompletedProject(projectId, project.testSuiteSolutions));
+        } else {
+            openProjects++;
+        }
+    }
+
+    /**
+     * @return how many projects have units that are queued or running
+     */
+    public int getOpenProjectCount() {
+        return openProjects;
+    }
+
+    /**
+     * @return true if there is nothing to run and nothing to report
+     */
+    public boolean isIdle() {
+        return queuedUnits.isEmpty() && runningUnits == 0 && completedProjects.isEmpty();
+    }
+
+    /**
+     * Submit the costliest queued units until the executor is full, then wait for units to finish
+     * @param timeout How long to wait for the first unit to finish
+     * @return Projects that were completed since the last call, possibly none
+     */
+    public List<CompletedProject> awaitProgress(Duration timeout) throws InterruptedException, ExecutionException {
+        while (runningUnits < maxRunningUnits && !queuedUnits.isEmpty()) {
+            submit(queuedUnits.poll());
+        }
+
+        if (runningUnits > 0 && completedProjects.isEmpty()) {
+            Future<FinishedUnit> finished = completionService.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            // collect everything else that is done, so a burst of short units only takes one round
+            while (finished != null) {
+                finish(finished.get());
+                finished = completionService.poll();
+            }
+        }
+
+        List<CompletedProject> completed = List.copyOf(completedProjects);
+        completedProjects.clear();
+        return completed;
+    }
+
+    private void submit(ScheduledUnit unit) {
+        Callable<Map<Long, Set<RegexTestSuiteSolution>>> evaluator = unitEvaluator.apply(unit.testSuite(), unit.candidates());
+        completionService.submit(() -> {
+            long start = System.nanoTime();
+            Set<RegexTestSuiteSolution> solutions = evaluator.call().getOrDefault(unit.testSuite().id(), Set.of());
+            return new FinishedUnit(unit, solutions, System.nanoTime() - start);
+        });
+        runningUnits++;
+    }
+
+    private void finish(FinishedUnit finished) {
+        runningUnits--;
+        ScheduledUnit unit = finished.unit();
+        costModel.record(unit.baseCost(), unit.candidates(), finished.elapsedNanos());
+
+        OpenProject project = unit.project();
+        project.testSuiteSolutions.get(unit.testSuite().id()).addAll(finished.solutions());
+        if (--project.remainingUnits == 0) {
+            openProjects--;
+            completedProjects.add(new CompletedProject(project.projectId, project.testSuiteSolutions));
+        }
+    }
+}
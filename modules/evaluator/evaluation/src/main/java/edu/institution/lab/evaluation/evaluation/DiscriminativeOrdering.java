@@ -0,0 +1,92 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Orders the strings of a test suite so that strings that reject the most candidates are tried first. Candidates stop
+ * being evaluated as soon as they can no longer reach the accuracy threshold, so trying discriminative strings early
+ * means less work per rejected candidate.
+ * <br>
+ * Rejection rates are learned while the test suite is evaluated. Until a string has been tried a few times its rate is
+ * unknown, so ties are broken by trying short strings first. This class is thread safe.
+ */
+final class DiscriminativeOrdering {
+
+    /// number of recorded results between recomputing the order
+    private static final int REORDER_INTERVAL = 64;
+
+    /**
+     * A fixed order of the test suite strings
+     * @param order the index of each string in the original list, in the order they should be tried
+     * @param strings the strings in that order
+     * @param subjects the subjects of those strings
+     */
+    record Snapshot(int[] order, List<RegexTestSuiteString> strings, List<String> subjects) {
+    }
+
+    private final List<RegexTestSuiteString> strings;
+    private final AtomicIntegerArray evaluated;
+    private final AtomicIntegerArray rejected;
+    private final AtomicInteger recordedSinceReorder;
+    private volatile Snapshot snapshot;
+
+    DiscriminativeOrdering(List<RegexTestSuiteString> strings) {
+        this.strings = strings;
+        this.evaluated = new AtomicIntegerArray(strings.size());
+        this.rejected = new AtomicIntegerArray(strings.size());
+        this.recordedSinceReorder = new AtomicInteger();
+        this.snapshot = computeSnapshot();
+    }
+
+    /**
+     * @return the current order. It does not change while a caller holds it
+     */
+    Snapshot current() {
+        return snapshot;
+    }
+
+    /**
+     * Record the outcome of evaluating a candidate against a string
+     * @param stringIdx index of the string in the original list
+     * @param rejectedCandidate true if the candidate got the string wrong
+     */
+    void record(int stringIdx, boolean rejectedCandidate) {
+        evaluated.incrementAndGet(stringIdx);
+        if (rejectedCandidate) {
+            rejected.incrementAndGet(stringIdx);
+        }
+
+        if (recordedSinceReorder.incrementAndGet() % REORDER_INTERVAL == 0) {
+            snapshot = computeSnapshot();
+        }
+    }
+
+    /**
+     * @param stringIdx index of the string in the original list
+     * @return the smoothed fraction of candidates the string rejected
+     */
+    double rejectionRate(int stringIdx) {
+        return (rejected.get(stringIdx) + 1) / (double) (evaluated.get(stringIdx) + 2);
+    }
+
+    private Snapshot computeSnapshot() {
+        double[] rates = IntStream.range(0, strings.size()).mapToDouble(this::rejectionRate).toArray();
+        int[] order = IntStream.range(0, strings.size())
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(idx -> -rates[idx])
+                        .thenComparingInt(idx -> strings.get(idx).subject().length())
+                        .thenComparingInt(idx -> idx))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        List<RegexTestSuiteString> orderedStrings = IntStream.of(order).mapToObj(strings::get).toList();
+        List<String> subjects = orderedStrings.stream().map(RegexTestSuiteString::subject).toList();
+        return new Snapshot(order, orderedStrings, subjects);
+    }
+}
@@ -0,0 +1,145 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wall-clock budgets that bound how long a test suite can take. Without them, the worst case of a single test suite is
+ * every candidate timing out on every string, in every mode. Each test suite gets a budget that starts when work on it
+ * first asks for its deadline, and each candidate gets a budget of its own on a test suite, which never reaches past
+ * the test suite's.
+ * <br>
+ * Work that is left when a budget runs out is not run. Its verdicts stay undetermined, and it is counted here instead.
+ * A budget is shared by a whole run, so a test suite that is split over several evaluators still only gets one budget.
+ * <br>
+ * Budgets are opt-in: with a budget, whether a slow candidate gets a verdict depends on how busy the machine is, not
+ * only on the candidate. Runs without one pass null wherever a budget is taken.
+ */
+public class EvaluationBudget {
+
+    /// how long a test suite may take across all of its candidates, or null if that is unbounded
+    private final Duration suiteBudget;
+    /// how long a single candidate may take on a single test suite, or null if that is unbounded
+    private final Duration candidateBudget;
+
+    /// when the budget of each test suite that was started runs out
+    private final Map<Long, Instant> suiteDeadlines = new ConcurrentHashMap<>();
+    /// test suites that had work skipped or cut short
+    private final Set<Long> overBudgetSuites = ConcurrentHashMap.newKeySet();
+    private final LongAdder skippedCandidates = new LongAdder();
+    private final LongAdder cutShortCandidates = new LongAdder();
+
+    /**
+     * @param suiteBudget How long a test suite may take across all of its candidates, or null or zero if that is
+     *                    unbounded
+     * @param candidateBudget How long a single candidate may take on a single test suite, or null or zero if that is
+     *                        unbounded
+     */
+    public EvaluationBudget(Duration suiteBudget, Duration candidateBudget) {
+        if ((suiteBudget != null && suiteBudget.isNegative()) || (candidateBudget != null && candidateBudget.isNegative())) {
+            throw new IllegalArgumentException("budgets must not be negative");
+        }
+        if (isUnbounded(suiteBudget) && isUnbounded(candidateBudget)) {
+            throw new IllegalArgumentException("at least one budget must be bounded");
+        }
+
+        this.suiteBudget = isUnbounded(suiteBudget) ? null : suiteBudget;
+        this.candidateBudget = isUnbounded(candidateBudget) ? null : candidateBudget;
+    }
+
+    /**
+     * @param suiteBudget How long a test suite may take across all of its candidates, or null or zero if that is
+     *                    unbounded
+     * @param candidateBudget How long a single candidate may take on a single test suite, or null or zero if that is
+     *                        unbounded
+     * @return a budget, or null if both are unbounded
+     */
+    public static EvaluationBudget of(Duration suiteBudget, Duration candidateBudget) {
+        if (isUnbounded(suiteBudget) && isUnbounded(candidateBudget)) {
+            return null;
+        }
+        return new EvaluationBudget(suiteBudget, candidateBudget);
+    }
+
+    private static boolean isUnbounded(Duration budget) {
+        return budget == null || budget.isZero();
+    }
+
+    /**
+     * @return when the budget of the test suite runs out, or null if test suites are unbounded. The budget starts on
+     * the first call for a test suite
+     */
+    public Instant suiteDeadline(long testSuiteId) {
+        if (suiteBudget == null) {
+            return null;
+        }
+        return suiteDeadlines.computeIfAbsent(testSuiteId, ignored -> Instant.now().plus(suiteBudget));
+    }
+
+    /**
+     * @return when the budget of a candidate that starts on the test suite now runs out
+     */
+    public Instant candidateDeadline(long testSuiteId) {
+        Instant suiteDeadline = suiteDeadline(testSuiteId);
+        if (candidateBudget == null) {
+            return suiteDeadline;
+        }
+        Instant candidateDeadline = Instant.now().plus(candidateBudget);
+        return suiteDeadline == null || candidateDeadline.isBefore(suiteDeadline) ? candidateDeadline : suiteDeadline;
+    }
+
+    /**
+     * @return true if the test suite has no budget left, so none of its remaining candidates should start
+     */
+    public boolean isSuiteExhausted(long testSuiteId) {
+        Instant suiteDeadline = suiteDeadline(testSuiteId);
+        return suiteDeadline != null && !Instant.now().isBefore(suiteDeadline);
+    }
+
+    /**
+     * Record a candidate that was not run on a test suite, because the test suite had no budget left
+     */
+    public void recordSkipped(long testSuiteId) {
+        overBudgetSuites.add(testSuiteId);
+        skippedCandidates.increment();
+    }
+
+    /**
+     * Record a candidate that was left undetermined on a test suite, because a budget ran out while it was running
+     */
+    public void recordCutShort(long testSuiteId) {
+        overBudgetSuites.add(testSuiteId);
+        cutShortCandidates.increment();
+    }
+
+    /**
+     * @return how many test suites had work skipped or cut short
+     */
+    public int getOverBudgetSuiteCount() {
+        return overBudgetSuites.size();
+    }
+
+    /**
+     * @return how many candidates were not run on a test suite, because the test suite had no budget left
+     */
+    public long getSkippedCandidateCount() {
+        return skippedCandidates.sum();
+    }
+
+    /**
+     * @return how many candidates were left undetermined, because a budget ran out while they were running
+     */
+    public long getCutShortCandidateCount() {
+        return cutShortCandidates.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("budgets of %s per test suite and %s per candidate: %d test suites over budget, %d candidates skipped, %d cut short",
+                suiteBudget == null ? "unbounded" : suiteBudget, candidateBudget == null ? "unbounded" : candidateBudget, getOverBudgetSuiteCount(), getSkippedCandidateCount(), getCutShortCandidateCount());
+    }
+}
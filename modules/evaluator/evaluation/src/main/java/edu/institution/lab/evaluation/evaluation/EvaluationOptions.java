@@ -0,0 +1,52 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.TimeoutMode;
+
+import java.time.Duration;
+
+/**
+ * How a command runs its evaluations, as chosen on the command line. The options are built once per command and passed
+ * to whichever service runs the evaluations. They only describe the run: every run creates its own timeout policy and
+ * budget from them.
+ * @param executionModel how jobs and safe matches are mapped onto threads
+ * @param timeoutMode how the limits of threaded matches are chosen
+ * @param suiteBudget how long a test suite may take, or null if that is unbounded
+ * @param candidateBudget how long a single candidate may take on a test suite, or null if that is unbounded
+ */
+public record EvaluationOptions(
+        ExecutionModel executionModel,
+        TimeoutMode timeoutMode,
+        Duration suiteBudget,
+        Duration candidateBudget
+) {
+
+    /// separate pools, shadowed timeouts and no budgets
+    public static final EvaluationOptions DEFAULT = new EvaluationOptions(ExecutionModel.SEPARATE_POOLS, TimeoutMode.SHADOW, null, null);
+
+    public EvaluationOptions withExecutionModel(ExecutionModel executionModel) {
+        return new EvaluationOptions(executionModel, timeoutMode, suiteBudget, candidateBudget);
+    }
+
+    public EvaluationOptions withTimeoutMode(TimeoutMode timeoutMode) {
+        return new EvaluationOptions(executionModel, timeoutMode, suiteBudget, candidateBudget);
+    }
+
+    public EvaluationOptions withBudgets(Duration suiteBudget, Duration candidateBudget) {
+        return new EvaluationOptions(executionModel, timeoutMode, suiteBudget, candidateBudget);
+    }
+
+    /**
+     * @return a timeout policy for a new run, or null if threaded matches get fixed timeouts
+     */
+    public AdaptiveTimeoutPolicy newTimeoutPolicy() {
+        return AdaptiveTimeoutPolicy.forMode(timeoutMode);
+    }
+
+    /**
+     * @return a budget for a new run, or null if the run is unbounded
+     */
+    public EvaluationBudget newBudget() {
+        return EvaluationBudget.of(suiteBudget, candidateBudget);
+    }
+}
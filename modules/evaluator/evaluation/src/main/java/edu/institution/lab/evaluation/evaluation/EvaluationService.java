@@ -2,11 +2,26 @@ package edu.institution.lab.evaluation.evaluation;
 
 import dk.brics.automaton.Automaton;
 import edu.institution.lab.evaluation.TestSuiteService;
+import edu.institution.lab.evaluation.canonical.CanonicalCandidates;
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
+import edu.institution.lab.evaluation.dfa.DfaMatcherCache;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
 import edu.institution.lab.evaluation.distance.DistanceMeasure;
+import edu.institution.lab.evaluation.index.RequiredTrigramCache;
+import edu.institution.lab.evaluation.index.TrigramIndex;
+import edu.institution.lab.evaluation.model.CandidateRegex;
 import edu.institution.lab.evaluation.model.RegexTestSuite;
 import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
 import edu.institution.lab.evaluation.model.RelativeCoverageUpdate;
+import edu.institution.lab.evaluation.safematch.AdaptiveTimeoutPolicy;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.MatchMemo;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
+import edu.institution.lab.evaluation.shard.Shard;
 import edu.institution.lab.evaluation.util.cache.AutomatonCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,94 +37,457 @@ public class EvaluationService {
 
     private static final Logger logger = LoggerFactory.getLogger(EvaluationService.class);
 
+    /// how many projects may be loaded ahead of the project that is being evaluated
+    private static final int PREFETCHED_PROJECTS = 1;
+    /// how many evaluated projects may wait to be saved
+    private static final int PENDING_SAVES = 2;
+    /// how often a pipeline stage that is waiting on a queue checks whether the stage on the other end failed
+    private static final Duration STAGE_POLL_INTERVAL = Duration.ofSeconds(1);
+    /// how many projects the cost scheduler picks units from at once
+    private static final int OPEN_PROJECTS = 4;
+    /// base cost of the units that the cost scheduler cuts test suites into
+    private static final long TARGET_UNIT_COST = 200_000;
+
+    /**
+     * A project whose candidates have been loaded, compiled and indexed, ready to be evaluated
+     */
+    private record PreparedProject(
+            long projectId,
+            List<RegexTestSuite> testSuites,
+            CanonicalCandidates canonicalCandidates,
+            List<CompiledRegexEntity> candidateEntities,
+            TrigramIndex candidateIndex
+    ) {}
+
+    /**
+     * The results of a project, ready to be saved
+     */
+    private record EvaluatedProject(long projectId, Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites) {}
+
+    /// end of stream markers for the pipeline queues
+    private static final PreparedProject NO_MORE_PROJECTS = new PreparedProject(-1, List.of(), null, List.of(), null);
+    private static final EvaluatedProject NO_MORE_RESULTS = new EvaluatedProject(-1, Map.of());
+
     private final RegexDatabaseClient databaseClient;
     private final TestSuiteService testSuiteService;
+    private final EvaluationStrategy evaluationStrategy;
+    /// number of discriminative strings to screen candidates with before running whole test suites, or 0 for no screen
+    private final int screenSize;
+    /// the slice of projects that this process evaluates
+    private final Shard shard;
+    /// how jobs and safe matches are mapped onto threads, how threaded matches are limited, and the budgets of a run
+    private final EvaluationOptions options;
+    /// pipeline stages share the database connection, so only one of them may use it at a time
+    private final Object databaseLock = new Object();
 
     public EvaluationService(RegexDatabaseClient databaseClient) {
+        this(databaseClient, EvaluationStrategy.TEST_SUITE_MAJOR, 0, Shard.ALL, EvaluationOptions.DEFAULT);
+    }
+
+    public EvaluationService(RegexDatabaseClient databaseClient, EvaluationStrategy evaluationStrategy, int screenSize, Shard shard, EvaluationOptions options) {
         this.testSuiteService = new TestSuiteService(databaseClient);
         this.databaseClient = databaseClient;
+        this.evaluationStrategy = evaluationStrategy;
+        this.screenSize = screenSize;
+        this.shard = shard;
+        this.options = options;
     }
 
     public void evaluateAndSaveTestSuites() throws SQLException {
+        evaluateAndSaveTestSuites(false);
+    }
 
-        databaseClient.setupResultsTable();
+    /**
+     * Evaluate every candidate against every test suite and save the results. Each project's results are saved along
+     * with a record that the project is complete, so an interrupted run can be resumed.
+     * @param resume If true, keep the results of an earlier run and skip the projects it completed
+     */
+    public void evaluateAndSaveTestSuites(boolean resume) throws SQLException {
+
+        databaseClient.setupResultsTable(resume);
+        RunCheckpoint checkpoint = databaseClient.startRun(CheckpointedCommand.EVALUATE, resume);
+        databaseClient.setupLanguageClassTable();
+        // language classes found by earlier runs let equivalent candidates share a DFA without building one
+        Map<String, String> knownLanguageClasses = databaseClient.loadLanguageClasses();
+        databaseClient.setupPatternQuarantineTable();
+        // patterns that kept timing out in earlier runs are not run again, and leave their candidates undetermined
+        databaseClient.setupPatternCostTable();
+        // what patterns cost in earlier runs: expensive ones are scheduled first, and hopeless automata are not built
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(databaseClient.loadPatternCosts());
+        PatternCircuitBreaker circuitBreaker = new PatternCircuitBreaker(ledger);
+        circuitBreaker.quarantineAll(databaseClient.loadQuarantinedPatterns());
 
         /*
         The safe execution context is for safely matching a regex with a time constraint. Essentially, we run the
         matcher in a separate thread. That way, we can cancel it if it takes too long. We can also allow multiple
         evaluations to happen at the same time.
 
-        The job executor is used to parallelize the evaluation process.
+        The job executor is used to parallelize the evaluation process. It is a pool of its own under every execution
+        model, which either leaves job threads idle while they wait on safe matches, or runs other jobs on a bounded
+        number of extra threads in the meantime.
+
+        Projects go through a pipeline of three stages, connected by bounded queues: one stage loads and compiles the
+        candidates of the next project, this thread evaluates, and one stage saves results as they complete. That way
+        the cores are not idle while the database is busy and vice versa, and only a few projects are in memory at once.
          */
-        try (AutoCloseableExecutorService safeExecutionContext = new AutoCloseableExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-             AutoCloseableExecutorService jobExecutor = new AutoCloseableExecutorService(Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors()))) {
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(options.executionModel());
+             AutoCloseableExecutorService pipelineStages = new AutoCloseableExecutorService(Executors.newFixedThreadPool(2))) {
+
+            AutoCloseableExecutorService safeExecutionContext = executionContexts.getSafeExecutionContext();
+            AutoCloseableExecutorService jobExecutor = executionContexts.getJobExecutor();
 
             CompletionService<Map<Long, Set<RegexTestSuiteSolution>>> jobExecutionContext = new ExecutorCompletionService<>(jobExecutor);
 
+            // candidates are mostly the same between projects, so only build each DFA once
+            DfaMatcherCache dfaMatcherCache = new DfaMatcherCache(ledger);
+            RequiredTrigramCache requiredTrigramCache = new RequiredTrigramCache();
+            // shared by all evaluators so that risky patterns are only discovered once
+            InlineMatchPolicy inlineMatchPolicy = new InlineMatchPolicy();
+            // candidates and subjects recur between test suites and projects, so remember what they matched
+            MatchMemo matchMemo = new MatchMemo();
+            // learns how long each pattern takes, and may give up on slow matches sooner than the fixed timeout
+            AdaptiveTimeoutPolicy timeoutPolicy = options.newTimeoutPolicy();
+            MatchContext matchContext = new MatchContext(safeExecutionContext, inlineMatchPolicy, matchMemo, circuitBreaker, timeoutPolicy);
+            // bounds the wall-clock time of every test suite, so the run time of a shard is predictable
+            EvaluationBudget budget = options.newBudget();
+
             // load test suites
             Map<Long, List<RegexTestSuite>> projectTestSuites = testSuiteService.loadRegexTestSuites()
                     .collect(Collectors.groupingBy(RegexTestSuite::projectId));
+            projectTestSuites.keySet().removeIf(projectId -> !shard.contains(projectId));
 
             long totalTestSuites = projectTestSuites.values().stream().mapToInt(List::size).sum();
 
             AtomicLong totalCollectedTestSuites = new AtomicLong();
 
-            // iterate over each project and its test suites, iterating as we go
-            for (long projectId : projectTestSuites.keySet()) {
-                List<RegexTestSuite> testSuites = projectTestSuites.get(projectId);
-
-                // load a single set of candidate regexes for this project
-                logger.info("Starting to evaluate test suites for project {}", projectId);
-                List<CompiledRegexEntity> candidateEntities = databaseClient.loadCandidateRegexes(projectId)
-                        .flatMap(candidate -> CompiledRegexEntity.tryCompile(candidate).stream())
-                        .toList();
+            // projects completed by an earlier run are already saved
+            projectTestSuites.entrySet().removeIf(entry -> {
+                boolean completed = checkpoint.isCompleted(WorkUnit.project(entry.getKey()));
+                if (completed) {
+                    totalCollectedTestSuites.addAndGet(entry.getValue().size());
+                }
+                return completed;
+            });
+            if (checkpoint.getResumedUnitCount() > 0) {
+                logger.info("Skipping {}/{} test suites completed by an earlier run", totalCollectedTestSuites.get(), totalTestSuites);
+            }
 
-                // submit test suite evaluator jobs
-                for (RegexTestSuite testSuite : testSuites) {
-                    jobExecutionContext.submit(new TestSuiteEvaluator(safeExecutionContext, testSuite, candidateEntities, 1.00));
+            BlockingQueue<PreparedProject> preparedProjects = new ArrayBlockingQueue<>(PREFETCHED_PROJECTS);
+            BlockingQueue<EvaluatedProject> evaluatedProjects = new ArrayBlockingQueue<>(PENDING_SAVES);
+            Future<?> loader = pipelineStages.submit(() -> {
+                prepareProjects(projectTestSuites, knownLanguageClasses, dfaMatcherCache, requiredTrigramCache, ledger, preparedProjects);
+                return null;
+            });
+            Future<?> writer = pipelineStages.submit(() -> {
+                saveProjects(evaluatedProjects, checkpoint, circuitBreaker, ledger);
+                return null;
+            });
+
+            if (evaluationStrategy == EvaluationStrategy.COST_SCHEDULED) {
+                CostScheduler scheduler = new CostScheduler(jobExecutor, 2 * Runtime.getRuntime().availableProcessors(), TARGET_UNIT_COST, new CostModel(ledger),
+                        (testSuite, candidates) -> () -> new TestSuiteEvaluator(matchContext, testSuite, TrigramIndex.build(candidates, requiredTrigramCache::get), 1.00, screenSize, budget).call());
+                evaluateScheduled(scheduler, preparedProjects, loader, evaluatedProjects, writer, totalTestSuites, totalCollectedTestSuites);
+            } else {
+                // evaluate each project as soon as it is prepared
+                PreparedProject project;
+                while ((project = takeFromStage(preparedProjects, loader)) != NO_MORE_PROJECTS) {
+                    TrigramIndex candidateIndex = project.candidateIndex();
+                    long projectId = project.projectId();
+                    logger.info("Starting to evaluate test suites for project {}", projectId);
+
+                    List<TestSuiteEvaluator> testSuiteEvaluators = project.testSuites().stream()
+                            .map(testSuite -> new TestSuiteEvaluator(matchContext, testSuite, candidateIndex, 1.00, screenSize, budget))
+                            .toList();
+
+                    Map<Long, Set<RegexTestSuiteSolution>> representativeSolutions = switch (evaluationStrategy) {
+                        case TEST_SUITE_MAJOR -> evaluateByTestSuite(jobExecutionContext, testSuiteEvaluators, projectId);
+                        case CANDIDATE_MAJOR -> evaluateByCandidate(jobExecutionContext, testSuiteEvaluators, project.candidateEntities(), matchContext, projectId);
+                        case COST_SCHEDULED -> throw new IllegalStateException("cost scheduled projects are evaluated by the scheduler");
+                    };
+                    Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = project.canonicalCandidates().fanOut(representativeSolutions);
+                    totalCollectedTestSuites.addAndGet(project.testSuites().size());
+
+                    logger.info("Finished evaluating test suites for project {}", projectId);
+                    logger.info("Collected {}/{} total test suites", totalCollectedTestSuites.get(), totalTestSuites);
+
+                    putToStage(evaluatedProjects, new EvaluatedProject(projectId, collectedTestSuites), writer);
                 }
+            }
 
-                logger.info("Waiting on test suites...");
+            // surface any failure of the loader, then wait for everything to be saved
+            loader.get();
+            putToStage(evaluatedProjects, NO_MORE_RESULTS, writer);
+            writer.get();
+            // patterns quarantined, and costs recorded, while the last project was saved
+            databaseClient.insertManyQuarantinedPatterns(circuitBreaker.drainNewlyQuarantined());
+            databaseClient.insertManyPatternCosts(ledger.drainChanged());
+
+            logger.info("{} patterns exceeded the inline step budget", inlineMatchPolicy.getRiskyPatternCount());
+            logger.info("{} patterns are quarantined after timing out", circuitBreaker.getQuarantinedCount());
+            if (timeoutPolicy != null) {
+                logger.info("{}", timeoutPolicy);
+            }
+            if (budget != null) {
+                logger.info("{}", budget);
+            }
+            logger.info("{}", ledger);
+            logger.info("match memo answered {} lookups and missed {}", matchMemo.getHitCount(), matchMemo.getMissCount());
+            logger.info("{}/{} candidate patterns were full-matched with a DFA", dfaMatcherCache.eligibleCount(), dfaMatcherCache.size());
+            logger.info("DFA patterns described {} distinct languages", dfaMatcherCache.languageCount());
+        } catch (SQLException | InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                // collect everything
-                Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = new HashMap<>();
-                for (int i = testSuites.size(); i > 0; i--) {
-                    Future<Map<Long, Set<RegexTestSuiteSolution>>> future = jobExecutionContext.take();
-                    Map<Long, Set<RegexTestSuiteSolution>> result = future.get();
-                    collectedTestSuites.putAll(result);
-                    logger.info("{}/{} test suites from project {} remaining", i - 1, testSuites.size(), projectId);
-                    totalCollectedTestSuites.incrementAndGet();
+    /**
+     * Evaluate prepared projects with a {@link CostScheduler}. A few projects are kept open at once, so the costliest
+     * units of any of them can run first, and each project is handed to the writer stage as soon as it completes.
+     */
+    private void evaluateScheduled(CostScheduler scheduler,
+                                   BlockingQueue<PreparedProject> preparedProjects,
+                                   Future<?> loader,
+                                   BlockingQueue<EvaluatedProject> evaluatedProjects,
+                                   Future<?> writer,
+                                   long totalTestSuites,
+                                   AtomicLong totalCollectedTestSuites) throws InterruptedException, ExecutionException {
+        Map<Long, PreparedProject> openProjects = new HashMap<>();
+        boolean moreProjects = true;
+        while (moreProjects || !scheduler.isIdle()) {
+            while (moreProjects && scheduler.getOpenProjectCount() < OPEN_PROJECTS) {
+                // only block on the loader if there is nothing else to do
+                PreparedProject project = scheduler.isIdle() ? takeFromStage(preparedProjects, loader) : preparedProjects.poll();
+                if (project == null) {
+                    break;
                 }
+                if (project == NO_MORE_PROJECTS) {
+                    moreProjects = false;
+                    break;
+                }
+
+                logger.info("Scheduling test suites for project {}", project.projectId());
+                openProjects.put(project.projectId(), project);
+                scheduler.addProject(project.projectId(), project.testSuites(), project.candidateEntities());
+            }
+
+            for (CostScheduler.CompletedProject completed : scheduler.awaitProgress(STAGE_POLL_INTERVAL)) {
+                PreparedProject project = openProjects.remove(completed.projectId());
+                Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = project.canonicalCandidates().fanOut(completed.testSuiteSolutions());
+                totalCollectedTestSuites.addAndGet(project.testSuites().size());
 
-                logger.info("Finished evaluating test suites for project {}", projectId);
+                logger.info("Finished evaluating test suites for project {}", project.projectId());
                 logger.info("Collected {}/{} total test suites", totalCollectedTestSuites.get(), totalTestSuites);
 
-                logger.info("Saving test suites to database...");
-                databaseClient.insertManyTestSuiteResults(collectedTestSuites);
-                logger.info("Successfully saved to database");
+                putToStage(evaluatedProjects, new EvaluatedProject(project.projectId(), collectedTestSuites), writer);
             }
-        } catch (SQLException | InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Loader stage: load, compile and index the candidates of each project in turn. Blocks while the queue of prepared
+     * projects is full, and finishes with {@link #NO_MORE_PROJECTS}.
+     */
+    private void prepareProjects(Map<Long, List<RegexTestSuite>> projectTestSuites,
+                                 Map<String, String> knownLanguageClasses,
+                                 DfaMatcherCache dfaMatcherCache,
+                                 RequiredTrigramCache requiredTrigramCache,
+                                 PatternCostLedger ledger,
+                                 BlockingQueue<PreparedProject> preparedProjects) throws SQLException, InterruptedException {
+        for (var projectEntry : projectTestSuites.entrySet()) {
+            long projectId = projectEntry.getKey();
+
+            // load a single set of candidate regexes for this project
+            List<CandidateRegex> candidateRegexes;
+            synchronized (databaseLock) {
+                candidateRegexes = databaseClient.loadCandidateRegexes(projectId).toList();
+            }
+
+            // many candidates only differ in spelling, so evaluate each canonical pattern once
+            CanonicalCandidates canonicalCandidates = CanonicalCandidates.group(candidateRegexes.stream()
+                    .flatMap(candidate -> CompiledRegexEntity.tryCompile(candidate, ledger).stream())
+                    .toList());
+            List<CompiledRegexEntity> candidateEntities = canonicalCandidates.getRepresentatives().stream()
+                    .map(candidate -> dfaMatcherCache.attach(candidate, knownLanguageClasses.get(candidate.regexPattern().pattern())))
+                    .toList();
+            logger.info("Grouped {} candidates of project {} into {} canonical patterns", canonicalCandidates.getCandidateCount(), projectId, candidateEntities.size());
+            synchronized (databaseLock) {
+                saveNewLanguageClasses(canonicalCandidates, candidateEntities, knownLanguageClasses);
+            }
+            TrigramIndex candidateIndex = TrigramIndex.build(candidateEntities, requiredTrigramCache::get);
+            logger.info("Indexed required trigrams of {}/{} candidates", candidateIndex.getIndexedCount(), candidateEntities.size());
+
+            preparedProjects.put(new PreparedProject(projectId, projectEntry.getValue(), canonicalCandidates, candidateEntities, candidateIndex));
+        }
+
+        preparedProjects.put(NO_MORE_PROJECTS);
+    }
+
+    /**
+     * Writer stage: save the results of each project as soon as it has been evaluated, until {@link #NO_MORE_RESULTS}
+     */
+    private void saveProjects(BlockingQueue<EvaluatedProject> evaluatedProjects, RunCheckpoint checkpoint, PatternCircuitBreaker circuitBreaker, PatternCostLedger ledger) throws SQLException, InterruptedException {
+        for (EvaluatedProject project = evaluatedProjects.take(); project != NO_MORE_RESULTS; project = evaluatedProjects.take()) {
+            logger.info("Saving test suites of project {} to database...", project.projectId());
+            synchronized (databaseLock) {
+                databaseClient.insertManyTestSuiteResults(project.collectedTestSuites(), checkpoint, List.of(WorkUnit.project(project.projectId())));
+                // quarantines are saved as they happen, so a resumed run doesn't pay for them again
+                databaseClient.insertManyQuarantinedPatterns(circuitBreaker.drainNewlyQuarantined());
+                databaseClient.insertManyPatternCosts(ledger.drainChanged());
+            }
+            logger.info("Successfully saved project {} to database", project.projectId());
+        }
+    }
+
+    /**
+     * Take the next item from a pipeline stage, without hanging if that stage has died
+     * @param producer the stage that fills the queue
+     */
+    private static <T> T takeFromStage(BlockingQueue<T> queue, Future<?> producer) throws InterruptedException, ExecutionException {
+        T item;
+        while ((item = queue.poll(STAGE_POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS)) == null) {
+            if (producer.isDone()) {
+                // the producer may have finished right after its last item
+                item = queue.poll();
+                if (item != null) {
+                    return item;
+                }
+                producer.get();
+                throw new IllegalStateException("pipeline stage stopped without finishing its queue");
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Hand an item to a pipeline stage, blocking while its queue is full, without hanging if that stage has died
+     * @param consumer the stage that drains the queue
+     */
+    private static <T> void putToStage(BlockingQueue<T> queue, T item, Future<?> consumer) throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, STAGE_POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                consumer.get();
+                throw new IllegalStateException("pipeline stage stopped before draining its queue");
+            }
+        }
+    }
+
+    /**
+     * Record the language class of every candidate pattern whose class is new or changed since the last run
+     * @param representatives the canonical representatives, with DFA matchers attached where possible
+     */
+    private void saveNewLanguageClasses(CanonicalCandidates canonicalCandidates, List<CompiledRegexEntity> representatives, Map<String, String> knownLanguageClasses) throws SQLException {
+        Map<String, String> newLanguageClasses = new HashMap<>();
+        for (CompiledRegexEntity representative : representatives) {
+            if (representative.dfaMatcher() == null) {
+                continue;
+            }
+
+            String languageHash = representative.dfaMatcher().getLanguageHash();
+            for (CompiledRegexEntity member : canonicalCandidates.getMembers(representative)) {
+                String pattern = member.regexPattern().pattern();
+                if (!languageHash.equals(knownLanguageClasses.get(pattern))) {
+                    newLanguageClasses.put(pattern, languageHash);
+                }
+            }
+        }
+
+        if (!newLanguageClasses.isEmpty()) {
+            databaseClient.insertManyLanguageClasses(newLanguageClasses);
+            knownLanguageClasses.putAll(newLanguageClasses);
+        }
+    }
+
+    /**
+     * Submit one job per test suite, then collect everything
+     */
+    private Map<Long, Set<RegexTestSuiteSolution>> evaluateByTestSuite(CompletionService<Map<Long, Set<RegexTestSuiteSolution>>> jobExecutionContext,
+                                                                       List<TestSuiteEvaluator> testSuiteEvaluators,
+                                                                       long projectId) throws InterruptedException, ExecutionException {
+        for (TestSuiteEvaluator testSuiteEvaluator : testSuiteEvaluators) {
+            jobExecutionContext.submit(testSuiteEvaluator);
+        }
+
+        logger.info("Waiting on test suites...");
+
+        Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = new HashMap<>();
+        for (int i = testSuiteEvaluators.size(); i > 0; i--) {
+            Future<Map<Long, Set<RegexTestSuiteSolution>>> future = jobExecutionContext.take();
+            Map<Long, Set<RegexTestSuiteSolution>> result = future.get();
+            collectedTestSuites.putAll(result);
+            logger.info("{}/{} test suites from project {} remaining", i - 1, testSuiteEvaluators.size(), projectId);
+        }
+
+        return collectedTestSuites;
+    }
+
+    /**
+     * Submit one job per candidate, then merge each candidate's solutions into their test suites
+     */
+    private Map<Long, Set<RegexTestSuiteSolution>> evaluateByCandidate(CompletionService<Map<Long, Set<RegexTestSuiteSolution>>> jobExecutionContext,
+                                                                       List<TestSuiteEvaluator> testSuiteEvaluators,
+                                                                       List<CompiledRegexEntity> candidates,
+                                                                       MatchContext matchContext,
+                                                                       long projectId) throws InterruptedException, ExecutionException {
+        for (int position = 0; position < candidates.size(); position++) {
+            jobExecutionContext.submit(new CandidateEvaluator(testSuiteEvaluators, candidates.get(position), position, matchContext));
+        }
+
+        logger.info("Waiting on candidates...");
+
+        // every test suite gets a result, even if no candidate solves it
+        Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = new HashMap<>();
+        for (TestSuiteEvaluator testSuiteEvaluator : testSuiteEvaluators) {
+            collectedTestSuites.put(testSuiteEvaluator.getTestSuite().id(), new HashSet<>());
+        }
+
+        for (int i = candidates.size(); i > 0; i--) {
+            Future<Map<Long, Set<RegexTestSuiteSolution>>> future = jobExecutionContext.take();
+            future.get().forEach((testSuiteId, solutions) -> collectedTestSuites.get(testSuiteId).addAll(solutions));
+            logger.debug("{}/{} candidates from project {} remaining", i - 1, candidates.size(), projectId);
+        }
+
+        return collectedTestSuites;
+    }
+
     public void updateRelativeCoverages() {
-        try (AutoCloseableExecutorService safeExecutionContext = new AutoCloseableExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-             AutoCloseableExecutorService jobExecutor = new AutoCloseableExecutorService(Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors()))) {
+        updateRelativeCoverages(false);
+    }
 
-            AutomatonCache automatonCache = new AutomatonCache(200, safeExecutionContext);
+    /**
+     * Compute the relative coverage of every saved result. Each project's coverages are saved along with a record that
+     * the project is complete, so an interrupted run can be resumed.
+     * @param resume If true, skip the projects that an earlier run completed
+     */
+    public void updateRelativeCoverages(boolean resume) {
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(options.executionModel())) {
+
+            AutoCloseableExecutorService safeExecutionContext = executionContexts.getSafeExecutionContext();
+            AutoCloseableExecutorService jobExecutor = executionContexts.getJobExecutor();
+            databaseClient.setupPatternCostTable();
+            // automata that never compiled in earlier runs are not tried again
+            PatternCostLedger ledger = new PatternCostLedger();
+            ledger.loadAll(databaseClient.loadPatternCosts());
+            AutomatonCache automatonCache = new AutomatonCache(200, safeExecutionContext, ledger);
             CompletionService<RelativeCoverageUpdate> jobExecutionContext = new ExecutorCompletionService<>(jobExecutor);
 
             Map<Long, List<RegexTestSuite>> projectTestSuites = testSuiteService.loadRegexTestSuites()
                     .collect(Collectors.groupingBy(RegexTestSuite::projectId));
+            projectTestSuites.keySet().removeIf(projectId -> !shard.contains(projectId));
 
             long totalTestSuites = projectTestSuites.values().stream().mapToInt(List::size).sum();
 
             AtomicLong totalCollectedTestSuites = new AtomicLong();
 
+            RunCheckpoint checkpoint = databaseClient.startRun(CheckpointedCommand.RELATIVE_COVERAGE, resume);
+
             // iterate over each project and its test suites, iterating as we go
             for (long projectId : projectTestSuites.keySet()) {
                 List<RegexTestSuite> testSuites = projectTestSuites.get(projectId);
+                if (checkpoint.isCompleted(WorkUnit.project(projectId))) {
+                    long collected = totalCollectedTestSuites.addAndGet(testSuites.size());
+                    logger.info("skipping project {} completed by an earlier run, {}/{} test suites", projectId, collected, totalTestSuites);
+                    continue;
+                }
 
                 // load a single set of candidate regexes for this project
                 logger.info("Starting to evaluate test suites for project {}", projectId);
@@ -132,7 +510,8 @@ public class EvaluationService {
                     batchUpdates.add(update);
                 }
 
-                databaseClient.updateManyRelativeCoverages(batchUpdates);
+                databaseClient.updateManyRelativeCoverages(batchUpdates, checkpoint, List.of(WorkUnit.project(projectId)));
+                databaseClient.insertManyPatternCosts(ledger.drainChanged());
 
                 long collected = totalCollectedTestSuites.addAndGet(testSuites.size());
                 logger.info("finished processing {}/{} test suites", collected, totalTestSuites);
@@ -0,0 +1,21 @@
+package edu.institution.lab.evaluation.evaluation;
+
+/**
+ * How work is split up when evaluating the test suites of a project
+ */
+public enum EvaluationStrategy {
+    /**
+     * One job per test suite, which evaluates every candidate against that test suite. See {@link TestSuiteEvaluator}
+     */
+    TEST_SUITE_MAJOR,
+    /**
+     * One job per candidate, which evaluates that candidate against every test suite of the project. See
+     * {@link CandidateEvaluator}
+     */
+    CANDIDATE_MAJOR,
+    /**
+     * Jobs of one chunk of candidates against one test suite, from several projects at once, costliest first. See
+     * {@link CostScheduler}
+     */
+    COST_SCHEDULED
+}
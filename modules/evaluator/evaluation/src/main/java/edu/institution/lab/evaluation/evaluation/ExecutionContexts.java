@@ -0,0 +1,117 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The job executor and safe execution context of a run, laid out according to an {@link ExecutionModel}. Jobs are
+ * submitted to the job executor, and safe matches to the safe execution context.
+ * <br>
+ * Safe matches run on a {@link WatchdogExecutorService} under every model, which replaces the threads of matches that
+ * ignore cancellation, so a pathological pattern can never take a thread away from the run. Either way the jobs and the
+ * safe matches have pools of their own, and the models differ in what a job thread does while it waits.
+ * <br>
+ * Closing shuts down both, and logs how many threads the run used and how busy it kept the CPU, so execution models can
+ * be compared on the same workload. It also logs how many safe matches got stuck.
+ */
+public class ExecutionContexts implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionContexts.class);
+
+    private final ExecutionModel executionModel;
+    private final AutoCloseableExecutorService jobExecutor;
+    private final AutoCloseableExecutorService safeExecutionContext;
+    /// runs the safe matches, for reporting stuck ones
+    private final WatchdogExecutorService watchdog;
+    private final long startNanos;
+    private final long startCpuNanos;
+
+    private ExecutionContexts(ExecutionModel executionModel, AutoCloseableExecutorService jobExecutor, ExecutorService safeExecutor, WatchdogExecutorService watchdog) {
+        this.executionModel = executionModel;
+        this.jobExecutor = jobExecutor;
+        this.safeExecutionContext = new AutoCloseableExecutorService(safeExecutor);
+        this.watchdog = watchdog;
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        this.startNanos = System.nanoTime();
+        this.startCpuNanos = processCpuNanos();
+    }
+
+    /**
+     * Create the contexts of a run, with a thread per core
+     */
+    public static ExecutionContexts create(ExecutionModel executionModel) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return create(executionModel, cores, WatchdogExecutorService.DEFAULT_SCAN_INTERVAL, WatchdogExecutorService.DEFAULT_ESCALATION_GRACE);
+    }
+
+    /**
+     * Create the contexts of a run
+     * @param threads How many threads each pool has
+     * @param scanInterval How often the watchdog of the safe matches checks them
+     * @param escalationGrace How long a cancelled safe match may keep running before its thread is replaced
+     */
+    static ExecutionContexts create(ExecutionModel executionModel, int threads, Duration scanInterval, Duration escalationGrace) {
+        WatchdogExecutorService watchdog = new WatchdogExecutorService(threads, scanInterval, escalationGrace, WatchdogExecutorService.DEFAULT_RUN_LIMIT);
+        return switch (executionModel) {
+            case SEPARATE_POOLS -> new ExecutionContexts(executionModel,
+                    new AutoCloseableExecutorService(Executors.newWorkStealingPool(threads)),
+                    watchdog, watchdog);
+            case MANAGED_BLOCKING -> {
+                // configured like a work-stealing pool, except that blocked jobs are compensated for with at most as
+                // many extra threads as the pool has, after which further blocked jobs just wait
+                ForkJoinPool pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true,
+                        0, maxJobThreads(threads), 1, saturated -> true, 60, TimeUnit.SECONDS);
+                yield new ExecutionContexts(executionModel,
+                        new AutoCloseableExecutorService(pool),
+                        new ManagedBlockingExecutorService(watchdog), watchdog);
+            }
+        };
+    }
+
+    /**
+     * @return how many threads the fork/join pool of the jobs may have, counting the ones it adds for blocked jobs
+     */
+    static int maxJobThreads(int threads) {
+        return 2 * threads;
+    }
+
+    public AutoCloseableExecutorService getJobExecutor() {
+        return jobExecutor;
+    }
+
+    public AutoCloseableExecutorService getSafeExecutionContext() {
+        return safeExecutionContext;
+    }
+
+    @Override
+    public void close() {
+        // jobs are shut down first, because they may still be waiting on safe matches
+        jobExecutor.close();
+        safeExecutionContext.close();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+        long cpuNanos = processCpuNanos() - startCpuNanos;
+        double cores = startCpuNanos < 0 ? Double.NaN : (double) cpuNanos / Math.max(1, elapsed.toNanos());
+        logger.info("{} execution: {} peak live threads, {} cores busy on average over {}", executionModel, threads.getPeakThreadCount(), String.format("%.2f", cores), elapsed);
+        logger.info("replaced {} stuck safe match threads, {} of them are still leaked", watchdog.getReplacedThreadCount(), watchdog.getLeakedThreadCount());
+    }
+
+    /**
+     * @return CPU time of the whole process, or -1 if the platform doesn't tell
+     */
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return -1;
+    }
+}
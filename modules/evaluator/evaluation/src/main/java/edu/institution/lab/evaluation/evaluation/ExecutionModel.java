@@ -0,0 +1,19 @@
+package edu.institution.lab.evaluation.evaluation;
+
+/**
+ * How evaluation jobs and the safe matches they wait on are mapped onto threads. See {@link ExecutionContexts}
+ */
+public enum ExecutionModel {
+    /**
+     * A work-stealing pool for jobs and a separate watched pool for safe matches, each with a thread per core. Job
+     * threads sit idle while they wait on the safe pool, and up to twice as many threads as cores compete for the CPU
+     */
+    SEPARATE_POOLS,
+    /**
+     * A fork/join pool for jobs and the same watched pool for safe matches, each with a thread per core. A job that waits
+     * on a safe match tells the pool it is blocked, so the pool can add a thread to run other jobs while it waits. The
+     * pool adds at most a thread per core, however many jobs block, and further blocked jobs just wait. See
+     * {@link ManagedBlockingExecutorService}
+     */
+    MANAGED_BLOCKING
+}
@@ -0,0 +1,148 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs tasks on a {@link WatchdogExecutorService}, and lets the fork/join jobs that wait on them block without holding
+ * up their pool. A pool thread that waits on a task of this executor blocks through {@link ForkJoinPool#managedBlock},
+ * so the pool can activate another thread for as long as the job waits. Threads that are not part of a fork/join pool
+ * just wait.
+ * <br>
+ * Tasks never run on the thread that waits on them: a task that ignores interrupts would hold that thread forever, and
+ * a fork/join thread cannot be replaced. The watchdog replaces the threads of tasks that are stuck after they were
+ * cancelled instead, so neither pool loses capacity however many tasks get stuck.
+ * <br>
+ * Shutting this executor down shuts down the watchdog executor, but not the pool of the jobs.
+ */
+public class ManagedBlockingExecutorService extends AbstractExecutorService {
+
+    /**
+     * A future of the watchdog executor whose waits are managed blocks on fork/join threads
+     */
+    private static final class ManagedFuture<V> implements Future<V> {
+
+        private final Future<V> delegate;
+
+        private ManagedFuture(Future<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread && !delegate.isDone()) {
+                ForkJoinPool.managedBlock(new Wait(Long.MAX_VALUE));
+            }
+            return delegate.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+            if (Thread.currentThread() instanceof ForkJoinWorkerThread && !delegate.isDone()) {
+                ForkJoinPool.managedBlock(new Wait(deadlineNanos));
+            }
+            // either done, or out of time
+            return delegate.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return delegate.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return delegate.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        /**
+         * Blocks until the task is done, or until the deadline passed
+         */
+        private final class Wait implements ForkJoinPool.ManagedBlocker {
+            private final long deadlineNanos;
+
+            private Wait(long deadlineNanos) {
+                this.deadlineNanos = deadlineNanos;
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                try {
+                    if (deadlineNanos == Long.MAX_VALUE) {
+                        delegate.get();
+                    } else {
+                        delegate.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                } catch (ExecutionException | CancellationException | TimeoutException exe) {
+                    // the caller gets these from the future itself
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return delegate.isDone() || (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0);
+            }
+        }
+    }
+
+    private final WatchdogExecutorService executor;
+
+    /**
+     * @param executor Runs the tasks, and replaces their threads when they get stuck
+     */
+    public ManagedBlockingExecutorService(WatchdogExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return new ManagedFuture<>(executor.submit(task));
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return new ManagedFuture<>(executor.submit(task, result));
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return new ManagedFuture<>(executor.submit(task));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
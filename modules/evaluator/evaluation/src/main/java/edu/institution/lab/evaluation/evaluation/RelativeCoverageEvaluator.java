@@ -24,9 +24,9 @@ public class RelativeCoverageEvaluator implements Callable<RelativeCoverageUpdat
 
     @Override
     public RelativeCoverageUpdate call() throws Exception {
-        testSuite.strings().stream()
+        candidateCoverage.evaluateAll(testSuite.strings().stream()
                 .map(RegexTestSuiteString::subject)
-                .forEach(candidateCoverage::evaluate);
+                .toList());
 
         return new RelativeCoverageUpdate(testSuite.id(), candidateRow.candidateRegexId(), candidateCoverage);
     }
@@ -1,19 +1,30 @@
 package edu.institution.lab.evaluation.evaluation;
 
+import edu.institution.lab.evaluation.dfa.DfaBatchMatcher;
+import edu.institution.lab.evaluation.dfa.DfaMatcher;
+import edu.institution.lab.evaluation.dfa.LanguageInvariants;
+import edu.institution.lab.evaluation.index.TrigramIndex;
 import edu.institution.lab.evaluation.model.LanguageApproximation;
+import edu.institution.lab.evaluation.model.MatchStatus;
 import edu.institution.lab.evaluation.model.RegexTestSuite;
 import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
 import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+import edu.institution.lab.evaluation.safematch.BatchMatchResult;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 import edu.institution.lab.evaluation.util.IndeterminateBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Used to find candidates regexes that works for a truth regex.
@@ -21,6 +32,12 @@ import java.util.stream.Collectors;
 public class TestSuiteEvaluator implements Callable<Map<Long, Set<RegexTestSuiteSolution>>> {
     private static final Logger logger = LoggerFactory.getLogger(TestSuiteEvaluator.class);
 
+    /// how long a candidate may take on a single test suite string
+    private static final Duration STRING_TIMEOUT = Duration.ofSeconds(2);
+
+    /// a range of candidates is split in two while its estimated cost is above this, see CostModel#baseCost
+    private static final long SPLIT_COST = 200_000;
+
     /**
      * The result of evaluating. Contains the potential candidate and if it's a full/partial match. If one of these
      * operations times out, then it is indeterminate.
@@ -35,10 +52,22 @@ public class TestSuiteEvaluator implements Callable<Map<Long, Set<RegexTestSuite
     ) {}
 
     /**
-     * context in which this test suite is evaluated. This evaluation service should be used for performing safe regex
-     * matches as well
+     * Positions of the candidates that survive a screening stage for each match mode
+     * @param fullMatch survivors for full matching, or null if every candidate survives
+     * @param partialMatch survivors for partial matching, or null if every candidate survives
+     */
+    private record CandidateSurvivors(BitSet fullMatch, BitSet partialMatch) {
+        boolean survives(SafeMatcher.MatchMode mode, int position) {
+            BitSet survivors = mode == SafeMatcher.MatchMode.FULL ? fullMatch : partialMatch;
+            return survivors == null || survivors.get(position);
+        }
+    }
+
+    /**
+     * context in which this test suite is evaluated, shared by the whole run. Its executor is used for performing safe
+     * regex matches, and its policies by every safe matcher of this evaluator
      */
-    private final ExecutorService safeExecutionContext;
+    private final MatchContext matchContext;
 
     /**
      * The test suite we are actively evaluating
@@ -46,9 +75,9 @@ public class TestSuiteEvaluator implements Callable<Map<Long, Set<RegexTestSuite
     private final RegexTestSuite testSuite;
 
     /**
-     * Stream of candidate regexes to evaluate
+     * Candidate regexes to evaluate. Candidates are identified by their position in this list
      */
-    private final Collection<CompiledRegexEntity> candidates;
+    private final List<CompiledRegexEntity> candidates;
 
     /**
      * How many strings a regex must satisfy to be considered a candidate
@@ -60,175 +89,603 @@ public class TestSuiteEvaluator implements Callable<Map<Long, Set<RegexTestSuite
      */
     private final LanguageApproximation truthLanguageApprox;
 
+    /**
+     * Index of the candidates' required trigrams, used to reject candidates without matching. May be null
+     */
+    private final TrigramIndex candidateIndex;
+
+    /**
+     * Test suite strings in a fixed order so that batch results can be matched back up with their strings
+     */
+    private final List<RegexTestSuiteString> orderedStrings;
+
+    /**
+     * True if every test suite string can be full-matched with a DFA matcher
+     */
+    private final boolean dfaEvaluable;
+
+    /**
+     * The largest number of strings a candidate can get wrong and still reach the accuracy threshold
+     */
+    private final int allowedMisses;
+
+    /// subjects that should full match, subjects that should not, and the expected sub-matches of partial matches
+    private final List<String> fullMatchPositives;
+    private final List<String> fullMatchNegatives;
+    private final List<String> partialMatchPositives;
+
+    private volatile CandidateSurvivors indexSurvivors;
+
+    /**
+     * Full match verdicts of DFA candidates, keyed by language hash. Candidates with the same language full-match the
+     * same strings, so only the first candidate of each language class is evaluated
+     */
+    private final Map<String, Boolean> fullMatchByLanguage;
+
+    /// true once every DFA language has been full-matched against the test suite in one batch
+    private volatile boolean fullMatchBatchDone;
+
+    /**
+     * Order in which to try the test suite strings for each match mode, learned while evaluating
+     */
+    private final DiscriminativeOrdering fullMatchOrdering;
+    private final DiscriminativeOrdering partialMatchOrdering;
+
+    /**
+     * If positive, every candidate is first screened with only this many of the most discriminative strings. The whole
+     * test suite is only run on candidates that survive
+     */
+    private final int screenSize;
+
+    /// shared by the whole run. Bounds how long this test suite and each of its candidates may take. May be null
+    private final EvaluationBudget budget;
+
     public TestSuiteEvaluator(ExecutorService safeExecutionContext, RegexTestSuite testSuite, Collection<CompiledRegexEntity> candidates, double accuracyThreshold) {
-        this.safeExecutionContext = safeExecutionContext;
+        this(MatchContext.of(safeExecutionContext), testSuite, candidates, null, accuracyThreshold, 0, null);
+    }
+
+    /**
+     * Evaluate every candidate in a trigram index. Candidates that are missing required trigrams are rejected without
+     * running a matcher, and candidates whose pattern the context's circuit breaker quarantined are left undetermined
+     * without running their regex.
+     * <br>
+     * If screenSize is positive, all candidates are first screened with the screenSize most discriminative strings. Use
+     * 0 to disable the screen. Candidates whose budget runs out before they are decided are left undetermined. The
+     * budget may be null.
+     */
+    public TestSuiteEvaluator(MatchContext matchContext, RegexTestSuite testSuite, TrigramIndex candidateIndex, double accuracyThreshold, int screenSize, EvaluationBudget budget) {
+        this(matchContext, testSuite, candidateIndex.getCandidates(), candidateIndex, accuracyThreshold, screenSize, budget);
+    }
+
+    private TestSuiteEvaluator(MatchContext matchContext, RegexTestSuite testSuite, Collection<CompiledRegexEntity> candidates, TrigramIndex candidateIndex, double accuracyThreshold, int screenSize, EvaluationBudget budget) {
+        this.matchContext = matchContext;
+        this.candidateIndex = candidateIndex;
         this.testSuite = testSuite;
-        this.candidates = candidates;
+        this.orderedStrings = List.copyOf(testSuite.strings());
+        this.dfaEvaluable = this.orderedStrings.stream().allMatch(testSuiteString -> DfaMatcher.canEvaluate(testSuiteString.subject()));
+        this.candidates = candidates instanceof List<CompiledRegexEntity> list ? list : List.copyOf(candidates);
         // TODO this stuff needs to be added back in, but maybe it shouldn't happen in the constructor
         // Automaton truthAutomaton = new RegExp(testSuite.pattern()).toAutomaton(true);
         // SafeMatcher truthSafeMatcher = new SafeMatcher(Pattern.compile(testSuite.pattern()), safeExecutionContext);
         // this.truthLanguageApprox = LanguageApproximation.create(truthAutomaton, truthSafeMatcher);
         this.truthLanguageApprox = null;
         this.accuracyThreshold = accuracyThreshold;
+        this.allowedMisses = allowedMisses(this.orderedStrings.size());
+        this.fullMatchOrdering = new DiscriminativeOrdering(this.orderedStrings);
+        this.partialMatchOrdering = new DiscriminativeOrdering(this.orderedStrings);
+        this.screenSize = screenSize;
+        this.budget = budget;
+        this.fullMatchByLanguage = new ConcurrentHashMap<>();
+
+        this.fullMatchPositives = new ArrayList<>();
+        this.fullMatchNegatives = new ArrayList<>();
+        this.partialMatchPositives = new ArrayList<>();
+        for (RegexTestSuiteString testSuiteString : orderedStrings) {
+            MatchStatus status = testSuiteString.matchStatus();
+            (status.fullMatch() ? fullMatchPositives : fullMatchNegatives).add(testSuiteString.subject());
+            if (status.partialMatch()) {
+                partialMatchPositives.add(testSuiteString.subject().substring(status.partialMatchStartIdx(), status.partialMatchEndIdx()));
+            }
+        }
     }
 
     @Override
     public Map<Long, Set<RegexTestSuiteSolution>> call() throws Exception {
+        CandidateSurvivors survivors = indexSurvivors();
+        if (screenSize > 0 && screenSize < orderedStrings.size()) {
+            survivors = new CandidateSurvivors(screen(SafeMatcher.MatchMode.FULL, survivors), screen(SafeMatcher.MatchMode.PARTIAL, survivors));
+        }
+
+        // chunks are only forked into the pool this evaluator runs on. Anywhere else, forking would borrow the common pool
+        CandidateRangeTask task = new CandidateRangeTask(0, candidates.size(), survivors, CostModel.baseCost(testSuite));
+        Set<RegexTestSuiteSolution> hits = ForkJoinTask.inForkJoinPool() ? task.invoke() : task.evaluateRange();
+        return Map.of(testSuite.id(), hits);
+    }
+
+    /**
+     * Evaluates a range of candidates. While the range is estimated to cost more than {@link #SPLIT_COST}, it is split
+     * in two halves that are evaluated in parallel, so a huge test suite is spread over the pool instead of holding up
+     * a single thread. Candidates that were already rejected by a screen cost next to nothing, so only survivors are
+     * counted. Only invoke this on the fork/join pool that should run the halves.
+     */
+    private final class CandidateRangeTask extends RecursiveTask<Set<RegexTestSuiteSolution>> {
+        private final int from;
+        private final int to;
+        private final CandidateSurvivors survivors;
+        /// estimated cost of running one candidate against the whole test suite
+        private final long candidateCost;
+
+        private CandidateRangeTask(int from, int to, CandidateSurvivors survivors, long candidateCost) {
+            this.from = from;
+            this.to = to;
+            this.survivors = survivors;
+            this.candidateCost = candidateCost;
+        }
+
+        @Override
+        protected Set<RegexTestSuiteSolution> compute() {
+            if (to - from > 1 && survivorCount() * candidateCost > SPLIT_COST) {
+                int middle = (from + to) >>> 1;
+                CandidateRangeTask left = new CandidateRangeTask(from, middle, survivors, candidateCost);
+                left.fork();
+                Set<RegexTestSuiteSolution> hits = new CandidateRangeTask(middle, to, survivors, candidateCost).compute();
+                hits.addAll(left.join());
+                return hits;
+            }
+
+            return evaluateRange();
+        }
+
+        /**
+         * Evaluate every candidate of the range in turn on the current thread
+         */
+        private Set<RegexTestSuiteSolution> evaluateRange() {
+            Set<RegexTestSuiteSolution> hits = new HashSet<>();
+            for (int position = from; position < to; position++) {
+                SafeMatcher safeMatcher = new SafeMatcher(candidates.get(position).regexPattern(), matchContext);
+                evaluateCandidate(position, safeMatcher, survivors).ifPresent(hits::add);
+            }
+            return hits;
+        }
+
+        /**
+         * @return how many candidates in the range survive the screens for at least one match mode
+         */
+        private long survivorCount() {
+            if (survivors.fullMatch() == null || survivors.partialMatch() == null) {
+                return to - from;
+            }
+            BitSet either = survivors.fullMatch().get(from, to);
+            either.or(survivors.partialMatch().get(from, to));
+            return either.cardinality();
+        }
+    }
+
+    /**
+     * Evaluate a single candidate against this test suite. This is safe to call from several threads at once.
+     * @param position The candidate's position in the candidate list
+     * @param safeMatcher A matcher for the candidate. It can be reused between test suites
+     * @return A solution if the candidate is a full or partial match for this test suite
+     */
+    Optional<RegexTestSuiteSolution> evaluateCandidate(int position, SafeMatcher safeMatcher) {
+        return evaluateCandidate(position, safeMatcher, indexSurvivors());
+    }
+
+    private Optional<RegexTestSuiteSolution> evaluateCandidate(int position, SafeMatcher safeMatcher, CandidateSurvivors survivors) {
+        CompiledRegexEntity compiledRegexEntity = candidates.get(position);
+
+        // modes that can only be decided by running the candidate's regex are evaluated together, in one pass
+        Set<SafeMatcher.MatchMode> regexModes = EnumSet.noneOf(SafeMatcher.MatchMode.class);
+
+        IndeterminateBoolean fullMatchSatisfies = IndeterminateBoolean.UNDETERMINED;
+        if (testSuite.hasPositiveAndNegativeStrings(SafeMatcher.MatchMode.FULL, 1)) {
+            Boolean verdict = fullMatchVerdictWithoutRegex(position, survivors);
+            if (verdict != null) {
+                fullMatchSatisfies = IndeterminateBoolean.fromBoolean(verdict);
+            } else {
+                regexModes.add(SafeMatcher.MatchMode.FULL);
+            }
+        }
+
+        IndeterminateBoolean partialMatchSatisfies = IndeterminateBoolean.UNDETERMINED;
+        if (testSuite.hasPositiveAndNegativeStrings(SafeMatcher.MatchMode.PARTIAL, 1)) {
+            boolean screened = survivors.survives(SafeMatcher.MatchMode.PARTIAL, position)
+                    && passesInvariantScreen(compiledRegexEntity, SafeMatcher.MatchMode.PARTIAL);
+            if (screened) {
+                regexModes.add(SafeMatcher.MatchMode.PARTIAL);
+            } else {
+                partialMatchSatisfies = IndeterminateBoolean.FALSE;
+            }
+        }
+
+        // a quarantined candidate would only time out again, so the modes that need its regex stay undetermined
+        PatternCircuitBreaker circuitBreaker = matchContext.circuitBreaker();
+        if (!regexModes.isEmpty() && circuitBreaker != null && circuitBreaker.isQuarantined(compiledRegexEntity.regexPattern())) {
+            regexModes.clear();
+        }
+
+        // once the test suite is out of budget, the candidates that are left are not run at all
+        if (!regexModes.isEmpty() && budget != null && budget.isSuiteExhausted(testSuite.id())) {
+            budget.recordSkipped(testSuite.id());
+            regexModes.clear();
+        }
+
+        if (!regexModes.isEmpty()) {
+            logger.debug("Testing test suite {} against regex {} in modes {}", testSuite.id(), compiledRegexEntity.id(), regexModes);
+            Map<SafeMatcher.MatchMode, Integer> misses = countMissesWithRegex(safeMatcher, regexModes, orderedStrings.size());
+            if (misses.containsKey(SafeMatcher.MatchMode.FULL)) {
+                fullMatchSatisfies = IndeterminateBoolean.fromBoolean(misses.get(SafeMatcher.MatchMode.FULL) <= allowedMisses);
+            }
+            if (misses.containsKey(SafeMatcher.MatchMode.PARTIAL)) {
+                partialMatchSatisfies = IndeterminateBoolean.fromBoolean(misses.get(SafeMatcher.MatchMode.PARTIAL) <= allowedMisses);
+            }
+        }
+
+        EvaluationResult result = new EvaluationResult(compiledRegexEntity, fullMatchSatisfies, partialMatchSatisfies);
+
+        // only interested in test suite results that are at least either a partial or full match
+        if (!result.fullMatch().coerceToBoolean() && !result.partialMatch().coerceToBoolean()) {
+            return Optional.empty();
+        }
 
         // truth tree
         // Tree truthRegexTree = AstDistance.buildTree(this.testSuite.pattern());
 
-        Set<RegexTestSuiteSolution> hits = this.candidates.stream()
-                .map(compiledRegexEntity -> {
-                    IndeterminateBoolean fullMatchSatisfies = testSuite.hasPositiveAndNegativeStrings(SafeMatcher.MatchMode.FULL, 1)
-                            ? IndeterminateBoolean.fromBoolean(regexSatisfiesTestSuiteFullMatch(compiledRegexEntity))
-                            : IndeterminateBoolean.UNDETERMINED;
-
-                    IndeterminateBoolean partialMatchSatisfies = testSuite.hasPositiveAndNegativeStrings(SafeMatcher.MatchMode.PARTIAL, 1)
-                            ? IndeterminateBoolean.fromBoolean(regexSatisfiesTestSuitePartialMatch(compiledRegexEntity))
-                            : IndeterminateBoolean.UNDETERMINED;
-
-                    return new EvaluationResult(compiledRegexEntity, fullMatchSatisfies, partialMatchSatisfies);
-                })
-                // only interested in test suite results that are at least either a partial or full match
-                .filter(result -> result.fullMatch().coerceToBoolean() || result.partialMatch().coerceToBoolean())
-                .map(result -> {
-                    // measure edit distance
-                    int astDistance = -1;
-                    /*
-                    try {
-                         astDistance = AstDistance.editDistance(truthRegexTree, result.entity().regexPattern().pattern());
-                    } catch (ArrayIndexOutOfBoundsException | IOException exe) {
-                        astDistance = -1;
-                    }
-                     */
-
-                    // measure automaton distance
-                    double fullESimilarity = Double.NaN;
-                    double partialESimilarity = Double.NaN;
-                    if (truthLanguageApprox != null) {
-                        fullESimilarity = truthLanguageApprox.eSimilarity(result.entity().regexPattern(), SafeMatcher.MatchMode.FULL, safeExecutionContext);
-                        partialESimilarity = truthLanguageApprox.eSimilarity(result.entity().regexPattern(), SafeMatcher.MatchMode.PARTIAL, safeExecutionContext);
-                    }
+        // measure edit distance
+        int astDistance = -1;
+        /*
+        try {
+             astDistance = AstDistance.editDistance(truthRegexTree, result.entity().regexPattern().pattern());
+        } catch (ArrayIndexOutOfBoundsException | IOException exe) {
+            astDistance = -1;
+        }
+         */
+
+        // measure automaton distance
+        double fullESimilarity = Double.NaN;
+        double partialESimilarity = Double.NaN;
+        if (truthLanguageApprox != null) {
+            Instant deadline = budget != null ? budget.candidateDeadline(testSuite.id()) : null;
+            fullESimilarity = truthLanguageApprox.eSimilarity(result.entity().regexPattern(), SafeMatcher.MatchMode.FULL, matchContext, deadline);
+            partialESimilarity = truthLanguageApprox.eSimilarity(result.entity().regexPattern(), SafeMatcher.MatchMode.PARTIAL, matchContext, deadline);
+        }
 
-                    return new RegexTestSuiteSolution(result.entity().id(),
-                            result.entity().projectId(),
-                            result.fullMatch(),
-                            result.partialMatch(),
-                            astDistance,
-                            fullESimilarity,
-                            partialESimilarity
-                            );
-                })
-                .collect(Collectors.toSet());
+        return Optional.of(new RegexTestSuiteSolution(result.entity().id(),
+                result.entity().projectId(),
+                result.fullMatch(),
+                result.partialMatch(),
+                astDistance,
+                fullESimilarity,
+                partialESimilarity
+        ));
+    }
 
-        return Map.of(testSuite.id(), hits);
+    /**
+     * Decide if a candidate full-matches this test suite without running its regex. When the decision is made with a
+     * DFA it only depends on the candidate's language, so it is shared with every other candidate of the same language
+     * class.
+     * @return the verdict, or null if only the candidate's regex can decide
+     */
+    private Boolean fullMatchVerdictWithoutRegex(int position, CandidateSurvivors survivors) {
+        CompiledRegexEntity compiledRegexEntity = candidates.get(position);
+        Boolean known = knownFullMatchVerdict(compiledRegexEntity);
+        if (known != null) {
+            return known;
+        }
+
+        boolean screened = survivors.survives(SafeMatcher.MatchMode.FULL, position)
+                && passesInvariantScreen(compiledRegexEntity, SafeMatcher.MatchMode.FULL);
+        if (compiledRegexEntity.dfaMatcher() == null || !dfaEvaluable) {
+            return screened ? null : false;
+        }
+
+        // every screen is sound, so screening cannot make candidates of the same language disagree
+        boolean satisfies = screened
+                && countMissesWithDfa(compiledRegexEntity.dfaMatcher(), fullMatchOrdering, fullMatchOrdering.current(), orderedStrings.size()) <= allowedMisses;
+        fullMatchByLanguage.putIfAbsent(compiledRegexEntity.dfaMatcher().getLanguageHash(), satisfies);
+        return satisfies;
     }
 
-    private boolean regexSatisfiesTestSuitePartialMatch(CompiledRegexEntity entity) {
-        logger.debug("Testing test suite {} against regex {}", testSuite.id(), entity.id());
+    /**
+     * @return the full match verdict of the entity's language, or null if it is not known yet
+     */
+    private Boolean knownFullMatchVerdict(CompiledRegexEntity entity) {
+        if (entity.dfaMatcher() == null || !dfaEvaluable) {
+            return null;
+        }
 
-        SafeMatcher safeMatcher = new SafeMatcher(entity.regexPattern(), this.safeExecutionContext);
+        batchFullMatchLanguages();
+        return fullMatchByLanguage.get(entity.dfaMatcher().getLanguageHash());
+    }
 
-        int correctlyIdentified = 0;
-        int idx = 0;
-        int total = testSuite.strings().size();
-        for (RegexTestSuiteString testSuiteString : testSuite.strings()) {
+    /**
+     * Full-match every test suite string against every distinct DFA language in one pass per batch of languages,
+     * instead of once per candidate. Done once per test suite, on whichever thread needs it first.
+     */
+    private void batchFullMatchLanguages() {
+        if (fullMatchBatchDone) {
+            return;
+        }
 
-            // check if we should keep going
-            int remaining = total - idx;
-            idx += 1;
-            if (noLongerAPossibleCandidate(correctlyIdentified, total, remaining)) {
-                return false;
+        synchronized (fullMatchByLanguage) {
+            if (fullMatchBatchDone) {
+                return;
             }
 
-            // determine if this regex partially matches the given string
-            SafeMatcher.PartialMatchResult partialMatchResult;
-            try {
-                logger.trace("evaluating regex {} on test suite string {} of test suite {}", entity.id(), testSuiteString.id(), testSuite.id());
-                Optional<SafeMatcher.PartialMatchResult> result = safeMatcher.partialMatch(testSuiteString.subject(), Duration.ofSeconds(2));
-                if (result.isEmpty()) {
-                    logger.debug("Timed out while matching, not a candidate");
-                    continue;
+            Map<String, DfaMatcher> languages = new LinkedHashMap<>();
+            for (CompiledRegexEntity candidate : candidates) {
+                if (candidate.dfaMatcher() != null) {
+                    languages.putIfAbsent(candidate.dfaMatcher().getLanguageHash(), candidate.dfaMatcher());
                 }
-                partialMatchResult = result.get();
-            } catch (StackOverflowError exe) {
-                logger.debug("Could not evaluate regex {} on test suite string {} due to stack overflow", entity.id(), testSuiteString.id());
-                continue;
             }
 
-            if (!testSuiteString.matchStatus().partialMatch() && partialMatchResult.matchResult() != SafeMatcher.MatchResult.MATCH) {
-                correctlyIdentified++;
-                continue;
+            if (languages.size() > 1 && testSuite.hasPositiveAndNegativeStrings(SafeMatcher.MatchMode.FULL, 1)) {
+                List<String> languageHashes = List.copyOf(languages.keySet());
+                List<BitSet> accepted = new DfaBatchMatcher(List.copyOf(languages.values()))
+                        .matchAll(orderedStrings.stream().map(RegexTestSuiteString::subject).toList());
+
+                int[] misses = new int[languageHashes.size()];
+                for (int idx = 0; idx < orderedStrings.size(); idx++) {
+                    boolean positive = orderedStrings.get(idx).matchStatus().fullMatch();
+                    for (int language = 0; language < misses.length; language++) {
+                        if (accepted.get(idx).get(language) != positive) {
+                            misses[language]++;
+                        }
+                    }
+                }
+
+                for (int language = 0; language < misses.length; language++) {
+                    fullMatchByLanguage.putIfAbsent(languageHashes.get(language), misses[language] <= allowedMisses);
+                }
+                logger.debug("batch full-matched {} DFA languages against test suite {}", misses.length, testSuite.id());
             }
 
-            // at this point, the test suite string MUST be a positive partial match string
+            fullMatchBatchDone = true;
+        }
+    }
+
+    /**
+     * @return The test suite this evaluator checks candidates against
+     */
+    public RegexTestSuite getTestSuite() {
+        return testSuite;
+    }
 
-            if (partialMatchResult.matchResult() == SafeMatcher.MatchResult.NOT_MATCH) {
-                // if it should not have matched but did,
+    /**
+     * Screen every surviving candidate with only the most discriminative strings. This is the first phase of a two
+     * phase evaluation: it rejects most candidates cheaply, and teaches the ordering which strings reject the most.
+     * @return positions of candidates that survive the screen, or null if the test suite cannot be evaluated in this
+     * mode anyway
+     */
+    private BitSet screen(SafeMatcher.MatchMode mode, CandidateSurvivors survivors) {
+        if (!testSuite.hasPositiveAndNegativeStrings(mode, 1)) {
+            return null;
+        }
+
+        BitSet passed = new BitSet(candidates.size());
+        for (int position = 0; position < candidates.size(); position++) {
+            CompiledRegexEntity entity = candidates.get(position);
+            if (!survivors.survives(mode, position) || !passesInvariantScreen(entity, mode)) {
                 continue;
             }
 
-            int actualStart = partialMatchResult.start();
-            int actualEnd = partialMatchResult.end();
+            Boolean knownVerdict = mode == SafeMatcher.MatchMode.FULL ? knownFullMatchVerdict(entity) : null;
+            if (knownVerdict != null) {
+                if (knownVerdict) {
+                    passed.set(position);
+                }
+                continue;
+            }
 
-            if (actualStart != testSuiteString.matchStatus().partialMatchStartIdx() || actualEnd != testSuiteString.matchStatus().partialMatchEndIdx()) {
-                logger.debug("Regex {} did not pull out the correct {} of test suite {}", entity.id(), testSuiteString.id(), testSuite.id());
+            // without budget, the screen cannot reject anything, and the evaluation leaves what it keeps undetermined
+            if (budget != null && budget.isSuiteExhausted(testSuite.id())) {
+                passed.set(position);
                 continue;
             }
 
-            // if we got to here, then we correctly identified the same substring
-            correctlyIdentified++;
+            SafeMatcher safeMatcher = new SafeMatcher(entity.regexPattern(), matchContext);
+            if (countMisses(entity, safeMatcher, mode, screenSize) <= allowedMisses) {
+                passed.set(position);
+            }
         }
 
-        // if we correctly identify all strings, accept
-        double computedAccuracy = correctlyIdentified / (double) total;
-        return computedAccuracy >= this.accuracyThreshold;
+        logger.debug("string screen kept {}/{} candidates for {} matching test suite {}", passed.cardinality(), candidates.size(), mode, testSuite.id());
+        return passed;
     }
 
-    private boolean regexSatisfiesTestSuiteFullMatch(CompiledRegexEntity entity) {
+    /**
+     * Survivors are computed once per test suite, on whichever thread needs them first
+     */
+    private CandidateSurvivors indexSurvivors() {
+        CandidateSurvivors survivors = this.indexSurvivors;
+        if (survivors == null) {
+            synchronized (this) {
+                survivors = this.indexSurvivors;
+                if (survivors == null) {
+                    survivors = new CandidateSurvivors(indexSurvivors(SafeMatcher.MatchMode.FULL), indexSurvivors(SafeMatcher.MatchMode.PARTIAL));
+                    this.indexSurvivors = survivors;
+                }
+            }
+        }
+        return survivors;
+    }
 
-        logger.debug("Testing test suite {} against regex {}", testSuite.id(), entity.id());
+    /**
+     * Use the trigram index to find candidates that could possibly satisfy this test suite. Every positive string must
+     * contain the required literals of a full match candidate. For partial matches, the expected sub-match must
+     * contain them instead.
+     * @return positions of surviving candidates, or null if there is no index
+     */
+    private BitSet indexSurvivors(SafeMatcher.MatchMode mode) {
+        if (candidateIndex == null) {
+            return null;
+        }
 
-        SafeMatcher safeMatcher = new SafeMatcher(entity.regexPattern(), this.safeExecutionContext);
+        List<String> positives = mode == SafeMatcher.MatchMode.FULL ? fullMatchPositives : partialMatchPositives;
+        BitSet survivors = candidateIndex.survivors(positives, allowedMisses);
+        logger.debug("trigram index kept {}/{} candidates for {} matching test suite {}", survivors.cardinality(), candidateIndex.getCandidates().size(), mode, testSuite.id());
+        return survivors;
+    }
 
-        int correctlyIdentified = 0;
-        int idx = 0;
-        int totalStrings = testSuite.strings().size();
-        for (RegexTestSuiteString testSuiteString : testSuite.strings()) {
+    /**
+     * Screen a candidate with the invariants of its language before running any matcher. A full match candidate is
+     * wrong on every positive string its language cannot contain, and on every negative string its language must
+     * contain. A partial match candidate is wrong on every positive string whose expected sub-match its language
+     * cannot contain. Candidates without a DFA always pass.
+     * @return false if the candidate is definitely wrong on too many strings to reach the accuracy threshold
+     */
+    private boolean passesInvariantScreen(CompiledRegexEntity entity, SafeMatcher.MatchMode mode) {
+        if (entity.dfaMatcher() == null) {
+            return true;
+        }
 
-            // check if we should keep going
-            int remaining = totalStrings - idx;
-            idx += 1;
-            if (noLongerAPossibleCandidate(correctlyIdentified, totalStrings, remaining)) {
+        LanguageInvariants invariants = entity.dfaMatcher().getInvariants();
+        int misses = 0;
+        for (String positive : mode == SafeMatcher.MatchMode.FULL ? fullMatchPositives : partialMatchPositives) {
+            if (!invariants.mayAccept(positive) && ++misses > allowedMisses) {
                 return false;
             }
+        }
 
-            // determine if this regex partially matches the given string
-            boolean fullMatches = false;
-            try {
-                logger.trace("evaluating regex {} on test suite string {} of test suite {}", entity.id(), testSuiteString.id(), testSuite.id());
-                SafeMatcher.MatchResult result = safeMatcher.match(testSuiteString.subject(), SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2));
-                switch (result) {
-                    case MATCH -> fullMatches = true;
-                    case NOT_MATCH -> fullMatches = false;
-                    case TIMEOUT -> {
-                        continue;
-                    }
+        if (mode == SafeMatcher.MatchMode.FULL && invariants.isUniversal()) {
+            for (String negative : fullMatchNegatives) {
+                if (invariants.mustAccept(negative) && ++misses > allowedMisses) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The largest number of strings a candidate can get wrong and still reach the accuracy threshold
+     */
+    private int allowedMisses(int total) {
+        int allowed = 0;
+        while (allowed < total && !noLongerAPossibleCandidate(0, total, total - allowed - 1)) {
+            allowed++;
+        }
+        return allowed;
+    }
+
+    /**
+     * Classify the first count test suite strings in discriminative order with the given entity. Classification stops
+     * as soon as the entity gets more than the allowed number of strings wrong. Results are recorded to improve the
+     * order for later candidates.
+     * @return the number of strings the entity got wrong, counting strings that were not evaluated. An entity that
+     * ran out of budget before it was decided is not counted as wrong on anything
+     */
+    private int countMisses(CompiledRegexEntity entity, SafeMatcher safeMatcher, SafeMatcher.MatchMode mode, int count) {
+        if (mode == SafeMatcher.MatchMode.FULL && entity.dfaMatcher() != null && this.dfaEvaluable) {
+            return countMissesWithDfa(entity.dfaMatcher(), fullMatchOrdering, fullMatchOrdering.current(), count);
+        }
+
+        return countMissesWithRegex(safeMatcher, EnumSet.of(mode), count).getOrDefault(mode, 0);
+    }
+
+    /**
+     * Classify the first count test suite strings with the candidate's regex in every given mode at once. Each string
+     * is matched in all of its modes before the next one, and each mode stops on its own once the candidate gets more
+     * than the allowed number of strings wrong in it. The strings are tried in the discriminative order of the first
+     * mode, and every mode's results are recorded in that mode's own ordering.
+     * <br>
+     * If there is a budget, the batch also ends when the candidate's budget runs out. A mode that was cut short before
+     * it was decided either way is left out of the result, so that it stays undetermined.
+     * @return for each mode that was decided, the number of strings the candidate got wrong, counting strings that
+     * were not evaluated
+     */
+    private Map<SafeMatcher.MatchMode, Integer> countMissesWithRegex(SafeMatcher safeMatcher, Set<SafeMatcher.MatchMode> modes, int count) {
+        DiscriminativeOrdering.Snapshot snapshot = ordering(modes.iterator().next()).current();
+        List<RegexTestSuiteString> strings = snapshot.strings();
+        List<String> subjects = snapshot.subjects().subList(0, count);
+
+        int[] misses = new int[SafeMatcher.MatchMode.values().length];
+        int[] wrong = new int[SafeMatcher.MatchMode.values().length];
+        int[] reported = new int[SafeMatcher.MatchMode.values().length];
+        Instant deadline = Instant.now().plus(STRING_TIMEOUT.multipliedBy((long) count * modes.size()));
+        Instant budgetDeadline = budget != null ? budget.candidateDeadline(testSuite.id()) : null;
+        boolean budgeted = budgetDeadline != null && budgetDeadline.isBefore(deadline);
+        if (budgeted) {
+            deadline = budgetDeadline;
+        }
+        Map<SafeMatcher.MatchMode, BatchMatchResult> results = safeMatcher.classifyAll(subjects, modes, STRING_TIMEOUT, deadline, (mode, idx, result, start, end) -> {
+            reported[mode.ordinal()]++;
+            boolean correct = isCorrectlyIdentified(strings.get(idx), mode, result, start, end);
+            if (!correct) {
+                misses[mode.ordinal()]++;
+                if (result != SafeMatcher.MatchResult.TIMEOUT) {
+                    wrong[mode.ordinal()]++;
                 }
-            } catch (StackOverflowError exe) {
-                logger.debug("Could not evaluate regex {} on test suite string {} due to stack overflow", entity.id(), testSuiteString.id());
-                continue;
             }
+            // timeouts say more about the cost of a string than how discriminative it is
+            if (result != SafeMatcher.MatchResult.TIMEOUT) {
+                ordering(mode).record(snapshot.order()[idx], !correct);
+            }
+            return misses[mode.ordinal()] > allowedMisses;
+        });
+
+        // strings that ran into the budget's deadline are reported as timeouts, which is not the candidate's fault
+        boolean cutShort = budgeted && results.values().stream().anyMatch(BatchMatchResult::isDeadlineExceeded);
+
+        // strings that were skipped or ran out of time without being reported count as misses too
+        Map<SafeMatcher.MatchMode, Integer> missesByMode = new EnumMap<>(SafeMatcher.MatchMode.class);
+        for (SafeMatcher.MatchMode mode : results.keySet()) {
+            int missed = misses[mode.ordinal()] + count - reported[mode.ordinal()];
+            if (!cutShort || missed <= allowedMisses || wrong[mode.ordinal()] > allowedMisses) {
+                missesByMode.put(mode, missed);
+            }
+        }
+
+        if (missesByMode.size() < results.size()) {
+            budget.recordCutShort(testSuite.id());
+        }
+        return missesByMode;
+    }
+
+    private DiscriminativeOrdering ordering(SafeMatcher.MatchMode mode) {
+        return mode == SafeMatcher.MatchMode.FULL ? fullMatchOrdering : partialMatchOrdering;
+    }
 
-            if (testSuiteString.matchStatus().fullMatch() == fullMatches) {
-                correctlyIdentified++;
+    /**
+     * Full-match test suite strings with a DFA on the calling thread. This cannot time out.
+     */
+    private int countMissesWithDfa(DfaMatcher dfaMatcher, DiscriminativeOrdering ordering, DiscriminativeOrdering.Snapshot snapshot, int count) {
+        List<RegexTestSuiteString> strings = snapshot.strings();
+        int misses = 0;
+        for (int idx = 0; idx < count; idx++) {
+            RegexTestSuiteString testSuiteString = strings.get(idx);
+            SafeMatcher.MatchResult result = SafeMatcher.MatchResult.fromBoolean(dfaMatcher.matches(testSuiteString.subject()));
+            boolean correct = isCorrectlyIdentified(testSuiteString, SafeMatcher.MatchMode.FULL, result, -1, -1);
+            ordering.record(snapshot.order()[idx], !correct);
+            if (!correct && ++misses > allowedMisses) {
+                // the rest were never evaluated
+                return misses + count - idx - 1;
             }
         }
 
-        double computedAccuracy = correctlyIdentified / (double) totalStrings;
+        return misses;
+    }
+
+    /**
+     * Determine if a candidate's result on a string agrees with the truth. Timeouts are never correct.
+     */
+    private static boolean isCorrectlyIdentified(RegexTestSuiteString testSuiteString, SafeMatcher.MatchMode mode, SafeMatcher.MatchResult result, int start, int end) {
+        if (result == SafeMatcher.MatchResult.TIMEOUT) {
+            return false;
+        }
+
+        MatchStatus truth = testSuiteString.matchStatus();
+        if (mode == SafeMatcher.MatchMode.FULL) {
+            return truth.fullMatch() == result.matches();
+        }
+
+        if (!truth.partialMatch()) {
+            return !result.matches();
+        }
 
-        return computedAccuracy >= this.accuracyThreshold;
+        // the string MUST be a positive partial match string, so the candidate has to pull out the same substring
+        return result.matches() && start == truth.partialMatchStartIdx() && end == truth.partialMatchEndIdx();
     }
 
     private boolean noLongerAPossibleCandidate(int currentCorrect, int total, int remaining) {
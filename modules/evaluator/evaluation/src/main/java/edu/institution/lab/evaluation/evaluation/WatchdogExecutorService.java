@@ -0,0 +1,375 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.safematch.TimeLimitedTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of threads for safe matches, watched by a watchdog. Cancelling a future interrupts its task, but a task
+ * that ignores interrupts, like a backtracking matcher that stopped reading characters or an automaton under
+ * construction, keeps its thread busy anyway. In a plain thread pool, such zombie tasks pile up over a long run until
+ * no thread is left for the matches that would finish.
+ * <br>
+ * The watchdog periodically checks the task of every thread. A task that was cancelled, or that ran for longer than
+ * its run limit, is interrupted again on every check, in case it swallowed the first interrupt. If it is still running
+ * after the escalation grace period, its thread is retired and a fresh thread takes its place, so the number of threads
+ * that take tasks stays the same however many tasks get stuck. The retired thread is left to finish its task on its
+ * own, and is counted as leaked until then. Threads are daemons, so leaked threads don't hold up the exit of the
+ * process.
+ * <br>
+ * A {@link TimeLimitedTask} is given its own run limit, since a batch of many strings may legitimately run for much
+ * longer than the default limit. Other tasks get the run limit of the executor.
+ */
+public class WatchdogExecutorService extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WatchdogExecutorService.class);
+
+    /// how often the watchdog checks the running tasks
+    public static final Duration DEFAULT_SCAN_INTERVAL = Duration.ofSeconds(1);
+    /// how long a cancelled task may keep running before its thread is replaced
+    public static final Duration DEFAULT_ESCALATION_GRACE = Duration.ofSeconds(5);
+    /// how long a task that has no limit of its own may run before the watchdog cancels it, even if no one did
+    public static final Duration DEFAULT_RUN_LIMIT = Duration.ofMinutes(5);
+
+    private static final long NOT_CANCELLED = Long.MIN_VALUE;
+
+    /**
+     * A future that remembers when it was cancelled
+     */
+    private static final class WatchedFutureTask<V> extends FutureTask<V> {
+
+        /// how long the task may run before the watchdog cancels it
+        private final long runLimitNanos;
+        private volatile long cancelledAtNanos = NOT_CANCELLED;
+
+        private WatchedFutureTask(Callable<V> callable, long runLimitNanos) {
+            super(callable);
+            this.runLimitNanos = runLimitNanos;
+        }
+
+        private WatchedFutureTask(Runnable runnable, V result, long runLimitNanos) {
+            super(runnable, result);
+            this.runLimitNanos = runLimitNanos;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            long now = System.nanoTime();
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelledAtNanos = now;
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * A thread that takes tasks until it is retired or the executor is shut down
+     */
+    private final class Worker implements Runnable {
+        private final Thread thread;
+        /// the task this worker runs, or null while it waits for one. Only changed while holding the worker's lock
+        private Runnable current;
+        private long startNanos;
+        private volatile boolean retired;
+
+        private Worker() {
+            this.thread = new Thread(this, "watched-safe-match-" + threadIds.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!retired) {
+                    Runnable task = queue.poll(scanIntervalNanos, TimeUnit.NANOSECONDS);
+                    if (task == null) {
+                        if (isShutdown()) {
+                            break;
+                        }
+                        continue;
+                    }
+
+                    synchronized (this) {
+                        current = task;
+                        startNanos = System.nanoTime();
+                    }
+                    try {
+                        task.run();
+                    } catch (RuntimeException exe) {
+                        logger.warn("safe match task failed", exe);
+                    } finally {
+                        synchronized (this) {
+                            current = null;
+                            // an interrupt meant for this task must not leak into the next one
+                            Thread.interrupted();
+                        }
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                // only interrupted while idle by shutdownNow
+            } finally {
+                exited(this);
+            }
+        }
+
+        /**
+         * Interrupt this worker, but only if it still runs the given task
+         */
+        private synchronized void interrupt(Runnable task) {
+            if (current == task) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private final int threadCount;
+    private final long scanIntervalNanos;
+    private final long escalationGraceNanos;
+    private final long runLimitNanos;
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService watchdog;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    /// guards the sets of workers, the counters and shutdown
+    private final Object lock = new Object();
+    /// workers that take tasks. There are always threadCount of them until shutdown
+    private final Set<Worker> activeWorkers = new HashSet<>();
+    /// workers that were replaced while stuck, and have not finished their task yet
+    private final Set<Worker> leakedWorkers = new HashSet<>();
+    private long replacedThreads;
+    private long recoveredThreads;
+    private boolean shutdown;
+
+    public WatchdogExecutorService(int threadCount) {
+        this(threadCount, DEFAULT_SCAN_INTERVAL, DEFAULT_ESCALATION_GRACE, DEFAULT_RUN_LIMIT);
+    }
+
+    /**
+     * @param threadCount How many threads take tasks at any time
+     * @param scanInterval How often the watchdog checks the running tasks
+     * @param escalationGrace How long a cancelled task may keep running before its thread is replaced
+     * @param runLimit How long a task that has no limit of its own may run before the watchdog cancels it
+     */
+    public WatchdogExecutorService(int threadCount, Duration scanInterval, Duration escalationGrace, Duration runLimit) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("thread count must be positive");
+        }
+
+        this.threadCount = threadCount;
+        this.scanIntervalNanos = scanInterval.toNanos();
+        this.escalationGraceNanos = escalationGrace.toNanos();
+        this.runLimitNanos = runLimit.toNanos();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "safe-match-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        synchronized (lock) {
+            for (int i = 0; i < threadCount; i++) {
+                startWorker();
+            }
+        }
+        watchdog.scheduleWithFixedDelay(this::scan, scanIntervalNanos, scanIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return how many replaced threads are still stuck in their task
+     */
+    public int getLeakedThreadCount() {
+        synchronized (lock) {
+            return leakedWorkers.size();
+        }
+    }
+
+    /**
+     * @return how many threads were replaced because they were stuck
+     */
+    public long getReplacedThreadCount() {
+        synchronized (lock) {
+            return replacedThreads;
+        }
+    }
+
+    /**
+     * @return how many replaced threads eventually finished their task
+     */
+    public long getRecoveredThreadCount() {
+        synchronized (lock) {
+            return recoveredThreads;
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        long taskRunLimitNanos = callable instanceof TimeLimitedTask<T> timeLimited ? timeLimited.runLimit().toNanos() : runLimitNanos;
+        return new WatchedFutureTask<>(callable, taskRunLimitNanos);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new WatchedFutureTask<>(runnable, value, runLimitNanos);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command);
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("executor is shut down");
+            }
+            queue.add(command);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            // the watchdog keeps watching until the last task is done, see exited
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        synchronized (lock) {
+            for (Worker worker : activeWorkers) {
+                worker.thread.interrupt();
+            }
+            for (Worker worker : leakedWorkers) {
+                worker.thread.interrupt();
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Leaked threads are not waited on, since they may never finish
+     */
+    @Override
+    public boolean isTerminated() {
+        synchronized (lock) {
+            return shutdown && activeWorkers.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!(shutdown && activeWorkers.isEmpty())) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Escalate the cancellation of every task that should have stopped by now
+     */
+    private void scan() {
+        List<Worker> workers;
+        synchronized (lock) {
+            workers = List.copyOf(activeWorkers);
+        }
+
+        long now = System.nanoTime();
+        for (Worker worker : workers) {
+            Runnable task;
+            long startNanos;
+            synchronized (worker) {
+                task = worker.current;
+                startNanos = worker.startNanos;
+            }
+            if (task == null) {
+                continue;
+            }
+
+            long overdueSinceNanos = startNanos + runLimitNanos;
+            if (task instanceof WatchedFutureTask<?> future) {
+                overdueSinceNanos = startNanos + future.runLimitNanos;
+                if (future.cancelledAtNanos == NOT_CANCELLED && now - overdueSinceNanos >= 0) {
+                    future.cancel(true);
+                }
+                if (future.cancelledAtNanos != NOT_CANCELLED) {
+                    overdueSinceNanos = Math.min(overdueSinceNanos, future.cancelledAtNanos);
+                }
+            }
+            if (now - overdueSinceNanos < 0) {
+                continue;
+            }
+
+            if (now - overdueSinceNanos < escalationGraceNanos) {
+                // the task may have swallowed the last interrupt, so send another one
+                worker.interrupt(task);
+            } else {
+                retire(worker, task, Duration.ofNanos(now - startNanos));
+            }
+        }
+    }
+
+    private void retire(Worker worker, Runnable task, Duration running) {
+        synchronized (lock) {
+            if (!activeWorkers.remove(worker)) {
+                return;
+            }
+            worker.retired = true;
+            leakedWorkers.add(worker);
+            replacedThreads++;
+            // after shutdown, the replacement only helps drain the queue
+            startWorker();
+            lock.notifyAll();
+        }
+        // keep nudging it, it may still give up
+        worker.interrupt(task);
+        logger.warn("replaced safe match thread {}, stuck in a cancelled task for {}", worker.thread.getName(), running);
+    }
+
+    private void exited(Worker worker) {
+        synchronized (lock) {
+            if (leakedWorkers.remove(worker)) {
+                recoveredThreads++;
+            } else {
+                activeWorkers.remove(worker);
+            }
+            if (shutdown && activeWorkers.isEmpty()) {
+                watchdog.shutdownNow();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void startWorker() {
+        Worker worker = new Worker();
+        activeWorkers.add(worker);
+        worker.thread.start();
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format("%d watched threads, %d replaced, %d still leaked", threadCount, replacedThreads, leakedWorkers.size());
+        }
+    }
+}
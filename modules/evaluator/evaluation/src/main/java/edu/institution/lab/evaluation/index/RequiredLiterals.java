@@ -0,0 +1,168 @@
+package edu.institution.lab.evaluation.index;
+
+import edu.institution.lab.evaluation.dfa.JavaRegexParser;
+import edu.institution.lab.evaluation.dfa.RegexNode;
+
+import java.util.*;
+
+/**
+ * Extracts literal strings that must appear in every string a regex matches. A full match, and also the sub-match of
+ * a partial match, must contain each of these literals as a substring. The extraction is conservative: it may miss
+ * literals, but everything it reports is truly required.
+ */
+public final class RequiredLiterals {
+
+    /// literals longer than this are not expanded out of fixed repetitions
+    private static final int MAX_FIXED_LENGTH = 256;
+
+    /**
+     * What we know about the strings a node can match
+     * @param fixed The one string this node matches, or null if it can match more than one string
+     * @param required Strings that are substrings of every match
+     */
+    private record LiteralInfo(String fixed, Set<String> required) {
+        static LiteralInfo none() {
+            return new LiteralInfo(null, Set.of());
+        }
+
+        /**
+         * @return every string that must appear in a match, including the fixed string
+         */
+        Set<String> allRequired() {
+            if (fixed == null || fixed.isEmpty()) {
+                return required;
+            }
+            Set<String> all = new HashSet<>(required);
+            all.add(fixed);
+            return all;
+        }
+    }
+
+    private RequiredLiterals() {
+    }
+
+    /**
+     * Extract the required literals of a pattern
+     * @param pattern A java regex pattern
+     * @return Required literals, or empty if the pattern cannot be analyzed
+     */
+    public static Optional<Set<String>> extract(String pattern) {
+        return JavaRegexParser.tryParse(pattern).map(RequiredLiterals::extract);
+    }
+
+    /**
+     * Extract the required literals of a parsed regex
+     * @param node The parsed regex
+     * @return Literals that must appear in every match. Does not contain the empty string
+     */
+    public static Set<String> extract(RegexNode node) {
+        return analyze(node).allRequired();
+    }
+
+    /**
+     * Break literals into the distinct trigrams they contain. Literals shorter than three characters are dropped.
+     * @param literals The literals
+     * @return Sorted, distinct trigram keys
+     */
+    public static long[] trigrams(Collection<String> literals) {
+        return literals.stream()
+                .flatMapToLong(literal -> {
+                    long[] keys = new long[Math.max(0, literal.length() - 2)];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = trigramKey(literal, i);
+                    }
+                    return Arrays.stream(keys);
+                })
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Pack the three chars starting at offset into a single key
+     */
+    static long trigramKey(CharSequence text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    private static LiteralInfo analyze(RegexNode node) {
+        if (node instanceof RegexNode.CharClass charClass) {
+            return charClass.isSingleChar()
+                    ? new LiteralInfo(String.valueOf(charClass.singleChar()), Set.of())
+                    : LiteralInfo.none();
+        } else if (node instanceof RegexNode.Concat concat) {
+            return analyzeConcat(concat);
+        } else if (node instanceof RegexNode.Alternation alternation) {
+            return analyzeAlternation(alternation);
+        } else if (node instanceof RegexNode.Repeat repeat) {
+            return analyzeRepeat(repeat);
+        }
+
+        return LiteralInfo.none();
+    }
+
+    private static LiteralInfo analyzeConcat(RegexNode.Concat concat) {
+        Set<String> required = new HashSet<>();
+        StringBuilder run = new StringBuilder();
+        boolean allFixed = true;
+        for (RegexNode item : concat.items()) {
+            LiteralInfo info = analyze(item);
+            required.addAll(info.required());
+            if (info.fixed() != null) {
+                run.append(info.fixed());
+            } else {
+                allFixed = false;
+                addIfNotEmpty(required, run.toString());
+                run.setLength(0);
+            }
+        }
+
+        if (allFixed) {
+            return new LiteralInfo(run.toString(), required);
+        }
+
+        addIfNotEmpty(required, run.toString());
+        return new LiteralInfo(null, required);
+    }
+
+    private static LiteralInfo analyzeAlternation(RegexNode.Alternation alternation) {
+        // only literals required by every alternative are required by the whole
+        Set<String> required = null;
+        String fixed = null;
+        boolean allSameFixed = true;
+        for (RegexNode alternative : alternation.alternatives()) {
+            LiteralInfo info = analyze(alternative);
+            if (required == null) {
+                required = new HashSet<>(info.allRequired());
+                fixed = info.fixed();
+            } else {
+                required.retainAll(info.allRequired());
+                allSameFixed &= Objects.equals(fixed, info.fixed());
+            }
+        }
+
+        if (allSameFixed && fixed != null) {
+            return new LiteralInfo(fixed, Set.of());
+        }
+        return new LiteralInfo(null, required == null ? Set.of() : required);
+    }
+
+    private static LiteralInfo analyzeRepeat(RegexNode.Repeat repeat) {
+        if (repeat.min() == 0) {
+            return LiteralInfo.none();
+        }
+
+        LiteralInfo child = analyze(repeat.child());
+        if (child.fixed() != null && repeat.min() == repeat.max() && (long) child.fixed().length() * repeat.min() <= MAX_FIXED_LENGTH) {
+            return new LiteralInfo(child.fixed().repeat(repeat.min()), child.required());
+        }
+
+        return new LiteralInfo(null, child.allRequired());
+    }
+
+    private static void addIfNotEmpty(Set<String> literals, String literal) {
+        if (!literal.isEmpty()) {
+            literals.add(literal);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package edu.institution.lab.evaluation.index;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the required trigrams of patterns so that each pattern is only analyzed once per run. Patterns that cannot
+ * be analyzed require no trigrams. This class is thread safe.
+ */
+public class RequiredTrigramCache {
+
+    private static final long[] NO_TRIGRAMS = new long[0];
+
+    private final Map<String, long[]> trigrams;
+
+    public RequiredTrigramCache() {
+        this.trigrams = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param pattern The pattern to analyze
+     * @return The sorted, distinct trigrams that every match of the pattern contains
+     */
+    public long[] get(String pattern) {
+        return trigrams.computeIfAbsent(pattern, RequiredTrigramCache::computeTrigrams);
+    }
+
+    private static long[] computeTrigrams(String pattern) {
+        Set<String> literals = RequiredLiterals.extract(pattern).orElse(Set.of());
+        long[] required = RequiredLiterals.trigrams(literals);
+        return required.length == 0 ? NO_TRIGRAMS : required;
+    }
+}
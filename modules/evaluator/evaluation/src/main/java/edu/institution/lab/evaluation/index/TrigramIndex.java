@@ -0,0 +1,112 @@
+package edu.institution.lab.evaluation.index;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Inverted index from trigrams to the candidates that require them. Candidates are identified by their position in the
+ * list the index was built from.
+ * <br>
+ * A candidate can only match a string that contains every trigram the candidate requires. Given a set of strings that
+ * a candidate must match, the index finds candidates that are missing required trigrams from some of them by counting
+ * posting list hits per string. Those candidates can be rejected without running a matcher. Candidates that require no
+ * trigrams always survive.
+ */
+public class TrigramIndex {
+
+    private static final int[] EMPTY_POSTINGS = new int[0];
+
+    private final List<CompiledRegexEntity> candidates;
+    /// number of distinct trigrams each candidate requires
+    private final int[] requiredCounts;
+    /// positions of candidates that require at least one trigram
+    private final int[] indexedCandidates;
+    private final Map<Long, int[]> postings;
+
+    private TrigramIndex(List<CompiledRegexEntity> candidates, int[] requiredCounts, int[] indexedCandidates, Map<Long, int[]> postings) {
+        this.candidates = candidates;
+        this.requiredCounts = requiredCounts;
+        this.indexedCandidates = indexedCandidates;
+        this.postings = postings;
+    }
+
+    /**
+     * Build an index over the given candidates
+     * @param candidates Candidates to index. The index refers to candidates by their position in this list
+     * @param requiredTrigrams Provides the required trigrams of a pattern. See {@link RequiredTrigramCache}
+     * @return The index
+     */
+    public static TrigramIndex build(List<CompiledRegexEntity> candidates, Function<String, long[]> requiredTrigrams) {
+        int[] requiredCounts = new int[candidates.size()];
+        Map<Long, List<Integer>> postingLists = new HashMap<>();
+        List<Integer> indexed = new ArrayList<>();
+        for (int position = 0; position < candidates.size(); position++) {
+            long[] trigrams = requiredTrigrams.apply(candidates.get(position).regexPattern().pattern());
+            requiredCounts[position] = trigrams.length;
+            if (trigrams.length > 0) {
+                indexed.add(position);
+            }
+            for (long trigram : trigrams) {
+                postingLists.computeIfAbsent(trigram, key -> new ArrayList<>()).add(position);
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(postingLists.size() * 2);
+        postingLists.forEach((trigram, positions) -> postings.put(trigram, positions.stream().mapToInt(Integer::intValue).toArray()));
+        return new TrigramIndex(candidates, requiredCounts, indexed.stream().mapToInt(Integer::intValue).toArray(), postings);
+    }
+
+    /**
+     * @return the candidates this index was built from
+     */
+    public List<CompiledRegexEntity> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the number of candidates that require at least one trigram
+     */
+    public int getIndexedCount() {
+        return indexedCandidates.length;
+    }
+
+    /**
+     * Find candidates that could still match the given strings.
+     * @param texts Strings that every surviving candidate must be able to match
+     * @param allowedMisses How many of the strings a candidate may fail to match and still survive
+     * @return The positions of candidates that survive
+     */
+    public BitSet survivors(Collection<? extends CharSequence> texts, int allowedMisses) {
+        BitSet survivors = new BitSet(candidates.size());
+        survivors.set(0, candidates.size());
+        if (texts.isEmpty() || indexedCandidates.length == 0) {
+            return survivors;
+        }
+
+        int[] misses = new int[candidates.size()];
+        int[] hits = new int[candidates.size()];
+        Set<Long> seen = new HashSet<>();
+        for (CharSequence text : texts) {
+            Arrays.fill(hits, 0);
+            seen.clear();
+            for (int offset = 0; offset + 3 <= text.length(); offset++) {
+                long trigram = RequiredLiterals.trigramKey(text, offset);
+                if (seen.add(trigram)) {
+                    for (int position : postings.getOrDefault(trigram, EMPTY_POSTINGS)) {
+                        hits[position]++;
+                    }
+                }
+            }
+
+            for (int position : indexedCandidates) {
+                if (hits[position] < requiredCounts[position] && ++misses[position] > allowedMisses) {
+                    survivors.clear(position);
+                }
+            }
+        }
+
+        return survivors;
+    }
+}
@@ -4,13 +4,26 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.brics.automaton.AutomatonCoverage;
 import edu.institution.lab.evaluation.TestSuiteService;
+import edu.institution.lab.evaluation.canonical.CanonicalCandidates;
+import edu.institution.lab.evaluation.checkpoint.CheckpointedCommand;
+import edu.institution.lab.evaluation.checkpoint.RunCheckpoint;
+import edu.institution.lab.evaluation.checkpoint.WorkUnit;
 import edu.institution.lab.evaluation.db.InternetRegexService;
 import edu.institution.lab.evaluation.db.RegexDatabaseClient;
+import edu.institution.lab.evaluation.dfa.DfaMatcherCache;
+import edu.institution.lab.evaluation.index.RequiredTrigramCache;
+import edu.institution.lab.evaluation.index.TrigramIndex;
 import edu.institution.lab.evaluation.evaluation.AutoCloseableExecutorService;
 import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.evaluation.ExecutionContexts;
+import edu.institution.lab.evaluation.evaluation.ExecutionModel;
 import edu.institution.lab.evaluation.evaluation.RelativeCoverageEvaluator;
 import edu.institution.lab.evaluation.evaluation.TestSuiteEvaluator;
 import edu.institution.lab.evaluation.model.*;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.MatchMemo;
+import edu.institution.lab.evaluation.shard.Shard;
 import edu.institution.lab.evaluation.util.CoverageUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,54 +73,88 @@ public final class InternetEvaluationService {
     private final InternetRegexService internetRegexService;
     private final TestSuiteService testSuiteService;
     private final ObjectMapper mapper;
+    /// the slice of test suites that this process evaluates
+    private final Shard shard;
+    /// how jobs and safe matches are mapped onto threads
+    private final ExecutionModel executionModel;
 
     public InternetEvaluationService(RegexDatabaseClient internetRegexDatabaseClient, RegexDatabaseClient regexDatabaseClient) {
+        this(internetRegexDatabaseClient, regexDatabaseClient, Shard.ALL, ExecutionModel.SEPARATE_POOLS);
+    }
+
+    public InternetEvaluationService(RegexDatabaseClient internetRegexDatabaseClient, RegexDatabaseClient regexDatabaseClient, Shard shard, ExecutionModel executionModel) {
         this.internetRegexService = internetRegexDatabaseClient;
         this.testSuiteService = new TestSuiteService(regexDatabaseClient);
         this.mapper = new ObjectMapper();
+        this.shard = shard;
+        this.executionModel = executionModel;
     }
 
     public void evaluateInternetRegexes() throws SQLException, FileNotFoundException {
+        evaluateInternetRegexes(false);
+    }
+
+    /**
+     * Evaluate every internet regex against every test suite. The results of each test suite are saved as soon as it
+     * completes, along with a record that it is complete, so an interrupted run can be resumed.
+     * @param resume If true, skip the test suites that an earlier run completed
+     */
+    public void evaluateInternetRegexes(boolean resume) throws SQLException, FileNotFoundException {
+
+        RunCheckpoint checkpoint = internetRegexService.startRun(CheckpointedCommand.INTERNET_EVALUATE, resume);
 
         // load internet regex candidates from database
-        Collection<CompiledRegexEntity> candidates = internetRegexService.loadInternetCandidates()
+        DfaMatcherCache dfaMatcherCache = new DfaMatcherCache();
+        CanonicalCandidates canonicalCandidates = CanonicalCandidates.group(internetRegexService.loadInternetCandidates()
                 .flatMap(candidateRegex -> CompiledRegexEntity.tryCompile(candidateRegex).stream())
+                .toList());
+        List<CompiledRegexEntity> candidates = canonicalCandidates.getRepresentatives().stream()
+                .map(dfaMatcherCache::attach)
                 .toList();
+        logger.info("Grouped {} internet regexes into {} canonical patterns", canonicalCandidates.getCandidateCount(), candidates.size());
+        logger.info("{}/{} internet regexes can be full-matched with a DFA", dfaMatcherCache.eligibleCount(), dfaMatcherCache.size());
+        TrigramIndex candidateIndex = TrigramIndex.build(candidates, new RequiredTrigramCache()::get);
+        logger.info("Indexed required trigrams of {}/{} internet regexes", candidateIndex.getIndexedCount(), candidates.size());
+
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(executionModel)) {
 
-        // save these to a file
-        Map<Long, Set<RegexTestSuiteSolution>> collectedTestSuites = new HashMap<>();
-        try (AutoCloseableExecutorService safeExecutionContext = new AutoCloseableExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
-             AutoCloseableExecutorService jobExecutor = new AutoCloseableExecutorService(Executors.newWorkStealingPool(Runtime.getRuntime().availableProcessors()))) {
+            AutoCloseableExecutorService safeExecutionContext = executionContexts.getSafeExecutionContext();
+            CompletionService<Map<Long, Set<RegexTestSuiteSolution>>> jobExecutionContext = new ExecutorCompletionService<>(executionContexts.getJobExecutor());
 
-            CompletionService<Map<Long, Set<RegexTestSuiteSolution>>> jobExecutionContext = new ExecutorCompletionService<>(jobExecutor);
+            MatchContext matchContext = new MatchContext(safeExecutionContext, new InlineMatchPolicy(), new MatchMemo(), null, null);
 
             // submit all test suites for evaluation on all candidate regexes
             AtomicLong jobCount = new AtomicLong(0);
+            Map<Long, Long> testSuiteProjects = new HashMap<>();
             testSuiteService.loadRegexTestSuites()
+                    .filter(testSuite -> shard.contains(testSuite.id()))
+                    .filter(testSuite -> !checkpoint.isCompleted(WorkUnit.testSuite(testSuite.projectId(), testSuite.id())))
+                    .peek(testSuite -> testSuiteProjects.put(testSuite.id(), testSuite.projectId()))
                     // TODO configure the accuracy
-                    .map(testSuite -> new TestSuiteEvaluator(safeExecutionContext, testSuite, candidates, 1.0))
+                    .map(testSuite -> new TestSuiteEvaluator(matchContext, testSuite, candidateIndex, 1.0, 0, null))
                     .peek((job) -> jobCount.getAndIncrement())
                     .forEach(jobExecutionContext::submit);
 
             for (long i = jobCount.get(); i > 0; i--) {
                 Future<Map<Long, Set<RegexTestSuiteSolution>>> future = jobExecutionContext.take();
                 Map<Long, Set<RegexTestSuiteSolution>> result = future.get();
-                collectedTestSuites.putAll(result);
+                List<WorkUnit> completedUnits = result.keySet().stream()
+                        .map(testSuiteId -> WorkUnit.testSuite(testSuiteProjects.get(testSuiteId), testSuiteId))
+                        .toList();
+                internetRegexService.insertManyInternetTestSuiteResults(canonicalCandidates.fanOut(result), checkpoint, completedUnits);
                 logger.info("{}/{} test suites remaining", i - 1, jobCount.get());
             }
         } catch (ExecutionException | InterruptedException e) {
             throw new RuntimeException(e);
         }
 
-        // save contents to a file
-        logger.info("saving results...");
-        internetRegexService.insertManyInternetTestSuiteResults(collectedTestSuites);
         logger.info("done");
     }
 
     public void updateInternetRegexCoverages() throws SQLException {
         // load test suites
         List<RegexTestSuite> testSuites = testSuiteService.loadRegexTestSuites()
+                .filter(testSuite -> shard.contains(testSuite.id()))
                 .toList();
 
         List<RelativeCoverageUpdate> coverages = new ArrayList<>();
@@ -135,9 +182,9 @@ public final class InternetEvaluationService {
 
                             jobCompletionService.submit(() -> {
                                 // evaluate all strings on the coverage
-                                testSuite.strings().stream()
+                                input.coverage().evaluateAll(testSuite.strings().stream()
                                         .map(RegexTestSuiteString::subject)
-                                        .forEach(input.coverage()::evaluate);
+                                        .toList());
 
                                 // return an update
                                 return new RelativeCoverageUpdate(testSuite.id(), input.row().internetRegexId(), input.coverage());
@@ -0,0 +1,278 @@
+package edu.institution.lab.evaluation.ledger;
+
+import edu.institution.lab.evaluation.model.PatternCostRow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Records what each pattern costs to run: how long it takes to compile, how big its automaton gets, how long its
+ * threaded matches take, and how often they time out or overflow the stack. The ledger is loaded from the results
+ * database when a command starts and saved as the command goes, so what earlier runs found out about a pattern does not
+ * have to be rediscovered: the cost model schedules known expensive patterns first, automaton builds that never
+ * succeeded are not tried again, and the circuit breaker starts out with the timeouts of earlier runs.
+ * <br>
+ * One ledger should be shared by a whole run. This class is thread safe.
+ */
+public class PatternCostLedger {
+
+    /// a pattern needs this many threaded matches before its average latency says how expensive it is
+    private static final long MIN_MATCHES_FOR_FACTOR = 8;
+    /// cost factors are kept within this factor of the average, so a single outlier cannot starve everything else
+    private static final double MAX_FACTOR = 100;
+    /// log2 buckets of match latencies in nanoseconds
+    private static final int LATENCY_BUCKETS = 64;
+
+    /**
+     * What one pattern has cost so far, including earlier runs. Guarded by its own lock
+     */
+    private static final class Entry {
+        private long regexCompileNanos;
+        private long automatonCompileNanos;
+        private long automatonStates;
+        private long automatonFailures;
+        private long dfaBudgetHits;
+        private long matches;
+        private long matchNanos;
+        private long timeouts;
+        private long stackOverflows;
+        /// percentiles saved by an earlier run, used until this run has threaded matches of its own
+        private long earlierP50Us;
+        private long earlierP99Us;
+        /// latencies of this run's threaded matches, or null if there were none
+        private int[] latencyBuckets;
+        /// true if this entry changed since it was last drained
+        private boolean changed;
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /// average latency of a threaded match over the patterns that were loaded, or NaN if too few were
+    private volatile double averageMatchNanos = Double.NaN;
+
+    /**
+     * Load the costs that earlier runs saved. Loaded costs are not drained again unless they change
+     * @param rows Costs of earlier runs
+     */
+    public void loadAll(Collection<PatternCostRow> rows) {
+        double totalMeans = 0;
+        int patterns = 0;
+        for (PatternCostRow row : rows) {
+            Entry entry = new Entry();
+            entry.regexCompileNanos = row.regexCompileUs() * 1000;
+            entry.automatonCompileNanos = Duration.ofMillis(row.automatonCompileMs()).toNanos();
+            entry.automatonStates = row.automatonStates();
+            entry.automatonFailures = row.automatonFailures();
+            entry.dfaBudgetHits = row.dfaBudgetHits();
+            entry.matches = row.matches();
+            entry.matchNanos = Duration.ofMillis(row.matchTimeMs()).toNanos();
+            entry.timeouts = row.timeouts();
+            entry.stackOverflows = row.stackOverflows();
+            entry.earlierP50Us = row.matchP50Us();
+            entry.earlierP99Us = row.matchP99Us();
+            entries.put(row.pattern(), entry);
+
+            if (entry.matches >= MIN_MATCHES_FOR_FACTOR) {
+                totalMeans += (double) entry.matchNanos / entry.matches;
+                patterns++;
+            }
+        }
+
+        if (patterns > 0) {
+            averageMatchNanos = totalMeans / patterns;
+        }
+    }
+
+    /**
+     * Record how long Pattern.compile took for a pattern
+     */
+    public void recordRegexCompile(String pattern, long elapsedNanos) {
+        update(pattern, entry -> entry.regexCompileNanos = elapsedNanos);
+    }
+
+    /**
+     * Record a successful automaton build of a pattern
+     */
+    public void recordAutomaton(String pattern, long elapsedNanos, int states) {
+        update(pattern, entry -> {
+            entry.automatonCompileNanos = elapsedNanos;
+            entry.automatonStates = states;
+        });
+    }
+
+    /**
+     * Record an automaton build of a pattern that timed out, overflowed the stack or ran out of memory
+     */
+    public void recordAutomatonFailure(String pattern) {
+        update(pattern, entry -> entry.automatonFailures++);
+    }
+
+    /**
+     * Record an automaton build of a pattern that was given up because determinizing took too many states
+     */
+    public void recordDfaBudgetHit(String pattern) {
+        update(pattern, entry -> entry.dfaBudgetHits++);
+    }
+
+    /**
+     * Record threaded matches of a pattern
+     * @param pattern The pattern that was matched
+     * @param elapsedNanos How long the matches took together
+     * @param matches How many strings were matched. Each is taken to have taken an equal share of the time
+     * @param timeouts How many of the matches timed out
+     */
+    public void recordMatches(String pattern, long elapsedNanos, int matches, int timeouts) {
+        if (matches <= 0) {
+            return;
+        }
+
+        int bucket = LATENCY_BUCKETS - Long.numberOfLeadingZeros(Math.max(1, elapsedNanos / matches));
+        update(pattern, entry -> {
+            entry.matches += matches;
+            entry.matchNanos += elapsedNanos;
+            entry.timeouts += timeouts;
+            if (entry.latencyBuckets == null) {
+                entry.latencyBuckets = new int[LATENCY_BUCKETS + 1];
+            }
+            entry.latencyBuckets[bucket] += matches;
+        });
+    }
+
+    /**
+     * Record a match or automaton build of a pattern that overflowed the stack
+     */
+    public void recordStackOverflow(String pattern) {
+        update(pattern, entry -> entry.stackOverflows++);
+    }
+
+    /**
+     * @return true if no automaton of the pattern was ever built, and building one failed before, so it should not be
+     * tried again
+     */
+    public boolean isAutomatonHopeless(String pattern) {
+        Entry entry = entries.get(pattern);
+        if (entry == null) {
+            return false;
+        }
+
+        synchronized (entry) {
+            return entry.automatonStates == 0 && entry.automatonFailures + entry.dfaBudgetHits > 0;
+        }
+    }
+
+    /**
+     * @return how much more expensive than the average pattern of earlier runs a threaded match of the pattern is, or
+     * 1 if that is not known
+     */
+    public double costFactor(String pattern) {
+        Entry entry = entries.get(pattern);
+        double average = averageMatchNanos;
+        if (entry == null || Double.isNaN(average)) {
+            return 1.0;
+        }
+
+        double mean;
+        synchronized (entry) {
+            if (entry.matches < MIN_MATCHES_FOR_FACTOR) {
+                return 1.0;
+            }
+            mean = (double) entry.matchNanos / entry.matches;
+        }
+        return Math.max(1 / MAX_FACTOR, Math.min(MAX_FACTOR, mean / average));
+    }
+
+    /**
+     * @return the current costs of every pattern
+     */
+    public List<PatternCostRow> snapshot() {
+        List<PatternCostRow> rows = new ArrayList<>();
+        entries.forEach((pattern, entry) -> {
+            synchronized (entry) {
+                rows.add(toRow(pattern, entry));
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * @return the current costs of every pattern whose costs changed since the last drain
+     */
+    public List<PatternCostRow> drainChanged() {
+        List<PatternCostRow> rows = new ArrayList<>();
+        entries.forEach((pattern, entry) -> {
+            synchronized (entry) {
+                if (entry.changed) {
+                    entry.changed = false;
+                    rows.add(toRow(pattern, entry));
+                }
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * @return how many patterns have costs
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void update(String pattern, Consumer<Entry> update) {
+        Entry entry = entries.computeIfAbsent(pattern, ignored -> new Entry());
+        synchronized (entry) {
+            update.accept(entry);
+            entry.changed = true;
+        }
+    }
+
+    private static PatternCostRow toRow(String pattern, Entry entry) {
+        long p50Us = entry.earlierP50Us;
+        long p99Us = entry.earlierP99Us;
+        if (entry.latencyBuckets != null) {
+            p50Us = percentileNanos(entry.latencyBuckets, 0.50) / 1000;
+            p99Us = percentileNanos(entry.latencyBuckets, 0.99) / 1000;
+        }
+
+        return new PatternCostRow(pattern,
+                entry.regexCompileNanos / 1000,
+                Duration.ofNanos(entry.automatonCompileNanos).toMillis(),
+                entry.automatonStates,
+                entry.automatonFailures,
+                entry.dfaBudgetHits,
+                entry.matches,
+                Duration.ofNanos(entry.matchNanos).toMillis(),
+                p50Us,
+                p99Us,
+                entry.timeouts,
+                entry.stackOverflows);
+    }
+
+    /**
+     * @return the upper bound of the bucket that holds the given percentile
+     */
+    private static long percentileNanos(int[] buckets, double percentile) {
+        long total = 0;
+        for (int count : buckets) {
+            total += count;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= rank) {
+                return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pattern cost ledger of %d patterns", size());
+    }
+}
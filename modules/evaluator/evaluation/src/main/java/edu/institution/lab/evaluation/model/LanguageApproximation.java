@@ -2,9 +2,12 @@ package edu.institution.lab.evaluation.model;
 
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.GenerateStrings;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
 import edu.institution.lab.evaluation.safematch.SafeMatcher;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
@@ -23,23 +26,57 @@ public record LanguageApproximation(
     }
 
     public double eSimilarity(Pattern otherRegex, SafeMatcher.MatchMode matchMode, ExecutorService safeMatchExecutionContext) {
-        SafeMatcher otherRegexSafeMatcher = new SafeMatcher(otherRegex, safeMatchExecutionContext);
+        return eSimilarity(otherRegex, matchMode, MatchContext.of(safeMatchExecutionContext), null);
+    }
+
+    /**
+     * Compute e-similarity between this language and another regex, unless the other regex is quarantined or the
+     * deadline passes. The strings of a language are only matched once per regex, so results are never memoized
+     * @param otherRegex The regex to compare against
+     * @param matchMode How strings are matched
+     * @param matchContext Where risky matches are evaluated, and the policies shared between comparisons
+     * @param deadline Time by which the comparison must be done. If null, only the timeouts of single matches apply
+     * @return e-similarity, or NaN if the other regex is quarantined or the deadline passed before or while comparing
+     */
+    public double eSimilarity(Pattern otherRegex, SafeMatcher.MatchMode matchMode, MatchContext matchContext, Instant deadline) {
+        PatternCircuitBreaker circuitBreaker = matchContext.circuitBreaker();
+        SafeMatcher otherRegexSafeMatcher = new SafeMatcher(otherRegex, matchContext.withMatchMemo(null));
         int numPositive = 0;
         int numNegative = 0;
         for (StringWithSubMatch positiveString : positive) {
-            SafeMatcher.MatchResult matchResult = otherRegexSafeMatcher.match(positiveString, matchMode, Duration.ofSeconds(15));
+            if (isQuarantined(otherRegex, circuitBreaker) || isPast(deadline)) {
+                return Double.NaN;
+            }
+            SafeMatcher.MatchResult matchResult = otherRegexSafeMatcher.match(positiveString, matchMode, Duration.ofSeconds(15), deadline);
             if (matchResult.matches()) {
                 numPositive++;
             }
         }
 
         for (String negativeString : negative) {
-            SafeMatcher.MatchResult matchResult = otherRegexSafeMatcher.match(negativeString, matchMode, Duration.ofSeconds(15));
+            if (isQuarantined(otherRegex, circuitBreaker) || isPast(deadline)) {
+                return Double.NaN;
+            }
+            SafeMatcher.MatchResult matchResult = otherRegexSafeMatcher.match(negativeString, matchMode, Duration.ofSeconds(15), deadline);
             if (matchResult.mismatches()) {
                 numNegative++;
             }
         }
 
+        // a timeout counts as neither a match nor a mismatch, so a similarity that ended in quarantine or at the
+        // deadline is meaningless
+        if (isQuarantined(otherRegex, circuitBreaker) || isPast(deadline)) {
+            return Double.NaN;
+        }
+
         return GenerateStrings.eSimilarity(numPositive, numNegative, positive().size(), negative().size());
     }
+
+    private static boolean isQuarantined(Pattern regex, PatternCircuitBreaker circuitBreaker) {
+        return circuitBreaker != null && circuitBreaker.isQuarantined(regex);
+    }
+
+    private static boolean isPast(Instant deadline) {
+        return deadline != null && !Instant.now().isBefore(deadline);
+    }
 }
@@ -0,0 +1,14 @@
+package edu.institution.lab.evaluation.model;
+
+import edu.institution.lab.evaluation.db.DbField;
+
+/**
+ * Records which language class a regex pattern belongs to. Patterns in the same class full-match the same strings
+ * @param pattern The regex pattern
+ * @param languageHash The canonical hash of the pattern's minimal DFA
+ */
+public record LanguageClassRow(
+        @DbField(name = "pattern") String pattern,
+        @DbField(name = "language_hash") String languageHash
+) {
+}
@@ -12,23 +12,13 @@ public record MatchStatus(
         int partialMatchEndIdx
 ) {
     public static Optional<MatchStatus> compute(SafeMatcher safeMatcher, CharSequence string) {
-        SafeMatcher.MatchResult result = safeMatcher.match(string, SafeMatcher.MatchMode.FULL, Duration.ofSeconds(30));
-        if (result == SafeMatcher.MatchResult.TIMEOUT) {
-            // if we get a timeout, bail
-            return Optional.empty();
-        }
-
-        boolean fullMatch = result == SafeMatcher.MatchResult.MATCH;
-
-        Optional<SafeMatcher.PartialMatchResult> partialMatchResult = safeMatcher.partialMatch(string, Duration.ofSeconds(30));
-        if (partialMatchResult.isEmpty()) {
-            // if we get a timeout, bail
-            return Optional.empty();
-        }
-
-        SafeMatcher.PartialMatchResult partialMatchInfo = partialMatchResult.get();
-        boolean partialMatch = partialMatchInfo.matchResult() == SafeMatcher.MatchResult.MATCH;
-
-        return Optional.of(new MatchStatus(fullMatch, partialMatch, partialMatchInfo.start(), partialMatchInfo.end()));
+        // if either mode times out, bail
+        return safeMatcher.fusedMatch(string, Duration.ofSeconds(30))
+                .map(result -> new MatchStatus(
+                        result.fullMatch().matches(),
+                        result.partialMatch().matchResult().matches(),
+                        result.partialMatch().start(),
+                        result.partialMatch().end()
+                ));
     }
 }
@@ -0,0 +1,34 @@
+package edu.institution.lab.evaluation.model;
+
+import edu.institution.lab.evaluation.db.DbField;
+
+/**
+ * What a pattern has cost over every run on a database. Counts are totals, and 0 stands for unknown everywhere else
+ * @param pattern The regex pattern
+ * @param regexCompileUs How long Pattern.compile took the last time it was timed
+ * @param automatonCompileMs How long the last successful automaton build took
+ * @param automatonStates How many states the last successfully built automaton had, or 0 if no build ever succeeded
+ * @param automatonFailures Automaton builds that timed out, overflowed the stack or ran out of memory
+ * @param dfaBudgetHits Automaton builds that were given up because determinizing took too many states
+ * @param matches Threaded matches
+ * @param matchTimeMs How long the threaded matches took in total, timeouts included
+ * @param matchP50Us Median latency of the threaded matches of the last run that had any
+ * @param matchP99Us 99th percentile latency of the threaded matches of the last run that had any
+ * @param timeouts Threaded matches that timed out
+ * @param stackOverflows Matches and automaton builds that overflowed the stack
+ */
+public record PatternCostRow(
+        @DbField(name = "pattern") String pattern,
+        @DbField(name = "regex_compile_us") Long regexCompileUs,
+        @DbField(name = "automaton_compile_ms") Long automatonCompileMs,
+        @DbField(name = "automaton_states") Long automatonStates,
+        @DbField(name = "automaton_failures") Long automatonFailures,
+        @DbField(name = "dfa_budget_hits") Long dfaBudgetHits,
+        @DbField(name = "matches") Long matches,
+        @DbField(name = "match_time_ms") Long matchTimeMs,
+        @DbField(name = "match_p50_us") Long matchP50Us,
+        @DbField(name = "match_p99_us") Long matchP99Us,
+        @DbField(name = "timeouts") Long timeouts,
+        @DbField(name = "stack_overflows") Long stackOverflows
+) {
+}
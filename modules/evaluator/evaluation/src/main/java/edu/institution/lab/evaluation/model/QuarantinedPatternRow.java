@@ -0,0 +1,16 @@
+package edu.institution.lab.evaluation.model;
+
+import edu.institution.lab.evaluation.db.DbField;
+
+/**
+ * A pattern that was quarantined because its matches kept timing out
+ * @param pattern The regex pattern
+ * @param timeouts How many of its matches timed out before it was quarantined
+ * @param timeSpentMs How long its matches took in total before it was quarantined
+ */
+public record QuarantinedPatternRow(
+        @DbField(name = "pattern") String pattern,
+        @DbField(name = "timeouts") Long timeouts,
+        @DbField(name = "time_spent_ms") Long timeSpentMs
+) {
+}
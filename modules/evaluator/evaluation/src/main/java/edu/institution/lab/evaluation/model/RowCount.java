@@ -0,0 +1,12 @@
+package edu.institution.lab.evaluation.model;
+
+import edu.institution.lab.evaluation.db.DbField;
+
+/**
+ * The result of a counting query
+ * @param count The number of rows
+ */
+public record RowCount(
+        @DbField(name = "row_count") Long count
+) {
+}
@@ -0,0 +1,14 @@
+package edu.institution.lab.evaluation.model;
+
+import edu.institution.lab.evaluation.db.DbField;
+
+/**
+ * A unit of work that a command has completed
+ * @param projectId The project of the unit, or -1
+ * @param testSuiteId The test suite of the unit, or -1
+ */
+public record RunProgressRow(
+        @DbField(name = "project_id") Long projectId,
+        @DbField(name = "test_suite_id") Long testSuiteId
+) {
+}
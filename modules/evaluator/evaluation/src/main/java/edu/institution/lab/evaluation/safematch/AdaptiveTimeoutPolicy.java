@@ -0,0 +1,215 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses the time limits of threaded matches from the latencies observed for each pattern. The fixed timeouts of the
+ * call sites are seconds long, while most matches of a pattern finish in microseconds, so a pattern that does time out
+ * wastes the whole fixed timeout on every string.
+ * <br>
+ * Every threaded match that finishes is recorded in a histogram of its pattern, as time per character of the subject.
+ * Once a pattern has enough samples, its adaptive limit for a subject is a multiple of the observed p99, scaled by the
+ * length of the subject, no lower than a floor that absorbs scheduling noise, and no higher than the global cap or the
+ * fixed timeout. In {@link TimeoutMode#ADAPTIVE} mode, matches get that limit. In {@link TimeoutMode#SHADOW} mode they
+ * keep the fixed timeout, and a finished match that took longer than its adaptive limit is counted as a verdict the
+ * adaptive limit would have changed.
+ * <br>
+ * One policy should be shared by every safe matcher in a run, like an {@link InlineMatchPolicy}. This class is thread
+ * safe.
+ */
+public class AdaptiveTimeoutPolicy {
+
+    /// how many matches of a pattern must finish before it gets an adaptive limit
+    public static final int DEFAULT_MIN_SAMPLES = 32;
+    /// the adaptive limit is this many times the p99 of the pattern
+    public static final int DEFAULT_P99_MULTIPLIER = 10;
+    /// adaptive limits are never lower than this
+    public static final Duration DEFAULT_FLOOR = Duration.ofMillis(50);
+    /// no limit is higher than this, whatever the call site asked for
+    public static final Duration DEFAULT_CAP = Duration.ofSeconds(30);
+
+    /// latencies are bucketed by powers of two of nanoseconds per character
+    private static final int BUCKETS = 64;
+
+    /**
+     * The limits of a single match
+     * @param enforced The limit that the match gets
+     * @param fixed The fixed timeout of the match, capped
+     * @param adaptive The adaptive limit of the match, or null if its pattern has too few samples
+     */
+    public record Limit(Duration enforced, Duration fixed, Duration adaptive) {
+    }
+
+    /**
+     * Latencies of one pattern
+     */
+    private static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+
+        private void add(long nanosPerChar) {
+            buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanosPerChar)));
+            count.increment();
+        }
+
+        /**
+         * @return an upper bound of the p99, or -1 if there are fewer than minSamples samples
+         */
+        private long p99(int minSamples) {
+            long total = count.sum();
+            if (total < minSamples) {
+                return -1;
+            }
+
+            long rank = total - total / 100;
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS - 1; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= rank) {
+                    return 1L << (bucket + 1);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private final TimeoutMode mode;
+    private final int minSamples;
+    private final int p99Multiplier;
+    private final long floorNanos;
+    private final long capNanos;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final LongAdder finishedMatches = new LongAdder();
+    private final LongAdder timedOutMatches = new LongAdder();
+    /// finished matches that took longer than their adaptive limit
+    private final LongAdder changedVerdicts = new LongAdder();
+    /// matches that timed out on an adaptive limit tighter than the fixed timeout
+    private final LongAdder tightenedTimeouts = new LongAdder();
+    /// how much shorter the timeouts would have been, or were, with adaptive limits
+    private final LongAdder savedNanos = new LongAdder();
+
+    public AdaptiveTimeoutPolicy(TimeoutMode mode) {
+        this(mode, DEFAULT_MIN_SAMPLES, DEFAULT_P99_MULTIPLIER, DEFAULT_FLOOR, DEFAULT_CAP);
+    }
+
+    public AdaptiveTimeoutPolicy(TimeoutMode mode, int minSamples, int p99Multiplier, Duration floor, Duration cap) {
+        if (mode == TimeoutMode.FIXED) {
+            throw new IllegalArgumentException("fixed timeouts don't need a policy");
+        }
+        if (minSamples <= 0 || p99Multiplier <= 0) {
+            throw new IllegalArgumentException("min samples and multiplier must be positive");
+        }
+
+        this.mode = mode;
+        this.minSamples = minSamples;
+        this.p99Multiplier = p99Multiplier;
+        this.floorNanos = floor.toNanos();
+        this.capNanos = cap.toNanos();
+    }
+
+    /**
+     * @return a policy for the given mode, or null if matches should use fixed timeouts
+     */
+    public static AdaptiveTimeoutPolicy forMode(TimeoutMode mode) {
+        return mode == TimeoutMode.FIXED ? null : new AdaptiveTimeoutPolicy(mode);
+    }
+
+    public TimeoutMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Choose the limit of a match
+     * @param pattern The pattern to match
+     * @param subjectLength How long the subject is
+     * @param fixedTimeout The timeout the call site asks for
+     * @return The limits of the match, to be passed back when recording it
+     */
+    public Limit limitFor(Pattern pattern, int subjectLength, Duration fixedTimeout) {
+        long fixedNanos = Math.min(fixedTimeout.toNanos(), capNanos);
+        Duration fixed = Duration.ofNanos(fixedNanos);
+
+        LatencyHistogram histogram = histograms.get(pattern.pattern());
+        long p99 = histogram == null ? -1 : histogram.p99(minSamples);
+        if (p99 < 0) {
+            return new Limit(fixed, fixed, null);
+        }
+
+        long scaledNanos = saturatedMultiply(saturatedMultiply(p99, p99Multiplier), Math.max(1, subjectLength));
+        Duration adaptive = Duration.ofNanos(Math.min(fixedNanos, Math.max(floorNanos, scaledNanos)));
+        return new Limit(mode == TimeoutMode.ADAPTIVE ? adaptive : fixed, fixed, adaptive);
+    }
+
+    /**
+     * Record a match that finished within its limit
+     * @param elapsedNanos How long the match took on its thread
+     */
+    public void recordFinished(Pattern pattern, int subjectLength, Limit limit, long elapsedNanos) {
+        histograms.computeIfAbsent(pattern.pattern(), ignored -> new LatencyHistogram())
+                .add(elapsedNanos / Math.max(1, subjectLength));
+        finishedMatches.increment();
+        if (limit.adaptive() != null && elapsedNanos > limit.adaptive().toNanos()) {
+            changedVerdicts.increment();
+        }
+    }
+
+    /**
+     * Record a match that ran out of its limit
+     */
+    public void recordTimeout(Limit limit) {
+        timedOutMatches.increment();
+        if (limit.adaptive() == null) {
+            return;
+        }
+
+        long savedByMatch = limit.fixed().toNanos() - limit.adaptive().toNanos();
+        if (savedByMatch > 0) {
+            // in shadow mode, this is how much earlier the adaptive limit would have given up
+            savedNanos.add(savedByMatch);
+            if (mode == TimeoutMode.ADAPTIVE) {
+                // the fixed timeout might have let this match finish
+                tightenedTimeouts.increment();
+            }
+        }
+    }
+
+    /**
+     * @return how many finished matches took longer than their adaptive limit, i.e., would have timed out with it
+     */
+    public long getChangedVerdictCount() {
+        return changedVerdicts.sum();
+    }
+
+    /**
+     * @return how many matches timed out on an adaptive limit tighter than their fixed timeout
+     */
+    public long getTightenedTimeoutCount() {
+        return tightenedTimeouts.sum();
+    }
+
+    /**
+     * @return how much less time was, or in shadow mode would have been, spent waiting on timeouts
+     */
+    public Duration getSavedTime() {
+        return Duration.ofNanos(savedNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s timeouts: %d threaded matches finished and %d timed out over %d patterns, "
+                        + "adaptive limits changed %d verdicts of finished matches, tightened %d timeouts and saved %s",
+                mode, finishedMatches.sum(), timedOutMatches.sum(), histograms.size(),
+                changedVerdicts.sum(), tightenedTimeouts.sum(), getSavedTime());
+    }
+
+    private static long saturatedMultiply(long left, long right) {
+        long high = Math.multiplyHigh(left, right);
+        long low = left * right;
+        return (high == 0 && low >= 0) ? low : Long.MAX_VALUE;
+    }
+}
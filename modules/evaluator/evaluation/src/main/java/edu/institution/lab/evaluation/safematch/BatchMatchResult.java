@@ -0,0 +1,134 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.util.Arrays;
+
+/**
+ * Compact result of classifying a batch of strings with {@link SafeMatcher#classifyAll}. Results are stored in
+ * primitive arrays indexed the same way as the input strings. Strings that were skipped because the batch exited early
+ * are not evaluated. Sub-match bounds are only recorded for partial matches.
+ */
+public final class BatchMatchResult {
+    private static final byte NOT_EVALUATED = -1;
+    private static final SafeMatcher.MatchResult[] RESULTS = SafeMatcher.MatchResult.values();
+
+    private final byte[] results;
+    private final int[] starts;
+    private final int[] ends;
+    private boolean deadlineExceeded;
+
+    BatchMatchResult(int size, SafeMatcher.MatchMode mode) {
+        this.results = new byte[size];
+        Arrays.fill(this.results, NOT_EVALUATED);
+        if (mode == SafeMatcher.MatchMode.PARTIAL) {
+            this.starts = new int[size];
+            this.ends = new int[size];
+            Arrays.fill(this.starts, -1);
+            Arrays.fill(this.ends, -1);
+        } else {
+            this.starts = null;
+            this.ends = null;
+        }
+    }
+
+    void set(int idx, SafeMatcher.MatchResult result, int start, int end) {
+        results[idx] = (byte) result.ordinal();
+        if (starts != null) {
+            starts[idx] = start;
+            ends[idx] = end;
+        }
+    }
+
+    /**
+     * Copy every evaluated result at or after from out of another batch of the same size
+     */
+    void copyFrom(BatchMatchResult other, int from) {
+        for (int idx = from; idx < results.length; idx++) {
+            if (other.results[idx] == NOT_EVALUATED) {
+                continue;
+            }
+            results[idx] = other.results[idx];
+            if (starts != null) {
+                starts[idx] = other.starts[idx];
+                ends[idx] = other.ends[idx];
+            }
+        }
+    }
+
+    /**
+     * Mark every string at or after from that was not evaluated as timed out
+     */
+    void timeOutRemaining(int from) {
+        for (int idx = from; idx < results.length; idx++) {
+            if (results[idx] == NOT_EVALUATED) {
+                set(idx, SafeMatcher.MatchResult.TIMEOUT, -1, -1);
+            }
+        }
+    }
+
+    void markDeadlineExceeded() {
+        deadlineExceeded = true;
+    }
+
+    /**
+     * @return true if the batch ran into its deadline, so that strings it still needed were skipped or timed out
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    /**
+     * @return the number of strings in the batch
+     */
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * @param idx index of the string
+     * @return false if the string was skipped because the batch exited early
+     */
+    public boolean isEvaluated(int idx) {
+        return results[idx] != NOT_EVALUATED;
+    }
+
+    /**
+     * @param idx index of the string
+     * @return the match result of the string
+     * @throws IllegalStateException if the string was not evaluated
+     */
+    public SafeMatcher.MatchResult getResult(int idx) {
+        if (!isEvaluated(idx)) {
+            throw new IllegalStateException(String.format("string %d was not evaluated", idx));
+        }
+        return RESULTS[results[idx]];
+    }
+
+    /**
+     * @param idx index of the string
+     * @return start of the sub-match, or -1 if there is none
+     */
+    public int getStart(int idx) {
+        return starts == null ? -1 : starts[idx];
+    }
+
+    /**
+     * @param idx index of the string
+     * @return end of the sub-match, or -1 if there is none
+     */
+    public int getEnd(int idx) {
+        return ends == null ? -1 : ends[idx];
+    }
+
+    /**
+     * @return how many strings were evaluated
+     */
+    public int getEvaluatedCount() {
+        int count = 0;
+        for (byte result : results) {
+            if (result != NOT_EVALUATED) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.institution.lab.evaluation.safematch;
+
+/**
+ * An interruptible character sequence that also limits how much work a matcher may perform on it. Every call to
+ * {@link #charAt(int)} counts as one step. Once the step budget is used up, a {@link StepBudgetExceededException} is
+ * thrown, which aborts the match in progress.
+ * <br>
+ * Optionally, the sequence can also have a deadline in terms of {@link System#nanoTime()}. The clock is only checked
+ * every {@link #DEADLINE_CHECK_INTERVAL} steps, and a {@link MatchDeadlineExceededException} is thrown once the deadline
+ * has passed.
+ */
+class BudgetedCharSequence extends InterruptibleCharSequence {
+    /// how many steps to take between deadline checks. Must be a power of two
+    static final int DEADLINE_CHECK_INTERVAL = 1024;
+
+    private final long stepBudget;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private long steps;
+
+    public BudgetedCharSequence(CharSequence inner, long stepBudget) {
+        this(inner, stepBudget, false, 0);
+    }
+
+    /**
+     * Create a sequence that is bounded by time instead of by steps
+     * @param inner The sequence to wrap
+     * @param deadlineNanos The value of {@link System#nanoTime()} after which the match is aborted
+     * @return a deadline-bounded sequence
+     */
+    public static BudgetedCharSequence withDeadline(CharSequence inner, long deadlineNanos) {
+        return new BudgetedCharSequence(inner, Long.MAX_VALUE, true, deadlineNanos);
+    }
+
+    private BudgetedCharSequence(CharSequence inner, long stepBudget, boolean hasDeadline, long deadlineNanos) {
+        super(inner);
+        this.stepBudget = stepBudget;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanos = deadlineNanos;
+        this.steps = 0;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++steps > stepBudget) {
+            throw new StepBudgetExceededException(stepBudget);
+        }
+        if (hasDeadline && (steps & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadlineNanos > 0) {
+            throw new MatchDeadlineExceededException();
+        }
+        return super.charAt(index);
+    }
+
+    /**
+     * @return how many steps have been taken on this sequence so far
+     */
+    public long getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,64 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Configures inline matching for {@link SafeMatcher}. With an inline policy, a safe matcher evaluates strings on the
+ * calling thread and bounds each match by the number of characters it reads instead of by a timeout. A pattern that
+ * exhausts the step budget is recorded as risky, and all of its later matches go through the threaded, timeout-able
+ * path instead.
+ * <br>
+ * One policy should be shared by every safe matcher in a run so that risky patterns are only discovered once. This
+ * class is thread safe.
+ */
+public class InlineMatchPolicy {
+
+    /// default number of characters a single inline match may read
+    public static final long DEFAULT_STEP_BUDGET = 1_000_000;
+
+    private final long stepBudget;
+    /// patterns that have exceeded the step budget before
+    private final Set<String> riskyPatterns;
+
+    public InlineMatchPolicy() {
+        this(DEFAULT_STEP_BUDGET);
+    }
+
+    public InlineMatchPolicy(long stepBudget) {
+        if (stepBudget <= 0) {
+            throw new IllegalArgumentException("step budget must be positive");
+        }
+
+        this.stepBudget = stepBudget;
+        this.riskyPatterns = ConcurrentHashMap.newKeySet();
+    }
+
+    public long getStepBudget() {
+        return stepBudget;
+    }
+
+    /**
+     * @param pattern The pattern to check
+     * @return true if this pattern has exceeded its step budget before and should not be matched inline
+     */
+    public boolean isRisky(Pattern pattern) {
+        return riskyPatterns.contains(pattern.pattern());
+    }
+
+    /**
+     * Record that a pattern should no longer be matched inline
+     * @param pattern The risky pattern
+     */
+    public void markRisky(Pattern pattern) {
+        riskyPatterns.add(pattern.pattern());
+    }
+
+    /**
+     * @return how many distinct patterns have been marked as risky
+     */
+    public int getRiskyPatternCount() {
+        return riskyPatterns.size();
+    }
+}
@@ -14,7 +14,7 @@ class InterruptibleCharSequence implements CharSequence {
 
     public char charAt(int index) {
         if (Thread.interrupted()) { // clears flag if set
-            throw new RuntimeException(new InterruptedException());
+            throw new MatchInterruptedException();
         }
         // counter++;
         return inner.charAt(index);
@@ -0,0 +1,46 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Everything a {@link SafeMatcher} shares with the other safe matchers of a run. A context is built once per run and
+ * handed to every matcher, evaluator and similarity computation of that run, so that they all discover risky patterns,
+ * remember results and quarantine patterns together.
+ * @param executor The execution context to evaluate risky matches in
+ * @param inlineMatchPolicy How to match inline. If null, every match is performed in the executor
+ * @param matchMemo Memo of batch results. May be null
+ * @param circuitBreaker Breaker that stops running threaded matches of quarantined patterns. May be null
+ * @param timeoutPolicy Policy that limits threaded matches. If null, threaded matches get the timeout they are called
+ *                      with
+ */
+public record MatchContext(
+        ExecutorService executor,
+        InlineMatchPolicy inlineMatchPolicy,
+        MatchMemo matchMemo,
+        PatternCircuitBreaker circuitBreaker,
+        AdaptiveTimeoutPolicy timeoutPolicy
+) {
+
+    /**
+     * @return a context that performs every match in the executor, like a plain safe matcher
+     */
+    public static MatchContext of(ExecutorService executor) {
+        return new MatchContext(executor, null, null, null, null);
+    }
+
+    public MatchContext withInlineMatchPolicy(InlineMatchPolicy inlineMatchPolicy) {
+        return new MatchContext(executor, inlineMatchPolicy, matchMemo, circuitBreaker, timeoutPolicy);
+    }
+
+    public MatchContext withMatchMemo(MatchMemo matchMemo) {
+        return new MatchContext(executor, inlineMatchPolicy, matchMemo, circuitBreaker, timeoutPolicy);
+    }
+
+    public MatchContext withCircuitBreaker(PatternCircuitBreaker circuitBreaker) {
+        return new MatchContext(executor, inlineMatchPolicy, matchMemo, circuitBreaker, timeoutPolicy);
+    }
+
+    public MatchContext withTimeoutPolicy(AdaptiveTimeoutPolicy timeoutPolicy) {
+        return new MatchContext(executor, inlineMatchPolicy, matchMemo, circuitBreaker, timeoutPolicy);
+    }
+}
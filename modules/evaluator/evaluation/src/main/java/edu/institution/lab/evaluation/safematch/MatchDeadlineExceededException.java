@@ -0,0 +1,11 @@
+package edu.institution.lab.evaluation.safematch;
+
+/**
+ * Thrown by {@link BudgetedCharSequence} when a match runs past its deadline. Like
+ * {@link StepBudgetExceededException}, no stack trace is recorded.
+ */
+class MatchDeadlineExceededException extends RuntimeException {
+    public MatchDeadlineExceededException() {
+        super("match deadline exceeded", null, false, false);
+    }
+}
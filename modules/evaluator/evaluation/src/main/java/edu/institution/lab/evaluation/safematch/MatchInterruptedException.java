@@ -0,0 +1,11 @@
+package edu.institution.lab.evaluation.safematch;
+
+/**
+ * Thrown by {@link InterruptibleCharSequence} when the matching thread is interrupted. Reading the subject clears the
+ * interrupt flag, so whoever catches this and does not rethrow it should restore the flag.
+ */
+class MatchInterruptedException extends RuntimeException {
+    public MatchInterruptedException() {
+        super("interrupted while matching", new InterruptedException(), false, false);
+    }
+}
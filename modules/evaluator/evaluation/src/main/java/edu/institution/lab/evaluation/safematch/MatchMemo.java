@@ -0,0 +1,176 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded memo of batch match results, shared between every {@link SafeMatcher} in a run. Candidates are mostly the
+ * same between projects and test suite subjects recur between test suites, so the same pattern is often matched
+ * against the same subject many times.
+ * <br>
+ * Each result is stored in a primitive set-associative table under a 64-bit key hashed from the pattern, the subject
+ * and the match mode. The whole key is stored in its slot and compared on lookup, so a result is only returned for a
+ * key that hashes the same in all 64 bits. No patterns or subjects are kept, so the memo's size is fixed by its
+ * capacity however many distinct strings a run sees. When a set is full, its oldest entry is replaced. Timeouts are
+ * remembered as well so that pathological pairs are not retried. This class is thread safe.
+ */
+public final class MatchMemo {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    /// returned by lookups that miss, and used for subjects that cannot be memoized
+    static final long NONE = 0;
+
+    private static final int WAYS = 4;
+    private static final int LOCK_STRIPES = 64;
+    /// start and end offsets are stored in 30 bits each, with -1 stored as 0
+    private static final int MAX_OFFSET = (1 << 30) - 2;
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys;
+    private final long[] values;
+    /// next way to replace in each set
+    private final byte[] victims;
+    private final int setMask;
+    private final Object[] locks;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public MatchMemo() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The most results to remember. Rounded up to a power of two
+     */
+    public MatchMemo(int capacity) {
+        int sets = Integer.highestOneBit(Math.max(WAYS, capacity) - 1) * 2 / WAYS;
+        this.keys = new long[sets * WAYS];
+        this.values = new long[sets * WAYS];
+        this.victims = new byte[sets];
+        this.setMask = sets - 1;
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @return the hash that the keys of a pattern are built from. Equal patterns with equal flags hash the same
+     */
+    static long patternHash(Pattern pattern) {
+        return mix(hash(pattern.pattern()) + pattern.flags());
+    }
+
+    /**
+     * Build the memo key for matching a subject
+     * @param patternHash the {@link #patternHash(Pattern)} of the pattern
+     * @return the key, or {@link #NONE} if the subject cannot be memoized
+     */
+    long key(long patternHash, CharSequence subject, SafeMatcher.MatchMode mode) {
+        if (!(subject instanceof String string) || string.length() > MAX_OFFSET) {
+            return NONE;
+        }
+
+        long key = mix((patternHash ^ hash(string)) * MULTIPLIER + mode.ordinal());
+        return key != NONE ? key : 1;
+    }
+
+    /**
+     * @return the packed result for a key, or {@link #NONE}
+     */
+    long get(long key) {
+        int set = set(key);
+        synchronized (lock(set)) {
+            for (int way = set * WAYS; way < (set + 1) * WAYS; way++) {
+                if (keys[way] == key) {
+                    hits.increment();
+                    return values[way];
+                }
+            }
+        }
+        misses.increment();
+        return NONE;
+    }
+
+    void put(long key, SafeMatcher.MatchResult result, int start, int end) {
+        long value = 1L | ((long) result.ordinal() << 1) | ((long) (start + 1) << 3) | ((long) (end + 1) << 33);
+        int set = set(key);
+        synchronized (lock(set)) {
+            int free = -1;
+            for (int way = set * WAYS; way < (set + 1) * WAYS; way++) {
+                if (keys[way] == key) {
+                    values[way] = value;
+                    return;
+                } else if (keys[way] == NONE && free < 0) {
+                    free = way;
+                }
+            }
+
+            if (free < 0) {
+                free = set * WAYS + victims[set];
+                victims[set] = (byte) ((victims[set] + 1) % WAYS);
+            }
+            keys[free] = key;
+            values[free] = value;
+        }
+    }
+
+    static SafeMatcher.MatchResult result(long packed) {
+        return SafeMatcher.MatchResult.values()[(int) (packed >>> 1) & 0b11];
+    }
+
+    static int start(long packed) {
+        return (int) ((packed >>> 3) & 0x3FFFFFFF) - 1;
+    }
+
+    static int end(long packed) {
+        return (int) ((packed >>> 33) & 0x3FFFFFFF) - 1;
+    }
+
+    /**
+     * @return the number of lookups that found a result
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a result
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private int set(long key) {
+        return (int) (key >>> 32) & setMask;
+    }
+
+    /**
+     * @return a 64-bit hash of every character of a string
+     */
+    private static long hash(String string) {
+        long hash = string.length();
+        for (int i = 0; i < string.length(); i++) {
+            hash = (hash + string.charAt(i)) * MULTIPLIER;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Spread the bits of a hash over all 64 bits (the finalizer of SplitMix64)
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private Object lock(int set) {
+        return locks[set & (LOCK_STRIPES - 1)];
+    }
+}
@@ -0,0 +1,183 @@
+package edu.institution.lab.evaluation.safematch;
+
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
+import edu.institution.lab.evaluation.model.PatternCostRow;
+import edu.institution.lab.evaluation.model.QuarantinedPatternRow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Quarantines patterns whose threaded matches keep timing out. A pattern that times out on one string usually times out
+ * on many more, and each of those timeouts costs the whole time limit. Once a pattern has timed out too often, or its
+ * threaded matches have taken too long in total, it is quarantined: {@link SafeMatcher} reports its threaded matches as
+ * timeouts without running them, and evaluations treat the pattern as undetermined.
+ * <br>
+ * One breaker should be shared by every safe matcher in a run, like an {@link InlineMatchPolicy}. Patterns quarantined
+ * by earlier runs can be loaded up front, and newly quarantined ones drained to be saved. With a
+ * {@link PatternCostLedger}, the breaker also records every threaded match in the ledger, and starts out with the
+ * timeouts the ledger has from earlier runs. This class is thread safe.
+ */
+public class PatternCircuitBreaker {
+
+    /// default number of timeouts after which a pattern is quarantined
+    public static final int DEFAULT_TIMEOUT_LIMIT = 3;
+    /// default total time of threaded matches after which a pattern is quarantined
+    public static final Duration DEFAULT_TIME_BUDGET = Duration.ofSeconds(10);
+
+    /**
+     * How much a pattern has cost so far
+     */
+    private static final class PatternCost {
+        private final AtomicInteger timeouts = new AtomicInteger();
+        private final AtomicLong nanos = new AtomicLong();
+    }
+
+    private final int timeoutLimit;
+    private final long timeBudgetNanos;
+    /// where the cost of every threaded match is recorded, or null
+    private final PatternCostLedger ledger;
+    private final ConcurrentHashMap<String, PatternCost> costs;
+    private final Set<String> quarantinedPatterns;
+    /// patterns quarantined in this run that have not been drained yet
+    private final Queue<QuarantinedPatternRow> newlyQuarantined;
+
+    public PatternCircuitBreaker() {
+        this(DEFAULT_TIMEOUT_LIMIT, DEFAULT_TIME_BUDGET);
+    }
+
+    public PatternCircuitBreaker(int timeoutLimit, Duration timeBudget) {
+        this(timeoutLimit, timeBudget, null);
+    }
+
+    public PatternCircuitBreaker(PatternCostLedger ledger) {
+        this(DEFAULT_TIMEOUT_LIMIT, DEFAULT_TIME_BUDGET, ledger);
+    }
+
+    /**
+     * @param timeoutLimit Number of timeouts after which a pattern is quarantined
+     * @param timeBudget Total time of threaded matches after which a pattern is quarantined
+     * @param ledger Where the cost of every threaded match is recorded, or null. Patterns that timed out in earlier
+     *               runs start out with those timeouts, and ones that timed out too often are quarantined right away
+     */
+    public PatternCircuitBreaker(int timeoutLimit, Duration timeBudget, PatternCostLedger ledger) {
+        if (timeoutLimit <= 0) {
+            throw new IllegalArgumentException("timeout limit must be positive");
+        }
+
+        this.timeoutLimit = timeoutLimit;
+        this.timeBudgetNanos = timeBudget.toNanos();
+        this.ledger = ledger;
+        this.costs = new ConcurrentHashMap<>();
+        this.quarantinedPatterns = ConcurrentHashMap.newKeySet();
+        this.newlyQuarantined = new ConcurrentLinkedQueue<>();
+        if (ledger != null) {
+            seed(ledger.snapshot());
+        }
+    }
+
+    /**
+     * Start out with the timeouts of earlier runs. Only timeouts are carried over: the time budget is meant to bound a
+     * single run
+     */
+    private void seed(Collection<PatternCostRow> rows) {
+        for (PatternCostRow row : rows) {
+            if (row.timeouts() >= timeoutLimit) {
+                if (quarantinedPatterns.add(row.pattern())) {
+                    newlyQuarantined.add(new QuarantinedPatternRow(row.pattern(), row.timeouts(), row.matchTimeMs()));
+                }
+            } else if (row.timeouts() > 0) {
+                PatternCost cost = new PatternCost();
+                cost.timeouts.set(row.timeouts().intValue());
+                costs.put(row.pattern(), cost);
+            }
+        }
+    }
+
+    /**
+     * Quarantine patterns that an earlier run quarantined. They are not drained again
+     * @param patterns The patterns
+     */
+    public void quarantineAll(Collection<String> patterns) {
+        quarantinedPatterns.addAll(patterns);
+    }
+
+    /**
+     * @param pattern The pattern to check
+     * @return true if the pattern's matches should not be run anymore
+     */
+    public boolean isQuarantined(Pattern pattern) {
+        return quarantinedPatterns.contains(pattern.pattern());
+    }
+
+    /**
+     * Record the cost of a threaded match of a pattern, and quarantine it if it has gone over the limits
+     * @param pattern The pattern that was matched
+     * @param elapsed How long the match took
+     * @param timeouts How many of the matches timed out
+     */
+    public void record(Pattern pattern, Duration elapsed, int timeouts) {
+        record(pattern, elapsed, 1, timeouts);
+    }
+
+    /**
+     * Record the cost of threaded matches of a pattern, and quarantine it if it has gone over the limits
+     * @param pattern The pattern that was matched
+     * @param elapsed How long the matches took
+     * @param matches How many strings were matched
+     * @param timeouts How many of the matches timed out
+     */
+    public void record(Pattern pattern, Duration elapsed, int matches, int timeouts) {
+        if (ledger != null) {
+            ledger.recordMatches(pattern.pattern(), elapsed.toNanos(), matches, timeouts);
+        }
+        if (isQuarantined(pattern)) {
+            return;
+        }
+
+        PatternCost cost = costs.computeIfAbsent(pattern.pattern(), ignored -> new PatternCost());
+        int totalTimeouts = cost.timeouts.addAndGet(timeouts);
+        long totalNanos = cost.nanos.addAndGet(elapsed.toNanos());
+        if ((totalTimeouts >= timeoutLimit || totalNanos >= timeBudgetNanos) && quarantinedPatterns.add(pattern.pattern())) {
+            costs.remove(pattern.pattern());
+            newlyQuarantined.add(new QuarantinedPatternRow(pattern.pattern(), (long) totalTimeouts, Duration.ofNanos(totalNanos).toMillis()));
+        }
+    }
+
+    /**
+     * Record a match of a pattern that overflowed the stack. This does not count towards quarantine, because the match
+     * gave up quickly
+     */
+    public void recordStackOverflow(Pattern pattern) {
+        if (ledger != null) {
+            ledger.recordStackOverflow(pattern.pattern());
+        }
+    }
+
+    /**
+     * @return patterns that were quarantined since the last drain
+     */
+    public List<QuarantinedPatternRow> drainNewlyQuarantined() {
+        List<QuarantinedPatternRow> drained = new ArrayList<>();
+        for (QuarantinedPatternRow row = newlyQuarantined.poll(); row != null; row = newlyQuarantined.poll()) {
+            drained.add(row);
+        }
+        return drained;
+    }
+
+    /**
+     * @return how many patterns are quarantined, including ones loaded from earlier runs
+     */
+    public int getQuarantinedCount() {
+        return quarantinedPatterns.size();
+    }
+}
@@ -1,10 +1,14 @@
 package edu.institution.lab.evaluation.safematch;
 
 import edu.institution.lab.evaluation.model.StringWithSubMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.Optional;
+import java.time.Instant;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,9 +16,21 @@ import java.util.regex.Pattern;
  * The safe matcher is responsible for safely evaluating a string on a regex. It performs actual match operations on
  * a separate thread and allows us to time out or otherwise cancel the execution. It takes an executor service to
  * perform our operations in
+ * <br>
+ * Optionally, a safe matcher can be given an {@link InlineMatchPolicy}. In that case, matches are first attempted on the
+ * calling thread with a bounded number of steps. Only if the step budget runs out is the match repeated on the executor
+ * with the given timeout, so the verdicts are the same either way.
+ * <br>
+ * Optionally, a safe matcher can also be given a {@link PatternCircuitBreaker}. Threaded matches of a quarantined
+ * pattern are reported as timeouts without running them, and the cost of every threaded match is recorded.
+ * <br>
+ * Optionally, a safe matcher can also be given an {@link AdaptiveTimeoutPolicy}. It records the latency of every
+ * threaded match that finishes, and may give threaded matches a tighter limit than the timeout they are called with.
  */
 public class SafeMatcher {
 
+    private static final Logger logger = LoggerFactory.getLogger(SafeMatcher.class);
+
     /**
      * How we are matching: full or partial match
      */
@@ -57,8 +73,170 @@ public class SafeMatcher {
     ) {
     }
 
+    /**
+     * Decides whether a batch classification should stop after a string has been evaluated. This is called on whatever
+     * thread is evaluating the batch, once per string and in order.
+     */
+    @FunctionalInterface
+    public interface EarlyExitPredicate {
+        /**
+         * @param idx index of the string that was just evaluated
+         * @param result the result for that string
+         * @param start start of the sub-match if partial matching, otherwise -1
+         * @param end end of the sub-match if partial matching, otherwise -1
+         * @return true if no more strings should be evaluated
+         */
+        boolean shouldStop(int idx, MatchResult result, int start, int end);
+    }
+
+    /**
+     * The results of matching one string in both modes
+     * @param fullMatch result of matching the whole string
+     * @param partialMatch result of finding the leftmost sub-match
+     */
+    public record FusedMatchResult(
+            MatchResult fullMatch,
+            PartialMatchResult partialMatch
+    ) {
+    }
+
+    /**
+     * Decides whether a batch classification in several modes should stop evaluating one of those modes. This is
+     * called on whatever thread is evaluating the batch, once per string and mode, in string order. It is never called
+     * again once the batch has returned, even if a timed out task is still running.
+     */
+    @FunctionalInterface
+    public interface ModeEarlyExitPredicate {
+        /**
+         * @param mode the mode the string was just evaluated in
+         * @param idx index of the string that was just evaluated
+         * @param result the result for that string
+         * @param start start of the sub-match if partial matching, otherwise -1
+         * @param end end of the sub-match if partial matching, otherwise -1
+         * @return true if no more strings should be evaluated in this mode
+         */
+        boolean shouldStop(MatchMode mode, int idx, MatchResult result, int start, int end);
+    }
+
+    /**
+     * Bookkeeping for a batch that is classified in several modes at once. Modes are identified by their position in
+     * {@link #modes}, and every mode has its own results and early exit state.
+     */
+    private final class ModeBatch {
+        private final List<? extends CharSequence> subjects;
+        private final MatchMode[] modes;
+        private final BatchMatchResult[] results;
+        /// memo keys for every mode and subject, or null if this matcher has no memo
+        private final long[][] memoKeys;
+        private final boolean[] stopped;
+        private final ModeEarlyExitPredicate earlyExit;
+        /// set once the caller gave up on a batch task, after which that task must not touch the caller's state
+        private volatile boolean abandoned;
+        /// how many strings the batch task matched in any mode, and how many of them ran out their own time limit.
+        /// Strings that ran into the batch's deadline, or that were never run, are not timeouts of the pattern
+        private final AtomicInteger threadedMatches = new AtomicInteger();
+        private final AtomicInteger threadedTimeouts = new AtomicInteger();
+        /// when a thread of the safe match context picked up the batch task, or NOT_STARTED while it is queued
+        private volatile long startNanos = NOT_STARTED;
+        /// set once the batch task ran into the batch's deadline with strings still needed
+        private volatile boolean deadlineExceeded;
+
+        ModeBatch(List<? extends CharSequence> subjects, Set<MatchMode> modes, ModeEarlyExitPredicate earlyExit) {
+            if (modes.isEmpty()) {
+                throw new IllegalArgumentException("at least one match mode is required");
+            }
+
+            this.subjects = subjects;
+            this.modes = modes.toArray(MatchMode[]::new);
+            this.results = new BatchMatchResult[this.modes.length];
+            this.memoKeys = matchMemo != null ? new long[this.modes.length][subjects.size()] : null;
+            this.stopped = new boolean[this.modes.length];
+            this.earlyExit = earlyExit;
+            for (int mode = 0; mode < this.modes.length; mode++) {
+                this.results[mode] = new BatchMatchResult(subjects.size(), this.modes[mode]);
+                for (int idx = 0; memoKeys != null && idx < subjects.size(); idx++) {
+                    memoKeys[mode][idx] = matchMemo.key(memoPatternHash, subjects.get(idx), this.modes[mode]);
+                }
+            }
+        }
+
+        /**
+         * @return true if the string still has to be evaluated in the mode
+         */
+        boolean needs(int mode, int idx) {
+            return !stopped[mode] && !results[mode].isEvaluated(idx);
+        }
+
+        /**
+         * Pass a result on to the early exit predicate, unless the batch was abandoned
+         */
+        synchronized void report(int mode, int idx, BatchMatchResult modeResults) {
+            if (abandoned) {
+                return;
+            }
+            MatchResult result = modeResults.getResult(idx);
+            if (earlyExit.shouldStop(modes[mode], idx, result, modeResults.getStart(idx), modeResults.getEnd(idx))) {
+                stopped[mode] = true;
+            }
+        }
+
+        /**
+         * Stop a batch task that is still running from reporting any more results. Once this returns, the early exit
+         * predicate is neither running nor called again.
+         */
+        synchronized void abandon() {
+            abandoned = true;
+        }
+
+        boolean allStopped() {
+            for (boolean modeStopped : stopped) {
+                if (!modeStopped) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if no string is still needed in any mode
+         */
+        boolean isFinished() {
+            for (int mode = 0; mode < modes.length; mode++) {
+                for (int idx = 0; idx < subjects.size(); idx++) {
+                    if (needs(mode, idx)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        Map<MatchMode, BatchMatchResult> toMap() {
+            Map<MatchMode, BatchMatchResult> byMode = new EnumMap<>(MatchMode.class);
+            for (int mode = 0; mode < modes.length; mode++) {
+                byMode.put(modes[mode], results[mode]);
+            }
+            return byMode;
+        }
+    }
+
+    /// extra time given to a batch task to notice its deadline before it is cancelled
+    private static final Duration BATCH_CANCELLATION_GRACE = Duration.ofMillis(250);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
     private final Pattern pattern;
     private final ExecutorService executorService;
+    /// if non-null, try to match on the calling thread first
+    private final InlineMatchPolicy inlineMatchPolicy;
+    /// matcher for inline batches, created on first use and reset for every string of every batch after that
+    private Matcher inlineMatcher;
+    /// if non-null, batch results are looked up here before matching and saved here afterwards
+    private final MatchMemo matchMemo;
+    private final long memoPatternHash;
+    /// if non-null, threaded matches are skipped once the pattern is quarantined, and their cost is recorded otherwise
+    private final PatternCircuitBreaker circuitBreaker;
+    /// if non-null, chooses the limits of threaded matches and records their latencies
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
 
     /**
      * Take a pattern and produce a safe, timeout-able matcher
@@ -66,8 +244,23 @@ public class SafeMatcher {
      * @param safeMatchContext The execution context to evaluate this regex in
      */
     public SafeMatcher(Pattern pattern, ExecutorService safeMatchContext) {
+        this(pattern, MatchContext.of(safeMatchContext));
+    }
+
+    /**
+     * Take a pattern and produce a safe matcher that shares the inline policy, memo, circuit breaker and timeout policy
+     * of the context with the other matchers of the run
+     * @param pattern The pattern we want to use
+     * @param matchContext The execution context and shared state to match in
+     */
+    public SafeMatcher(Pattern pattern, MatchContext matchContext) {
         this.pattern = pattern;
-        this.executorService = safeMatchContext;
+        this.executorService = matchContext.executor();
+        this.inlineMatchPolicy = matchContext.inlineMatchPolicy();
+        this.matchMemo = matchContext.matchMemo();
+        this.memoPatternHash = matchMemo != null ? MatchMemo.patternHash(pattern) : 0;
+        this.circuitBreaker = matchContext.circuitBreaker();
+        this.timeoutPolicy = matchContext.timeoutPolicy();
     }
 
     /**
@@ -80,16 +273,59 @@ public class SafeMatcher {
      * @return Match result
      */
     public MatchResult match(CharSequence charSequence, MatchMode mode, Duration timeout) {
-        Future<Boolean> matchResult = executorService.submit(matchTask(charSequence, mode));
+        return match(charSequence, mode, timeout, null);
+    }
+
+    /**
+     * Match like above, but give up at the deadline even if the timeout has not run out yet. Running into the deadline
+     * says nothing about the pattern, so unlike running out of the timeout, it is not recorded against the pattern.
+     *
+     * @param charSequence content to match
+     * @param mode How to match
+     * @param timeout Amount of time before timeout
+     * @param deadline Time by which the caller needs the result. If null, only the timeout applies
+     * @return Match result, which is a timeout if the deadline already passed
+     */
+    public MatchResult match(CharSequence charSequence, MatchMode mode, Duration timeout, Instant deadline) {
+        if (isPast(deadline)) {
+            return MatchResult.TIMEOUT;
+        }
+
+        if (shouldMatchInline()) {
+            try {
+                return MatchResult.fromBoolean(runMatch(new BudgetedCharSequence(charSequence, inlineMatchPolicy.getStepBudget()), mode));
+            } catch (StepBudgetExceededException exe) {
+                markRisky();
+            } catch (MatchInterruptedException exe) {
+                Thread.currentThread().interrupt();
+                return MatchResult.TIMEOUT;
+            }
+        }
+
+        if (isQuarantined()) {
+            return MatchResult.TIMEOUT;
+        }
+
+        AdaptiveTimeoutPolicy.Limit limit = limitFor(charSequence.length(), timeout);
+        Duration enforcedTimeout = enforced(limit, timeout);
+        Duration wait = until(deadline, enforcedTimeout);
+        long startNanos = System.nanoTime();
+        Future<Boolean> matchResult = executorService.submit(observed(matchTask(charSequence, mode), charSequence.length(), limit));
 
         try {
-            boolean result = matchResult.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            boolean result = matchResult.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+            recordCost(startNanos, 1, 0);
             return MatchResult.fromBoolean(result);
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
-        } catch (InterruptedException | TimeoutException e) {
-            // if it times out, cancel further execution
+        } catch (InterruptedException | TimeoutException | CancellationException e) {
+            // if it times out, or was cancelled by the executor, cancel further execution
             matchResult.cancel(true);
+            boolean timedOut = wait.equals(enforcedTimeout);
+            recordCost(startNanos, 1, timedOut ? 1 : 0);
+            if (timedOut) {
+                recordTimeout(limit);
+            }
             return MatchResult.TIMEOUT;
         }
     }
@@ -104,80 +340,585 @@ public class SafeMatcher {
      * @return Match result
      */
     public MatchResult match(StringWithSubMatch stringWithSubMatch, MatchMode mode, Duration timeout) {
+        return match(stringWithSubMatch, mode, timeout, null);
+    }
+
+    /**
+     * Match a string with sub match like above, but give up at the deadline even if the timeout has not run out yet,
+     * see {@link #match(CharSequence, MatchMode, Duration, Instant)}
+     *
+     * @param stringWithSubMatch content to match
+     * @param mode How to match
+     * @param timeout Amount of time before timeout
+     * @param deadline Time by which the caller needs the result. If null, only the timeout applies
+     * @return Match result
+     */
+    public MatchResult match(StringWithSubMatch stringWithSubMatch, MatchMode mode, Duration timeout, Instant deadline) {
         if (mode == MatchMode.FULL) {
-            return match(stringWithSubMatch.wholeString(), MatchMode.FULL, timeout);
+            return match(stringWithSubMatch.wholeString(), MatchMode.FULL, timeout, deadline);
+        }
+
+        return partialMatch(stringWithSubMatch.wholeString(), timeout, deadline)
+                .map(result -> {
+                    boolean matches = stringWithSubMatch.subMatchStart() == result.start() && stringWithSubMatch.subMatchEnd() == result.end();
+                    return MatchResult.fromBoolean(matches);
+                })
+                .orElse(MatchResult.TIMEOUT);
+    }
+
+    /**
+     * Perform specifically a partial match operation. This will extract the potential matching submatch
+     * @param charSequence The string to evaluate
+     * @param timeout How long this can run for
+     * @return The partial match result, or empty if timed out.
+     */
+    public Optional<PartialMatchResult> partialMatch(CharSequence charSequence, Duration timeout) {
+        return partialMatch(charSequence, timeout, null);
+    }
+
+    /**
+     * Perform a partial match like above, but give up at the deadline even if the timeout has not run out yet, see
+     * {@link #match(CharSequence, MatchMode, Duration, Instant)}
+     * @param charSequence The string to evaluate
+     * @param timeout How long this can run for
+     * @param deadline Time by which the caller needs the result. If null, only the timeout applies
+     * @return The partial match result, or empty if timed out or the deadline already passed
+     */
+    public Optional<PartialMatchResult> partialMatch(CharSequence charSequence, Duration timeout, Instant deadline) {
+        if (isPast(deadline)) {
+            return Optional.empty();
+        }
+
+        if (shouldMatchInline()) {
+            try {
+                return Optional.of(runPartialMatch(new BudgetedCharSequence(charSequence, inlineMatchPolicy.getStepBudget())));
+            } catch (StepBudgetExceededException exe) {
+                markRisky();
+            } catch (MatchInterruptedException exe) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+
+        if (isQuarantined()) {
+            return Optional.empty();
         }
 
-        Future<PartialMatchResult> matchResult = executorService.submit(partialMatchTask(stringWithSubMatch.wholeString()));
+        AdaptiveTimeoutPolicy.Limit limit = limitFor(charSequence.length(), timeout);
+        Duration enforcedTimeout = enforced(limit, timeout);
+        Duration wait = until(deadline, enforcedTimeout);
+        long startNanos = System.nanoTime();
+        Future<PartialMatchResult> matchResult = executorService.submit(observed(partialMatchTask(charSequence), charSequence.length(), limit));
 
         try {
-            PartialMatchResult result = matchResult.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
-            boolean matches = stringWithSubMatch.subMatchStart() == result.start() && stringWithSubMatch.subMatchEnd() == result.end();
-            return MatchResult.fromBoolean(matches);
+            PartialMatchResult result = matchResult.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+            recordCost(startNanos, 1, 0);
+            return Optional.of(result);
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
-        } catch (InterruptedException | TimeoutException e) {
-            // if it times out, cancel further execution
+        } catch (InterruptedException | TimeoutException | CancellationException e) {
+            // if it times out, or was cancelled by the executor, cancel further execution
             matchResult.cancel(true);
-            return MatchResult.TIMEOUT;
+            boolean timedOut = wait.equals(enforcedTimeout);
+            recordCost(startNanos, 1, timedOut ? 1 : 0);
+            if (timedOut) {
+                recordTimeout(limit);
+            }
+            return Optional.empty();
         }
     }
 
     /**
-     * Perform specifically a partial match operation. This will extract the potential matching submatch
+     * Classify a batch of strings at once. All strings are evaluated by a single matcher that is reset between strings.
+     * If this matcher has an inline policy and the pattern is not risky, strings are evaluated on the calling thread.
+     * Otherwise, or once a string exhausts the step budget, the remaining strings are evaluated in a single task on the
+     * safe match context.
+     * <br>
+     * Every string may take at most stringTimeout, and the whole batch may take as long as is left until the deadline
+     * when this is called. That time is counted from when a thread of the safe match context picks up the batch, so
+     * time spent waiting in its queue is held against neither the batch nor the pattern. Strings that run out of time
+     * are reported as {@link MatchResult#TIMEOUT}, and a batch that ran into its deadline says so in
+     * {@link BatchMatchResult#isDeadlineExceeded()}.
+     * Only strings that ran out their own time limit are recorded as timeouts with the circuit breaker. Strings that ran
+     * into the batch's deadline, or that were never run because the batch was abandoned, are not the pattern's fault.
+     * <br>
+     * Inline batches reuse the same matcher, so batches for one safe matcher must not be classified from several
+     * threads at once.
+     * <br>
+     * If this matcher has a memo, strings with a remembered result are reported to earlyExit first, before any string
+     * is matched. Strings that time out on their own time limit are remembered as timeouts.
+     *
+     * @param subjects strings to classify
+     * @param mode how to match
+     * @param stringTimeout amount of time a single string may take
+     * @param deadline time by which the whole batch must be finished
+     * @param earlyExit decides when the remaining strings can be skipped
+     * @return result for each string
+     */
+    public BatchMatchResult classifyAll(List<? extends CharSequence> subjects, MatchMode mode, Duration stringTimeout, Instant deadline, EarlyExitPredicate earlyExit) {
+        return classifyAll(subjects, EnumSet.of(mode), stringTimeout, deadline, (ignored, idx, result, start, end) -> earlyExit.shouldStop(idx, result, start, end))
+                .get(mode);
+    }
+
+    /**
+     * Classify a batch of strings in several match modes at once. Each string is matched in every mode on the same
+     * matcher before moving on to the next string, so the batch is one pass over the strings and at most one task on
+     * the safe match context, no matter how many modes there are. Otherwise this behaves like
+     * {@link #classifyAll(List, MatchMode, Duration, Instant, EarlyExitPredicate)}, where stringTimeout applies to each
+     * mode of a string separately.
+     * <br>
+     * Early exit is decided per mode. Once earlyExit stops a mode, that mode is skipped for the remaining strings while
+     * the other modes carry on. The batch ends when every mode has stopped.
+     *
+     * @param subjects strings to classify
+     * @param modes how to match. Must not be empty
+     * @param stringTimeout amount of time a single string may take in a single mode
+     * @param deadline time by which the whole batch must be finished
+     * @param earlyExit decides when the remaining strings can be skipped for a mode
+     * @return result for each string, for each of the given modes
+     */
+    public Map<MatchMode, BatchMatchResult> classifyAll(List<? extends CharSequence> subjects, Set<MatchMode> modes, Duration stringTimeout, Instant deadline, ModeEarlyExitPredicate earlyExit) {
+        ModeBatch batch = new ModeBatch(subjects, modes, earlyExit);
+        if (batch.memoKeys != null) {
+            classifyFromMemo(batch);
+        }
+        if (batch.isFinished()) {
+            return batch.toMap();
+        }
+
+        int next = 0;
+        if (shouldMatchInline()) {
+            next = classifyInline(batch);
+            if (next < 0) {
+                return batch.toMap();
+            }
+            markRisky();
+        }
+
+        final int first = next;
+        if (isQuarantined()) {
+            for (BatchMatchResult modeResults : batch.results) {
+                modeResults.timeOutRemaining(first);
+            }
+            return batch.toMap();
+        }
+
+        // the batch's time starts when a thread picks it up, so time spent waiting in the queue is not held against it
+        long allowanceNanos = Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+        // the batch stops on its own at the deadline, so an executor that watches its tasks should not stop it sooner
+        Duration runLimit = Duration.ofNanos(allowanceNanos).plus(BATCH_CANCELLATION_GRACE);
+        Future<BatchMatchResult[]> batchResult = executorService.submit(TimeLimitedTask.of(() -> {
+            long startNanos = System.nanoTime();
+            batch.startNanos = startNanos;
+            return classifyWithDeadlines(batch, first, stringTimeout, startNanos + allowanceNanos);
+        }, runLimit));
+
+        try {
+            BatchMatchResult[] fresh = awaitBatch(batch, batchResult, allowanceNanos);
+            for (int mode = 0; mode < batch.modes.length; mode++) {
+                batch.results[mode].copyFrom(fresh[mode], first);
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException | TimeoutException | CancellationException e) {
+            // if it times out or was cancelled by the executor, stop further execution and count everything left as a
+            // timeout
+            batch.abandon();
+            batchResult.cancel(true);
+            batch.deadlineExceeded = true;
+            for (BatchMatchResult modeResults : batch.results) {
+                modeResults.timeOutRemaining(first);
+            }
+        }
+
+        if (batch.deadlineExceeded) {
+            for (BatchMatchResult modeResults : batch.results) {
+                modeResults.markDeadlineExceeded();
+            }
+        }
+        // a batch that never left the queue cost the pattern nothing
+        if (batch.startNanos != NOT_STARTED) {
+            recordCost(batch.startNanos, batch.threadedMatches.get(), batch.threadedTimeouts.get());
+        }
+        return batch.toMap();
+    }
+
+    /**
+     * Match a single string in both modes with one matcher, and at most one task on the safe match context. Each mode
+     * may take at most timeout.
      * @param charSequence The string to evaluate
-     * @param timeout How long this can run for
-     * @return The partial match result, or empty if timed out.
+     * @param timeout How long each mode can run for
+     * @return The full and partial match results, or empty if either mode timed out
      */
-    public Optional<PartialMatchResult> partialMatch(CharSequence charSequence, Duration timeout) {
-        Future<PartialMatchResult> matchResult = executorService.submit(partialMatchTask(charSequence));
+    public Optional<FusedMatchResult> fusedMatch(CharSequence charSequence, Duration timeout) {
+        if (shouldMatchInline()) {
+            try {
+                Matcher matcher = pattern.matcher("");
+                boolean fullMatch = runMatch(matcher.reset(new BudgetedCharSequence(charSequence, inlineMatchPolicy.getStepBudget())), MatchMode.FULL);
+                PartialMatchResult partialMatch = runPartialMatch(matcher.reset(new BudgetedCharSequence(charSequence, inlineMatchPolicy.getStepBudget())));
+                return Optional.of(new FusedMatchResult(MatchResult.fromBoolean(fullMatch), partialMatch));
+            } catch (StepBudgetExceededException exe) {
+                markRisky();
+            } catch (MatchInterruptedException exe) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+
+        if (isQuarantined()) {
+            return Optional.empty();
+        }
+
+        // both modes read the subject, so the limit covers twice its length, and each mode gets half of it
+        AdaptiveTimeoutPolicy.Limit limit = limitFor(2 * charSequence.length(), timeout.multipliedBy(2));
+        Duration modeTimeout = enforced(limit, timeout.multipliedBy(2)).dividedBy(2);
+        long startNanos = System.nanoTime();
+        Future<FusedMatchResult> matchResult = executorService.submit(observed(fusedMatchTask(charSequence, modeTimeout), 2 * charSequence.length(), limit));
 
         try {
-            PartialMatchResult result = matchResult.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
-            return Optional.of(result);
+            FusedMatchResult result = matchResult.get(modeTimeout.multipliedBy(2).plus(BATCH_CANCELLATION_GRACE).toNanos(), TimeUnit.NANOSECONDS);
+            recordCost(startNanos, 1, result == null ? 1 : 0);
+            if (result == null) {
+                recordTimeout(limit);
+            }
+            return Optional.ofNullable(result);
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
-        } catch (InterruptedException | TimeoutException e) {
-            // if it times out, cancel further execution
+        } catch (InterruptedException | TimeoutException | CancellationException e) {
+            // if it times out, or was cancelled by the executor, cancel further execution
             matchResult.cancel(true);
+            recordCost(startNanos, 1, 1);
+            recordTimeout(limit);
             return Optional.empty();
         }
     }
 
-    private Callable<Boolean> matchTask(CharSequence charSequence, MatchMode mode) {
-        return () -> {
-            InterruptibleCharSequence interruptibleCharSequence = new InterruptibleCharSequence(charSequence);
-            Matcher matcher = pattern.matcher(interruptibleCharSequence);
-            boolean matches = false;
+    /**
+     * Classify strings on the calling thread with a step budget for each string and mode.
+     * @return -1 if the batch finished or the calling thread was interrupted, otherwise the index of the string that
+     * exceeded the step budget
+     */
+    private int classifyInline(ModeBatch batch) {
+        if (inlineMatcher == null) {
+            inlineMatcher = pattern.matcher("");
+        }
+        Matcher matcher = inlineMatcher;
+        for (int idx = 0; idx < batch.subjects.size(); idx++) {
+            for (int mode = 0; mode < batch.modes.length; mode++) {
+                if (!batch.needs(mode, idx)) {
+                    continue;
+                }
+
+                BudgetedCharSequence subject = new BudgetedCharSequence(batch.subjects.get(idx), inlineMatchPolicy.getStepBudget());
+                try {
+                    classifyOne(matcher.reset(subject), batch.modes[mode], idx, batch.results[mode]);
+                } catch (StepBudgetExceededException exe) {
+                    return idx;
+                } catch (MatchInterruptedException exe) {
+                    // the caller wants to stop, so count this string and everything after it as a timeout
+                    Thread.currentThread().interrupt();
+                    for (BatchMatchResult modeResults : batch.results) {
+                        modeResults.timeOutRemaining(idx);
+                    }
+                    return -1;
+                }
+                remember(batch, mode, idx, batch.results[mode]);
+                batch.report(mode, idx, batch.results[mode]);
+            }
+
+            if (batch.allStopped()) {
+                break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Wait for a batch task until its deadline has passed, counting from when a thread picked it up rather than from
+     * when it was submitted. While the task is still queued, this keeps waiting, unless the safe match context was shut
+     * down and will never run it.
+     */
+    private BatchMatchResult[] awaitBatch(ModeBatch batch, Future<BatchMatchResult[]> batchResult, long allowanceNanos) throws InterruptedException, ExecutionException, TimeoutException {
+        long graceNanos = BATCH_CANCELLATION_GRACE.toNanos();
+        while (true) {
+            long startNanos = batch.startNanos;
+            if (startNanos != NOT_STARTED) {
+                return batchResult.get(startNanos + allowanceNanos + graceNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+
             try {
-                switch (mode) {
-                    case FULL -> matches = matcher.matches();
-                    case PARTIAL -> matches = matcher.find();
+                return batchResult.get(allowanceNanos + graceNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException exe) {
+                if (batch.startNanos == NOT_STARTED && executorService.isShutdown()) {
+                    throw exe;
+                }
+                // either still queued, or picked up while waiting, in which case its own deadline applies from now on
+            }
+        }
+    }
+
+    /**
+     * Classify strings starting at first with a per-string time limit and an overall deadline. Strings that already
+     * have a result are skipped. This is meant to run on the safe match context.
+     * @return fresh results for each mode of the batch
+     */
+    private BatchMatchResult[] classifyWithDeadlines(ModeBatch batch, int first, Duration stringTimeout, long deadlineNanos) {
+        BatchMatchResult[] results = new BatchMatchResult[batch.modes.length];
+        for (int mode = 0; mode < batch.modes.length; mode++) {
+            results[mode] = new BatchMatchResult(batch.subjects.size(), batch.modes[mode]);
+        }
+
+        Matcher matcher = pattern.matcher("");
+        strings:
+        for (int idx = first; idx < batch.subjects.size(); idx++) {
+            for (int mode = 0; mode < batch.modes.length; mode++) {
+                if (!batch.needs(mode, idx)) {
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                if (now - deadlineNanos >= 0) {
+                    batch.deadlineExceeded = true;
+                    break strings;
+                }
+
+                int subjectLength = batch.subjects.get(idx).length();
+                AdaptiveTimeoutPolicy.Limit limit = limitFor(subjectLength, stringTimeout);
+                Duration enforcedTimeout = enforced(limit, stringTimeout);
+                long stringDeadlineNanos = Math.min(now + enforcedTimeout.toNanos(), deadlineNanos);
+                BudgetedCharSequence subject = BudgetedCharSequence.withDeadline(batch.subjects.get(idx), stringDeadlineNanos);
+                batch.threadedMatches.incrementAndGet();
+                try {
+                    classifyOne(matcher.reset(subject), batch.modes[mode], idx, results[mode]);
+                    remember(batch, mode, idx, results[mode]);
+                    if (limit != null) {
+                        timeoutPolicy.recordFinished(pattern, subjectLength, limit, System.nanoTime() - now);
+                    }
+                } catch (MatchDeadlineExceededException exe) {
+                    results[mode].set(idx, MatchResult.TIMEOUT, -1, -1);
+                    // only a string that used up the whole time limit of its call site is known to time out
+                    if (stringDeadlineNanos == deadlineNanos) {
+                        batch.deadlineExceeded = true;
+                    } else {
+                        batch.threadedTimeouts.incrementAndGet();
+                        recordTimeout(limit);
+                        if (enforcedTimeout.equals(stringTimeout)) {
+                            remember(batch, mode, idx, results[mode]);
+                        }
+                    }
+                }
+                batch.report(mode, idx, results[mode]);
+            }
+
+            if (batch.allStopped()) {
+                return results;
+            }
+        }
+
+        // everything that is still needed ran out of time
+        for (int mode = 0; mode < batch.modes.length; mode++) {
+            for (int idx = first; idx < batch.subjects.size(); idx++) {
+                if (batch.needs(mode, idx) && !results[mode].isEvaluated(idx)) {
+                    results[mode].set(idx, MatchResult.TIMEOUT, -1, -1);
                 }
-            } catch (StackOverflowError err) {
-                return false;
             }
+        }
+        return results;
+    }
+
+    /**
+     * Fill in every string of a batch that has a remembered result, in every mode
+     */
+    private void classifyFromMemo(ModeBatch batch) {
+        for (int idx = 0; idx < batch.subjects.size(); idx++) {
+            for (int mode = 0; mode < batch.modes.length; mode++) {
+                long memoKey = batch.memoKeys[mode][idx];
+                if (batch.stopped[mode] || memoKey == MatchMemo.NONE) {
+                    continue;
+                }
+
+                long packed = matchMemo.get(memoKey);
+                if (packed == MatchMemo.NONE) {
+                    continue;
+                }
 
-            return matches;
+                batch.results[mode].set(idx, MatchMemo.result(packed), MatchMemo.start(packed), MatchMemo.end(packed));
+                batch.report(mode, idx, batch.results[mode]);
+            }
+        }
+    }
+
+    private void remember(ModeBatch batch, int mode, int idx, BatchMatchResult results) {
+        if (!batch.abandoned && batch.memoKeys != null && batch.memoKeys[mode][idx] != MatchMemo.NONE) {
+            matchMemo.put(batch.memoKeys[mode][idx], results.getResult(idx), results.getStart(idx), results.getEnd(idx));
+        }
+    }
+
+    /**
+     * Evaluate a single string of a batch on a matcher that has already been reset to it, and record the result.
+     */
+    private void classifyOne(Matcher matcher, MatchMode mode, int idx, BatchMatchResult results) {
+        MatchResult result;
+        int start = -1;
+        int end = -1;
+        try {
+            boolean matches = mode == MatchMode.FULL ? matcher.matches() : matcher.find();
+            result = MatchResult.fromBoolean(matches);
+            if (matches && mode == MatchMode.PARTIAL) {
+                start = matcher.start();
+                end = matcher.end();
+            }
+        } catch (StackOverflowError err) {
+            recordStackOverflow();
+            result = MatchResult.NOT_MATCH;
+        }
+
+        results.set(idx, result, start, end);
+    }
+
+    private boolean shouldMatchInline() {
+        return inlineMatchPolicy != null && !inlineMatchPolicy.isRisky(pattern);
+    }
+
+    private boolean isQuarantined() {
+        return circuitBreaker != null && circuitBreaker.isQuarantined(pattern);
+    }
+
+    /**
+     * Record the cost of threaded matching with the circuit breaker, if there is one
+     */
+    private void recordCost(long startNanos, int matches, int timeouts) {
+        if (circuitBreaker != null) {
+            circuitBreaker.record(pattern, Duration.ofNanos(System.nanoTime() - startNanos), matches, timeouts);
+        }
+    }
+
+    private void recordStackOverflow() {
+        if (circuitBreaker != null) {
+            circuitBreaker.recordStackOverflow(pattern);
+        }
+    }
+
+    /**
+     * @return the limits of a threaded match, or null if there is no timeout policy
+     */
+    private AdaptiveTimeoutPolicy.Limit limitFor(int subjectLength, Duration timeout) {
+        return timeoutPolicy == null ? null : timeoutPolicy.limitFor(pattern, subjectLength, timeout);
+    }
+
+    private static Duration enforced(AdaptiveTimeoutPolicy.Limit limit, Duration timeout) {
+        return limit == null ? timeout : limit.enforced();
+    }
+
+    private static boolean isPast(Instant deadline) {
+        return deadline != null && !Instant.now().isBefore(deadline);
+    }
+
+    /**
+     * @return how long to wait for a threaded match: the timeout, or the time left until the deadline if that is shorter
+     */
+    private static Duration until(Instant deadline, Duration timeout) {
+        if (deadline == null) {
+            return timeout;
+        }
+
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    private void recordTimeout(AdaptiveTimeoutPolicy.Limit limit) {
+        if (limit != null) {
+            timeoutPolicy.recordTimeout(limit);
+        }
+    }
+
+    /**
+     * Record how long a threaded match takes on its thread, if it finishes within its limit
+     */
+    private <T> Callable<T> observed(Callable<T> task, int subjectLength, AdaptiveTimeoutPolicy.Limit limit) {
+        if (limit == null) {
+            return task;
+        }
+
+        return () -> {
+            long startNanos = System.nanoTime();
+            T result = task.call();
+            long elapsedNanos = System.nanoTime() - startNanos;
+            // a fused match reports its timeout as null, and a late result was already reported as a timeout
+            if (result != null && elapsedNanos <= limit.enforced().toNanos()) {
+                timeoutPolicy.recordFinished(pattern, subjectLength, limit, elapsedNanos);
+            }
+            return result;
         };
     }
 
+    private void markRisky() {
+        logger.debug("regex /{}/ exceeded inline step budget, falling back to threaded matching", pattern.pattern());
+        inlineMatchPolicy.markRisky(pattern);
+    }
+
+    private Callable<Boolean> matchTask(CharSequence charSequence, MatchMode mode) {
+        return () -> runMatch(new InterruptibleCharSequence(charSequence), mode);
+    }
+
     private Callable<PartialMatchResult> partialMatchTask(CharSequence charSequence) {
+        return () -> runPartialMatch(new InterruptibleCharSequence(charSequence));
+    }
+
+    /**
+     * Match in both modes on one matcher, giving each mode its own time limit
+     * @return the results, or null if either mode ran out of time
+     */
+    private Callable<FusedMatchResult> fusedMatchTask(CharSequence charSequence, Duration timeout) {
         return () -> {
-            InterruptibleCharSequence interruptibleCharSequence = new InterruptibleCharSequence(charSequence);
-            Matcher matcher = pattern.matcher(interruptibleCharSequence);
-            boolean matches;
+            Matcher matcher = pattern.matcher("");
             try {
-                matches = matcher.find();
-            } catch (StackOverflowError stackOverflowError) {
-                return new PartialMatchResult(MatchResult.NOT_MATCH, -1, -1);
+                boolean fullMatch = runMatch(matcher.reset(BudgetedCharSequence.withDeadline(charSequence, System.nanoTime() + timeout.toNanos())), MatchMode.FULL);
+                PartialMatchResult partialMatch = runPartialMatch(matcher.reset(BudgetedCharSequence.withDeadline(charSequence, System.nanoTime() + timeout.toNanos())));
+                return new FusedMatchResult(MatchResult.fromBoolean(fullMatch), partialMatch);
+            } catch (MatchDeadlineExceededException exe) {
+                return null;
             }
+        };
+    }
+
+    private boolean runMatch(InterruptibleCharSequence interruptibleCharSequence, MatchMode mode) {
+        return runMatch(pattern.matcher(interruptibleCharSequence), mode);
+    }
 
-            if (!matches) {
-                return new PartialMatchResult(MatchResult.NOT_MATCH, -1, -1);
+    private boolean runMatch(Matcher matcher, MatchMode mode) {
+        boolean matches = false;
+        try {
+            switch (mode) {
+                case FULL -> matches = matcher.matches();
+                case PARTIAL -> matches = matcher.find();
             }
+        } catch (StackOverflowError err) {
+            recordStackOverflow();
+            return false;
+        }
 
-            return new PartialMatchResult(MatchResult.MATCH, matcher.start(), matcher.end());
-        };
+        return matches;
+    }
+
+    private PartialMatchResult runPartialMatch(InterruptibleCharSequence interruptibleCharSequence) {
+        return runPartialMatch(pattern.matcher(interruptibleCharSequence));
+    }
+
+    private PartialMatchResult runPartialMatch(Matcher matcher) {
+        boolean matches;
+        try {
+            matches = matcher.find();
+        } catch (StackOverflowError stackOverflowError) {
+            recordStackOverflow();
+            return new PartialMatchResult(MatchResult.NOT_MATCH, -1, -1);
+        }
+
+        if (!matches) {
+            return new PartialMatchResult(MatchResult.NOT_MATCH, -1, -1);
+        }
+
+        return new PartialMatchResult(MatchResult.MATCH, matcher.start(), matcher.end());
     }
 }
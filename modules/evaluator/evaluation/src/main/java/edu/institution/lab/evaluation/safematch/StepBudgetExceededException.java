@@ -0,0 +1,11 @@
+package edu.institution.lab.evaluation.safematch;
+
+/**
+ * Thrown by {@link BudgetedCharSequence} when a matcher reads more characters than it is allowed to. This is thrown
+ * from deep within the regex engine, so no stack trace is recorded.
+ */
+class StepBudgetExceededException extends RuntimeException {
+    public StepBudgetExceededException(long stepBudget) {
+        super(String.format("exceeded step budget of %d", stepBudget), null, false, false);
+    }
+}
@@ -0,0 +1,31 @@
+package edu.institution.lab.evaluation.safematch;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * A task for the safe match context that knows how long it may run once a thread picks it up. An executor that cancels
+ * tasks which run for too long should give such a task its own limit instead of a global one, since a batch of many
+ * strings may legitimately run for much longer than a single match.
+ */
+public interface TimeLimitedTask<V> extends Callable<V> {
+
+    /**
+     * @return how long the task may run once it started, after which it would have stopped on its own
+     */
+    Duration runLimit();
+
+    static <V> TimeLimitedTask<V> of(Callable<V> task, Duration runLimit) {
+        return new TimeLimitedTask<>() {
+            @Override
+            public V call() throws Exception {
+                return task.call();
+            }
+
+            @Override
+            public Duration runLimit() {
+                return runLimit;
+            }
+        };
+    }
+}
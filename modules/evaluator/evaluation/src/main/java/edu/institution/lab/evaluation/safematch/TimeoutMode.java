@@ -0,0 +1,21 @@
+package edu.institution.lab.evaluation.safematch;
+
+/**
+ * How the time limits of threaded matches are chosen. See {@link AdaptiveTimeoutPolicy}
+ */
+public enum TimeoutMode {
+    /**
+     * Every match gets the fixed timeout of its call site
+     */
+    FIXED,
+    /**
+     * Every match gets the fixed timeout of its call site, but the adaptive limits are computed alongside, and the
+     * verdicts they would have changed are counted. Use this to validate adaptive limits against the fixed timeouts
+     */
+    SHADOW,
+    /**
+     * Once a pattern has enough observed latencies, its matches get the adaptive limit when that is tighter than the
+     * fixed timeout
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,57 @@
+package edu.institution.lab.evaluation.shard;
+
+/**
+ * One of several disjoint slices of the work of a command, so the slices can run as separate processes. Ids are
+ * assigned to shards by their residue, so every process agrees on the partition without coordinating.
+ * @param index Which slice this is, from 0 until count
+ * @param count How many slices the work is split into
+ */
+public record Shard(int index, int count) {
+
+    /// the whole of the work, in a single slice
+    public static final Shard ALL = new Shard(0, 1);
+
+    public Shard {
+        if (count < 1) {
+            throw new IllegalArgumentException(String.format("shard count must be positive, but was %d", count));
+        }
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(String.format("shard index must be in [0, %d), but was %d", count, index));
+        }
+    }
+
+    /**
+     * Parse a shard from its {@code index/count} form, e.g. {@code 0/4}
+     * @throws IllegalArgumentException If the text is not a valid shard
+     */
+    public static Shard parse(String text) {
+        int separator = text.indexOf('/');
+        if (separator < 0) {
+            throw new IllegalArgumentException(String.format("shard '%s' should look like index/count", text));
+        }
+
+        try {
+            int index = Integer.parseInt(text.substring(0, separator).trim());
+            int count = Integer.parseInt(text.substring(separator + 1).trim());
+            return new Shard(index, count);
+        } catch (NumberFormatException exe) {
+            throw new IllegalArgumentException(String.format("shard '%s' should look like index/count", text), exe);
+        }
+    }
+
+    /**
+     * @return true if the item with the given id belongs to this shard
+     */
+    public boolean contains(long id) {
+        return Math.floorMod(id, count) == index;
+    }
+
+    public boolean isAll() {
+        return count == 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d/%d", index, count);
+    }
+}
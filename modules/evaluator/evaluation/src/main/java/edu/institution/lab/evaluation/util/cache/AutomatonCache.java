@@ -3,6 +3,7 @@ package edu.institution.lab.evaluation.util.cache;
 import dk.brics.automaton.Automaton;
 import dk.brics.automaton.DfaBudgetExceededException;
 import dk.brics.automaton.RegExp;
+import edu.institution.lab.evaluation.ledger.PatternCostLedger;
 import edu.institution.lab.evaluation.util.Pair;
 
 import java.time.Duration;
@@ -15,11 +16,13 @@ import java.util.concurrent.*;
  * 1. evicting automata based on how long it takes to compile. If an automaton takes a long time to compile, then it
  * is cached for longer. Likewise, automata that compile quickly are evicted quickly because they are trivial to compile.
  * 2. A set of automata that cannot be compiled are cached. This is useful in the case where you are compiling patterns
- * in a loop and don't want to try to compile the same regex over and over
+ * in a loop and don't want to try to compile the same regex over and over. With a {@link PatternCostLedger}, patterns
+ * that failed to compile in earlier runs are treated as failed from the start, and the cost of each compilation is
+ * recorded in the ledger
  */
 public class AutomatonCache extends AbstractBoundedCache<String, Automaton, AutomatonCacheNode> {
 
-    private record CompileAutomatonTask(String pattern) implements Callable<Optional<Pair<Automaton, Long>>> {
+    private record CompileAutomatonTask(String pattern, PatternCostLedger ledger) implements Callable<Optional<Pair<Automaton, Long>>> {
         @Override
         public Optional<Pair<Automaton, Long>> call() throws Exception {
             // first, parse the regex
@@ -39,7 +42,18 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
                 automaton = regExp.toAutomaton();
                 long end = System.nanoTime();
                 elapsedTime = end - start;
-            } catch (DfaBudgetExceededException | StackOverflowError | OutOfMemoryError exe) {
+            } catch (DfaBudgetExceededException exe) {
+                if (ledger != null) {
+                    ledger.recordDfaBudgetHit(pattern);
+                }
+                return Optional.empty();
+            } catch (StackOverflowError | OutOfMemoryError err) {
+                if (ledger != null) {
+                    if (err instanceof StackOverflowError) {
+                        ledger.recordStackOverflow(pattern);
+                    }
+                    ledger.recordAutomatonFailure(pattern);
+                }
                 return Optional.empty();
             }
 
@@ -51,15 +65,26 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
     /// contains left set of patterns that we failed to compile into an automaton. Essentially, this is caching
     /// "you should not try to compile this because it will not succeed"
     private final Set<String> failedPatterns;
+    /// where the cost of each compilation is recorded, or null
+    private final PatternCostLedger ledger;
 
     public AutomatonCache(int maxSize, ExecutorService automatonCompilationContext) {
-        this(maxSize, new HashMap<>(), automatonCompilationContext);
+        this(maxSize, automatonCompilationContext, null);
+    }
+
+    public AutomatonCache(int maxSize, ExecutorService automatonCompilationContext, PatternCostLedger ledger) {
+        this(maxSize, new HashMap<>(), automatonCompilationContext, ledger);
     }
 
     protected AutomatonCache(int maxSize, Map<String, AutomatonCacheNode> cacheImpl, ExecutorService automatonCompilationContext) {
+        this(maxSize, cacheImpl, automatonCompilationContext, null);
+    }
+
+    protected AutomatonCache(int maxSize, Map<String, AutomatonCacheNode> cacheImpl, ExecutorService automatonCompilationContext, PatternCostLedger ledger) {
         super(maxSize, cacheImpl);
         this.automatonCompilationContext = automatonCompilationContext;
         this.failedPatterns = new HashSet<>();
+        this.ledger = ledger;
     }
 
     public boolean isFailedRegex(String pattern) {
@@ -115,6 +140,12 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
             return Optional.empty();
         }
 
+        // same if it never compiled in an earlier run
+        if (ledger != null && ledger.isAutomatonHopeless(regexPattern)) {
+            failedPatterns.add(regexPattern);
+            return Optional.empty();
+        }
+
         // if the regex is already cached, then just get it
         if (containsKey(regexPattern)) {
             Automaton existing = get(regexPattern);
@@ -127,7 +158,7 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
         int retryCount = 0;
         while (keepGoing && retryCount < retryLimit) {
             // otherwise, we need to actually compile this pattern
-            Future<Optional<Pair<Automaton, Long>>> compilationTask = automatonCompilationContext.submit(new CompileAutomatonTask(regexPattern));
+            Future<Optional<Pair<Automaton, Long>>> compilationTask = automatonCompilationContext.submit(new CompileAutomatonTask(regexPattern, ledger));
             try {
                 compiledAutomaton = compilationTask.get(compilationTimeLimit.toMillis(), TimeUnit.MILLISECONDS);
                 keepGoing = false;
@@ -137,6 +168,9 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
                 compilationTask.cancel(true);
                 compiledAutomaton = Optional.empty();
                 keepGoing = false;
+                if (ledger != null) {
+                    ledger.recordAutomatonFailure(regexPattern);
+                }
             } catch (ExecutionException exe) {
                 // figure out what happened
                 if (exe.getCause() instanceof OutOfMemoryError) {
@@ -162,6 +196,9 @@ public class AutomatonCache extends AbstractBoundedCache<String, Automaton, Auto
 
         // actually cache
         Pair<Automaton, Long> automatonAndDuration = compiledAutomaton.get();
+        if (ledger != null) {
+            ledger.recordAutomaton(regexPattern, automatonAndDuration.right(), automatonAndDuration.left().getNumberOfStates());
+        }
         AutomatonCacheNode cacheNode = new AutomatonCacheNode(automatonAndDuration.right(), automatonAndDuration.left());
         cacheImpl.put(regexPattern, cacheNode);
         return Optional.of(automatonAndDuration.left());
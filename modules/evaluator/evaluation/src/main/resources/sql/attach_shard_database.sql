@@ -0,0 +1,2 @@
+
+ATTACH DATABASE ?1 AS shard;
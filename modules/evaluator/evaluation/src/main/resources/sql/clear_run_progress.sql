@@ -0,0 +1,3 @@
+
+DELETE FROM run_progress
+WHERE command = ?1;
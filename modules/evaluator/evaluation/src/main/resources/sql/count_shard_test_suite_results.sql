@@ -0,0 +1,2 @@
+
+SELECT COUNT(*) AS row_count FROM shard.test_suite_result;
@@ -35,3 +35,13 @@ CREATE TABLE IF NOT EXISTS test_suite_internet_result (
     -- foreign key to internet regex
     FOREIGN KEY (internet_regex_id) REFERENCES internet_regex(id)
 );
+
+-- databases from before the index below may hold a pair more than once, from runs that evaluated it again. Only the
+-- latest result of each pair is kept
+DELETE FROM test_suite_internet_result
+WHERE rowid NOT IN (
+    SELECT MAX(rowid) FROM test_suite_internet_result GROUP BY test_suite_id, internet_regex_id
+);
+
+-- one result per pair, which also lets merges and re-runs find an existing result without a table scan
+CREATE UNIQUE INDEX IF NOT EXISTS test_suite_internet_result_pair ON test_suite_internet_result (test_suite_id, internet_regex_id);
@@ -0,0 +1,9 @@
+
+CREATE TABLE IF NOT EXISTS pattern_language_class (
+    -- the regex pattern that belongs to this class
+    pattern TEXT PRIMARY KEY,
+    -- canonical hash of the pattern's minimal DFA. Patterns with the same hash full-match the same strings
+    language_hash TEXT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS pattern_language_class_hash ON pattern_language_class (language_hash);
@@ -0,0 +1,24 @@
+
+CREATE TABLE IF NOT EXISTS pattern_cost (
+    -- the regex pattern whose cost this is. Counts are totals over every run on this database
+    pattern TEXT PRIMARY KEY,
+    -- how long Pattern.compile took the last time it was timed
+    regex_compile_us INTEGER NOT NULL DEFAULT 0,
+    -- how long the last successful automaton build took, and how many states it had. 0 if no build ever succeeded
+    automaton_compile_ms INTEGER NOT NULL DEFAULT 0,
+    automaton_states INTEGER NOT NULL DEFAULT 0,
+    -- automaton builds that timed out, overflowed the stack or ran out of memory
+    automaton_failures INTEGER NOT NULL DEFAULT 0,
+    -- automaton builds that were given up because determinizing took too many states
+    dfa_budget_hits INTEGER NOT NULL DEFAULT 0,
+    -- threaded matches, and how long they took in total, timeouts included
+    matches INTEGER NOT NULL DEFAULT 0,
+    match_time_ms INTEGER NOT NULL DEFAULT 0,
+    -- latency percentiles of the threaded matches of the last run that had any. 0 if there never were any
+    match_p50_us INTEGER NOT NULL DEFAULT 0,
+    match_p99_us INTEGER NOT NULL DEFAULT 0,
+    -- threaded matches that timed out
+    timeouts INTEGER NOT NULL DEFAULT 0,
+    -- matches and automaton builds that overflowed the stack
+    stack_overflows INTEGER NOT NULL DEFAULT 0
+);
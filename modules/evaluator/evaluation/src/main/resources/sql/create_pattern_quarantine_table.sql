@@ -0,0 +1,9 @@
+
+CREATE TABLE IF NOT EXISTS pattern_quarantine (
+    -- the quarantined regex pattern. Its matches are not run anymore, and count as undetermined
+    pattern TEXT PRIMARY KEY,
+    -- how many matches of the pattern timed out before it was quarantined
+    timeouts INTEGER NOT NULL,
+    -- how long matches of the pattern took in total before it was quarantined
+    time_spent_ms INTEGER NOT NULL
+);
@@ -0,0 +1,15 @@
+
+CREATE TABLE IF NOT EXISTS run_progress (
+    -- the command that completed this unit of work
+    command TEXT NOT NULL,
+    -- the project of the unit, or -1 if the unit is not tied to a project
+    project_id INTEGER NOT NULL,
+    -- the test suite of the unit, or -1 if the unit covers a whole project
+    test_suite_id INTEGER NOT NULL,
+    -- the run that completed the unit. Every invocation of a command is a new run, including resumed ones
+    run_id TEXT NOT NULL,
+    -- when the unit was completed
+    completed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+
+    PRIMARY KEY (command, project_id, test_suite_id)
+);
@@ -1,3 +1,4 @@
 
-INSERT INTO test_suite_internet_result (test_suite_id, internet_regex_id, full_match_result, partial_match_result)
+-- a run that evaluates a pair again replaces its earlier result
+INSERT OR REPLACE INTO test_suite_internet_result (test_suite_id, internet_regex_id, full_match_result, partial_match_result)
 VALUES (?1, ?2, ?3, ?4);
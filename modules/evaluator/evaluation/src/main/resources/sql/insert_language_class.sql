@@ -0,0 +1,3 @@
+
+INSERT OR REPLACE INTO pattern_language_class (pattern, language_hash)
+VALUES (?1, ?2);
@@ -0,0 +1,5 @@
+
+INSERT OR REPLACE INTO pattern_cost (pattern, regex_compile_us, automaton_compile_ms, automaton_states, automaton_failures,
+                                     dfa_budget_hits, matches, match_time_ms, match_p50_us, match_p99_us, timeouts,
+                                     stack_overflows)
+VALUES (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8, ?9, ?10, ?11, ?12);
@@ -0,0 +1,3 @@
+
+INSERT OR IGNORE INTO pattern_quarantine (pattern, timeouts, time_spent_ms)
+VALUES (?1, ?2, ?3);
@@ -0,0 +1,3 @@
+
+INSERT OR REPLACE INTO run_progress (command, project_id, test_suite_id, run_id)
+VALUES (?1, ?2, ?3, ?4);
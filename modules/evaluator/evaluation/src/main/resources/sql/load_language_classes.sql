@@ -0,0 +1,3 @@
+
+SELECT pattern, language_hash
+FROM pattern_language_class;
@@ -0,0 +1,4 @@
+
+SELECT pattern, regex_compile_us, automaton_compile_ms, automaton_states, automaton_failures, dfa_budget_hits, matches,
+       match_time_ms, match_p50_us, match_p99_us, timeouts, stack_overflows
+FROM pattern_cost;
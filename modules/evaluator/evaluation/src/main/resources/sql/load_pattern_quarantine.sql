@@ -0,0 +1,3 @@
+
+SELECT pattern, timeouts, time_spent_ms
+FROM pattern_quarantine;
@@ -0,0 +1,4 @@
+
+SELECT project_id, test_suite_id
+FROM run_progress
+WHERE command = ?1;
@@ -0,0 +1,11 @@
+
+-- the unique index on each pair rejects results that another shard already merged
+INSERT OR IGNORE INTO test_suite_internet_result (test_suite_id, internet_regex_id, full_match_result, partial_match_result,
+                                                  full_node_coverage, full_edge_coverage, full_edge_pair_coverage,
+                                                  partial_node_coverage, partial_edge_coverage, partial_edge_pair_coverage,
+                                                  ast_distance, auto_distance)
+SELECT test_suite_id, internet_regex_id, full_match_result, partial_match_result,
+       full_node_coverage, full_edge_coverage, full_edge_pair_coverage,
+       partial_node_coverage, partial_edge_coverage, partial_edge_pair_coverage,
+       ast_distance, auto_distance
+FROM shard.test_suite_internet_result;
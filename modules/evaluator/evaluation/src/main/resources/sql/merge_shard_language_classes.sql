@@ -0,0 +1,4 @@
+
+INSERT OR IGNORE INTO pattern_language_class (pattern, language_hash)
+SELECT pattern, language_hash
+FROM shard.pattern_language_class;
@@ -0,0 +1,22 @@
+
+-- every shard starts from the same ledger, so adding their totals up would count it once per shard. Instead, the row of
+-- whichever database observed the pattern the most is kept
+INSERT INTO pattern_cost (pattern, regex_compile_us, automaton_compile_ms, automaton_states, automaton_failures,
+                          dfa_budget_hits, matches, match_time_ms, match_p50_us, match_p99_us, timeouts, stack_overflows)
+SELECT pattern, regex_compile_us, automaton_compile_ms, automaton_states, automaton_failures, dfa_budget_hits, matches,
+       match_time_ms, match_p50_us, match_p99_us, timeouts, stack_overflows
+FROM shard.pattern_cost
+WHERE true
+ON CONFLICT (pattern) DO UPDATE SET regex_compile_us = excluded.regex_compile_us,
+                                    automaton_compile_ms = excluded.automaton_compile_ms,
+                                    automaton_states = excluded.automaton_states,
+                                    automaton_failures = excluded.automaton_failures,
+                                    dfa_budget_hits = excluded.dfa_budget_hits,
+                                    matches = excluded.matches,
+                                    match_time_ms = excluded.match_time_ms,
+                                    match_p50_us = excluded.match_p50_us,
+                                    match_p99_us = excluded.match_p99_us,
+                                    timeouts = excluded.timeouts,
+                                    stack_overflows = excluded.stack_overflows
+WHERE excluded.matches + excluded.automaton_failures + excluded.dfa_budget_hits
+          > pattern_cost.matches + pattern_cost.automaton_failures + pattern_cost.dfa_budget_hits;
@@ -0,0 +1,4 @@
+
+INSERT OR IGNORE INTO pattern_quarantine (pattern, timeouts, time_spent_ms)
+SELECT pattern, timeouts, time_spent_ms
+FROM shard.pattern_quarantine;
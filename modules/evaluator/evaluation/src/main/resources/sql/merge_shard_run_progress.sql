@@ -0,0 +1,4 @@
+
+INSERT OR IGNORE INTO run_progress (command, project_id, test_suite_id, run_id, completed_at)
+SELECT command, project_id, test_suite_id, run_id, completed_at
+FROM shard.run_progress;
@@ -0,0 +1,11 @@
+
+-- the primary key rejects results that another shard already merged
+INSERT OR IGNORE INTO test_suite_result (test_suite_id, regex_id, project_id, full_match_result, partial_match_result,
+                                         ast_distance, full_automaton_distance, partial_automaton_distance,
+                                         full_node_coverage, full_edge_coverage, full_edge_pair_coverage,
+                                         partial_node_coverage, partial_edge_coverage, partial_edge_pair_coverage)
+SELECT test_suite_id, regex_id, project_id, full_match_result, partial_match_result,
+       ast_distance, full_automaton_distance, partial_automaton_distance,
+       full_node_coverage, full_edge_coverage, full_edge_pair_coverage,
+       partial_node_coverage, partial_edge_coverage, partial_edge_pair_coverage
+FROM shard.test_suite_result;
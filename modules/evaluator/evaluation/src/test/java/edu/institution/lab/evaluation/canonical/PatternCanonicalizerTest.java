@@ -0,0 +1,81 @@
+package edu.institution.lab.evaluation.canonical;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.util.IndeterminateBoolean;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatternCanonicalizerTest {
+
+    @Test
+    void canonicalize_equatesTriviallyEquivalentPatterns() {
+        assertThat(PatternCanonicalizer.canonicalize("[0-9]+")).isEqualTo(PatternCanonicalizer.canonicalize("\\d+"));
+        assertThat(PatternCanonicalizer.canonicalize("(?:ab)c")).isEqualTo("abc");
+        assertThat(PatternCanonicalizer.canonicalize("[cba]")).isEqualTo("[a-c]");
+        assertThat(PatternCanonicalizer.canonicalize("(a|b|a)")).isEqualTo("[ab]");
+        assertThat(PatternCanonicalizer.canonicalize("[^\\d]")).isEqualTo("\\D");
+        assertThat(PatternCanonicalizer.canonicalize("x{1}y{0,}z{1,}?")).isEqualTo("xy*z+?");
+    }
+
+    @Test
+    void canonicalize_keepsWhatAffectsWhereMatchesAreFound() {
+        assertThat(PatternCanonicalizer.canonicalize("^(foo|bar)$")).isEqualTo("^(?:foo|bar)$");
+        assertThat(PatternCanonicalizer.canonicalize("(ab|a)c")).isEqualTo("(?:ab|a)c");
+        assertThat(PatternCanonicalizer.canonicalize("\\ba+?")).isEqualTo("\\ba+?");
+        assertThat(PatternCanonicalizer.canonicalize("a{1}+")).isEqualTo("a{1}+");
+        // a negated class also matches supplementary code points, an explicit range does not
+        assertThat(PatternCanonicalizer.canonicalize("[^a]")).isNotEqualTo(PatternCanonicalizer.canonicalize("[\\x00-`b-\\uffff]"));
+    }
+
+    @Test
+    void canonicalize_unsupportedPatternIsUnchanged() {
+        assertThat(PatternCanonicalizer.canonicalize("(a)\\1")).isEqualTo("(a)\\1");
+        assertThat(PatternCanonicalizer.canonicalize("a(?=b)")).isEqualTo("a(?=b)");
+    }
+
+    @Test
+    void canonicalize_preservesMatches() {
+        List<String> patterns = List.of("(a|b|a)+c", "[0-9]{1}x|y", "^(?:ab|a)(c)?$", "[^\\s]+?\\b", "(?:a|[bc])*+");
+        List<String> subjects = List.of("", "abc", "bbac", "12x", "aac", "ab c", "y", "\uD83D\uDE00a");
+        for (String pattern : patterns) {
+            Pattern original = Pattern.compile(pattern);
+            Pattern canonical = Pattern.compile(PatternCanonicalizer.canonicalize(pattern));
+            for (String subject : subjects) {
+                assertThat(canonical.matcher(subject).matches()).isEqualTo(original.matcher(subject).matches());
+                assertThat(canonical.matcher(subject).results().map(result -> result.start() + "-" + result.end()).toList())
+                        .isEqualTo(original.matcher(subject).results().map(result -> result.start() + "-" + result.end()).toList());
+            }
+        }
+    }
+
+    @Test
+    void group_fansSolutionsOutToEveryMember() {
+        CanonicalCandidates candidates = CanonicalCandidates.group(List.of(
+                candidate(1, "(?:[0-9])+"),
+                candidate(2, "\\d+"),
+                candidate(3, "[a-z]+")
+        ));
+        assertThat(candidates.getCandidateCount()).isEqualTo(3);
+        assertThat(candidates.getRepresentatives()).extracting(CompiledRegexEntity::id).containsExactly(2L, 3L);
+
+        RegexTestSuiteSolution solution = new RegexTestSuiteSolution(2, 7, IndeterminateBoolean.TRUE, IndeterminateBoolean.FALSE, -1, 0.5, Double.NaN);
+        Map<Long, Set<RegexTestSuiteSolution>> fannedOut = candidates.fanOut(Map.of(10L, Set.of(solution), 11L, Set.of()));
+
+        assertThat(fannedOut.get(11L)).isEmpty();
+        assertThat(fannedOut.get(10L)).containsExactlyInAnyOrder(
+                new RegexTestSuiteSolution(1, 7, IndeterminateBoolean.TRUE, IndeterminateBoolean.FALSE, -1, 0.5, Double.NaN),
+                solution
+        );
+    }
+
+    private static CompiledRegexEntity candidate(long id, String pattern) {
+        return new CompiledRegexEntity(id, 7, Pattern.compile(pattern));
+    }
+}
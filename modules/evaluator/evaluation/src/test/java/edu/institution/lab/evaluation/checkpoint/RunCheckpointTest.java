@@ -0,0 +1,37 @@
+package edu.institution.lab.evaluation.checkpoint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunCheckpointTest {
+
+    @Test
+    void resumedUnits_areCompleted() {
+        RunCheckpoint checkpoint = new RunCheckpoint(CheckpointedCommand.EVALUATE, List.of(WorkUnit.project(3)));
+
+        assertTrue(checkpoint.isCompleted(WorkUnit.project(3)));
+        assertFalse(checkpoint.isCompleted(WorkUnit.project(4)));
+        assertFalse(checkpoint.isCompleted(WorkUnit.testSuite(3, 10)));
+        assertEquals(1, checkpoint.getResumedUnitCount());
+    }
+
+    @Test
+    void markCompleted_doesNotCountAsResumed() {
+        RunCheckpoint checkpoint = RunCheckpoint.untracked(CheckpointedCommand.UPDATE_DISTANCES);
+
+        checkpoint.markCompleted(List.of(WorkUnit.testSuite(1, 2)));
+
+        assertTrue(checkpoint.isCompleted(WorkUnit.testSuite(1, 2)));
+        assertEquals(0, checkpoint.getResumedUnitCount());
+    }
+
+    @Test
+    void freshEvaluate_invalidatesDependentCommands() {
+        assertTrue(CheckpointedCommand.EVALUATE.invalidates().contains(CheckpointedCommand.RELATIVE_COVERAGE));
+        assertTrue(CheckpointedCommand.EVALUATE.invalidates().contains(CheckpointedCommand.UPDATE_DISTANCES));
+        assertTrue(CheckpointedCommand.RELATIVE_COVERAGE.invalidates().isEmpty());
+    }
+}
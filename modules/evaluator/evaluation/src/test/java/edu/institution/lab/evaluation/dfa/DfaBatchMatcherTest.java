@@ -0,0 +1,46 @@
+package edu.institution.lab.evaluation.dfa;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DfaBatchMatcherTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "\\d+", "[a-z]+", "\\w+@\\w+\\.com", "\\d{4}-\\d{2}-\\d{2}", "a.*", ".*", "(ab)*", "x|y|z"
+    );
+
+    private static final List<String> SUBJECTS = List.of(
+            "", "123", "abc", "joe@site.com", "2024-01-31", "abab", "y", "a\nb", "A1"
+    );
+
+    @Test
+    void matchAll_agreesWithEachMatcher() {
+        List<DfaMatcher> matchers = PATTERNS.stream().map(pattern -> DfaMatcher.tryCreate(pattern).orElseThrow()).toList();
+        assertMatchesEachMatcher(matchers, new DfaBatchMatcher(matchers).matchAll(SUBJECTS));
+    }
+
+    @Test
+    void matchAll_splitsBatchesThatExceedTheStateBudget() {
+        List<DfaMatcher> matchers = PATTERNS.stream().map(pattern -> DfaMatcher.tryCreate(pattern).orElseThrow()).toList();
+        // a budget this small forces every batch to be split down to single matchers
+        assertMatchesEachMatcher(matchers, new DfaBatchMatcher(matchers, 3, 2).matchAll(SUBJECTS));
+    }
+
+    private static void assertMatchesEachMatcher(List<DfaMatcher> matchers, List<BitSet> accepted) {
+        assertThat(accepted).hasSize(SUBJECTS.size());
+        for (int idx = 0; idx < SUBJECTS.size(); idx++) {
+            String subject = SUBJECTS.get(idx);
+            BitSet expected = new BitSet();
+            Stream.iterate(0, position -> position + 1)
+                    .limit(matchers.size())
+                    .filter(position -> matchers.get(position).matches(subject))
+                    .forEach(expected::set);
+            assertThat(accepted.get(idx)).as(subject).isEqualTo(expected);
+        }
+    }
+}
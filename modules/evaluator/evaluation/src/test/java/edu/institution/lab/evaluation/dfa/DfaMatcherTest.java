@@ -0,0 +1,50 @@
+package edu.institution.lab.evaluation.dfa;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DfaMatcherTest {
+
+    private static final List<String> SUBJECTS = List.of(
+            "", "a", "abc", "123", "a1_", "a b", "a\nb", "a\rb", "a\u2028b", "hello world", "x.y", "$", "^a", "2024-01-31"
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "abc", "a.b", "^\\w+$", "\\d{4}-\\d{2}-\\d{2}", "[^a]*", "(a|ab)(c|bcd)?", "a\\sb", "(?:x|y)\\.y",
+            "\\$", "[$^]a?", "\\Q^a\\E", "[a-]+", "(?<name>\\d+)*?", "a|^b$|1\\d+"
+    })
+    void matches_agreesWithJavaRegex(String pattern) {
+        Optional<DfaMatcher> dfaMatcher = DfaMatcher.tryCreate(pattern);
+        assertThat(dfaMatcher).isPresent();
+
+        Pattern javaPattern = Pattern.compile(pattern);
+        for (String subject : SUBJECTS) {
+            assertThat(dfaMatcher.get().matches(subject))
+                    .as("/%s/ on '%s'", pattern, subject)
+                    .isEqualTo(javaPattern.matcher(subject).matches());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "(a)\\1", "a++", "(?i)abc", "a(?=b)", "\\bword\\b", "\\p{L}+", "[a[bc]]", "[a-z&&[^e]]", "a$b", "(^a|b)",
+            "\\Qab\\E+", "a{2000}"
+    })
+    void tryCreate_rejectsIneligiblePatterns(String pattern) {
+        assertThat(DfaMatcher.tryCreate(pattern)).isEmpty();
+    }
+
+    @Test
+    void canEvaluate_rejectsSurrogates() {
+        assertThat(DfaMatcher.canEvaluate("plain text")).isTrue();
+        assertThat(DfaMatcher.canEvaluate("emoji \uD83D\uDE00")).isFalse();
+    }
+}
@@ -0,0 +1,40 @@
+package edu.institution.lab.evaluation.dfa;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LanguageHashTest {
+
+    @Test
+    void languageHash_equalForEquivalentPatterns() {
+        assertThat(hash("(a|b)*")).isEqualTo(hash("[ab]*")).isEqualTo(hash("(?:a*b*)*"));
+        assertThat(hash("\\d{2}")).isEqualTo(hash("[0-9][0-9]"));
+        assertThat(hash("xx?")).isEqualTo(hash("x{1,2}"));
+        assertThat(hash("^a+$")).isEqualTo(hash("aa*"));
+    }
+
+    @Test
+    void languageHash_differsForDifferentLanguages() {
+        assertThat(hash("a*")).isNotEqualTo(hash("a+"));
+        assertThat(hash("[a-c]")).isNotEqualTo(hash("[a-d]"));
+        assertThat(hash("ab")).isNotEqualTo(hash("ba"));
+    }
+
+    @Test
+    void attach_sharesMatcherOfKnownLanguage() {
+        DfaMatcherCache cache = new DfaMatcherCache();
+        CompiledRegexEntity first = cache.attach(new CompiledRegexEntity(1, 1, Pattern.compile("[0-9]+")));
+        CompiledRegexEntity second = cache.attach(new CompiledRegexEntity(2, 1, Pattern.compile("\\d\\d*")), first.dfaMatcher().getLanguageHash());
+
+        assertThat(second.dfaMatcher()).isSameAs(first.dfaMatcher());
+        assertThat(cache.languageCount()).isEqualTo(1);
+    }
+
+    private static String hash(String pattern) {
+        return DfaMatcher.tryCreate(pattern).orElseThrow().getLanguageHash();
+    }
+}
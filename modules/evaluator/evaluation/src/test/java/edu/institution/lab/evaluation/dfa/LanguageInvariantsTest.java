@@ -0,0 +1,50 @@
+package edu.institution.lab.evaluation.dfa;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LanguageInvariantsTest {
+
+    @Test
+    void of_derivesLengthBoundsAndAffixes() {
+        LanguageInvariants invariants = invariants("id-\\d{2,4}(?:a|ba)");
+
+        assertThat(invariants.getMinLength()).isEqualTo(6);
+        assertThat(invariants.getMaxLength()).isEqualTo(9);
+        assertThat(invariants.getPrefix()).isEqualTo("id-");
+        assertThat(invariants.getSuffix()).isEqualTo("a");
+        assertThat(invariants.isUniversal()).isFalse();
+    }
+
+    @Test
+    void mayAccept_rejectsStringsOutsideInvariants() {
+        LanguageInvariants invariants = invariants("x[0-9]+y");
+
+        assertThat(invariants.getMaxLength()).isEqualTo(LanguageInvariants.UNBOUNDED);
+        assertThat(invariants.mayAccept("x123y")).isTrue();
+        assertThat(invariants.mayAccept("xy")).isFalse();
+        assertThat(invariants.mayAccept("a123y")).isFalse();
+        assertThat(invariants.mayAccept("x123z")).isFalse();
+        assertThat(invariants.mayAccept("x1b3y")).isFalse();
+        // surrogates can't be judged
+        assertThat(invariants.mayAccept("\uD83D\uDE00")).isTrue();
+    }
+
+    @Test
+    void mustAccept_onlyForUniversalLanguages() {
+        LanguageInvariants universal = invariants("[a-c]*");
+        assertThat(universal.isUniversal()).isTrue();
+        assertThat(universal.mustAccept("")).isTrue();
+        assertThat(universal.mustAccept("abcabc")).isTrue();
+        assertThat(universal.mustAccept("abd")).isFalse();
+
+        LanguageInvariants bounded = invariants("[a-c]+");
+        assertThat(bounded.isUniversal()).isFalse();
+        assertThat(bounded.mustAccept("abc")).isFalse();
+    }
+
+    private static LanguageInvariants invariants(String pattern) {
+        return DfaMatcher.tryCreate(pattern).orElseThrow().getInvariants();
+    }
+}
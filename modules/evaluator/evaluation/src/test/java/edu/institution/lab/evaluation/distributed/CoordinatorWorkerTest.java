@@ -0,0 +1,147 @@
+package edu.institution.lab.evaluation.distributed;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import edu.institution.lab.evaluation.evaluation.TestSuiteEvaluator;
+import edu.institution.lab.evaluation.evaluation.TestSuites;
+import edu.institution.lab.evaluation.model.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinatorWorkerTest {
+
+    @Test
+    void workers_evaluateEveryProjectLikeALocalEvaluation() throws Exception {
+        Map<Long, ProjectWork> projects = Map.of(
+                1L, project(1, List.of(TestSuites.fromTruth(10, 1, "(abc)+"), TestSuites.fromTruth(11, 1, "\\d+"))),
+                2L, project(2, List.of(TestSuites.fromTruth(20, 2, "[a-z]+"))));
+        Map<Long, Set<RegexTestSuiteSolution>> saved = new ConcurrentHashMap<>();
+        // tiny leases, so every test suite is spread over several leases
+        LeaseBook leaseBook = new LeaseBook(sourceOf(projects), (projectId, solutions) -> saved.putAll(solutions), 40);
+
+        try (EvaluationCoordinator coordinator = new EvaluationCoordinator(leaseBook, 0, Duration.ofMinutes(1))) {
+            coordinator.start();
+            int completedLeases = new EvaluationWorker("localhost", coordinator.getPort(), 2, 0, Duration.ofSeconds(10)).run();
+            coordinator.awaitCompletion();
+
+            assertTrue(completedLeases > 3, Integer.toString(completedLeases));
+        }
+
+        assertEquals(Set.of(10L, 11L, 20L), saved.keySet());
+        for (ProjectWork project : projects.values()) {
+            for (RegexTestSuite testSuite : project.testSuites()) {
+                assertEquals(evaluateLocally(testSuite, project.candidates()), saved.get(testSuite.id()), "test suite " + testSuite.id());
+            }
+        }
+    }
+
+    @Test
+    void lostWorker_leaseIsReassigned() throws Exception {
+        Map<Long, ProjectWork> projects = Map.of(1L, project(1, List.of(TestSuites.fromTruth(10, 1, "(abc)+"))));
+        Map<Long, Set<RegexTestSuiteSolution>> saved = new ConcurrentHashMap<>();
+        LeaseBook leaseBook = new LeaseBook(sourceOf(projects), (projectId, solutions) -> saved.putAll(solutions), 1_000_000);
+
+        try (EvaluationCoordinator coordinator = new EvaluationCoordinator(leaseBook, 0, Duration.ofMinutes(1))) {
+            coordinator.start();
+
+            // a worker that takes the only lease and dies
+            try (Socket socket = new Socket("localhost", coordinator.getPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertNotNull(reader.readLine());
+            }
+
+            ExecutorService workerThread = Executors.newSingleThreadExecutor();
+            Future<Integer> completedLeases = workerThread.submit(() -> new EvaluationWorker("localhost", coordinator.getPort(), 1, 0, Duration.ofSeconds(10)).run());
+            coordinator.awaitCompletion();
+
+            assertEquals(1, (int) completedLeases.get());
+            assertEquals(1, leaseBook.getReleasedLeaseCount());
+            workerThread.shutdown();
+        }
+
+        assertEquals(evaluateLocally(projects.get(1L).testSuites().get(0), projects.get(1L).candidates()), saved.get(10L));
+    }
+
+    @Test
+    void leaseLosingEveryWorker_failsRun() throws Exception {
+        Map<Long, ProjectWork> projects = Map.of(1L, project(1, List.of(TestSuites.fromTruth(10, 1, "(abc)+"))));
+        LeaseBook leaseBook = new LeaseBook(sourceOf(projects), (projectId, solutions) -> fail("nothing should be saved"), 1_000_000, 2);
+
+        try (EvaluationCoordinator coordinator = new EvaluationCoordinator(leaseBook, 0, Duration.ofMinutes(1))) {
+            coordinator.start();
+
+            // workers that take the only lease and die, as many times as the lease may be handed out
+            for (int attempt = 0; attempt < 2; attempt++) {
+                try (Socket socket = new Socket("localhost", coordinator.getPort())) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    assertNotNull(reader.readLine());
+                }
+            }
+
+            assertThrows(ExecutionException.class, coordinator::awaitCompletion);
+            assertEquals(1, leaseBook.getReleasedLeaseCount());
+        }
+    }
+
+    @Test
+    void brokenConnection_slotReconnects() throws Exception {
+        try (ServerSocket fakeCoordinator = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            ExecutorService workerThread = Executors.newSingleThreadExecutor();
+            try {
+                Future<Integer> completedLeases = workerThread.submit(() -> new EvaluationWorker("localhost", fakeCoordinator.getLocalPort(), 1, 0, Duration.ofSeconds(10)).run());
+
+                // drop the first connection, and tell the second one there is no work
+                fakeCoordinator.accept().close();
+                try (Socket socket = fakeCoordinator.accept();
+                     Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                    WorkProtocol.send(writer, CoordinatorMessage.NO_MORE_WORK);
+                    assertEquals(0, (int) completedLeases.get(10, TimeUnit.SECONDS));
+                }
+            } finally {
+                workerThread.shutdownNow();
+            }
+        }
+    }
+
+    private static LeaseSource sourceOf(Map<Long, ProjectWork> projects) {
+        Iterator<ProjectWork> remaining = new TreeMap<>(projects).values().iterator();
+        return () -> remaining.hasNext() ? Optional.of(remaining.next()) : Optional.empty();
+    }
+
+    private static ProjectWork project(long projectId, List<RegexTestSuite> testSuites) {
+        List<CandidateRegex> candidates = new ArrayList<>();
+        for (int i = 0; i < TestSuites.CANDIDATE_PATTERNS.size(); i++) {
+            candidates.add(new CandidateRegex(projectId * 100 + i, projectId, TestSuites.CANDIDATE_PATTERNS.get(i)));
+        }
+        return new ProjectWork(projectId, testSuites, candidates);
+    }
+
+    private static Set<RegexTestSuiteSolution> evaluateLocally(RegexTestSuite testSuite, List<CandidateRegex> candidates) throws Exception {
+        ExecutorService safeExecutionContext = Executors.newFixedThreadPool(2);
+        try {
+            List<CompiledRegexEntity> compiled = candidates.stream()
+                    .flatMap(candidate -> CompiledRegexEntity.tryCompile(candidate).stream())
+                    .toList();
+            return new TestSuiteEvaluator(safeExecutionContext, testSuite, compiled, 1.00).call().get(testSuite.id());
+        } finally {
+            safeExecutionContext.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CostSchedulerTest {
+
+    @Test
+    void completedProjects_matchEvaluatingWholeTestSuites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompiledRegexEntity> candidates = candidates();
+            List<RegexTestSuite> firstProject = List.of(TestSuites.fromTruth(10, 1, "(abc)+"), TestSuites.fromTruth(11, 1, "\\d+"));
+            List<RegexTestSuite> secondProject = List.of(TestSuites.fromTruth(20, 2, "[a-z]+"));
+            // tiny units, so every test suite is spread over several of them
+            CostScheduler scheduler = new CostScheduler(executor, 3, 30, new CostModel(),
+                    (testSuite, chunk) -> new TestSuiteEvaluator(executor, testSuite, chunk, 1.00));
+
+            scheduler.addProject(1, firstProject, candidates);
+            scheduler.addProject(2, secondProject, candidates);
+            assertEquals(2, scheduler.getOpenProjectCount());
+
+            Map<Long, Map<Long, Set<RegexTestSuiteSolution>>> completed = new HashMap<>();
+            while (!scheduler.isIdle()) {
+                scheduler.awaitProgress(Duration.ofSeconds(1))
+                        .forEach(project -> completed.put(project.projectId(), project.testSuiteSolutions()));
+            }
+
+            assertEquals(Set.of(1L, 2L), completed.keySet());
+            assertEquals(0, scheduler.getOpenProjectCount());
+            for (RegexTestSuite testSuite : firstProject) {
+                assertEquals(new TestSuiteEvaluator(executor, testSuite, candidates, 1.00).call(), Map.of(testSuite.id(), completed.get(1L).get(testSuite.id())));
+            }
+            assertEquals(new TestSuiteEvaluator(executor, secondProject.get(0), candidates, 1.00).call(), completed.get(2L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void awaitProgress_runsCostliestUnitsFirst() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<Long> order = Collections.synchronizedList(new ArrayList<>());
+            CostScheduler scheduler = new CostScheduler(executor, 1, 1_000_000, new CostModel(), (testSuite, chunk) -> () -> {
+                order.add(testSuite.id());
+                return Map.of();
+            });
+
+            // longer strings cost more
+            scheduler.addProject(1, List.of(TestSuites.fromTruth(10, 1, "a", List.of("a"))), candidates());
+            scheduler.addProject(2, List.of(TestSuites.fromTruth(20, 2, "a", List.of("a long subject", "another long subject"))), candidates());
+            scheduler.addProject(3, List.of(TestSuites.fromTruth(30, 3, "a", List.of("medium"))), candidates());
+            while (!scheduler.isIdle()) {
+                scheduler.awaitProgress(Duration.ofSeconds(1));
+            }
+
+            assertEquals(List.of(20L, 30L, 10L), order);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void emptyProject_completesImmediately() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CostScheduler scheduler = new CostScheduler(executor, 1, 100, new CostModel(), (testSuite, chunk) -> Map::of);
+
+            scheduler.addProject(1, List.of(TestSuites.fromTruth(10, 1, "a")), List.of());
+
+            assertFalse(scheduler.isIdle());
+            List<CostScheduler.CompletedProject> completed = scheduler.awaitProgress(Duration.ofSeconds(1));
+            assertEquals(List.of(new CostScheduler.CompletedProject(1, Map.of(10L, Set.of()))), completed);
+            assertTrue(scheduler.isIdle());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void costModel_learnsSlowPatterns() {
+        CostModel costModel = new CostModel();
+        List<CompiledRegexEntity> fast = List.of(new CompiledRegexEntity(1, 1, Pattern.compile("a")));
+        List<CompiledRegexEntity> slow = List.of(new CompiledRegexEntity(2, 1, Pattern.compile("(a+)+b")));
+
+        for (int i = 0; i < 10; i++) {
+            costModel.record(100, fast, 1_000);
+            costModel.record(100, slow, 100_000);
+        }
+
+        assertTrue(costModel.patternFactor("(a+)+b") > costModel.patternFactor("a"));
+        assertEquals(1.0, costModel.patternFactor("never seen"));
+    }
+
+    private static List<CompiledRegexEntity> candidates() {
+        List<CompiledRegexEntity> candidates = new ArrayList<>();
+        for (int i = 0; i < TestSuites.CANDIDATE_PATTERNS.size(); i++) {
+            candidates.add(new CompiledRegexEntity(i, 1, Pattern.compile(TestSuites.CANDIDATE_PATTERNS.get(i))));
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,46 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.MatchStatus;
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DiscriminativeOrderingTest {
+
+    private static final List<RegexTestSuiteString> STRINGS = List.of(
+            string(0, "a long subject"),
+            string(1, "mid size"),
+            string(2, "x")
+    );
+
+    @Test
+    void current_triesShortStringsFirstBeforeAnythingIsLearned() {
+        DiscriminativeOrdering ordering = new DiscriminativeOrdering(STRINGS);
+
+        assertThat(ordering.current().order()).containsExactly(2, 1, 0);
+        assertThat(ordering.current().subjects()).containsExactly("x", "mid size", "a long subject");
+    }
+
+    @Test
+    void record_movesRejectingStringsToTheFront() {
+        DiscriminativeOrdering ordering = new DiscriminativeOrdering(STRINGS);
+        DiscriminativeOrdering.Snapshot before = ordering.current();
+
+        for (int i = 0; i < 64; i++) {
+            ordering.record(0, true);
+            ordering.record(2, false);
+        }
+
+        assertThat(ordering.rejectionRate(0)).isGreaterThan(ordering.rejectionRate(1));
+        assertThat(ordering.current().order()).containsExactly(0, 1, 2);
+        // callers holding an old snapshot keep a consistent order
+        assertThat(before.order()).containsExactly(2, 1, 0);
+    }
+
+    private static RegexTestSuiteString string(long id, String subject) {
+        return new RegexTestSuiteString(id, subject, 1L, "func", new MatchStatus(false, false, -1, -1));
+    }
+}
@@ -0,0 +1,103 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.index.RequiredTrigramCache;
+import edu.institution.lab.evaluation.index.TrigramIndex;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvaluationBudgetTest {
+
+    @Test
+    void candidateDeadline_neverPassesSuiteDeadline() {
+        EvaluationBudget suiteBound = new EvaluationBudget(Duration.ofMillis(50), Duration.ofHours(1));
+        assertEquals(suiteBound.suiteDeadline(1L), suiteBound.candidateDeadline(1L));
+
+        EvaluationBudget candidateBound = new EvaluationBudget(Duration.ofHours(1), Duration.ofMillis(50));
+        Instant candidateDeadline = candidateBound.candidateDeadline(1L);
+        assertTrue(candidateDeadline.isBefore(candidateBound.suiteDeadline(1L)));
+        assertTrue(candidateDeadline.isBefore(Instant.now().plusSeconds(1)));
+    }
+
+    @Test
+    void of_withoutBounds_isNoBudget() {
+        assertNull(EvaluationBudget.of(null, null));
+        assertNull(EvaluationBudget.of(Duration.ZERO, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new EvaluationBudget(null, Duration.ZERO));
+    }
+
+    @Test
+    void of_zeroSuiteBudget_onlyBoundsCandidates() throws InterruptedException {
+        EvaluationBudget budget = EvaluationBudget.of(Duration.ZERO, Duration.ofMillis(20));
+        assertNull(budget.suiteDeadline(1L));
+        assertNotNull(budget.candidateDeadline(1L));
+
+        Thread.sleep(50);
+        assertFalse(budget.isSuiteExhausted(1L));
+    }
+
+    @Test
+    void isSuiteExhausted_startsOnFirstUseOfEachTestSuite() throws InterruptedException {
+        EvaluationBudget budget = new EvaluationBudget(Duration.ofMillis(20), Duration.ofMillis(20));
+        assertFalse(budget.isSuiteExhausted(1L));
+
+        Thread.sleep(50);
+        assertTrue(budget.isSuiteExhausted(1L));
+        // the budget of another test suite only starts now
+        assertFalse(budget.isSuiteExhausted(2L));
+    }
+
+    @Test
+    void call_exhaustedSuite_leavesCandidatesUndetermined() throws Exception {
+        RegexTestSuite testSuite = TestSuites.fromTruth(1L, 1L, "(abc)+", List.of("abc", "abcabc", "hello", "ab"));
+        List<CompiledRegexEntity> candidates = List.of(new CompiledRegexEntity(0, 1, Pattern.compile("(abc)+")));
+        ExecutorService safeExecutionContext = Executors.newCachedThreadPool();
+        try {
+            Set<RegexTestSuiteSolution> unbounded = evaluator(safeExecutionContext, testSuite, candidates, null).call().get(testSuite.id());
+            assertEquals(1, unbounded.size());
+
+            EvaluationBudget budget = new EvaluationBudget(Duration.ofMillis(1), Duration.ofHours(1));
+            budget.suiteDeadline(testSuite.id());
+            Thread.sleep(10);
+
+            assertTrue(evaluator(safeExecutionContext, testSuite, candidates, budget).call().get(testSuite.id()).isEmpty());
+            assertEquals(1, budget.getSkippedCandidateCount());
+            assertEquals(1, budget.getOverBudgetSuiteCount());
+        } finally {
+            safeExecutionContext.shutdownNow();
+        }
+    }
+
+    @Test
+    void call_candidateOutOfBudget_isCutShortBeforeItsStringsTimeOut() throws Exception {
+        // every string makes the candidate backtrack for far longer than its string timeout
+        RegexTestSuite testSuite = TestSuites.fromTruth(1L, 1L, "a+c", List.of("a".repeat(40) + "c", "a".repeat(41) + "cc"));
+        List<CompiledRegexEntity> candidates = List.of(new CompiledRegexEntity(0, 1, Pattern.compile("(.*a){20}")));
+        EvaluationBudget budget = new EvaluationBudget(Duration.ofHours(1), Duration.ofMillis(100));
+        ExecutorService safeExecutionContext = Executors.newCachedThreadPool();
+        try {
+            long start = System.nanoTime();
+            assertTrue(evaluator(safeExecutionContext, testSuite, candidates, budget).call().get(testSuite.id()).isEmpty());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+            assertEquals(1, budget.getCutShortCandidateCount());
+            assertEquals(0, budget.getSkippedCandidateCount());
+        } finally {
+            safeExecutionContext.shutdownNow();
+        }
+    }
+
+    private static TestSuiteEvaluator evaluator(ExecutorService safeExecutionContext, RegexTestSuite testSuite, List<CompiledRegexEntity> candidates, EvaluationBudget budget) {
+        TrigramIndex candidateIndex = TrigramIndex.build(candidates, new RequiredTrigramCache()::get);
+        return new TestSuiteEvaluator(MatchContext.of(safeExecutionContext), testSuite, candidateIndex, 1.00, 0, budget);
+    }
+}
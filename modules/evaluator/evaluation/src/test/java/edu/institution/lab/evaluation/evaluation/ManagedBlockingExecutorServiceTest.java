@@ -0,0 +1,154 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.safematch.SafeMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManagedBlockingExecutorServiceTest {
+
+    @Test
+    void get_fromPoolThread_neverRunsTaskOnThatThread() throws Exception {
+        // a single job thread, which waits on the task, so the pool must not be needed to run it
+        ForkJoinPool pool = new ForkJoinPool(1);
+        ManagedBlockingExecutorService executor = new ManagedBlockingExecutorService(new WatchdogExecutorService(1));
+        try {
+            Future<Boolean> otherThread = pool.submit(() -> {
+                Thread waiter = Thread.currentThread();
+                return executor.submit(() -> Thread.currentThread() != waiter).get(10, TimeUnit.SECONDS);
+            });
+
+            assertTrue(otherThread.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void get_fromPoolThread_letsPoolRunOtherJobsWhileWaiting() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        ManagedBlockingExecutorService executor = new ManagedBlockingExecutorService(new WatchdogExecutorService(1));
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> waiting = pool.submit(() -> executor.submit(() -> {
+                release.await();
+                return null;
+            }).get(10, TimeUnit.SECONDS));
+
+            // the only job thread is blocked, so this job needs the thread the pool adds while it waits
+            assertEquals(Integer.valueOf(5), pool.submit(() -> 5).get(10, TimeUnit.SECONDS));
+            release.countDown();
+            waiting.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void managedBlocking_blockedJobs_addBoundedThreads() throws Exception {
+        int threads = 1;
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(ExecutionModel.MANAGED_BLOCKING, threads, Duration.ofMillis(20), Duration.ofMillis(100))) {
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peakRunning = new AtomicInteger();
+            List<Future<?>> jobs = new ArrayList<>();
+            for (int i = 0; i < 4 * ExecutionContexts.maxJobThreads(threads); i++) {
+                jobs.add(executionContexts.getJobExecutor().submit(() -> {
+                    peakRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        return executionContexts.getSafeExecutionContext().submit(() -> release.await(10, TimeUnit.SECONDS)).get(10, TimeUnit.SECONDS);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }));
+            }
+
+            // give the pool time to add threads for every blocked job, if it would
+            Thread.sleep(300);
+            assertEquals(ExecutionContexts.maxJobThreads(threads), peakRunning.get());
+            release.countDown();
+            for (Future<?> job : jobs) {
+                job.get(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    void safeMatcher_jammedSafeThreads_newMatchesStillComplete() throws Exception {
+        int threads = 2;
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(ExecutionModel.MANAGED_BLOCKING, threads, Duration.ofMillis(20), Duration.ofMillis(100))) {
+            // jam every safe match thread with a task that swallows every interrupt, and time out on it like a safe match
+            AtomicBoolean release = new AtomicBoolean();
+            CountDownLatch started = new CountDownLatch(threads);
+            List<Future<Boolean>> jams = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                jams.add(executionContexts.getJobExecutor().submit(() -> {
+                    Future<?> stuck = executionContexts.getSafeExecutionContext().submit(() -> {
+                        started.countDown();
+                        while (!release.get()) {
+                            Thread.interrupted();
+                            Thread.onSpinWait();
+                        }
+                    });
+                    try {
+                        stuck.get(50, TimeUnit.MILLISECONDS);
+                        return false;
+                    } catch (TimeoutException exe) {
+                        stuck.cancel(true);
+                        return true;
+                    }
+                }));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            for (Future<Boolean> jam : jams) {
+                assertTrue(jam.get(10, TimeUnit.SECONDS));
+            }
+
+            // only replacement threads are left to run these
+            SafeMatcher safeMatcher = new SafeMatcher(Pattern.compile("(abc)+"), executionContexts.getSafeExecutionContext());
+            List<Future<SafeMatcher.MatchResult>> results = new ArrayList<>();
+            for (int i = 0; i < 2 * threads; i++) {
+                results.add(executionContexts.getJobExecutor()
+                        .submit(() -> safeMatcher.match("abcabc", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(5))));
+            }
+            for (Future<SafeMatcher.MatchResult> result : results) {
+                assertEquals(SafeMatcher.MatchResult.MATCH, result.get(10, TimeUnit.SECONDS));
+            }
+            release.set(true);
+        }
+    }
+
+    @Test
+    void safeMatcher_timesOutCatastrophicBacktracking() throws Exception {
+        try (ExecutionContexts executionContexts = ExecutionContexts.create(ExecutionModel.MANAGED_BLOCKING)) {
+            SafeMatcher safeMatcher = new SafeMatcher(Pattern.compile("(.*a){20}"), executionContexts.getSafeExecutionContext());
+            Future<SafeMatcher.MatchResult> result = executionContexts.getJobExecutor()
+                    .submit(() -> safeMatcher.match("a".repeat(40) + "c", SafeMatcher.MatchMode.FULL, Duration.ofMillis(100)));
+
+            assertEquals(SafeMatcher.MatchResult.TIMEOUT, result.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void executionModels_findTheSameResult() throws Exception {
+        for (ExecutionModel executionModel : ExecutionModel.values()) {
+            try (ExecutionContexts executionContexts = ExecutionContexts.create(executionModel)) {
+                SafeMatcher safeMatcher = new SafeMatcher(Pattern.compile("(abc)+"), executionContexts.getSafeExecutionContext());
+                Future<SafeMatcher.MatchResult> result = executionContexts.getJobExecutor()
+                        .submit(() -> safeMatcher.match("abcabc", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(5)));
+
+                assertEquals(SafeMatcher.MatchResult.MATCH, result.get(10, TimeUnit.SECONDS), executionModel.name());
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.dfa.DfaMatcherCache;
+import edu.institution.lab.evaluation.index.RequiredTrigramCache;
+import edu.institution.lab.evaluation.index.TrigramIndex;
+import edu.institution.lab.evaluation.model.MatchStatus;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+import edu.institution.lab.evaluation.safematch.InlineMatchPolicy;
+import edu.institution.lab.evaluation.safematch.MatchContext;
+import edu.institution.lab.evaluation.safematch.MatchMemo;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
+import edu.institution.lab.evaluation.util.IndeterminateBoolean;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the evaluator against solutions recomputed with nothing but {@link Pattern}, so that none of its shortcuts
+ * (DFAs, the trigram index, the screen, inline matching, memos) can change which candidates solve a test suite
+ */
+class TestSuiteEvaluatorOracleTest {
+
+    private static final List<Double> ACCURACY_THRESHOLDS = List.of(1.00, 0.75);
+
+    /**
+     * What decides a solution, leaving out the distances that are only computed for solutions
+     */
+    private record Verdict(long regexId, IndeterminateBoolean fullMatch, IndeterminateBoolean partialMatch) {
+        static Verdict of(RegexTestSuiteSolution solution) {
+            return new Verdict(solution.regexId(), solution.fullMatch(), solution.partialMatch());
+        }
+    }
+
+    @Test
+    void call_findsTheSameSolutionsAsPlainMatching() throws Exception {
+        List<CompiledRegexEntity> candidates = new ArrayList<>();
+        for (String pattern : TestSuites.CANDIDATE_PATTERNS) {
+            candidates.add(new CompiledRegexEntity(candidates.size(), 1, Pattern.compile(pattern)));
+        }
+        DfaMatcherCache dfaMatcherCache = new DfaMatcherCache();
+        List<CompiledRegexEntity> withDfas = candidates.stream().map(dfaMatcherCache::attach).toList();
+
+        ExecutorService safeExecutionContext = Executors.newFixedThreadPool(2);
+        try {
+            for (double accuracyThreshold : ACCURACY_THRESHOLDS) {
+                for (int truth = 0; truth < TestSuites.CANDIDATE_PATTERNS.size(); truth++) {
+                    RegexTestSuite testSuite = TestSuites.fromTruth(truth, 1, TestSuites.CANDIDATE_PATTERNS.get(truth));
+                    Set<Verdict> expected = oracle(testSuite, candidates, accuracyThreshold);
+                    String description = String.format("truth %s at accuracy %.2f", testSuite.pattern(), accuracyThreshold);
+
+                    Set<RegexTestSuiteSolution> plain = new TestSuiteEvaluator(safeExecutionContext, testSuite, candidates, accuracyThreshold)
+                            .call().get(testSuite.id());
+                    assertEquals(expected, verdicts(plain), description);
+
+                    MatchContext matchContext = new MatchContext(safeExecutionContext, new InlineMatchPolicy(), new MatchMemo(), new PatternCircuitBreaker(), null);
+                    TrigramIndex candidateIndex = TrigramIndex.build(withDfas, new RequiredTrigramCache()::get);
+                    Set<RegexTestSuiteSolution> optimized = new TestSuiteEvaluator(matchContext, testSuite, candidateIndex, accuracyThreshold, 3, null)
+                            .call().get(testSuite.id());
+                    assertEquals(expected, verdicts(optimized), description + " with every shortcut");
+                }
+            }
+        } finally {
+            safeExecutionContext.shutdownNow();
+        }
+    }
+
+    /**
+     * Decide every candidate by matching every string, without early exits
+     */
+    private static Set<Verdict> oracle(RegexTestSuite testSuite, List<CompiledRegexEntity> candidates, double accuracyThreshold) {
+        List<RegexTestSuiteString> strings = List.copyOf(testSuite.strings());
+        Set<Verdict> verdicts = new HashSet<>();
+        for (CompiledRegexEntity candidate : candidates) {
+            int fullCorrect = 0;
+            int partialCorrect = 0;
+            for (RegexTestSuiteString string : strings) {
+                MatchStatus truth = string.matchStatus();
+                Matcher matcher = candidate.regexPattern().matcher(string.subject());
+                if (matcher.matches() == truth.fullMatch()) {
+                    fullCorrect++;
+                }
+                boolean found = matcher.reset().find();
+                if (truth.partialMatch()
+                        ? found && matcher.start() == truth.partialMatchStartIdx() && matcher.end() == truth.partialMatchEndIdx()
+                        : !found) {
+                    partialCorrect++;
+                }
+            }
+
+            IndeterminateBoolean fullMatch = decide(strings, true, fullCorrect, accuracyThreshold);
+            IndeterminateBoolean partialMatch = decide(strings, false, partialCorrect, accuracyThreshold);
+            if (fullMatch.coerceToBoolean() || partialMatch.coerceToBoolean()) {
+                verdicts.add(new Verdict(candidate.id(), fullMatch, partialMatch));
+            }
+        }
+        return verdicts;
+    }
+
+    /**
+     * A mode is only decided if the test suite has both positive and negative strings in it
+     */
+    private static IndeterminateBoolean decide(List<RegexTestSuiteString> strings, boolean fullMode, int correct, double accuracyThreshold) {
+        long positives = strings.stream()
+                .filter(string -> fullMode ? string.matchStatus().fullMatch() : string.matchStatus().partialMatch())
+                .count();
+        if (positives == 0 || positives == strings.size()) {
+            return IndeterminateBoolean.UNDETERMINED;
+        }
+        return IndeterminateBoolean.fromBoolean(correct / (double) strings.size() >= accuracyThreshold);
+    }
+
+    private static Set<Verdict> verdicts(Set<RegexTestSuiteSolution> solutions) {
+        Set<Verdict> verdicts = new HashSet<>();
+        for (RegexTestSuiteSolution solution : solutions) {
+            verdicts.add(Verdict.of(solution));
+        }
+        return verdicts;
+    }
+}
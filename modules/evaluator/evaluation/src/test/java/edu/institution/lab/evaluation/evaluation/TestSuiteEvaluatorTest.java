@@ -0,0 +1,55 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteSolution;
+import edu.institution.lab.evaluation.safematch.SafeMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestSuiteEvaluatorTest {
+
+    @Test
+    void call_splitsExpensiveTestSuites_andFindsTheSameSolutions() throws Exception {
+        // long strings make every candidate expensive enough that the candidates are split into many chunks
+        List<String> subjects = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            subjects.add("abc".repeat(50 + i));
+            subjects.add("hello world ".repeat(10 + i));
+            subjects.add(i + "0".repeat(100));
+        }
+        RegexTestSuite testSuite = TestSuites.fromTruth(1L, 1L, "(abc)+", subjects);
+        List<CompiledRegexEntity> candidates = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            for (String pattern : TestSuites.CANDIDATE_PATTERNS) {
+                candidates.add(new CompiledRegexEntity(candidates.size(), i, Pattern.compile(pattern)));
+            }
+        }
+
+        ExecutorService safeExecutionContext = Executors.newFixedThreadPool(4);
+        ExecutorService jobExecutor = Executors.newWorkStealingPool(4);
+        try {
+            TestSuiteEvaluator evaluator = new TestSuiteEvaluator(safeExecutionContext, testSuite, candidates, 1.00);
+            Set<RegexTestSuiteSolution> expected = new HashSet<>();
+            for (int position = 0; position < candidates.size(); position++) {
+                evaluator.evaluateCandidate(position, new SafeMatcher(candidates.get(position).regexPattern(), safeExecutionContext))
+                        .ifPresent(expected::add);
+            }
+
+            Map<Long, Set<RegexTestSuiteSolution>> solutions = jobExecutor.submit(new TestSuiteEvaluator(safeExecutionContext, testSuite, candidates, 1.00))
+                    .get();
+
+            assertFalse(expected.isEmpty());
+            assertEquals(Map.of(testSuite.id(), expected), solutions);
+            assertEquals(Map.of(testSuite.id(), expected), new TestSuiteEvaluator(safeExecutionContext, testSuite, candidates, 1.00).call());
+        } finally {
+            safeExecutionContext.shutdownNow();
+            jobExecutor.shutdownNow();
+        }
+    }
+}
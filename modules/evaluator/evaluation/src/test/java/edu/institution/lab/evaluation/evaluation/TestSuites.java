@@ -0,0 +1,47 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.model.MatchStatus;
+import edu.institution.lab.evaluation.model.RegexTestSuite;
+import edu.institution.lab.evaluation.model.RegexTestSuiteString;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test suites for tests, whose strings are classified by matching them against a truth regex
+ */
+public final class TestSuites {
+
+    /// a few subjects that the candidates below classify in many different ways
+    public static final List<String> SUBJECTS = List.of("abc", "abcabc", "xyz", "123", "a1b2", "", "hello world", "ab");
+    public static final List<String> CANDIDATE_PATTERNS = List.of("(abc)+", "[a-z]+", "\\d+", "a.*", ".*", "x|y|z", "[a-c]{3}", "hello.*", "\\w+", "(a|b)+");
+
+    private TestSuites() {
+    }
+
+    /**
+     * @return a test suite of {@link #SUBJECTS}, matched against truth
+     */
+    public static RegexTestSuite fromTruth(long id, long projectId, String truth) {
+        return fromTruth(id, projectId, truth, SUBJECTS);
+    }
+
+    /**
+     * @return a test suite of the given subjects, matched against truth
+     */
+    public static RegexTestSuite fromTruth(long id, long projectId, String truth, List<String> subjects) {
+        Pattern pattern = Pattern.compile(truth);
+        Set<RegexTestSuiteString> strings = new LinkedHashSet<>();
+        for (int i = 0; i < subjects.size(); i++) {
+            Matcher matcher = pattern.matcher(subjects.get(i));
+            boolean fullMatch = matcher.matches();
+            boolean partialMatch = matcher.reset().find();
+            MatchStatus status = new MatchStatus(fullMatch, partialMatch, partialMatch ? matcher.start() : -1, partialMatch ? matcher.end() : -1);
+            strings.add(new RegexTestSuiteString((long) i, subjects.get(i), projectId, "func", status));
+        }
+        return new RegexTestSuite(id, projectId, id, truth, strings, null, null);
+    }
+}
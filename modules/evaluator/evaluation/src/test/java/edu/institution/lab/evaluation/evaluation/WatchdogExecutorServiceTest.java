@@ -0,0 +1,116 @@
+package edu.institution.lab.evaluation.evaluation;
+
+import edu.institution.lab.evaluation.safematch.TimeLimitedTask;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchdogExecutorServiceTest {
+
+    /**
+     * A task that swallows every interrupt until it is released
+     */
+    private static Callable<Boolean> stubbornTask(CountDownLatch started, AtomicBoolean release) {
+        return () -> {
+            started.countDown();
+            while (!release.get()) {
+                Thread.interrupted();
+                Thread.onSpinWait();
+            }
+            return true;
+        };
+    }
+
+    @Test
+    void submit_runsTasks() throws Exception {
+        WatchdogExecutorService executor = new WatchdogExecutorService(2);
+        assertEquals(Integer.valueOf(42), executor.submit(() -> 42).get(10, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, executor.getReplacedThreadCount());
+    }
+
+    @Test
+    void cancel_stuckTask_replacesThreadAndKeepsCapacity() throws Exception {
+        WatchdogExecutorService executor = new WatchdogExecutorService(1, Duration.ofMillis(20), Duration.ofMillis(100), Duration.ofHours(1));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean release = new AtomicBoolean();
+
+        Future<Boolean> stuck = executor.submit(stubbornTask(started, release));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        stuck.cancel(true);
+
+        // the only thread is stuck, so this can only run on its replacement
+        assertEquals(Integer.valueOf(7), executor.submit(() -> 7).get(10, TimeUnit.SECONDS));
+        assertEquals(1, executor.getReplacedThreadCount());
+        assertEquals(1, executor.getLeakedThreadCount());
+
+        release.set(true);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getLeakedThreadCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getLeakedThreadCount());
+        assertEquals(1, executor.getRecoveredThreadCount());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void runLimit_cancelsTasksThatNoOneCancelled() throws Exception {
+        WatchdogExecutorService executor = new WatchdogExecutorService(1, Duration.ofMillis(20), Duration.ofSeconds(10), Duration.ofMillis(100));
+
+        Future<Boolean> sleeper = executor.submit(() -> {
+            Thread.sleep(TimeUnit.HOURS.toMillis(1));
+            return true;
+        });
+
+        assertThrows(CancellationException.class, () -> sleeper.get(10, TimeUnit.SECONDS));
+        // the sleeper gave up when interrupted, so its thread was not replaced
+        assertEquals(Integer.valueOf(3), executor.submit(() -> 3).get(10, TimeUnit.SECONDS));
+        assertEquals(0, executor.getReplacedThreadCount());
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    void runLimit_timeLimitedTasksGetTheirOwn() throws Exception {
+        WatchdogExecutorService executor = new WatchdogExecutorService(1, Duration.ofMillis(20), Duration.ofSeconds(10), Duration.ofMillis(100));
+
+        Future<Boolean> batch = executor.submit(TimeLimitedTask.of(() -> {
+            Thread.sleep(400);
+            return true;
+        }, Duration.ofSeconds(10)));
+
+        // well past the executor's run limit, but within the task's own
+        assertTrue(batch.get(10, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shutdown_doesNotWaitOnLeakedThreads() throws Exception {
+        WatchdogExecutorService executor = new WatchdogExecutorService(1, Duration.ofMillis(20), Duration.ofMillis(50), Duration.ofHours(1));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean release = new AtomicBoolean();
+
+        Future<Boolean> stuck = executor.submit(stubbornTask(started, release));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        stuck.cancel(true);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getReplacedThreadCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, executor.getLeakedThreadCount());
+        release.set(true);
+    }
+}
@@ -0,0 +1,66 @@
+package edu.institution.lab.evaluation.index;
+
+import edu.institution.lab.evaluation.evaluation.CompiledRegexEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrigramIndexTest {
+
+    @Test
+    void extract_findsLiteralsRequiredByEveryMatch() {
+        assertThat(RequiredLiterals.extract("foo\\d+bar")).contains(Set.of("foo", "bar"));
+        assertThat(RequiredLiterals.extract("(?:abc|abd)x")).contains(Set.of("x"));
+        assertThat(RequiredLiterals.extract("(ab){2}c")).contains(Set.of("ababc"));
+        assertThat(RequiredLiterals.extract("(?:hello)?world")).contains(Set.of("world"));
+        assertThat(RequiredLiterals.extract("[ab]+")).contains(Set.of());
+    }
+
+    @Test
+    void extract_unsupportedPatternIsEmpty() {
+        assertThat(RequiredLiterals.extract("(?i)hello")).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void survivors_prunesCandidatesMissingRequiredTrigrams() {
+        List<CompiledRegexEntity> candidates = List.of(
+                candidate(0, "foo\\d+"),
+                candidate(1, "bar\\d+"),
+                candidate(2, "\\d+"),
+                candidate(3, "(?i)bar")
+        );
+        TrigramIndex index = TrigramIndex.build(candidates, new RequiredTrigramCache()::get);
+        assertThat(index.getIndexedCount()).isEqualTo(2);
+
+        BitSet survivors = index.survivors(List.of("foo12", "foo3"), 0);
+        assertThat(survivors.stream().toArray()).containsExactly(0, 2, 3);
+
+        // every survivor must still be allowed to actually match
+        for (int position = 0; position < candidates.size(); position++) {
+            if (!survivors.get(position)) {
+                assertThat(candidates.get(position).regexPattern().matcher("foo12").matches()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void survivors_allowsConfiguredNumberOfMisses() {
+        List<CompiledRegexEntity> candidates = List.of(candidate(0, "foo\\d+"), candidate(1, "bar\\d+"));
+        TrigramIndex index = TrigramIndex.build(candidates, new RequiredTrigramCache()::get);
+
+        List<String> texts = List.of("foo1", "bar2", "foo3");
+        assertThat(index.survivors(texts, 0).stream().toArray()).isEmpty();
+        assertThat(index.survivors(texts, 1).stream().toArray()).containsExactly(0);
+        assertThat(index.survivors(texts, 2).stream().toArray()).containsExactly(0, 1);
+    }
+
+    private static CompiledRegexEntity candidate(long id, String pattern) {
+        return new CompiledRegexEntity(id, 1, Pattern.compile(pattern));
+    }
+}
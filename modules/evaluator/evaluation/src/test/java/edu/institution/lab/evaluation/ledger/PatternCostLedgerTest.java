@@ -0,0 +1,99 @@
+package edu.institution.lab.evaluation.ledger;
+
+import edu.institution.lab.evaluation.model.PatternCostRow;
+import edu.institution.lab.evaluation.safematch.PatternCircuitBreaker;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternCostLedgerTest {
+
+    private static PatternCostRow row(String pattern, long automatonStates, long automatonFailures, long matches, long matchTimeMs, long timeouts) {
+        return new PatternCostRow(pattern, 0L, 0L, automatonStates, automatonFailures, 0L, matches, matchTimeMs, 0L, 0L, timeouts, 0L);
+    }
+
+    @Test
+    void drainChanged_onlyReturnsPatternsRecordedSinceLoad() {
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(List.of(row("a+", 2, 0, 10, 5, 0), row("b+", 2, 0, 10, 5, 0)));
+        assertTrue(ledger.drainChanged().isEmpty());
+
+        ledger.recordMatches("a+", Duration.ofMillis(3).toNanos(), 2, 1);
+        ledger.recordRegexCompile("c+", 4_000);
+        List<PatternCostRow> drained = ledger.drainChanged();
+        assertEquals(2L, drained.size());
+
+        PatternCostRow a = drained.stream().filter(r -> r.pattern().equals("a+")).findFirst().orElseThrow();
+        assertEquals(12L, a.matches());
+        assertEquals(8L, a.matchTimeMs());
+        assertEquals(1L, a.timeouts());
+        PatternCostRow c = drained.stream().filter(r -> r.pattern().equals("c+")).findFirst().orElseThrow();
+        assertEquals(4L, c.regexCompileUs());
+
+        assertTrue(ledger.drainChanged().isEmpty());
+        assertEquals(3, ledger.snapshot().size());
+    }
+
+    @Test
+    void recordMatches_percentilesAreBucketed() {
+        PatternCostLedger ledger = new PatternCostLedger();
+        for (int i = 0; i < 99; i++) {
+            ledger.recordMatches("a+", 1_000, 1, 0);
+        }
+        ledger.recordMatches("a+", 1_000_000, 1, 0);
+
+        PatternCostRow row = ledger.snapshot().get(0);
+        // a microsecond is bucketed up to 1024ns, and a millisecond up to 1048576ns
+        assertEquals(1, row.matchP50Us());
+        assertEquals(1, row.matchP99Us());
+
+        ledger.recordMatches("a+", 1_000_000, 1, 0);
+        assertEquals(1048L, ledger.snapshot().get(0).matchP99Us());
+    }
+
+    @Test
+    void isAutomatonHopeless_onlyIfNeverBuilt() {
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(List.of(row("failed", 0, 1, 0, 0, 0), row("built", 12, 1, 0, 0, 0)));
+        assertTrue(ledger.isAutomatonHopeless("failed"));
+        assertFalse(ledger.isAutomatonHopeless("built"));
+        assertFalse(ledger.isAutomatonHopeless("unknown"));
+
+        ledger.recordDfaBudgetHit("unknown");
+        assertTrue(ledger.isAutomatonHopeless("unknown"));
+    }
+
+    @Test
+    void costFactor_comparesToAverageOfEarlierRuns() {
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(List.of(row("slow", 0, 0, 10, 300, 0), row("fast", 0, 0, 10, 100, 0), row("rare", 0, 0, 1, 1000, 0)));
+
+        assertEquals(1.5, ledger.costFactor("slow"), 1e-9);
+        assertEquals(0.5, ledger.costFactor("fast"), 1e-9);
+        // too few matches to tell
+        assertEquals(1.0, ledger.costFactor("rare"));
+        assertEquals(1.0, ledger.costFactor("unknown"));
+    }
+
+    @Test
+    void circuitBreaker_startsWithTimeoutsOfEarlierRuns() {
+        PatternCostLedger ledger = new PatternCostLedger();
+        ledger.loadAll(List.of(row("(a+)+b", 0, 0, 3, 6000, 3), row("(c+)+d", 0, 0, 2, 4000, 2)));
+        PatternCircuitBreaker circuitBreaker = new PatternCircuitBreaker(ledger);
+
+        assertTrue(circuitBreaker.isQuarantined(Pattern.compile("(a+)+b")));
+        assertEquals(1, circuitBreaker.drainNewlyQuarantined().size());
+        assertFalse(circuitBreaker.isQuarantined(Pattern.compile("(c+)+d")));
+
+        // one more timeout reaches the limit, and is recorded in the ledger
+        circuitBreaker.record(Pattern.compile("(c+)+d"), Duration.ofMillis(2000), 1);
+        assertTrue(circuitBreaker.isQuarantined(Pattern.compile("(c+)+d")));
+        PatternCostRow row = ledger.drainChanged().get(0);
+        assertEquals(3L, row.timeouts());
+        assertEquals(6000L, row.matchTimeMs());
+    }
+}
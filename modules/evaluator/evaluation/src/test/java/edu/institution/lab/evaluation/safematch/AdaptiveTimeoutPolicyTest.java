@@ -0,0 +1,94 @@
+package edu.institution.lab.evaluation.safematch;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveTimeoutPolicyTest {
+
+    private static final Pattern PATTERN = Pattern.compile("(.*a){20}");
+
+    /**
+     * Record matches that took a microsecond per character
+     */
+    private static void train(AdaptiveTimeoutPolicy policy, int samples) {
+        for (int i = 0; i < samples; i++) {
+            AdaptiveTimeoutPolicy.Limit limit = policy.limitFor(PATTERN, 10, Duration.ofSeconds(2));
+            policy.recordFinished(PATTERN, 10, limit, 10_000);
+        }
+    }
+
+    @Test
+    void limitFor_tooFewSamples_usesFixedTimeout() {
+        AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(TimeoutMode.ADAPTIVE, 4, 10, Duration.ZERO, Duration.ofSeconds(30));
+        train(policy, 3);
+
+        AdaptiveTimeoutPolicy.Limit limit = policy.limitFor(PATTERN, 100, Duration.ofSeconds(2));
+        assertEquals(Duration.ofSeconds(2), limit.enforced());
+        assertNull(limit.adaptive());
+    }
+
+    @Test
+    void limitFor_adaptive_scalesP99BySubjectLength() {
+        AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(TimeoutMode.ADAPTIVE, 4, 10, Duration.ZERO, Duration.ofSeconds(30));
+        train(policy, 4);
+
+        // a microsecond per character is bucketed up to 1024ns
+        AdaptiveTimeoutPolicy.Limit limit = policy.limitFor(PATTERN, 100, Duration.ofSeconds(2));
+        assertEquals(Duration.ofNanos(10 * 1024 * 100), limit.adaptive());
+        assertEquals(limit.adaptive(), limit.enforced());
+
+        // never looser than the fixed timeout, or the cap
+        assertEquals(Duration.ofMillis(1), policy.limitFor(PATTERN, 100, Duration.ofMillis(1)).enforced());
+        assertEquals(Duration.ofSeconds(30), policy.limitFor(Pattern.compile("other"), 100, Duration.ofMinutes(5)).enforced());
+    }
+
+    @Test
+    void limitFor_adaptive_respectsFloor() {
+        AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(TimeoutMode.ADAPTIVE, 4, 10, Duration.ofMillis(50), Duration.ofSeconds(30));
+        train(policy, 4);
+
+        assertEquals(Duration.ofMillis(50), policy.limitFor(PATTERN, 1, Duration.ofSeconds(2)).enforced());
+    }
+
+    @Test
+    void shadow_keepsFixedTimeoutAndCountsChangedVerdicts() {
+        AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(TimeoutMode.SHADOW, 4, 10, Duration.ZERO, Duration.ofSeconds(30));
+        train(policy, 4);
+
+        AdaptiveTimeoutPolicy.Limit limit = policy.limitFor(PATTERN, 100, Duration.ofSeconds(2));
+        assertEquals(Duration.ofSeconds(2), limit.enforced());
+        assertNotNull(limit.adaptive());
+
+        // finished within the fixed timeout, but would have timed out with the adaptive limit
+        policy.recordFinished(PATTERN, 100, limit, Duration.ofMillis(500).toNanos());
+        assertEquals(1, policy.getChangedVerdictCount());
+
+        policy.recordTimeout(limit);
+        assertEquals(Duration.ofSeconds(2).minus(limit.adaptive()), policy.getSavedTime());
+        assertEquals(0, policy.getTightenedTimeoutCount());
+    }
+
+    @Test
+    void safeMatcher_adaptive_givesUpBeforeFixedTimeout() {
+        AdaptiveTimeoutPolicy policy = new AdaptiveTimeoutPolicy(TimeoutMode.ADAPTIVE, 4, 10, Duration.ofMillis(50), Duration.ofSeconds(30));
+        ExecutorService executionContext = Executors.newCachedThreadPool();
+        SafeMatcher safeMatcher = new SafeMatcher(PATTERN, MatchContext.of(executionContext).withTimeoutPolicy(policy));
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(SafeMatcher.MatchResult.NOT_MATCH, safeMatcher.match("aaaac", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(10)));
+        }
+
+        long start = System.nanoTime();
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, safeMatcher.match("a".repeat(40) + "c", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(10)));
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(5)) < 0);
+        assertEquals(1, policy.getTightenedTimeoutCount());
+
+        executionContext.shutdownNow();
+    }
+}
@@ -0,0 +1,51 @@
+package edu.institution.lab.evaluation.safematch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchMemoTest {
+
+    @Test
+    void key_sameForEqualPatternsAndSubjects() {
+        MatchMemo memo = new MatchMemo(64);
+        long first = memo.key(MatchMemo.patternHash(Pattern.compile("a+")), new String("aaa"), SafeMatcher.MatchMode.FULL);
+        long second = memo.key(MatchMemo.patternHash(Pattern.compile("a+")), new String("aaa"), SafeMatcher.MatchMode.FULL);
+
+        assertEquals(first, second);
+        memo.put(first, SafeMatcher.MatchResult.MATCH, -1, -1);
+        assertEquals(SafeMatcher.MatchResult.MATCH, MatchMemo.result(memo.get(second)));
+    }
+
+    @Test
+    void key_differsForPatternFlagsSubjectAndMode() {
+        MatchMemo memo = new MatchMemo(64);
+        long pattern = MatchMemo.patternHash(Pattern.compile("a+"));
+        Set<Long> keys = new HashSet<>();
+        keys.add(memo.key(pattern, "aaa", SafeMatcher.MatchMode.FULL));
+        keys.add(memo.key(pattern, "aaa", SafeMatcher.MatchMode.PARTIAL));
+        keys.add(memo.key(pattern, "aab", SafeMatcher.MatchMode.FULL));
+        keys.add(memo.key(MatchMemo.patternHash(Pattern.compile("a+", Pattern.CASE_INSENSITIVE)), "aaa", SafeMatcher.MatchMode.FULL));
+        keys.add(memo.key(MatchMemo.patternHash(Pattern.compile("aaa")), "a+", SafeMatcher.MatchMode.FULL));
+
+        assertEquals(5, keys.size());
+        assertFalse(keys.contains(MatchMemo.NONE));
+    }
+
+    @Test
+    void get_missesOnceEntryIsReplaced() {
+        MatchMemo memo = new MatchMemo(4);
+        long pattern = MatchMemo.patternHash(Pattern.compile("a+"));
+        long first = memo.key(pattern, "0", SafeMatcher.MatchMode.FULL);
+        memo.put(first, SafeMatcher.MatchResult.NOT_MATCH, -1, -1);
+        for (int i = 1; i <= 4; i++) {
+            memo.put(memo.key(pattern, String.valueOf(i), SafeMatcher.MatchMode.FULL), SafeMatcher.MatchResult.NOT_MATCH, -1, -1);
+        }
+
+        assertEquals(MatchMemo.NONE, memo.get(first));
+    }
+}
@@ -0,0 +1,154 @@
+package edu.institution.lab.evaluation.safematch;
+
+import edu.institution.lab.evaluation.model.QuarantinedPatternRow;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternCircuitBreakerTest {
+
+    @Test
+    void record_quarantinesAfterTimeoutLimit() {
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker(3, Duration.ofHours(1));
+        Pattern pattern = Pattern.compile("(.*a){20}");
+
+        breaker.record(pattern, Duration.ofMillis(10), 1);
+        breaker.record(pattern, Duration.ofMillis(10), 1);
+        assertFalse(breaker.isQuarantined(pattern));
+
+        breaker.record(pattern, Duration.ofMillis(10), 1);
+        assertTrue(breaker.isQuarantined(pattern));
+
+        List<QuarantinedPatternRow> drained = breaker.drainNewlyQuarantined();
+        assertEquals(1, drained.size());
+        assertEquals(pattern.pattern(), drained.get(0).pattern());
+        assertEquals(3L, (long) drained.get(0).timeouts());
+        assertEquals(30L, (long) drained.get(0).timeSpentMs());
+    }
+
+    @Test
+    void record_quarantinesAfterTimeBudget() {
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker(3, Duration.ofSeconds(1));
+        Pattern pattern = Pattern.compile("a+b");
+
+        breaker.record(pattern, Duration.ofMillis(600), 0);
+        assertFalse(breaker.isQuarantined(pattern));
+
+        breaker.record(pattern, Duration.ofMillis(600), 0);
+        assertTrue(breaker.isQuarantined(pattern));
+        // other patterns are unaffected
+        assertFalse(breaker.isQuarantined(Pattern.compile("a+c")));
+    }
+
+    @Test
+    void drainNewlyQuarantined_onlyReturnsPatternsQuarantinedByThisRun() {
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker(1, Duration.ofHours(1));
+        breaker.quarantineAll(List.of("loaded"));
+        assertTrue(breaker.isQuarantined(Pattern.compile("loaded")));
+
+        breaker.record(Pattern.compile("new"), Duration.ofMillis(1), 1);
+        // patterns that are already quarantined are not recorded again
+        breaker.record(Pattern.compile("loaded"), Duration.ofMillis(1), 1);
+
+        List<QuarantinedPatternRow> drained = breaker.drainNewlyQuarantined();
+        assertEquals(1, drained.size());
+        assertEquals("new", drained.get(0).pattern());
+        assertTrue(breaker.drainNewlyQuarantined().isEmpty());
+        assertEquals(2, breaker.getQuarantinedCount());
+    }
+
+    @Test
+    void match_quarantinedPattern_timesOutWithoutRunning() {
+        Pattern pattern = Pattern.compile("hello");
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker();
+        breaker.quarantineAll(List.of(pattern.pattern()));
+
+        AtomicInteger submitted = new AtomicInteger();
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        ExecutorService executionContext = new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.incrementAndGet();
+                delegate.execute(command);
+            }
+
+            @Override
+            public void shutdown() {
+                delegate.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return delegate.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return delegate.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return delegate.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return delegate.awaitTermination(timeout, unit);
+            }
+        };
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withCircuitBreaker(breaker));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, safeMatcher.match("hello", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(30)));
+        assertTrue(safeMatcher.partialMatch("hello", Duration.ofSeconds(30)).isEmpty());
+        assertEquals(0, submitted.get());
+
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void match_repeatedTimeouts_quarantinePattern() {
+        Pattern pattern = Pattern.compile("(.*a){20}");
+        String subject = "a".repeat(40) + "c";
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker(2, Duration.ofHours(1));
+        ExecutorService executionContext = Executors.newCachedThreadPool();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withCircuitBreaker(breaker));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, safeMatcher.match(subject, SafeMatcher.MatchMode.FULL, Duration.ofMillis(50)));
+        assertFalse(breaker.isQuarantined(pattern));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, safeMatcher.match(subject, SafeMatcher.MatchMode.FULL, Duration.ofMillis(50)));
+        assertTrue(breaker.isQuarantined(pattern));
+
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_onlyStringsThatRanOutTheirOwnLimit_countAsTimeouts() {
+        Pattern pattern = Pattern.compile("(.*a){20}");
+        List<String> subjects = Collections.nCopies(10, "a".repeat(40) + "c");
+        PatternCircuitBreaker breaker = new PatternCircuitBreaker(2, Duration.ofHours(1));
+        ExecutorService executionContext = Executors.newCachedThreadPool();
+
+        // the first string runs out its own limit, the second runs into the batch's deadline, and the rest never run
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withCircuitBreaker(breaker));
+        BatchMatchResult results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofMillis(100), Instant.now().plusMillis(150), (idx, result, start, end) -> false);
+
+        for (int idx = 0; idx < subjects.size(); idx++) {
+            assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(idx));
+        }
+        assertFalse(breaker.isQuarantined(pattern));
+
+        executionContext.shutdownNow();
+    }
+}
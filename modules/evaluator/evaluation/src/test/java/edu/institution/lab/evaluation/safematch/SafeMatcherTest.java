@@ -3,9 +3,19 @@ package edu.institution.lab.evaluation.safematch;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -47,4 +57,374 @@ class SafeMatcherTest {
         assertEquals(result.get().start(), expectedStart);
         assertEquals(result.get().end(), expectedEnd);
     }
-}
\ No newline at end of file
+
+    @Test
+    void match_inline_matchesWithoutBeingMarkedRisky() {
+        Pattern pattern = Pattern.compile("hello\\s+world");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+        InlineMatchPolicy policy = new InlineMatchPolicy();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(policy));
+        assertEquals(SafeMatcher.MatchResult.MATCH, safeMatcher.match("hello  world", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(30)));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, safeMatcher.match("hello  world!", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(30)));
+
+        Optional<SafeMatcher.PartialMatchResult> result = safeMatcher.partialMatch("say hello world", Duration.ofSeconds(30));
+        assertTrue(result.isPresent());
+        assertEquals(4, result.get().start());
+        assertEquals(15, result.get().end());
+
+        assertFalse(policy.isRisky(pattern));
+    }
+
+    @Test
+    void match_inline_exceedingBudgetFallsBackAndMarksRisky() {
+        Pattern pattern = Pattern.compile("(.*a){12}");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+        InlineMatchPolicy policy = new InlineMatchPolicy(1_000);
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(policy));
+        SafeMatcher.MatchResult result = safeMatcher.match("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaac", SafeMatcher.MatchMode.FULL, Duration.ofMillis(200));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, result);
+        assertTrue(policy.isRisky(pattern));
+
+        // once risky, even cheap strings use the threaded path but still give the same verdict
+        assertEquals(SafeMatcher.MatchResult.MATCH, safeMatcher.match("aaaaaaaaaaaa", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(30)));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void match_interruptedInline_timesOutAndKeepsInterrupt() {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()));
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(SafeMatcher.MatchResult.TIMEOUT, safeMatcher.match("aaa", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2)));
+            assertTrue(Thread.currentThread().isInterrupted());
+            assertTrue(safeMatcher.partialMatch("aaa", Duration.ofSeconds(2)).isEmpty());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+            executionContext.shutdownNow();
+        }
+
+        // the interrupt is not held against the pattern
+        assertEquals(SafeMatcher.MatchResult.MATCH, safeMatcher.match("aaa", SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2)));
+    }
+
+    @Test
+    void classifyAll_interruptedInline_timesOutRemainingStrings() {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()));
+        List<String> subjects = List.of("aaa", "b", "aa");
+        BatchMatchResult results;
+        try {
+            results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> {
+                if (idx == 0) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            });
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+            executionContext.shutdownNow();
+        }
+
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(1));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(2));
+    }
+
+    @Test
+    void classifyAll_classifiesEveryString() {
+        Pattern pattern = Pattern.compile("\\d+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()));
+        List<String> subjects = List.of("123", "abc", "ab12");
+        BatchMatchResult results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.PARTIAL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertEquals(3, results.getEvaluatedCount());
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, results.getResult(1));
+        assertEquals(-1, results.getStart(1));
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(2));
+        assertEquals(2, results.getStart(2));
+        assertEquals(4, results.getEnd(2));
+    }
+
+    @Test
+    void classifyAll_reusesMatcherAcrossBatchesAndModes() {
+        Pattern pattern = Pattern.compile("b+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()));
+        BatchMatchResult partial = safeMatcher.classifyAll(List.of("abba"), SafeMatcher.MatchMode.PARTIAL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+        BatchMatchResult full = safeMatcher.classifyAll(List.of("abba", "bb"), SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertEquals(SafeMatcher.MatchResult.MATCH, partial.getResult(0));
+        assertEquals(1, partial.getStart(0));
+        assertEquals(3, partial.getEnd(0));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, full.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.MATCH, full.getResult(1));
+    }
+
+    @Test
+    void classifyAll_stopsWhenEarlyExitRequested() {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, executionContext);
+        List<String> subjects = List.of("aaa", "b", "aa", "a");
+        BatchMatchResult results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> result.mismatches());
+
+        assertEquals(2, results.getEvaluatedCount());
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, results.getResult(1));
+        assertFalse(results.isEvaluated(2));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_timedOutBatch_neverReportsAfterReturning() throws InterruptedException {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, executionContext);
+        AtomicBoolean reporting = new AtomicBoolean();
+        AtomicInteger reports = new AtomicInteger();
+        // the first report outlasts the batch's deadline and ignores interrupts, so the caller gives up while it is
+        // still running
+        safeMatcher.classifyAll(List.of("a", "aa", "aaa"), SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusMillis(50), (idx, result, start, end) -> {
+            reporting.set(true);
+            reports.incrementAndGet();
+            long until = System.nanoTime() + Duration.ofMillis(600).toNanos();
+            while (System.nanoTime() - until < 0) {
+                Thread.onSpinWait();
+            }
+            reporting.set(false);
+            return false;
+        });
+
+        assertFalse(reporting.get());
+        Thread.sleep(100);
+        assertEquals(1, reports.get());
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_batchCancelledByExecutor_timesOutRemaining() {
+        Pattern pattern = Pattern.compile("a+");
+        // like a watchdog that gave up on the batch before it finished
+        ExecutorService cancellingContext = new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                ((Future<?>) command).cancel(true);
+            }
+
+            @Override
+            public void shutdown() {
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return List.of();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return false;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return true;
+            }
+        };
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, cancellingContext);
+        BatchMatchResult results = safeMatcher.classifyAll(List.of("a", "b"), SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(1));
+    }
+
+    @Test
+    void classifyAll_queuedBatch_getsItsTimeOncePickedUp() throws Exception {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService busyContext = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch busy = new CountDownLatch(1);
+            busyContext.submit(() -> {
+                busy.countDown();
+                Thread.sleep(600);
+                return null;
+            });
+            busy.await();
+
+            // the batch waits in the queue for longer than its whole allowance
+            SafeMatcher safeMatcher = new SafeMatcher(pattern, busyContext);
+            BatchMatchResult results = safeMatcher.classifyAll(List.of("aaa", "b"), SafeMatcher.MatchMode.FULL, Duration.ofSeconds(2), Instant.now().plusMillis(200), (idx, result, start, end) -> false);
+
+            assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+            assertEquals(SafeMatcher.MatchResult.NOT_MATCH, results.getResult(1));
+            assertFalse(results.isDeadlineExceeded());
+        } finally {
+            busyContext.shutdownNow();
+        }
+    }
+
+    @Test
+    void classifyAll_batchRunningIntoDeadline_saysSo() {
+        Pattern pattern = Pattern.compile("(.*a){20}");
+        ExecutorService safeContext = Executors.newCachedThreadPool();
+        try {
+            SafeMatcher safeMatcher = new SafeMatcher(pattern, safeContext);
+            List<String> subjects = List.of("a".repeat(40) + "c", "a".repeat(40) + "c");
+            BatchMatchResult results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofSeconds(10), Instant.now().plusMillis(100), (idx, result, start, end) -> false);
+
+            assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(0));
+            assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(1));
+            assertTrue(results.isDeadlineExceeded());
+        } finally {
+            safeContext.shutdownNow();
+        }
+    }
+
+    @Test
+    void classifyAll_timesOutPathologicalStringsOnly() {
+        Pattern pattern = Pattern.compile("(.*a){12}");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy(10_000)));
+        List<String> subjects = List.of("aaaaaaaaaaaa", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaac", "aaaaaaaaaaaaa");
+        BatchMatchResult results = safeMatcher.classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofMillis(200), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(1));
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(2));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_remembersResultsAndTimeoutsInMemo() {
+        Pattern pattern = Pattern.compile("(.*a){12}");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+        MatchMemo memo = new MatchMemo(64);
+
+        List<String> subjects = List.of("aaaaaaaaaaaa", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaac");
+        new SafeMatcher(pattern, MatchContext.of(executionContext).withMatchMemo(memo))
+                .classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofMillis(200), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+        assertEquals(0, memo.getHitCount());
+
+        // a fresh matcher answers both strings from the memo without retrying the pathological one
+        Instant started = Instant.now();
+        BatchMatchResult results = new SafeMatcher(pattern, MatchContext.of(executionContext).withMatchMemo(memo))
+                .classifyAll(subjects, SafeMatcher.MatchMode.FULL, Duration.ofMillis(200), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertTrue(Duration.between(started, Instant.now()).compareTo(Duration.ofMillis(150)) < 0);
+        assertEquals(2, memo.getHitCount());
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.TIMEOUT, results.getResult(1));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_memoKeepsSubMatchBounds() {
+        Pattern pattern = Pattern.compile("b+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+        MatchMemo memo = new MatchMemo();
+
+        List<String> subjects = List.of("abba", "aaa");
+        new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()).withMatchMemo(memo))
+                .classifyAll(subjects, SafeMatcher.MatchMode.PARTIAL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+        BatchMatchResult results = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()).withMatchMemo(memo))
+                .classifyAll(subjects, SafeMatcher.MatchMode.PARTIAL, Duration.ofSeconds(2), Instant.now().plusSeconds(30), (idx, result, start, end) -> false);
+
+        assertEquals(2, memo.getHitCount());
+        assertEquals(SafeMatcher.MatchResult.MATCH, results.getResult(0));
+        assertEquals(1, results.getStart(0));
+        assertEquals(3, results.getEnd(0));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, results.getResult(1));
+        assertEquals(-1, results.getStart(1));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_fusesModesInOnePass() {
+        Pattern pattern = Pattern.compile("b+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, executionContext);
+        Map<SafeMatcher.MatchMode, BatchMatchResult> results = safeMatcher.classifyAll(List.of("abba", "bb", "aa"), EnumSet.allOf(SafeMatcher.MatchMode.class), Duration.ofSeconds(2), Instant.now().plusSeconds(30), (mode, idx, result, start, end) -> false);
+
+        BatchMatchResult full = results.get(SafeMatcher.MatchMode.FULL);
+        BatchMatchResult partial = results.get(SafeMatcher.MatchMode.PARTIAL);
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, full.getResult(0));
+        assertEquals(SafeMatcher.MatchResult.MATCH, full.getResult(1));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, full.getResult(2));
+        assertEquals(SafeMatcher.MatchResult.MATCH, partial.getResult(0));
+        assertEquals(1, partial.getStart(0));
+        assertEquals(3, partial.getEnd(0));
+        assertEquals(SafeMatcher.MatchResult.MATCH, partial.getResult(1));
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, partial.getResult(2));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void classifyAll_stopsEachModeOnItsOwn() {
+        Pattern pattern = Pattern.compile("a+");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy()));
+        List<String> subjects = List.of("aaa", "ba", "aa", "b");
+        Map<SafeMatcher.MatchMode, BatchMatchResult> results = safeMatcher.classifyAll(subjects, EnumSet.allOf(SafeMatcher.MatchMode.class), Duration.ofSeconds(2), Instant.now().plusSeconds(30), (mode, idx, result, start, end) -> result.mismatches());
+
+        // "ba" only stops full matching
+        BatchMatchResult full = results.get(SafeMatcher.MatchMode.FULL);
+        assertEquals(2, full.getEvaluatedCount());
+        assertFalse(full.isEvaluated(2));
+
+        BatchMatchResult partial = results.get(SafeMatcher.MatchMode.PARTIAL);
+        assertEquals(4, partial.getEvaluatedCount());
+        assertEquals(SafeMatcher.MatchResult.NOT_MATCH, partial.getResult(3));
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void fusedMatch_matchesBothModes() {
+        Pattern pattern = Pattern.compile("a*?");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, executionContext);
+        Optional<SafeMatcher.FusedMatchResult> result = safeMatcher.fusedMatch("aa", Duration.ofSeconds(30));
+
+        assertTrue(result.isPresent());
+        assertEquals(SafeMatcher.MatchResult.MATCH, result.get().fullMatch());
+        // the leftmost sub-match of a lazy pattern is empty even though the whole string matches
+        assertEquals(SafeMatcher.MatchResult.MATCH, result.get().partialMatch().matchResult());
+        assertEquals(0, result.get().partialMatch().start());
+        assertEquals(0, result.get().partialMatch().end());
+        executionContext.shutdownNow();
+    }
+
+    @Test
+    void fusedMatch_timesOutPathologicalStrings() {
+        Pattern pattern = Pattern.compile("(.*a){12}");
+        ExecutorService executionContext = Executors.newSingleThreadExecutor();
+
+        SafeMatcher safeMatcher = new SafeMatcher(pattern, MatchContext.of(executionContext).withInlineMatchPolicy(new InlineMatchPolicy(10_000)));
+
+        assertTrue(safeMatcher.fusedMatch("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaac", Duration.ofMillis(200)).isEmpty());
+        assertTrue(safeMatcher.fusedMatch("aaaaaaaaaaaa", Duration.ofMillis(200)).isPresent());
+        executionContext.shutdownNow();
+    }
+}
@@ -0,0 +1,40 @@
+package edu.institution.lab.evaluation.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardTest {
+
+    @Test
+    void parse_readsIndexAndCount() {
+        assertEquals(new Shard(2, 5), Shard.parse("2/5"));
+        assertEquals(Shard.ALL, Shard.parse("0/1"));
+    }
+
+    @Test
+    void parse_rejectsInvalidShards() {
+        for (String text : new String[] {"2", "a/b", "5/5", "-1/3", "0/0"}) {
+            assertThrows(IllegalArgumentException.class, () -> Shard.parse(text), text);
+        }
+    }
+
+    @Test
+    void contains_eachIdBelongsToExactlyOneShard() {
+        int count = 4;
+        LongStream.rangeClosed(-10, 100).forEach(id -> {
+            long owners = IntStream.range(0, count).filter(index -> new Shard(index, count).contains(id)).count();
+            assertEquals(1, owners, Long.toString(id));
+        });
+    }
+
+    @Test
+    void all_containsEverything() {
+        assertTrue(Shard.ALL.isAll());
+        assertTrue(Shard.ALL.contains(0));
+        assertTrue(Shard.ALL.contains(12345));
+    }
+}